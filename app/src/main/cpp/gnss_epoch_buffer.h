@@ -0,0 +1,89 @@
+#ifndef GNSS_EPOCH_BUFFER_H
+#define GNSS_EPOCH_BUFFER_H
+
+#include <cstdint>
+
+// Layout of the direct ByteBuffer filled by com.example.geodgnss.GnssEpochBuffer.
+// Native byte order; keep in sync with the Java side and bump the version with it.
+namespace gnss_epoch_buffer {
+
+constexpr int32_t VERSION = 4;
+constexpr int MAX = 128;  // GnssEpoch.MAX_MEASUREMENTS
+
+constexpr int OFFSET_VERSION = 0;
+constexpr int OFFSET_COUNT = 4;
+constexpr int OFFSET_GPS_WEEK = 8;
+constexpr int OFFSET_EPOCH_FLAGS = 12;
+constexpr int OFFSET_TOW_SECONDS = 16;
+constexpr int HEADER_SIZE = 24;
+
+constexpr int OFFSET_PSEUDORANGE = HEADER_SIZE;
+constexpr int OFFSET_CARRIER_CYCLES = OFFSET_PSEUDORANGE + 8 * MAX;
+constexpr int OFFSET_DOPPLER = OFFSET_CARRIER_CYCLES + 8 * MAX;
+constexpr int OFFSET_CN0 = OFFSET_DOPPLER + 8 * MAX;
+constexpr int OFFSET_CONSTELLATION = OFFSET_CN0 + 8 * MAX;
+constexpr int OFFSET_SVID = OFFSET_CONSTELLATION + 4 * MAX;
+constexpr int OFFSET_FREQUENCY_SLOT = OFFSET_SVID + 4 * MAX;
+constexpr int OFFSET_RTKLIB_CODE = OFFSET_FREQUENCY_SLOT + 4 * MAX;
+constexpr int OFFSET_LLI = OFFSET_RTKLIB_CODE + 4 * MAX;
+constexpr int SIZE = OFFSET_LLI + 4 * MAX;
+static_assert(SIZE == 6680, "GnssEpochBuffer.SIZE changed, update both sides");
+
+// GnssEpochBuilder bits in the epoch flags
+constexpr int32_t CLOCK_RESET = 1;
+
+// Typed views of one epoch; the arrays point into the buffer, nothing is copied
+struct view {
+    int32_t count;
+    int32_t gps_week;
+    int32_t epoch_flags;
+    double tow_seconds;
+
+    const double *pseudorange_m;
+    const double *carrier_cycles;
+    const double *doppler_hz;
+    const double *cn0_dbhz;
+    const int32_t *constellation;
+    const int32_t *svid;
+    const int32_t *frequency_slot;  // index into obsd_t P[], L[], ... (< NFREQ)
+    const int32_t *rtklib_code;     // CODE_*
+    const int32_t *lli;             // LLI_SLIP, LLI_HALFC
+};
+
+template <typename T>
+inline T read(const uint8_t *base, int offset) {
+    return *reinterpret_cast<const T *>(base + offset);
+}
+
+// Returns false if the buffer is too small, from another layout version, or inconsistent
+inline bool open(const void *address, int64_t capacity, view *v) {
+    if (address == nullptr || capacity < SIZE) {
+        return false;
+    }
+    const auto *b = static_cast<const uint8_t *>(address);
+    if (read<int32_t>(b, OFFSET_VERSION) != VERSION) {
+        return false;
+    }
+    v->count = read<int32_t>(b, OFFSET_COUNT);
+    if (v->count < 0 || v->count > MAX) {
+        return false;
+    }
+    v->gps_week = read<int32_t>(b, OFFSET_GPS_WEEK);
+    v->epoch_flags = read<int32_t>(b, OFFSET_EPOCH_FLAGS);
+    v->tow_seconds = read<double>(b, OFFSET_TOW_SECONDS);
+
+    v->pseudorange_m = reinterpret_cast<const double *>(b + OFFSET_PSEUDORANGE);
+    v->carrier_cycles = reinterpret_cast<const double *>(b + OFFSET_CARRIER_CYCLES);
+    v->doppler_hz = reinterpret_cast<const double *>(b + OFFSET_DOPPLER);
+    v->cn0_dbhz = reinterpret_cast<const double *>(b + OFFSET_CN0);
+    v->constellation = reinterpret_cast<const int32_t *>(b + OFFSET_CONSTELLATION);
+    v->svid = reinterpret_cast<const int32_t *>(b + OFFSET_SVID);
+    v->frequency_slot = reinterpret_cast<const int32_t *>(b + OFFSET_FREQUENCY_SLOT);
+    v->rtklib_code = reinterpret_cast<const int32_t *>(b + OFFSET_RTKLIB_CODE);
+    v->lli = reinterpret_cast<const int32_t *>(b + OFFSET_LLI);
+    return true;
+}
+
+}  // namespace gnss_epoch_buffer
+
+#endif // GNSS_EPOCH_BUFFER_H
@@ -1,12 +1,22 @@
 #include "rtk_processor.h"
-#include <android/log.h>
 #include "rtklib/srtk.h"  // Your RTK library header
+#include "gnss_epoch_buffer.h"
+#include "rtk_solution_buffer.h"
+#include <algorithm>
 #include <cmath>
 #include <ctime>
 
 #define TAG "NativeLog"
+#ifdef __ANDROID__
+#include <android/log.h>
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, TAG, __VA_ARGS__)
 #define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, TAG, __VA_ARGS__)
+#else
+// Host build (replay tool): errors to stderr, info dropped
+#include <cstdio>
+#define LOGI(...) ((void)0)
+#define LOGE(...) (fprintf(stderr, TAG ": " __VA_ARGS__), fputc('\n', stderr))
+#endif
 
 //namespace rtklib = ::rtk;
 //EXPORT void rtkinit(rtk_t *rtk, const prcopt_t *opt);
@@ -15,81 +25,61 @@
 static nav_t nav_default = {0};
 
 static JavaVM *jvm = nullptr;
-static jclass class_RTKProcessor;
-static jmethodID method_updatePosition;
-
-
-static void convert_gnss_measurement(JNIEnv *env, jobject meas_obj, obsd_t *obs) {
-    jclass cls = env->GetObjectClass(meas_obj);
-
-    // Clear the observation structure
-    memset(obs, 0, sizeof(obsd_t));
-
-    // Get basic fields
-    jmethodID getSvid = env->GetMethodID(cls, "getSvid", "()I");
-    jmethodID getConstellation = env->GetMethodID(cls, "getConstellationType", "()I");
-    jmethodID getTimeNanos = env->GetMethodID(cls, "getReceivedSvTimeNanos", "()J");
-    jmethodID getCn0DbHz = env->GetMethodID(cls, "getCn0DbHz", "()D");
-    jmethodID getPseudorange = env->GetMethodID(cls, "getPseudorangeRateMetersPerSecond", "()D");
-    jmethodID getCarrierPhase = env->GetMethodID(cls, "getAccumulatedDeltaRangeMeters", "()D");
-    jmethodID getCarrierFrequency = env->GetMethodID(cls, "getCarrierFrequencyHz", "()F");
-
-    // Get Android measurement values
-    int svid = env->CallIntMethod(meas_obj, getSvid);
-    int constellation = env->CallIntMethod(meas_obj, getConstellation);
-    long receivedTimeNanos = env->CallLongMethod(meas_obj, getTimeNanos);
-    double cn0DbHz = env->CallDoubleMethod(meas_obj, getCn0DbHz);
-    double pseudorange = env->CallDoubleMethod(meas_obj, getPseudorange);
-    double carrierPhaseMeters = env->CallDoubleMethod(meas_obj, getCarrierPhase);
-    float carrierFrequencyHz = env->CallFloatMethod(meas_obj, getCarrierFrequency);
-
-    // Convert constellation type to RTKLIB system
-    int sys = SYS_NONE;
-    switch(constellation) {
-        case 1:  sys = SYS_GPS; break;  // GnssConstellationType.GPS
-        case 3:  sys = SYS_GLO; break;  // GnssConstellationType.GLONASS
-        case 5:  sys = SYS_GAL; break;  // GnssConstellationType.GALILEO
-        case 4:  sys = SYS_QZS; break;  // GnssConstellationType.QZSS
-        case 6:  sys = SYS_CMP; break;  // GnssConstellationType.BEIDOU
-        case 2:  sys = SYS_SBS; break;  // GnssConstellationType.SBAS
-        default: sys = SYS_NONE; break;
-    }
-
-    // Create satellite ID
-    obs->sat = satno(sys, svid);
-    if (obs->sat == 0) {
-        __android_log_print(ANDROID_LOG_ERROR, "RTK", "Invalid satellite: sys=%d prn=%d", sys, svid);
-        return;
-    }
 
-    // Convert time (Android nanoseconds to GPS time)
-    const double gpsepoch[] = {1980, 1, 6, 0, 0, 0};
-    gtime_t gpst0 = epoch2time(gpsepoch);
 
-    // Convert received time to seconds since GPS epoch
-    double sec = receivedTimeNanos * 1e-9;
-    obs->time = timeadd(gpst0, sec);
-
-
-    // Convert pseudorange and carrier phase
-    obs->P[0] = pseudorange;
-
-    // Convert carrier phase meters to cycles
-    if (carrierFrequencyHz > 0) {
-        double lambda = CLIGHT / carrierFrequencyHz;
-        obs->L[0] = carrierPhaseMeters / lambda;
-        obs->LLI[0] = 0;
+// RTKLIB system of an android.location.GnssStatus constellation type
+static int constellation_to_sys(int constellation) {
+    switch (constellation) {
+        case 1:  return SYS_GPS;  // CONSTELLATION_GPS
+        case 2:  return SYS_SBS;  // CONSTELLATION_SBAS
+        case 3:  return SYS_GLO;  // CONSTELLATION_GLONASS
+        case 4:  return SYS_QZS;  // CONSTELLATION_QZSS
+        case 5:  return SYS_CMP;  // CONSTELLATION_BEIDOU
+        case 6:  return SYS_GAL;  // CONSTELLATION_GALILEO
+        case 7:  return SYS_IRN;  // CONSTELLATION_IRNSS
+        default: return SYS_NONE;
     }
+}
 
-    // Signal strength (convert dB-Hz to SNR unit)
-    obs->SNR[0] = static_cast<uint16_t>(cn0DbHz * SNR_UNIT);  // RTKLIB uses 0.001 dB-Hz units
-
-    // Set default values for other fields
-    obs->rcv = 1;  // Receiver number
-    obs->code[0] = CODE_L1C;  // Default to L1 C/A code
-
-    __android_log_print(ANDROID_LOG_DEBUG, "RTK", "satellite: sys=%d prn=%d", sys, svid);
+// Copies the current solution into an RtkSolution buffer
+static void write_solution(const sol_t &sol, JNIEnv *env, jobject solution_buffer) {
+    rtk_solution_buffer::fields f = {};
+    f.status = sol.stat;
+    f.satellites = sol.ns;
+    f.tow_seconds = time2gpst(sol.time, &f.gps_week);
+    for (int i = 0; i < 3; i++) {
+        f.ecef[i] = sol.rr[i];
+    }
+    if (sol.stat != SOLQ_NONE) {
+        double pos[3];
+        ecef2pos(sol.rr, pos);
+        f.llh[0] = pos[0] * R2D;
+        f.llh[1] = pos[1] * R2D;
+        f.llh[2] = pos[2];
+    }
+    for (int i = 0; i < 6; i++) {
+        f.covariance[i] = sol.qr[i];
+    }
+    f.age = sol.age;
+    f.ratio = sol.ratio;
+    if (!rtk_solution_buffer::write(env->GetDirectBufferAddress(solution_buffer),
+                                    env->GetDirectBufferCapacity(solution_buffer), f)) {
+        LOGE("Invalid solution buffer");
+    }
+}
 
+// Observation record of sat in obs[0..*n), appended and cleared on first use. record[] maps
+// satellite numbers to record indexes + 1 and starts the epoch zeroed.
+static obsd_t *observation_of(int sat, gtime_t time, obsd_t *obs, int *n, int *record) {
+    if (record[sat] == 0) {
+        obsd_t *o = &obs[*n];
+        memset(o, 0, sizeof(obsd_t));
+        o->sat = sat;
+        o->time = time;
+        o->rcv = 1;  // Receiver number
+        record[sat] = ++*n;
+    }
+    return &obs[record[sat] - 1];
 }
 
 
@@ -99,16 +89,13 @@ JNIEXPORT jint JNICALL JNI_OnLoad(JavaVM *vm, void *reserved) {
     if (vm->GetEnv(reinterpret_cast<void**>(&env), JNI_VERSION_1_6) != JNI_OK) {
         return JNI_ERR;
     }
-    LOGI("Android load so init updatePosition call back");
-    jclass cls = env->FindClass("com/example/geodgnss/RTKProcessor");
-    class_RTKProcessor = static_cast<jclass>(env->NewGlobalRef(cls));
-    method_updatePosition = env->GetMethodID(cls, "updatePosition", "(DDD)V");
-
+    // Solutions go back through the buffer passed to processEpochBuffer, no Java upcalls
     return JNI_VERSION_1_6;
 }
 
 JNIEXPORT jlong JNICALL
 Java_com_example_geodgnss_RTKProcessor_initRtkContext(JNIEnv *env, jobject thiz) {
+    return reinterpret_cast<jlong>(new artk_t());
 /*
     auto *ctx = new RtkContext();
     // Initialize structures
@@ -125,79 +112,140 @@ Java_com_example_geodgnss_RTKProcessor_initRtkContext(JNIEnv *env, jobject thiz)
     */
 }
 
-// Initialize navigation data (call this once)
+// Preloads broadcast ephemerides kept from earlier sessions (call this once, right after
+// initRtkContext): RTCM ephemeris frames decoded into the navigation data the solver uses
 JNIEXPORT void JNICALL
-Java_com_example_geodgnss_RTKProcessor_initNavigation(JNIEnv *env, jobject thiz) {
+Java_com_example_geodgnss_RTKProcessor_initNavigation(JNIEnv *env, jobject thiz,
+                                                      jlong context_handle,
+                                                      jobject frames,
+                                                      jint length) {
+    auto *ctx = reinterpret_cast<artk_t*>(context_handle);
+    if (ctx == nullptr || frames == nullptr || length <= 0) {
+        return;
+    }
+    auto *bytes = static_cast<char*>(env->GetDirectBufferAddress(frames));
+    jlong capacity = env->GetDirectBufferCapacity(frames);
+    if (bytes == nullptr || length > capacity) {
+        LOGE("Invalid navigation buffer");
+        return;
+    }
+    ctx->add_brdc(bytes, length);
 }
 
 JNIEXPORT void JNICALL
-Java_com_example_geodgnss_RTKProcessor_updateRtcmData(JNIEnv *env, jobject thiz,
-                                                      jlong context_handle,
-                                                      jbyteArray rtcm_data,
-                                                      jlong receiver_time) {
+Java_com_example_geodgnss_RTKProcessor_updateRtcmBuffer(JNIEnv *env, jobject thiz,
+                                                        jlong context_handle,
+                                                        jobject frames,
+                                                        jint offset,
+                                                        jint length,
+                                                        jlong receiver_time) {
     auto *ctx = reinterpret_cast<artk_t*>(context_handle);
 
-    // Process RTCM data
-    jbyte *rtcm_bytes = env->GetByteArrayElements(rtcm_data, nullptr);
-    jsize rtcm_len = env->GetArrayLength(rtcm_data);
-
-
-    char *rtcm_buff = new char [rtcm_len];
-    // Process each byte individually
-    for (int i = 0; i < rtcm_len; i++) {
-        rtcm_buff[i] = rtcm_bytes[i];
+    // Frames were validated by RtcmFramer; decode straight from the direct buffer
+    auto *bytes = static_cast<char*>(env->GetDirectBufferAddress(frames));
+    jlong capacity = env->GetDirectBufferCapacity(frames);
+    if (bytes == nullptr || offset < 0 || length < 0 || offset + (jlong) length > capacity) {
+        LOGE("Invalid RTCM buffer");
+        return;
     }
-
-    ctx->add_base_buf(rtcm_buff, rtcm_len);
-
-    env->ReleaseByteArrayElements(rtcm_data, rtcm_bytes, JNI_ABORT);
-
-    delete[] rtcm_buff;
-
+    ctx->add_base_buf(bytes + offset, length);
 }
 
 
-JNIEXPORT void JNICALL
-Java_com_example_geodgnss_RTKProcessor_processRtkData(JNIEnv *env, jobject thiz,
-                                                     jlong context_handle,
-                                                     jobjectArray measurements,
-                                                     jlong receiver_time) {
+JNIEXPORT jint JNICALL
+Java_com_example_geodgnss_RTKProcessor_processEpochBuffer(JNIEnv *env, jobject thiz,
+                                                         jlong context_handle,
+                                                         jobject epoch_buffer,
+                                                         jobject solution_buffer) {
     auto *ctx = reinterpret_cast<artk_t*>(context_handle);
 
-
-    // Process GNSS measurements
-    jsize num_meas = env->GetArrayLength(measurements);
-    obsd_t *obs = new obsd_t[num_meas];
-
-    for (jsize i = 0; i < num_meas; i++) {
-        jobject meas_obj = env->GetObjectArrayElement(measurements, i);
-        // Convert Android GnssMeasurement to RTKLIB obsd_t
-        convert_gnss_measurement(env, meas_obj, &obs[i]);
-        env->DeleteLocalRef(meas_obj);
+    // Read the epoch in place: no per-measurement JNI calls and no Java upcalls
+    gnss_epoch_buffer::view epoch;
+    if (!gnss_epoch_buffer::open(env->GetDirectBufferAddress(epoch_buffer),
+                                 env->GetDirectBufferCapacity(epoch_buffer), &epoch)) {
+        LOGE("Invalid epoch buffer");
+        return SOLQ_NONE;
     }
 
-	double pos[3] = { 0 };
+    // GnssEpochBuilder already put every measurement on the epoch's GPS time
+    gtime_t time = gpst2time(epoch.gps_week, epoch.tow_seconds);
+    bool reset = (epoch.epoch_flags & gnss_epoch_buffer::CLOCK_RESET) != 0;
+    // GnssSignalTable put each signal in a frequency slot: gather a satellite's signals
+    // into one record, the way RTKLIB expects them
+    int record[MAXSAT + 1] = { 0 };
+    obsd_t obs[gnss_epoch_buffer::MAX];
+    int n = 0;
+    for (int i = 0; i < epoch.count; i++) {
+        int slot = epoch.frequency_slot[i];
+        int sat = satno(constellation_to_sys(epoch.constellation[i]), epoch.svid[i]);
+        if (sat == 0 || slot < 0 || slot >= NFREQ) {
+            LOGE("Invalid signal: constellation=%d prn=%d slot=%d",
+                 epoch.constellation[i], epoch.svid[i], slot);
+            continue;
+        }
+        obsd_t *o = observation_of(sat, time, obs, &n, record);
+        if (o->code[slot] != CODE_NONE) {
+            continue;  // two codes on one carrier: keep the first
+        }
+        o->code[slot] = static_cast<uint8_t>(epoch.rtklib_code[i]);
+        o->P[slot] = epoch.pseudorange_m[i];
+        o->L[slot] = epoch.carrier_cycles[i];
+        o->D[slot] = static_cast<float>(epoch.doppler_hz[i]);
+        o->SNR[slot] = static_cast<uint16_t>(epoch.cn0_dbhz[i] / SNR_UNIT);
+        // Slips found by CycleSlipTracker
+        o->LLI[slot] = static_cast<uint8_t>(epoch.lli[i] & (LLI_SLIP | LLI_HALFC));
+        if (reset) {
+            o->LLI[slot] |= LLI_SLIP;  // receiver clock reset: carrier phase continuity is lost
+        }
+    }
+    // Rover and base records are matched by walking both in satellite order
+    std::sort(obs, obs + n, [](const obsd_t &a, const obsd_t &b) { return a.sat < b.sat; });
 
-	ctx->add_rove_obs(obs, num_meas, pos);
+    double pos[3] = { 0 };
+    ctx->add_rove_obs(obs, n, pos);
 
-	char gga[255] = { 0 };
-	//if (ctx->proc(gga))
-	{
-		/* output to status
-        // Callback position update
-        if(ctx->rtk.sol.stat == SOLQ_FIX) {
-            jdouble lat = ctx->rtk.sol.rr[0];
-            jdouble lon = ctx->rtk.sol.rr[1];
-            jdouble alt = ctx->rtk.sol.rr[2];
-            env->CallVoidMethod(thiz, method_updatePosition, lat, lon, alt);
-        }*/
-	}
+    char gga[255] = { 0 };
+    ctx->proc(gga);
+    if (solution_buffer != nullptr) {
+        write_solution(ctx->rtk->sol, env, solution_buffer);
+    }
+    return ctx->rtk->sol.stat;
+}
 
-    delete[] obs;
+// Writes the filter state into a direct buffer; returns its length, or minus the length
+// needed when the buffer is too small
+JNIEXPORT jint JNICALL
+Java_com_example_geodgnss_RTKProcessor_saveState(JNIEnv *env, jobject thiz,
+                                                 jlong context_handle,
+                                                 jobject state) {
+    auto *ctx = reinterpret_cast<artk_t*>(context_handle);
+    auto *bytes = static_cast<uint8_t*>(env->GetDirectBufferAddress(state));
+    if (ctx == nullptr || bytes == nullptr) {
+        LOGE("Invalid state buffer");
+        return 0;
+    }
+    return ctx->save_state(bytes, static_cast<int>(env->GetDirectBufferCapacity(state)));
+}
 
+// Puts back a state from saveState; call right after initRtkContext and initNavigation
+JNIEXPORT jboolean JNICALL
+Java_com_example_geodgnss_RTKProcessor_restoreState(JNIEnv *env, jobject thiz,
+                                                    jlong context_handle,
+                                                    jobject state,
+                                                    jint length,
+                                                    jboolean keep_ambiguities) {
+    auto *ctx = reinterpret_cast<artk_t*>(context_handle);
+    auto *bytes = static_cast<uint8_t*>(env->GetDirectBufferAddress(state));
+    if (ctx == nullptr || bytes == nullptr || length < 0
+            || length > env->GetDirectBufferCapacity(state)) {
+        LOGE("Invalid state buffer");
+        return JNI_FALSE;
+    }
+    return ctx->restore_state(bytes, length, keep_ambiguities == JNI_TRUE) ? JNI_TRUE : JNI_FALSE;
 }
 
 JNIEXPORT void JNICALL
 Java_com_example_geodgnss_RTKProcessor_shutdownRtkContext(JNIEnv *env, jobject thiz,
                                                           jlong context_handle) {
+    delete reinterpret_cast<artk_t*>(context_handle);
 }
@@ -11,19 +11,36 @@ extern "C" {
 
 
     JNIEXPORT void JNICALL
-    Java_com_example_geodgnss_RTKProcessor_initNavigation(JNIEnv *env, jobject thiz);
+    Java_com_example_geodgnss_RTKProcessor_initNavigation(JNIEnv *env, jobject thiz,
+                                                          jlong context_handle,
+                                                          jobject frames,
+                                                          jint length);
 
     JNIEXPORT void JNICALL
-    Java_com_example_geodgnss_RTKProcessor_updateRtcmData(JNIEnv *env, jobject thiz,
-                                                          jlong context_handle,
-                                                          jbyteArray rtcm_data,
-                                                          jlong receiver_time);
-
-JNIEXPORT void JNICALL
-    Java_com_example_geodgnss_RTKProcessor_processRtkData(JNIEnv *env, jobject thiz,
-                                                      jlong context_handle,
-                                                      jobjectArray measurements,
-                                                      jlong receiver_time);
+    Java_com_example_geodgnss_RTKProcessor_updateRtcmBuffer(JNIEnv *env, jobject thiz,
+                                                            jlong context_handle,
+                                                            jobject frames,
+                                                            jint offset,
+                                                            jint length,
+                                                            jlong receiver_time);
+
+    JNIEXPORT jint JNICALL
+    Java_com_example_geodgnss_RTKProcessor_processEpochBuffer(JNIEnv *env, jobject thiz,
+                                                              jlong context_handle,
+                                                              jobject epoch_buffer,
+                                                              jobject solution_buffer);
+
+    JNIEXPORT jint JNICALL
+    Java_com_example_geodgnss_RTKProcessor_saveState(JNIEnv *env, jobject thiz,
+                                                     jlong context_handle,
+                                                     jobject state);
+
+    JNIEXPORT jboolean JNICALL
+    Java_com_example_geodgnss_RTKProcessor_restoreState(JNIEnv *env, jobject thiz,
+                                                        jlong context_handle,
+                                                        jobject state,
+                                                        jint length,
+                                                        jboolean keep_ambiguities);
 
     JNIEXPORT void JNICALL
     Java_com_example_geodgnss_RTKProcessor_shutdownRtkContext(JNIEnv *env, jobject thiz,
@@ -0,0 +1,69 @@
+#ifndef RTK_SOLUTION_BUFFER_H
+#define RTK_SOLUTION_BUFFER_H
+
+#include <cstdint>
+
+// Layout of the direct ByteBuffer read by com.example.geodgnss.RtkSolution.unpack.
+// Native byte order; keep in sync with the Java side and bump the version with it.
+namespace rtk_solution_buffer {
+
+constexpr int32_t VERSION = 1;
+
+constexpr int OFFSET_VERSION = 0;
+constexpr int OFFSET_STATUS = 4;
+constexpr int OFFSET_GPS_WEEK = 8;
+constexpr int OFFSET_SATELLITES = 12;
+constexpr int OFFSET_TOW_SECONDS = 16;
+constexpr int OFFSET_ECEF = 24;
+constexpr int OFFSET_LLH = OFFSET_ECEF + 3 * 8;
+constexpr int OFFSET_COVARIANCE = OFFSET_LLH + 3 * 8;
+constexpr int OFFSET_AGE = OFFSET_COVARIANCE + 6 * 4;
+constexpr int OFFSET_RATIO = OFFSET_AGE + 4;
+constexpr int SIZE = OFFSET_RATIO + 4;
+static_assert(SIZE == 104, "RtkSolution.SIZE changed, update both sides");
+
+struct fields {
+    int32_t status;        // SOLQ_*
+    int32_t gps_week;
+    int32_t satellites;
+    double tow_seconds;
+    double ecef[3];        // m
+    double llh[3];         // degrees, degrees, m above the ellipsoid
+    float covariance[6];   // ECEF xx, yy, zz, xy, yz, zx in m^2, as sol_t.qr
+    float age;             // s
+    float ratio;
+};
+
+template <typename T>
+inline void write(uint8_t *base, int offset, T value) {
+    *reinterpret_cast<T *>(base + offset) = value;
+}
+
+// Returns false if the buffer is missing, too small or from another layout version
+inline bool write(void *address, int64_t capacity, const fields &f) {
+    if (address == nullptr || capacity < SIZE) {
+        return false;
+    }
+    auto *b = static_cast<uint8_t *>(address);
+    if (*reinterpret_cast<const int32_t *>(b + OFFSET_VERSION) != VERSION) {
+        return false;
+    }
+    write<int32_t>(b, OFFSET_STATUS, f.status);
+    write<int32_t>(b, OFFSET_GPS_WEEK, f.gps_week);
+    write<int32_t>(b, OFFSET_SATELLITES, f.satellites);
+    write<double>(b, OFFSET_TOW_SECONDS, f.tow_seconds);
+    for (int i = 0; i < 3; i++) {
+        write<double>(b, OFFSET_ECEF + 8 * i, f.ecef[i]);
+        write<double>(b, OFFSET_LLH + 8 * i, f.llh[i]);
+    }
+    for (int i = 0; i < 6; i++) {
+        write<float>(b, OFFSET_COVARIANCE + 4 * i, f.covariance[i]);
+    }
+    write<float>(b, OFFSET_AGE, f.age);
+    write<float>(b, OFFSET_RATIO, f.ratio);
+    return true;
+}
+
+}  // namespace rtk_solution_buffer
+
+#endif // RTK_SOLUTION_BUFFER_H
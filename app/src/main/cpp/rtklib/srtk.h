@@ -3,6 +3,9 @@
 #include "rtklib.h"
 #include <mutex>
 
+/* base position change (m) taken for a new base */
+#define MAX_BASE_MOVE 1.0
+
 struct artk_t
 {
 	rtcm_t* rtcm_obs;	/* rtcm decoder to base stream */
@@ -113,11 +116,17 @@ struct artk_t
 				}
 				else if (ret == 5)
 				{
+					/* another base: the double differences change, the ambiguities go */
+					double d[3] = { rtcm_obs->sta.pos[0] - rtk->rb[0], rtcm_obs->sta.pos[1] - rtk->rb[1], rtcm_obs->sta.pos[2] - rtk->rb[2] };
+					if (norm(rtk->rb, 3) > 0.0 && norm(d, 3) > MAX_BASE_MOVE)
+					{
+						reset_ambiguities();
+					}
 					rtk->rb[0] = rtcm_obs->sta.pos[0];
 					rtk->rb[1] = rtcm_obs->sta.pos[1];
 					rtk->rb[2] = rtcm_obs->sta.pos[2];
 				}
-				else if (ret == 2 && (sat = rtcm_nav->ephsat) > 0)
+				else if (ret == 2 && (sat = rtcm_obs->ephsat) > 0)
 				{
 					sys = satsys(sat, &prn);
 					if (sys == SYS_GLO)
@@ -127,7 +136,7 @@ struct artk_t
 					}
 					else if (sys == SYS_GPS || sys == SYS_GAL || sys == SYS_CMP || sys == SYS_QZS || sys == SYS_IRN)
 					{
-						int loc = sat + MAXSAT * rtcm_nav->ephset - 1;
+						int loc = sat + MAXSAT * rtcm_obs->ephset - 1;
 						rtcm_nav->nav.eph[loc] = rtcm_obs->nav.eph[loc];
 					}
 				}
@@ -179,6 +188,181 @@ struct artk_t
 		}
 		return ret;
 	}
+	/* states ahead of the phase biases, NR() in rtkpos.c */
+	int float_states() const
+	{
+		const prcopt_t* opt = &rtk->opt;
+		return (opt->dynamics == 0 ? 3 : 9) + (opt->ionoopt != IONOOPT_EST ? 0 : MAXSAT)
+			+ (opt->tropopt < TROPOPT_EST ? 0 : (opt->tropopt < TROPOPT_ESTG ? 2 : 6))
+			+ (opt->glomodear != 2 ? 0 : NFREQGLO);
+	}
+	/* drops every phase bias and the satellite lock/fix history */
+	void reset_ambiguities()
+	{
+		int i = 0;
+		int j = 0;
+		int nr = float_states();
+		for (i = nr; i < rtk->nx; ++i)
+		{
+			rtk->x[i] = 0.0;
+			for (j = 0; j < rtk->nx; ++j)
+			{
+				rtk->P[i + j * rtk->nx] = rtk->P[j + i * rtk->nx] = 0.0;
+			}
+		}
+		memset(rtk->ssat, 0, sizeof(rtk->ssat));
+		rtk->nfix = 0;
+	}
+	/*
+	 * Filter state snapshot, native byte order:
+	 *   header (state_header), then n_sat x { int32 sat index, ssat_t },
+	 *   then n_active int32 state indexes, n_active doubles x, n_active^2 doubles P
+	 * Only states in use (x != 0, or a variance for the non-bias states) are kept, so a
+	 * snapshot is a few tens of KB instead of the full nx^2 covariance.
+	 */
+	struct state_header
+	{
+		uint32_t magic;
+		int32_t version;
+		int32_t maxsat, nfreq, nx, nr;
+		int32_t sol_size, ssat_size;
+		int32_t nfix, n_active, n_sat, reserved;
+		double tt;
+		double rb[6];
+		sol_t sol;
+	};
+	static const uint32_t STATE_MAGIC = 0x534B5452; /* "RTKS" */
+	static const int32_t STATE_VERSION = 1;
+	bool state_in_use(int i, int nr) const
+	{
+		return rtk->x[i] != 0.0 || (i < nr && rtk->P[i + i * rtk->nx] > 0.0);
+	}
+	/* writes the snapshot into buff; returns its length, or minus the length needed */
+	int save_state(uint8_t* buff, int size)
+	{
+		int i = 0;
+		int j = 0;
+		int nr = float_states();
+		state_header h;
+		memset(&h, 0, sizeof(h));
+		h.magic = STATE_MAGIC;
+		h.version = STATE_VERSION;
+		h.maxsat = MAXSAT;
+		h.nfreq = NFREQ;
+		h.nx = rtk->nx;
+		h.nr = nr;
+		h.sol_size = sizeof(sol_t);
+		h.ssat_size = sizeof(ssat_t);
+		h.nfix = rtk->nfix;
+		h.tt = rtk->tt;
+		memcpy(h.rb, rtk->rb, sizeof(h.rb));
+		h.sol = rtk->sol;
+		for (i = 0; i < rtk->nx; ++i)
+		{
+			if (state_in_use(i, nr)) h.n_active++;
+		}
+		for (i = 0; i < MAXSAT; ++i)
+		{
+			if (rtk->ssat[i].sys) h.n_sat++;
+		}
+		int len = (int)sizeof(h) + h.n_sat * (int)(sizeof(int32_t) + sizeof(ssat_t))
+			+ h.n_active * (int)(sizeof(int32_t) + sizeof(double))
+			+ h.n_active * h.n_active * (int)sizeof(double);
+		if (len > size) return -len;
+		uint8_t* p = buff;
+		memcpy(p, &h, sizeof(h)); p += sizeof(h);
+		for (i = 0; i < MAXSAT; ++i)
+		{
+			if (!rtk->ssat[i].sys) continue;
+			int32_t sat = i;
+			memcpy(p, &sat, sizeof(sat)); p += sizeof(sat);
+			memcpy(p, &rtk->ssat[i], sizeof(ssat_t)); p += sizeof(ssat_t);
+		}
+		int32_t* index = new int32_t[h.n_active > 0 ? h.n_active : 1];
+		int m = 0;
+		for (i = 0; i < rtk->nx; ++i)
+		{
+			if (state_in_use(i, nr)) index[m++] = i;
+		}
+		memcpy(p, index, sizeof(int32_t) * m); p += sizeof(int32_t) * m;
+		for (i = 0; i < m; ++i)
+		{
+			memcpy(p, &rtk->x[index[i]], sizeof(double)); p += sizeof(double);
+		}
+		for (i = 0; i < m; ++i)
+		{
+			for (j = 0; j < m; ++j)
+			{
+				memcpy(p, &rtk->P[index[i] + index[j] * rtk->nx], sizeof(double)); p += sizeof(double);
+			}
+		}
+		delete[] index;
+		return len;
+	}
+	/*
+	 * Puts a snapshot from save_state back; false, changing nothing, if it is from another
+	 * layout or configuration. Without keep_amb only the position, velocity and base are
+	 * restored and the ambiguities start over.
+	 */
+	bool restore_state(const uint8_t* buff, int size, bool keep_amb)
+	{
+		int i = 0;
+		int j = 0;
+		state_header h;
+		if (size < (int)sizeof(h)) return false;
+		memcpy(&h, buff, sizeof(h));
+		if (h.magic != STATE_MAGIC || h.version != STATE_VERSION || h.maxsat != MAXSAT
+			|| h.nfreq != NFREQ || h.nx != rtk->nx || h.nr != float_states()
+			|| h.sol_size != (int32_t)sizeof(sol_t) || h.ssat_size != (int32_t)sizeof(ssat_t)
+			|| h.n_active < 0 || h.n_active > rtk->nx || h.n_sat < 0 || h.n_sat > MAXSAT)
+		{
+			return false;
+		}
+		int len = (int)sizeof(h) + h.n_sat * (int)(sizeof(int32_t) + sizeof(ssat_t))
+			+ h.n_active * (int)(sizeof(int32_t) + sizeof(double))
+			+ h.n_active * h.n_active * (int)sizeof(double);
+		if (len != size) return false;
+		const uint8_t* p = buff + sizeof(h);
+		const uint8_t* sats = p;
+		p += h.n_sat * (sizeof(int32_t) + sizeof(ssat_t));
+		int32_t* index = new int32_t[h.n_active > 0 ? h.n_active : 1];
+		memcpy(index, p, sizeof(int32_t) * h.n_active); p += sizeof(int32_t) * h.n_active;
+		for (i = 0; i < h.n_active; ++i)
+		{
+			if (index[i] < 0 || index[i] >= rtk->nx)
+			{
+				delete[] index;
+				return false;
+			}
+		}
+		const uint8_t* x = p;
+		const uint8_t* P = p + sizeof(double) * h.n_active;
+		for (i = 0; i < h.n_active; ++i)
+		{
+			if (!keep_amb && index[i] >= h.nr) continue;
+			memcpy(&rtk->x[index[i]], x + sizeof(double) * i, sizeof(double));
+			for (j = 0; j < h.n_active; ++j)
+			{
+				if (!keep_amb && index[j] >= h.nr) continue;
+				memcpy(&rtk->P[index[i] + index[j] * rtk->nx], P + sizeof(double) * (i * h.n_active + j), sizeof(double));
+			}
+		}
+		delete[] index;
+		if (keep_amb)
+		{
+			for (i = 0; i < h.n_sat; ++i, sats += sizeof(int32_t) + sizeof(ssat_t))
+			{
+				int32_t sat = 0;
+				memcpy(&sat, sats, sizeof(sat));
+				if (sat >= 0 && sat < MAXSAT) memcpy(&rtk->ssat[sat], sats + sizeof(int32_t), sizeof(ssat_t));
+			}
+			rtk->nfix = h.nfix;
+		}
+		rtk->tt = h.tt;
+		memcpy(rtk->rb, h.rb, sizeof(h.rb));
+		rtk->sol = h.sol;
+		return true;
+	}
 	int proc(char *gga)
 	{
 		int ret = 0;
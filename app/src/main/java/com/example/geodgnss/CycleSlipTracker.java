@@ -0,0 +1,177 @@
+package com.example.geodgnss;
+
+import java.util.Arrays;
+
+/**
+ * Follows the carrier phase of every signal from epoch to epoch and sets RTKLIB
+ * loss-of-lock indicators ({@link GnssEpochBuilder#lli}) where its continuity breaks, so the
+ * solver resets that ambiguity instead of letting the float solution absorb the jump.
+ *
+ * <p>A slip is flagged when the chipset reports one (ADR reset or cycle slip bits), after a
+ * receiver clock reset, a gap longer than {@link #setMaxGapSeconds} or an epoch without the
+ * carrier (the solver keeps its bias through short outages), when the phase change
+ * disagrees with the one predicted from the Doppler at both ends of the interval, and when
+ * phase minus code leaves its running mean by more than the code noise allows. The Doppler
+ * test catches small slips at high rates; phase minus code catches the large ones even
+ * across a long interval. An unresolved half-cycle ambiguity is passed on as
+ * {@link #LLI_HALF_CYCLE}.
+ *
+ * <p>State is kept per (constellation, svid, frequency slot) in flat primitive arrays
+ * indexed by {@link SignalFilter#satellite} and the slot, so each signal costs a few array
+ * reads and writes and nothing is allocated. Runs on the thread that builds the epochs; the
+ * counters may be read from any thread.
+ */
+public class CycleSlipTracker {
+
+    // RTKLIB LLI bits
+    public static final int LLI_SLIP = 1;
+    public static final int LLI_HALF_CYCLE = 2;
+
+    // android.location.GnssMeasurement ADR states
+    static final int ADR_STATE_RESET = 1 << 1;
+    static final int ADR_STATE_CYCLE_SLIP = 1 << 2;
+    static final int ADR_STATE_HALF_CYCLE_RESOLVED = 1 << 3;
+    static final int ADR_STATE_HALF_CYCLE_REPORTED = 1 << 4;
+
+    public static final double DEFAULT_MAX_GAP_SECONDS = 5;
+    public static final double DEFAULT_DOPPLER_TOLERANCE_CYCLES = 1;
+    /** Added to the Doppler tolerance per second of interval, for Doppler noise. */
+    public static final double DEFAULT_DOPPLER_TOLERANCE_CYCLES_PER_SECOND = 2;
+    public static final double DEFAULT_CODE_TOLERANCE_METERS = 15;
+    /** Epochs averaged into the phase-minus-code mean. */
+    public static final int CODE_WINDOW = 30;
+    /** Epochs in the mean before phase minus code is tested. */
+    public static final int CODE_MIN_SAMPLES = 5;
+
+    private static final int SIGNALS = SignalFilter.SATELLITES * GnssSignalTable.SLOTS;
+    private static final long LOST = -1;
+
+    private double maxGapSeconds = DEFAULT_MAX_GAP_SECONDS;
+    private double dopplerToleranceCycles = DEFAULT_DOPPLER_TOLERANCE_CYCLES;
+    private double dopplerToleranceCyclesPerSecond = DEFAULT_DOPPLER_TOLERANCE_CYCLES_PER_SECOND;
+    private double codeToleranceMeters = DEFAULT_CODE_TOLERANCE_METERS;
+
+    // Per signal; lastTimeNanos 0 means never tracked, LOST that the carrier dropped out
+    private final long[] lastTimeNanos = new long[SIGNALS];
+    private final double[] lastCarrierCycles = new double[SIGNALS];
+    private final double[] lastDopplerHz = new double[SIGNALS];
+    /** Running mean of carrier minus pseudorange, m. */
+    private final double[] phaseMinusCodeMeters = new double[SIGNALS];
+    private final int[] phaseMinusCodeSamples = new int[SIGNALS];
+
+    // Written by the tracking thread only
+    private volatile long reportedSlips;
+    private volatile long gapSlips;
+    private volatile long dopplerSlips;
+    private volatile long codeSlips;
+
+    /** Sets {@code epoch.lli[]} of the epoch just built and advances the per-signal state. */
+    public void track(GnssEpochBuilder epoch) {
+        long time = epoch.gpsTimeNanos;
+        boolean clockReset = (epoch.epochFlags & GnssEpochBuilder.CLOCK_RESET) != 0;
+        for (int i = 0; i < epoch.count; i++) {
+            int k = SignalFilter.satellite(epoch.constellationType[i], epoch.svid[i])
+                    * GnssSignalTable.SLOTS + epoch.frequencySlot[i];
+            double carrier = epoch.carrierCycles[i];
+            if (carrier == 0) {
+                // Not tracked: the phase that comes back starts a new ambiguity
+                if (lastTimeNanos[k] != 0) {
+                    lastTimeNanos[k] = LOST;
+                }
+                epoch.lli[i] = 0;
+                continue;
+            }
+            int adr = epoch.adrState[i];
+            double doppler = epoch.dopplerHz[i];
+            double phaseMinusCode =
+                    carrier / epoch.cyclesPerMeter[i] - epoch.pseudorangeMeters[i];
+            int lli = 0;
+            if ((adr & (ADR_STATE_RESET | ADR_STATE_CYCLE_SLIP)) != 0) {
+                lli = LLI_SLIP;
+                reportedSlips++;
+            }
+            if ((adr & ADR_STATE_HALF_CYCLE_REPORTED) != 0
+                    && (adr & ADR_STATE_HALF_CYCLE_RESOLVED) == 0) {
+                lli |= LLI_HALF_CYCLE;
+            }
+            if (clockReset) {
+                lli |= LLI_SLIP;
+            }
+            if (lastTimeNanos[k] == LOST) {
+                lli |= LLI_SLIP;
+                gapSlips++;
+            } else if (lastTimeNanos[k] != 0) {
+                double dt = (time - lastTimeNanos[k]) * 1e-9;
+                if (dt <= 0 || dt > maxGapSeconds) {
+                    lli |= LLI_SLIP;
+                    gapSlips++;
+                } else {
+                    // Carrier cycles grow with the range, Doppler is positive approaching
+                    double predicted = -0.5 * (doppler + lastDopplerHz[k]) * dt;
+                    double residual = carrier - lastCarrierCycles[k] - predicted;
+                    if (Math.abs(residual)
+                            > dopplerToleranceCycles + dopplerToleranceCyclesPerSecond * dt) {
+                        lli |= LLI_SLIP;
+                        dopplerSlips++;
+                    }
+                    if (phaseMinusCodeSamples[k] >= CODE_MIN_SAMPLES
+                            && Math.abs(phaseMinusCode - phaseMinusCodeMeters[k])
+                            > codeToleranceMeters) {
+                        lli |= LLI_SLIP;
+                        codeSlips++;
+                    }
+                }
+            }
+            int samples = (lli & LLI_SLIP) != 0 || lastTimeNanos[k] == 0
+                    ? 0 : phaseMinusCodeSamples[k];
+            if (samples < CODE_WINDOW) {
+                samples++;
+            }
+            double mean = phaseMinusCodeMeters[k];
+            phaseMinusCodeMeters[k] = samples == 1 ? phaseMinusCode
+                    : mean + (phaseMinusCode - mean) / samples;
+            phaseMinusCodeSamples[k] = samples;
+            lastTimeNanos[k] = time;
+            lastCarrierCycles[k] = carrier;
+            lastDopplerHz[k] = doppler;
+            epoch.lli[i] = lli;
+        }
+    }
+
+    /** Forgets every signal's phase, as at the start of a new session. */
+    public void reset() {
+        Arrays.fill(lastTimeNanos, 0);
+    }
+
+    public void setMaxGapSeconds(double maxGapSeconds) {
+        this.maxGapSeconds = maxGapSeconds;
+    }
+
+    /** A slip is flagged when the phase misses the Doppler prediction by more than this. */
+    public void setDopplerTolerance(double cycles, double cyclesPerSecond) {
+        this.dopplerToleranceCycles = cycles;
+        this.dopplerToleranceCyclesPerSecond = cyclesPerSecond;
+    }
+
+    public void setCodeToleranceMeters(double codeToleranceMeters) {
+        this.codeToleranceMeters = codeToleranceMeters;
+    }
+
+    /** Slips reported by the chipset through the ADR state. */
+    public long getReportedSlips() {
+        return reportedSlips;
+    }
+
+    /** Signals whose phase resumed after more than the maximum gap or a lost carrier. */
+    public long getGapSlips() {
+        return gapSlips;
+    }
+
+    public long getDopplerSlips() {
+        return dopplerSlips;
+    }
+
+    public long getCodeSlips() {
+        return codeSlips;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.geodgnss;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed set of equally sized direct buffers handed from a producer to a consumer thread and
+ * back. All buffers are allocated up front; acquiring and releasing allocates nothing.
+ *
+ * <p>A buffer handed out must be released exactly once, by whichever thread ends up owning
+ * it. When every buffer is in use, {@link #acquire} waits, which is how a slow consumer
+ * pushes back on the producer.
+ */
+public class DirectBufferPool {
+
+    private final ArrayBlockingQueue<ByteBuffer> free;
+    private final int bufferSize;
+
+    public DirectBufferPool(int buffers, int bufferSize) {
+        this.bufferSize = bufferSize;
+        free = new ArrayBlockingQueue<>(buffers);
+        for (int i = 0; i < buffers; i++) {
+            free.add(ByteBuffer.allocateDirect(bufferSize));
+        }
+    }
+
+    /** Takes a cleared buffer, waiting up to {@code timeoutMs}; returns null on timeout. */
+    public ByteBuffer acquire(long timeoutMs) throws InterruptedException {
+        ByteBuffer buffer = free.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        if (buffer != null) {
+            buffer.clear();
+        }
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize || !buffer.isDirect() || !free.offer(buffer)) {
+            throw new IllegalArgumentException("Buffer does not belong to this pool");
+        }
+    }
+
+    public int getAvailable() {
+        return free.size();
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+}
@@ -0,0 +1,311 @@
+package com.example.geodgnss;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Broadcast ephemerides kept across app starts, so the solver has satellite orbits from the
+ * first epoch instead of waiting minutes for them to come round again on the RTCM stream.
+ *
+ * <p>Entries are the RTCM ephemeris frames themselves (1019 GPS, 1020 GLONASS, 1042 BeiDou,
+ * 1044 QZSS, 1045/1046 Galileo), keyed by message type, satellite and IODE. Only the
+ * satellite, IODE and time of ephemeris (toe) are read from the payload; decoding is left to
+ * RTKLIB, which gets the stored frames through {@link RTKProcessor#initNavigation}. An entry
+ * is evicted once its toe is further from now than RTKLIB would accept for that system, and
+ * only the {@link #MAX_PER_SATELLITE} newest IODEs of a satellite are kept.
+ *
+ * <p>The file is the frames back to back, one plain RTCM stream about 70 bytes per entry.
+ * Each frame carries its CRC, so a torn or corrupt file loses only the frames it damages,
+ * and any RTCM tool can read it. It is rewritten through a temporary file and a rename.
+ *
+ * <p>All times are GPS time in milliseconds since the GPS epoch, see {@link #gpsMillis}.
+ */
+public class EphemerisStore {
+
+    public static final int MAX_PER_SATELLITE = 2;
+
+    static final long GPS_EPOCH_UTC_MILLIS = 315964800000L;
+    // GPS-UTC offset, as in RtcmFramer
+    static final long GPS_UTC_LEAP_MILLIS = 18000;
+    private static final long DAY_MILLIS = 86400000L;
+
+    /** One stored frame with the fields read from it. */
+    static final class Entry {
+        final int messageType;
+        final int prn;
+        final int iode;
+        final long toeMillis;
+        final byte[] frame;
+
+        Entry(int messageType, int prn, int iode, long toeMillis, byte[] frame) {
+            this.messageType = messageType;
+            this.prn = prn;
+            this.iode = iode;
+            this.toeMillis = toeMillis;
+            this.frame = frame;
+        }
+    }
+
+    private final File file;
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private boolean changed;
+    private long added;
+    private long evicted;
+
+    public EphemerisStore(File file) {
+        this.file = file;
+    }
+
+    /** Converts a UTC wall-clock time ({@code System.currentTimeMillis()}) to GPS time. */
+    public static long gpsMillis(long utcMillis) {
+        return utcMillis - GPS_EPOCH_UTC_MILLIS + GPS_UTC_LEAP_MILLIS;
+    }
+
+    /** True for the RTCM message types the store keeps. */
+    public static boolean isEphemeris(int messageType) {
+        return minimumPayloadBits(messageType) > 0;
+    }
+
+    /**
+     * Reads the stored frames, dropping those already too old at {@code nowGpsMillis}, and
+     * returns how many were kept. A missing file is an empty store.
+     */
+    public synchronized int load(long nowGpsMillis) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        byte[] data = Files.readAllBytes(file.toPath());
+        int before = entries.size();
+        new RtcmFramer((buffer, offset, length, messageType, stationId) -> {
+            if (isEphemeris(messageType)) {
+                offer(buffer, offset, length, messageType, nowGpsMillis);
+            }
+        }).feed(data, 0, data.length);
+        // Only the file's content; loading alone leaves nothing to save
+        changed = false;
+        return entries.size() - before;
+    }
+
+    /**
+     * Keeps a copy of the ephemeris frame at absolute index {@code offset} of {@code buffer}
+     * ({@code length} bytes, header to CRC, as passed by {@link RtcmFramer}). Returns false
+     * for a frame already stored, too short to decode, or already too old.
+     */
+    public synchronized boolean offer(ByteBuffer buffer, int offset, int length,
+                                      int messageType, long nowGpsMillis) {
+        int minimumBits = minimumPayloadBits(messageType);
+        int payload = offset + RtcmFramer.HEADER_LENGTH;
+        int payloadLength = length - RtcmFramer.HEADER_LENGTH - RtcmFramer.CRC_LENGTH;
+        if (minimumBits == 0 || payloadLength * 8 < minimumBits) {
+            return false;
+        }
+        int prn = prn(buffer, payload, messageType);
+        int iode = iode(buffer, payload, messageType);
+        long key = key(messageType, prn, iode);
+        if (entries.containsKey(key)) {
+            return false;
+        }
+        long toe = toeGpsMillis(buffer, payload, messageType, nowGpsMillis);
+        if (Math.abs(nowGpsMillis - toe) > maxAgeMillis(messageType)) {
+            return false;
+        }
+        byte[] frame = new byte[length];
+        for (int i = 0; i < length; i++) {
+            frame[i] = buffer.get(offset + i);
+        }
+        entries.put(key, new Entry(messageType, prn, iode, toe, frame));
+        added++;
+        changed = true;
+        trimSatellite(messageType, prn);
+        return true;
+    }
+
+    /** Drops every entry whose toe is too far from {@code nowGpsMillis}; returns how many. */
+    public synchronized int evict(long nowGpsMillis) {
+        int n = 0;
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (Math.abs(nowGpsMillis - entry.toeMillis) > maxAgeMillis(entry.messageType)) {
+                it.remove();
+                n++;
+            }
+        }
+        if (n > 0) {
+            evicted += n;
+            changed = true;
+        }
+        return n;
+    }
+
+    /**
+     * Evicts what is too old at {@code nowGpsMillis} and returns the remaining frames back
+     * to back in a direct buffer, from position 0 to its limit, for
+     * {@link RTKProcessor#initNavigation}.
+     */
+    public synchronized ByteBuffer frames(long nowGpsMillis) {
+        evict(nowGpsMillis);
+        int size = 0;
+        for (Entry entry : entries.values()) {
+            size += entry.frame.length;
+        }
+        ByteBuffer frames = ByteBuffer.allocateDirect(size);
+        for (Entry entry : entries.values()) {
+            frames.put(entry.frame);
+        }
+        frames.flip();
+        return frames;
+    }
+
+    /** Rewrites the file if entries were added or evicted since it was last written. */
+    public synchronized void save() throws IOException {
+        if (!changed) {
+            return;
+        }
+        File temporary = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(temporary)) {
+            for (Entry entry : entries.values()) {
+                out.write(entry.frame);
+            }
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        changed = false;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** Entries stored since the store was created, including those loaded from the file. */
+    public synchronized long getAdded() {
+        return added;
+    }
+
+    public synchronized long getEvicted() {
+        return evicted;
+    }
+
+    /** The stored entries of one satellite, for tests. */
+    synchronized List<Entry> entries(int messageType, int prn) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.messageType == messageType && entry.prn == prn) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    private void trimSatellite(int messageType, int prn) {
+        List<Entry> satellite = entries(messageType, prn);
+        while (satellite.size() > MAX_PER_SATELLITE) {
+            Entry oldest = satellite.get(0);
+            for (Entry entry : satellite) {
+                if (entry.toeMillis < oldest.toeMillis) {
+                    oldest = entry;
+                }
+            }
+            satellite.remove(oldest);
+            entries.remove(key(oldest.messageType, oldest.prn, oldest.iode));
+            evicted++;
+        }
+    }
+
+    private static long key(int messageType, int prn, int iode) {
+        return ((long) messageType << 32) | ((long) prn << 16) | iode;
+    }
+
+    /** Shortest payload RTKLIB decodes for the message type, or 0 if it is not stored. */
+    static int minimumPayloadBits(int messageType) {
+        switch (messageType) {
+            case 1019: return 12 + 476;
+            case 1020: return 12 + 348;
+            case 1042: return 12 + 499;
+            case 1044: return 12 + 473;
+            case 1045: return 12 + 484;
+            case 1046: return 12 + 492;
+            default: return 0;
+        }
+    }
+
+    /** How far the toe may be from now before RTKLIB ignores the ephemeris (MAXDTOE*). */
+    static long maxAgeMillis(int messageType) {
+        switch (messageType) {
+            case 1020: return 1800_000L;
+            case 1042: return 21600_000L;
+            case 1045:
+            case 1046: return 14400_000L;
+            default: return 7200_000L;
+        }
+    }
+
+    /** Satellite number within its system, as in the message. */
+    static int prn(ByteBuffer b, int payload, int messageType) {
+        // 4 bits for QZSS, 6 for the others, right after the message number
+        return messageType == 1044 ? (int) bits(b, payload, 12, 4) : (int) bits(b, payload, 12, 6);
+    }
+
+    /** Issue of data: IODE, Galileo IODnav, BeiDou AODE, GLONASS tb. */
+    static int iode(ByteBuffer b, int payload, int messageType) {
+        switch (messageType) {
+            case 1019: return (int) bits(b, payload, 48, 8);
+            case 1020: return (int) bits(b, payload, 41, 7);
+            case 1042: return (int) bits(b, payload, 49, 5);
+            case 1044: return (int) bits(b, payload, 78, 8);
+            default: return (int) bits(b, payload, 30, 10);
+        }
+    }
+
+    /**
+     * Returns the toe as GPS time, placing the time of week (time of day for GLONASS) in
+     * the week (day) nearest to {@code nowGpsMillis}, as RTKLIB does with its own clock.
+     */
+    static long toeGpsMillis(ByteBuffer b, int payload, int messageType, long nowGpsMillis) {
+        switch (messageType) {
+            case 1019:
+                return nearest(nowGpsMillis, bits(b, payload, 288, 16) * 16_000,
+                        RtcmFramer.WEEK_MILLIS);
+            case 1020: {
+                // tb in 15 min steps of Moscow time (UTC+3)
+                long utc = bits(b, payload, 41, 7) * 900_000 - 3 * 3600_000L;
+                return nearest(nowGpsMillis, utc + GPS_UTC_LEAP_MILLIS, DAY_MILLIS);
+            }
+            case 1042:
+                // BeiDou time runs 14 s behind GPS time
+                return nearest(nowGpsMillis, bits(b, payload, 299, 17) * 8_000 + 14_000,
+                        RtcmFramer.WEEK_MILLIS);
+            case 1044:
+                return nearest(nowGpsMillis, bits(b, payload, 246, 16) * 16_000,
+                        RtcmFramer.WEEK_MILLIS);
+            default:
+                return nearest(nowGpsMillis, bits(b, payload, 294, 14) * 60_000,
+                        RtcmFramer.WEEK_MILLIS);
+        }
+    }
+
+    /** The time {@code phase} modulo {@code period} closest to {@code now}. */
+    private static long nearest(long now, long phase, long period) {
+        long t = now - Math.floorMod(now - phase, period);
+        return now - t > period / 2 ? t + period : t;
+    }
+
+    /** Reads {@code length} bits, MSB first, starting {@code position} bits into the payload. */
+    static long bits(ByteBuffer b, int payload, int position, int length) {
+        long value = 0;
+        for (int i = position; i < position + length; i++) {
+            int bit = (b.get(payload + (i >>> 3)) >>> (7 - (i & 7))) & 1;
+            value = (value << 1) | bit;
+        }
+        return value;
+    }
+}
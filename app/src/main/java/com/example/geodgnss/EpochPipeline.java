@@ -0,0 +1,422 @@
+package com.example.geodgnss;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Staged measurement pipeline: capture, convert, then solve, log and display
+ * in parallel.
+ *
+ * <p>{@link #submit} is the capture stage and runs on the caller's thread (the GNSS
+ * callback). It never blocks: it takes a free slot from a fixed pool, stores the raw source
+ * event and queues it for conversion. The convert stage turns the source into the slot's
+ * {@link GnssEpoch} and hands the same slot to every consumer stage. Each stage has its own
+ * bounded queue and thread, so a slow RTK solve cannot hold up logging or the screen and
+ * vice versa. A slot goes back to the pool once every stage is done with it.
+ *
+ * <p>Backpressure is explicit. When the pool is exhausted, capture drops the epoch. When a
+ * stage queue is full, the stage's {@link Overflow} policy decides what to drop. Each
+ * stage's queue depth, drop count and latency (capture to end of processing) can be
+ * read at any time from {@link #getStages}; the latency is also kept as a
+ * {@link MetricsRegistry.Histogram} for percentiles. A handler that throws costs only its
+ * epoch; the stage counts the failure and reports its first one to the
+ * {@link ErrorListener}.
+ *
+ * @param <T> the raw event type, e.g. {@code GnssMeasurementsEvent}
+ */
+public class EpochPipeline<T> {
+
+    public interface Converter<T> {
+        /** Fills {@code epoch} from {@code source}; return false to drop the epoch. */
+        boolean convert(T source, GnssEpoch epoch);
+    }
+
+    public interface Handler<T> {
+        /**
+         * Processes one epoch. {@code epoch} and {@code source} are reused once the call
+         * returns.
+         */
+        void process(GnssEpoch epoch, T source) throws Exception;
+    }
+
+    public interface ErrorListener<T> {
+        /**
+         * Called on the stage's thread with the first exception its handler throws; later
+         * ones are only counted, and the last is kept in {@link Stage#getLastError}.
+         */
+        void onError(Stage<T> stage, Exception e);
+    }
+
+    /** What a stage does with a new epoch when its queue is full. */
+    public enum Overflow {
+        /** Keep the queued epochs and drop the new one. */
+        DROP_NEWEST,
+        /** Drop the oldest queued epoch to make room for the new one. */
+        DROP_OLDEST,
+        /** Only the latest epoch matters: drop everything still queued whenever a new one arrives. */
+        COALESCE
+    }
+
+    public static final int DEFAULT_POOL_SIZE = 16;
+    /** How long {@link #stop} lets the stages work off their queues before interrupting them. */
+    public static final long DEFAULT_STOP_TIMEOUT_MILLIS = 2000;
+
+    /** Stage body; consumer stages wrap a {@link Handler}. */
+    interface SlotHandler<T> {
+        void handle(Slot<T> slot) throws Exception;
+    }
+
+    /** One reusable epoch in flight, shared by the stages that still need it. */
+    static final class Slot<T> {
+        final GnssEpoch epoch = new GnssEpoch();
+        final AtomicInteger refs = new AtomicInteger();
+        T source;
+        long captureNanos;
+    }
+
+    /** A stage with its own queue and thread. Counters are safe to read from any thread. */
+    public static final class Stage<T> {
+        private final EpochPipeline<T> pipeline;
+        private final String name;
+        private final SlotHandler<T> handler;
+        private final Overflow overflow;
+        private final ArrayBlockingQueue<Slot<T>> queue;
+        private Thread thread;
+        private volatile boolean aborted;
+
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile long processed;
+        private volatile long errors;
+        private volatile Exception lastError;
+        private volatile long lastLatencyNanos;
+        private volatile long maxLatencyNanos;
+        private volatile long totalLatencyNanos;
+        private volatile long totalServiceNanos;
+        private final MetricsRegistry.Histogram latency = new MetricsRegistry.Histogram();
+
+        Stage(EpochPipeline<T> pipeline, String name, int capacity, Overflow overflow,
+              SlotHandler<T> handler) {
+            this.pipeline = pipeline;
+            this.name = name;
+            this.handler = handler;
+            this.overflow = overflow;
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getQueueDepth() {
+            return queue.size();
+        }
+
+        public int getQueueCapacity() {
+            return queue.size() + queue.remainingCapacity();
+        }
+
+        public long getProcessed() {
+            return processed;
+        }
+
+        /** Epochs this stage never saw because its queue was full (or coalesced). */
+        public long getDropped() {
+            return dropped.get();
+        }
+
+        /** Epochs whose handler threw. */
+        public long getErrors() {
+            return errors;
+        }
+
+        public Exception getLastError() {
+            return lastError;
+        }
+
+        /** Capture to end of processing for the most recent epoch. */
+        public long getLastLatencyNanos() {
+            return lastLatencyNanos;
+        }
+
+        public long getMaxLatencyNanos() {
+            return maxLatencyNanos;
+        }
+
+        public long getMeanLatencyNanos() {
+            long n = processed;
+            return n == 0 ? 0 : totalLatencyNanos / n;
+        }
+
+        /** Capture to end of processing of every epoch this stage has processed. */
+        public MetricsRegistry.Histogram getLatencyHistogram() {
+            return latency;
+        }
+
+        /** Mean time spent in the handler itself, without queueing. */
+        public long getMeanServiceNanos() {
+            long n = processed;
+            return n == 0 ? 0 : totalServiceNanos / n;
+        }
+
+        /** Queues {@code slot}; called from the single upstream thread only. */
+        void offer(Slot<T> slot) {
+            if (overflow == Overflow.COALESCE) {
+                drainAndRelease();
+            }
+            while (!queue.offer(slot)) {
+                if (overflow == Overflow.DROP_NEWEST) {
+                    dropped.incrementAndGet();
+                    pipeline.release(slot);
+                    return;
+                }
+                // DROP_OLDEST, or COALESCE racing with the consumer
+                Slot<T> oldest = queue.poll();
+                if (oldest == pipeline.end) {
+                    // A capture racing with stop: the end marker stays, the new epoch goes
+                    queue.offer(oldest);
+                    dropped.incrementAndGet();
+                    pipeline.release(slot);
+                    return;
+                }
+                if (oldest != null) {
+                    dropped.incrementAndGet();
+                    pipeline.release(oldest);
+                }
+            }
+        }
+
+        private void drainAndRelease() {
+            Slot<T> stale;
+            while ((stale = queue.poll()) != null) {
+                if (stale == pipeline.end) {
+                    continue;
+                }
+                dropped.incrementAndGet();
+                pipeline.release(stale);
+            }
+        }
+
+        void start() {
+            aborted = false;
+            thread = new Thread(this::run, "EpochPipeline-" + name);
+            thread.start();
+        }
+
+        /**
+         * Lets the thread work off its queue until the end marker and waits for it until
+         * {@code deadlineNanos}; a thread still busy then is interrupted. Whatever is left
+         * in the queue is released.
+         */
+        void stop(long deadlineNanos) throws InterruptedException {
+            if (thread != null) {
+                if (queue.offer(pipeline.end, remainingNanos(deadlineNanos),
+                        TimeUnit.NANOSECONDS)) {
+                    TimeUnit.NANOSECONDS.timedJoin(thread, remainingNanos(deadlineNanos));
+                }
+                if (thread.isAlive()) {
+                    aborted = true;
+                    thread.interrupt();
+                    thread.join();
+                }
+                thread = null;
+            }
+            drainAndRelease();
+        }
+
+        private static long remainingNanos(long deadlineNanos) {
+            return Math.max(1, deadlineNanos - System.nanoTime());
+        }
+
+        private void run() {
+            while (!aborted) {
+                Slot<T> slot;
+                try {
+                    slot = queue.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (slot == pipeline.end) {
+                    return;
+                }
+                long start = System.nanoTime();
+                try {
+                    handler.handle(slot);
+                } catch (Exception e) {
+                    lastError = e;
+                    if (errors++ == 0) {
+                        pipeline.reportError(this, e);
+                    }
+                } finally {
+                    long end = System.nanoTime();
+                    long latency = end - slot.captureNanos;
+                    lastLatencyNanos = latency;
+                    this.latency.record(latency);
+                    if (latency > maxLatencyNanos) {
+                        maxLatencyNanos = latency;
+                    }
+                    totalLatencyNanos += latency;
+                    totalServiceNanos += end - start;
+                    processed++;
+                    pipeline.release(slot);
+                }
+            }
+        }
+    }
+
+    private final Converter<T> converter;
+    private final ArrayBlockingQueue<Slot<T>> freeSlots;
+    private final Stage<T> convertStage;
+    private final List<Stage<T>> consumers = new ArrayList<>();
+    private final List<Stage<T>> stages = new ArrayList<>();
+    /** Queued behind the last epoch of each stage by {@link #stop}; never processed. */
+    private final Slot<T> end = new Slot<>();
+    private final AtomicLong captureDropped = new AtomicLong();
+    private volatile long captured;
+    private volatile boolean running;
+    private volatile boolean capturing;
+    private long stopTimeoutMillis = DEFAULT_STOP_TIMEOUT_MILLIS;
+    private volatile ErrorListener<T> errorListener;
+
+    public EpochPipeline(Converter<T> converter) {
+        this(converter, DEFAULT_POOL_SIZE, 4);
+    }
+
+    /**
+     * @param poolSize number of epochs that can be in flight at once
+     * @param convertCapacity queue length in front of the convert stage
+     */
+    public EpochPipeline(Converter<T> converter, int poolSize, int convertCapacity) {
+        this.converter = converter;
+        freeSlots = new ArrayBlockingQueue<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            freeSlots.add(new Slot<>());
+        }
+        convertStage = new Stage<>(this, "convert", convertCapacity, Overflow.DROP_OLDEST,
+                this::convertAndDispatch);
+        stages.add(convertStage);
+    }
+
+    /** Adds a consumer stage fed by the convert stage. Must be called before {@link #start}. */
+    public Stage<T> addStage(String name, int capacity, Overflow overflow, Handler<T> handler) {
+        if (running) {
+            throw new IllegalStateException("Pipeline already started");
+        }
+        Stage<T> stage = new Stage<>(this, name, capacity, overflow,
+                slot -> handler.process(slot.epoch, slot.source));
+        consumers.add(stage);
+        stages.add(stage);
+        return stage;
+    }
+
+    /** Hears of the first failure of each stage; null, the default, only counts them. */
+    public void setErrorListener(ErrorListener<T> errorListener) {
+        this.errorListener = errorListener;
+    }
+
+    public synchronized void setStopTimeoutMillis(long stopTimeoutMillis) {
+        this.stopTimeoutMillis = stopTimeoutMillis;
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        for (Stage<T> stage : stages) {
+            stage.start();
+        }
+        capturing = true;
+    }
+
+    /**
+     * Stops capture, lets every stage finish the epochs already queued, then stops the
+     * stage threads. Upstream goes first, so the epochs the convert stage still hands on
+     * reach the consumers before they are told to finish. A stage still busy once the stop
+     * timeout has passed, for all stages together, is interrupted and its queue dropped.
+     */
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        capturing = false;
+        long deadline = System.nanoTime()
+                + TimeUnit.MILLISECONDS.toNanos(stopTimeoutMillis);
+        try {
+            for (Stage<T> stage : stages) {
+                stage.stop(deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        running = false;
+    }
+
+    /**
+     * Capture stage: queues {@code source} for conversion. Never blocks; returns false if
+     * the epoch was dropped because every slot is still in use. Call from one thread only.
+     */
+    public boolean submit(T source) {
+        if (!capturing) {
+            return false;
+        }
+        Slot<T> slot = freeSlots.poll();
+        if (slot == null) {
+            captureDropped.incrementAndGet();
+            return false;
+        }
+        slot.source = source;
+        slot.captureNanos = System.nanoTime();
+        slot.refs.set(1);
+        captured++;
+        convertStage.offer(slot);
+        return true;
+    }
+
+    /** Convert stage first, then the consumer stages in the order they were added. */
+    public List<Stage<T>> getStages() {
+        return stages;
+    }
+
+    public long getCaptured() {
+        return captured;
+    }
+
+    /** Epochs dropped at capture because all slots were in flight. */
+    public long getCaptureDropped() {
+        return captureDropped.get();
+    }
+
+    /** Slots currently free; {@code poolSize - getFreeSlots()} epochs are in flight. */
+    public int getFreeSlots() {
+        return freeSlots.size();
+    }
+
+    private void convertAndDispatch(Slot<T> slot) {
+        if (!converter.convert(slot.source, slot.epoch)) {
+            return;
+        }
+        // The convert stage's own reference is released by its loop after this returns
+        for (Stage<T> stage : consumers) {
+            slot.refs.incrementAndGet();
+            stage.offer(slot);
+        }
+    }
+
+    void reportError(Stage<T> stage, Exception e) {
+        ErrorListener<T> listener = errorListener;
+        if (listener != null) {
+            listener.onError(stage, e);
+        }
+    }
+
+    void release(Slot<T> slot) {
+        if (slot.refs.decrementAndGet() == 0) {
+            slot.source = null;
+            freeSlots.offer(slot);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.geodgnss;
+
+/**
+ * Formats measurements in the app's 19-field CSV schema without {@code String.format}.
+ *
+ * <p>Each field goes through the primitive {@code StringBuilder.append} overloads, which
+ * print exactly what {@code %s} printed for the boxed value ({@code Integer.toString},
+ * {@code Double.toString}, ...) but without boxing, a {@code Formatter} or an intermediate
+ * {@code String}. {@link #encode} additionally produces the line as ASCII bytes in a reused
+ * array for writing to files. An encoder instance is not thread-safe.
+ */
+public class GnssCsvEncoder {
+
+    private static final int MAX_LINE_LENGTH = 512;
+
+    private final StringBuilder line = new StringBuilder(MAX_LINE_LENGTH);
+    private byte[] bytes = new byte[MAX_LINE_LENGTH];
+
+    /**
+     * Encodes measurement {@code i} of {@code epoch} plus a trailing newline into
+     * {@link #bytes()} and returns the number of bytes used.
+     */
+    public int encode(GnssEpoch epoch, int i) {
+        line.setLength(0);
+        append(line, epoch, i);
+        line.append('\n');
+        int length = line.length();
+        if (length > bytes.length) {
+            bytes = new byte[length];
+        }
+        for (int k = 0; k < length; k++) {
+            bytes[k] = (byte) line.charAt(k); // all output is ASCII
+        }
+        return length;
+    }
+
+    /** The buffer filled by the last {@link #encode} call. */
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    /** Appends measurement {@code i} of {@code epoch} to {@code sb}, without a newline. */
+    public static void append(StringBuilder sb, GnssEpoch epoch, int i) {
+        int flags = epoch.flags[i];
+        sb.append(epoch.svid[i]).append(',')
+                .append(epoch.timeOffsetNanos[i]).append(',')
+                .append(epoch.state[i]).append(',')
+                .append(epoch.receivedSvTimeNanos[i]).append(',')
+                .append(epoch.receivedSvTimeUncertaintyNanos[i]).append(',')
+                .append(epoch.cn0DbHz[i]).append(',')
+                .append(epoch.pseudorangeRateMetersPerSecond[i]).append(',')
+                .append(epoch.pseudorangeRateUncertaintyMetersPerSecond[i]).append(',')
+                .append(epoch.accumulatedDeltaRangeState[i]).append(',')
+                .append(epoch.accumulatedDeltaRangeMeters[i]).append(',')
+                .append(epoch.accumulatedDeltaRangeUncertaintyMeters[i]).append(',');
+        if ((flags & GnssEpoch.HAS_CARRIER_FREQUENCY) != 0) {
+            sb.append(epoch.carrierFrequencyHz[i]);
+        }
+        sb.append(',');
+        if ((flags & GnssEpoch.HAS_CARRIER_CYCLES) != 0) {
+            sb.append(epoch.carrierCycles[i]);
+        }
+        sb.append(',');
+        if ((flags & GnssEpoch.HAS_CARRIER_PHASE) != 0) {
+            sb.append(epoch.carrierPhase[i]);
+        }
+        sb.append(',');
+        if ((flags & GnssEpoch.HAS_CARRIER_PHASE_UNCERTAINTY) != 0) {
+            sb.append(epoch.carrierPhaseUncertainty[i]);
+        }
+        sb.append(',').append(epoch.multipathIndicator[i]).append(',');
+        if ((flags & GnssEpoch.HAS_SNR) != 0) {
+            sb.append(epoch.snrInDb[i]);
+        }
+        sb.append(',').append(epoch.constellationType[i]).append(',');
+        if ((flags & GnssEpoch.HAS_AGC) != 0) {
+            sb.append(epoch.automaticGainControlLevelDb[i]);
+        }
+    }
+}
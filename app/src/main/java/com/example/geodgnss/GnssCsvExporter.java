@@ -0,0 +1,58 @@
+package com.example.geodgnss;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Converts a binary log written by {@link GnssLogger} back into the CSV schema the app
+ * used to write directly: one line per measurement, 19 fields, optional fields empty
+ * when absent. Clock data is only in the binary log.
+ */
+public final class GnssCsvExporter {
+
+    private GnssCsvExporter() {
+    }
+
+    /** Writes the CSV export of {@code log} to {@code csv} and returns the line count. */
+    public static long export(File log, File csv) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(csv), 64 * 1024)) {
+            return export(log, out);
+        }
+    }
+
+    public static long export(File log, OutputStream out) throws IOException {
+        GnssEpoch epoch = new GnssEpoch();
+        GnssCsvEncoder encoder = new GnssCsvEncoder();
+        long lines = 0;
+        try (GnssLogReader reader = new GnssLogReader(log)) {
+            while (reader.next(epoch)) {
+                for (int i = 0; i < epoch.count; i++) {
+                    out.write(encoder.bytes(), 0, encoder.encode(epoch, i));
+                    lines++;
+                }
+            }
+        }
+        return lines;
+    }
+
+    public static long export(File log, Writer out) throws IOException {
+        GnssEpoch epoch = new GnssEpoch();
+        StringBuilder line = new StringBuilder(256);
+        long lines = 0;
+        try (GnssLogReader reader = new GnssLogReader(log)) {
+            while (reader.next(epoch)) {
+                for (int i = 0; i < epoch.count; i++) {
+                    line.setLength(0);
+                    GnssCsvEncoder.append(line, epoch, i);
+                    out.append(line).append('\n');
+                    lines++;
+                }
+            }
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.geodgnss;
+
+import android.location.GnssClock;
+import android.location.GnssMeasurement;
+import android.location.GnssMeasurementsEvent;
+import android.os.Build;
+
+/**
+ * One epoch of raw GNSS data: the receiver clock plus the measurements held as primitive
+ * arrays (one array per field, one slot per measurement), so it can be filled, logged and
+ * handed on without boxing or per-epoch allocation. Instances are meant to be reused.
+ */
+public class GnssEpoch {
+
+    public static final int MAX_MEASUREMENTS = 128;
+
+    // Bits in flags[], set when the matching optional field is present
+    public static final int HAS_CARRIER_FREQUENCY = 1;
+    public static final int HAS_CARRIER_CYCLES = 1 << 1;
+    public static final int HAS_CARRIER_PHASE = 1 << 2;
+    public static final int HAS_CARRIER_PHASE_UNCERTAINTY = 1 << 3;
+    public static final int HAS_SNR = 1 << 4;
+    public static final int HAS_AGC = 1 << 5;
+
+    // Bits in clockFlags, set when the matching optional GnssClock field is present
+    public static final int HAS_FULL_BIAS = 1;
+    public static final int HAS_BIAS = 1 << 1;
+    public static final int HAS_BIAS_UNCERTAINTY = 1 << 2;
+    public static final int HAS_DRIFT = 1 << 3;
+    public static final int HAS_DRIFT_UNCERTAINTY = 1 << 4;
+    public static final int HAS_TIME_UNCERTAINTY = 1 << 5;
+    public static final int HAS_LEAP_SECOND = 1 << 6;
+    public static final int HAS_ELAPSED_REALTIME = 1 << 7;
+    public static final int HAS_ELAPSED_REALTIME_UNCERTAINTY = 1 << 8;
+
+    // Receiver clock
+    public long timeNanos;
+    public long fullBiasNanos;
+    public double biasNanos;
+    public double biasUncertaintyNanos;
+    public double driftNanosPerSecond;
+    public double driftUncertaintyNanosPerSecond;
+    public double timeUncertaintyNanos;
+    public long elapsedRealtimeNanos;
+    public double elapsedRealtimeUncertaintyNanos;
+    public int hardwareClockDiscontinuityCount;
+    public int leapSecond;
+    public int clockFlags;
+
+    public int count;
+
+    public final int[] svid = new int[MAX_MEASUREMENTS];
+    public final double[] timeOffsetNanos = new double[MAX_MEASUREMENTS];
+    public final int[] state = new int[MAX_MEASUREMENTS];
+    public final long[] receivedSvTimeNanos = new long[MAX_MEASUREMENTS];
+    public final long[] receivedSvTimeUncertaintyNanos = new long[MAX_MEASUREMENTS];
+    public final double[] cn0DbHz = new double[MAX_MEASUREMENTS];
+    public final double[] pseudorangeRateMetersPerSecond = new double[MAX_MEASUREMENTS];
+    public final double[] pseudorangeRateUncertaintyMetersPerSecond = new double[MAX_MEASUREMENTS];
+    public final int[] accumulatedDeltaRangeState = new int[MAX_MEASUREMENTS];
+    public final double[] accumulatedDeltaRangeMeters = new double[MAX_MEASUREMENTS];
+    public final double[] accumulatedDeltaRangeUncertaintyMeters = new double[MAX_MEASUREMENTS];
+    public final float[] carrierFrequencyHz = new float[MAX_MEASUREMENTS];
+    public final long[] carrierCycles = new long[MAX_MEASUREMENTS];
+    public final double[] carrierPhase = new double[MAX_MEASUREMENTS];
+    public final double[] carrierPhaseUncertainty = new double[MAX_MEASUREMENTS];
+    public final int[] multipathIndicator = new int[MAX_MEASUREMENTS];
+    public final double[] snrInDb = new double[MAX_MEASUREMENTS];
+    public final int[] constellationType = new int[MAX_MEASUREMENTS];
+    public final double[] automaticGainControlLevelDb = new double[MAX_MEASUREMENTS];
+    public final int[] flags = new int[MAX_MEASUREMENTS];
+    /** GnssMeasurement.getCodeType() letter, such as 'C' or 'Q'; 0 when not reported. */
+    public final char[] codeType = new char[MAX_MEASUREMENTS];
+
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Time tag used to order and index epochs: GPS time in nanoseconds when the full bias
+     * is known, otherwise the raw receiver clock.
+     */
+    public long epochTimeNanos() {
+        return (clockFlags & HAS_FULL_BIAS) != 0 ? timeNanos - fullBiasNanos : timeNanos;
+    }
+
+    /**
+     * Copies the clock and measurements of {@code event}, dropping any measurements beyond
+     * {@link #MAX_MEASUREMENTS}.
+     */
+    @SuppressWarnings("deprecation")
+    public void set(GnssMeasurementsEvent event) {
+        setClock(event.getClock());
+        count = 0;
+        for (GnssMeasurement m : event.getMeasurements()) {
+            if (count == MAX_MEASUREMENTS) {
+                break;
+            }
+            int i = count++;
+            int f = 0;
+            svid[i] = m.getSvid();
+            timeOffsetNanos[i] = m.getTimeOffsetNanos();
+            state[i] = m.getState();
+            receivedSvTimeNanos[i] = m.getReceivedSvTimeNanos();
+            receivedSvTimeUncertaintyNanos[i] = m.getReceivedSvTimeUncertaintyNanos();
+            cn0DbHz[i] = m.getCn0DbHz();
+            pseudorangeRateMetersPerSecond[i] = m.getPseudorangeRateMetersPerSecond();
+            pseudorangeRateUncertaintyMetersPerSecond[i] =
+                    m.getPseudorangeRateUncertaintyMetersPerSecond();
+            accumulatedDeltaRangeState[i] = m.getAccumulatedDeltaRangeState();
+            accumulatedDeltaRangeMeters[i] = m.getAccumulatedDeltaRangeMeters();
+            accumulatedDeltaRangeUncertaintyMeters[i] = m.getAccumulatedDeltaRangeUncertaintyMeters();
+            if (m.hasCarrierFrequencyHz()) {
+                f |= HAS_CARRIER_FREQUENCY;
+            }
+            if (m.hasCarrierCycles()) {
+                f |= HAS_CARRIER_CYCLES;
+            }
+            if (m.hasCarrierPhase()) {
+                f |= HAS_CARRIER_PHASE;
+            }
+            if (m.hasCarrierPhaseUncertainty()) {
+                f |= HAS_CARRIER_PHASE_UNCERTAINTY;
+            }
+            if (m.hasSnrInDb()) {
+                f |= HAS_SNR;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+                    && m.hasAutomaticGainControlLevelDb()) {
+                f |= HAS_AGC;
+            }
+            // Absent optional fields are stored as 0 so logged records stay deterministic
+            carrierFrequencyHz[i] = (f & HAS_CARRIER_FREQUENCY) != 0 ? m.getCarrierFrequencyHz() : 0f;
+            carrierCycles[i] = (f & HAS_CARRIER_CYCLES) != 0 ? m.getCarrierCycles() : 0L;
+            carrierPhase[i] = (f & HAS_CARRIER_PHASE) != 0 ? m.getCarrierPhase() : 0.0;
+            carrierPhaseUncertainty[i] = (f & HAS_CARRIER_PHASE_UNCERTAINTY) != 0
+                    ? m.getCarrierPhaseUncertainty() : 0.0;
+            multipathIndicator[i] = m.getMultipathIndicator();
+            snrInDb[i] = (f & HAS_SNR) != 0 ? m.getSnrInDb() : 0.0;
+            constellationType[i] = m.getConstellationType();
+            automaticGainControlLevelDb[i] = (f & HAS_AGC) != 0
+                    ? m.getAutomaticGainControlLevelDb() : 0.0;
+            codeType[i] = Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && m.hasCodeType()
+                    ? m.getCodeType().charAt(0) : 0;
+            flags[i] = f;
+        }
+    }
+
+    private void setClock(GnssClock clock) {
+        int f = 0;
+        timeNanos = clock.getTimeNanos();
+        hardwareClockDiscontinuityCount = clock.getHardwareClockDiscontinuityCount();
+        if (clock.hasFullBiasNanos()) {
+            f |= HAS_FULL_BIAS;
+        }
+        if (clock.hasBiasNanos()) {
+            f |= HAS_BIAS;
+        }
+        if (clock.hasBiasUncertaintyNanos()) {
+            f |= HAS_BIAS_UNCERTAINTY;
+        }
+        if (clock.hasDriftNanosPerSecond()) {
+            f |= HAS_DRIFT;
+        }
+        if (clock.hasDriftUncertaintyNanosPerSecond()) {
+            f |= HAS_DRIFT_UNCERTAINTY;
+        }
+        if (clock.hasTimeUncertaintyNanos()) {
+            f |= HAS_TIME_UNCERTAINTY;
+        }
+        if (clock.hasLeapSecond()) {
+            f |= HAS_LEAP_SECOND;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            if (clock.hasElapsedRealtimeNanos()) {
+                f |= HAS_ELAPSED_REALTIME;
+            }
+            if (clock.hasElapsedRealtimeUncertaintyNanos()) {
+                f |= HAS_ELAPSED_REALTIME_UNCERTAINTY;
+            }
+        }
+        fullBiasNanos = (f & HAS_FULL_BIAS) != 0 ? clock.getFullBiasNanos() : 0L;
+        biasNanos = (f & HAS_BIAS) != 0 ? clock.getBiasNanos() : 0.0;
+        biasUncertaintyNanos = (f & HAS_BIAS_UNCERTAINTY) != 0
+                ? clock.getBiasUncertaintyNanos() : 0.0;
+        driftNanosPerSecond = (f & HAS_DRIFT) != 0 ? clock.getDriftNanosPerSecond() : 0.0;
+        driftUncertaintyNanosPerSecond = (f & HAS_DRIFT_UNCERTAINTY) != 0
+                ? clock.getDriftUncertaintyNanosPerSecond() : 0.0;
+        timeUncertaintyNanos = (f & HAS_TIME_UNCERTAINTY) != 0
+                ? clock.getTimeUncertaintyNanos() : 0.0;
+        leapSecond = (f & HAS_LEAP_SECOND) != 0 ? clock.getLeapSecond() : 0;
+        elapsedRealtimeNanos = (f & HAS_ELAPSED_REALTIME) != 0
+                ? clock.getElapsedRealtimeNanos() : 0L;
+        elapsedRealtimeUncertaintyNanos = (f & HAS_ELAPSED_REALTIME_UNCERTAINTY) != 0
+                ? clock.getElapsedRealtimeUncertaintyNanos() : 0.0;
+        clockFlags = f;
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.geodgnss;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Packs an epoch built by {@link GnssEpochBuilder} into a reusable direct {@link ByteBuffer}
+ * that native code reads in place, so handing an epoch to the solver costs one JNI call and
+ * no Java upcalls.
+ *
+ * <p>Layout, native byte order, mirrored by {@code gnss_epoch_buffer.h}:
+ * <pre>
+ * offset  size  field
+ *      0     4  int    layout version ({@link #VERSION})
+ *      4     4  int    measurement count n
+ *      8     4  int    GPS week
+ *     12     4  int    epoch flags (GnssEpochBuilder.CLOCK_RESET)
+ *     16     8  double GPS time of week, seconds
+ *     24        measurement arrays, MAX_MEASUREMENTS entries each, first n valid:
+ *               double pseudorangeMeters[]
+ *               double carrierCycles[]
+ *               double dopplerHz[]
+ *               double cn0DbHz[]
+ *               int    constellationType[]
+ *               int    svid[]
+ *               int    frequencySlot[]
+ *               int    rtklibCode[]
+ *               int    lli[]     RTKLIB loss-of-lock indicators
+ * </pre>
+ * Eight-byte arrays come first so every field is naturally aligned. Bump {@link #VERSION}
+ * together with the header whenever the layout changes.
+ */
+public class GnssEpochBuffer {
+
+    public static final int VERSION = 4;
+
+    static final int MAX = GnssEpoch.MAX_MEASUREMENTS;
+
+    static final int OFFSET_VERSION = 0;
+    static final int OFFSET_COUNT = 4;
+    static final int OFFSET_GPS_WEEK = 8;
+    static final int OFFSET_EPOCH_FLAGS = 12;
+    static final int OFFSET_TOW_SECONDS = 16;
+    static final int HEADER_SIZE = 24;
+
+    static final int OFFSET_PSEUDORANGE = HEADER_SIZE;
+    static final int OFFSET_CARRIER_CYCLES = OFFSET_PSEUDORANGE + 8 * MAX;
+    static final int OFFSET_DOPPLER = OFFSET_CARRIER_CYCLES + 8 * MAX;
+    static final int OFFSET_CN0 = OFFSET_DOPPLER + 8 * MAX;
+    static final int OFFSET_CONSTELLATION = OFFSET_CN0 + 8 * MAX;
+    static final int OFFSET_SVID = OFFSET_CONSTELLATION + 4 * MAX;
+    static final int OFFSET_FREQUENCY_SLOT = OFFSET_SVID + 4 * MAX;
+    static final int OFFSET_RTKLIB_CODE = OFFSET_FREQUENCY_SLOT + 4 * MAX;
+    static final int OFFSET_LLI = OFFSET_RTKLIB_CODE + 4 * MAX;
+    public static final int SIZE = OFFSET_LLI + 4 * MAX;
+
+    private final ByteBuffer buffer =
+            ByteBuffer.allocateDirect(SIZE).order(ByteOrder.nativeOrder());
+
+    public GnssEpochBuffer() {
+        buffer.putInt(OFFSET_VERSION, VERSION);
+    }
+
+    /** Copies the epoch last built by {@code epoch} into the buffer, overwriting the previous. */
+    public ByteBuffer pack(GnssEpochBuilder epoch) {
+        ByteBuffer b = buffer;
+        int n = epoch.count;
+        b.putInt(OFFSET_COUNT, n);
+        b.putInt(OFFSET_GPS_WEEK, epoch.gpsWeek);
+        b.putInt(OFFSET_EPOCH_FLAGS, epoch.epochFlags);
+        b.putDouble(OFFSET_TOW_SECONDS, epoch.towSeconds);
+
+        for (int i = 0; i < n; i++) {
+            int i8 = 8 * i;
+            int i4 = 4 * i;
+            b.putDouble(OFFSET_PSEUDORANGE + i8, epoch.pseudorangeMeters[i]);
+            b.putDouble(OFFSET_CARRIER_CYCLES + i8, epoch.carrierCycles[i]);
+            b.putDouble(OFFSET_DOPPLER + i8, epoch.dopplerHz[i]);
+            b.putDouble(OFFSET_CN0 + i8, epoch.cn0DbHz[i]);
+            b.putInt(OFFSET_CONSTELLATION + i4, epoch.constellationType[i]);
+            b.putInt(OFFSET_SVID + i4, epoch.svid[i]);
+            b.putInt(OFFSET_FREQUENCY_SLOT + i4, epoch.frequencySlot[i]);
+            b.putInt(OFFSET_RTKLIB_CODE + i4, epoch.rtklibCode[i]);
+            b.putInt(OFFSET_LLI + i4, epoch.lli[i]);
+        }
+        return b;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+}
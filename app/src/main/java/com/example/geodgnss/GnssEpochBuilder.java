@@ -0,0 +1,199 @@
+package com.example.geodgnss;
+
+/**
+ * Turns a raw {@link GnssEpoch} into one GPS-time-tagged epoch of observables for the solver.
+ *
+ * <p>The receive time comes from the receiver clock as GPS time,
+ * {@code timeNanos + timeOffsetNanos - (fullBiasNanos + biasNanos)}, and is moved to each
+ * constellation's own time scale (GLONASS time of day, BeiDou time) before the transmit time
+ * in {@code receivedSvTimeNanos} is subtracted, with rollover at the end of the week or day.
+ * The whole-nanosecond part is kept in a long so the 1e18 ns clock terms lose no precision.
+ * Carrier and Doppler are converted to cycles with the signal's nominal wavelength from
+ * {@link GnssSignalTable}. Measurements whose time of week (or day) is not yet known, whose
+ * pseudorange is not plausible, or whose signal has no RTKLIB slot, are left out.
+ *
+ * <p>Epochs are rejected without a full bias, with an unusable bias uncertainty, when they
+ * repeat the previous epoch, and for the first epoch after the hardware clock discontinuity
+ * counter changes, whose full bias may still refer to the old clock. The epoch after that
+ * carries {@link #CLOCK_RESET} so the solver restarts its carrier-phase tracking.
+ *
+ * <p>With a {@link SignalFilter} set, measurements it rejects are left out as well, and the
+ * carrier phase of those it marks {@link SignalFilter#NO_CARRIER} is dropped. With a
+ * {@link CycleSlipTracker} set, every built epoch gets its loss-of-lock indicators.
+ *
+ * <p>Results are held in primitive arrays indexed like the measurements, first
+ * {@link #count} valid; the instance is reused and is not thread-safe.
+ */
+public class GnssEpochBuilder {
+
+    /** Bit in {@link #epochFlags}: the receiver clock was reset since the last built epoch. */
+    public static final int CLOCK_RESET = 1;
+
+    public static final double SPEED_OF_LIGHT = 299792458.0;
+    public static final long WEEK_NANOS = 604800L * 1000000000L;
+    public static final long DAY_NANOS = 86400L * 1000000000L;
+    /** Epochs whose bias is less certain than this are not solved. */
+    public static final double MAX_BIAS_UNCERTAINTY_NANOS = 1e6;
+
+    // android.location.GnssMeasurement states and GnssStatus constellation types
+    static final int STATE_TOW_DECODED = 1 << 3;
+    static final int STATE_GLO_TOD_DECODED = 1 << 7;
+    static final int STATE_TOW_KNOWN = 1 << 14;
+    static final int STATE_GLO_TOD_KNOWN = 1 << 15;
+    static final int ADR_STATE_VALID = 1;
+    static final int CONSTELLATION_GLONASS = 3;
+    static final int CONSTELLATION_BEIDOU = 5;
+
+    private static final long BEIDOU_OFFSET_NANOS = 14L * 1000000000L;
+    private static final long MOSCOW_OFFSET_NANOS = 3L * 3600L * 1000000000L;
+    private static final int DEFAULT_LEAP_SECONDS = 18;
+    // Signal travel times outside this range are not from a satellite
+    private static final double MIN_TRAVEL_NANOS = 0.05e9;
+    private static final double MAX_TRAVEL_NANOS = 0.2e9;
+
+    private static final int MAX = GnssEpoch.MAX_MEASUREMENTS;
+
+    /** GPS week and time of week of the epoch, bias included. */
+    public int gpsWeek;
+    public double towSeconds;
+    /** GPS time in whole nanoseconds, for ordering and matching epochs. */
+    public long gpsTimeNanos;
+    public int epochFlags;
+
+    public int count;
+    public final int[] constellationType = new int[MAX];
+    public final int[] svid = new int[MAX];
+    /** Slot and RTKLIB obs code of the signal, from {@link GnssSignalTable}. */
+    public final int[] frequencySlot = new int[MAX];
+    public final int[] rtklibCode = new int[MAX];
+    public final double[] pseudorangeMeters = new double[MAX];
+    /** Accumulated delta range in cycles, 0 when the carrier is not tracked. */
+    public final double[] carrierCycles = new double[MAX];
+    public final double[] dopplerHz = new double[MAX];
+    public final double[] cn0DbHz = new double[MAX];
+    /** GnssMeasurement ADR state bits and the signal's nominal cycles per meter. */
+    public final int[] adrState = new int[MAX];
+    public final double[] cyclesPerMeter = new double[MAX];
+    /** RTKLIB loss-of-lock indicators, set by the {@link CycleSlipTracker}; 0 without one. */
+    public final int[] lli = new int[MAX];
+
+    private boolean started;
+    private int lastDiscontinuityCount;
+    private long lastTimeNanos;
+    private boolean clockReset;
+    private long skippedEpochs;
+    private SignalFilter filter;
+    private CycleSlipTracker tracker;
+
+    /**
+     * Builds the solver epoch from {@code epoch}. Returns false, leaving the previous result
+     * in place, if the epoch must not be solved.
+     */
+    public boolean build(GnssEpoch epoch) {
+        if (started && epoch.hardwareClockDiscontinuityCount != lastDiscontinuityCount) {
+            lastDiscontinuityCount = epoch.hardwareClockDiscontinuityCount;
+            lastTimeNanos = epoch.timeNanos;
+            clockReset = true;
+            skippedEpochs++;
+            return false;
+        }
+        if ((epoch.clockFlags & GnssEpoch.HAS_FULL_BIAS) == 0
+                || ((epoch.clockFlags & GnssEpoch.HAS_BIAS_UNCERTAINTY) != 0
+                && epoch.biasUncertaintyNanos > MAX_BIAS_UNCERTAINTY_NANOS)
+                || (started && epoch.timeNanos <= lastTimeNanos)) {
+            skippedEpochs++;
+            return false;
+        }
+        started = true;
+        lastDiscontinuityCount = epoch.hardwareClockDiscontinuityCount;
+        lastTimeNanos = epoch.timeNanos;
+        epochFlags = clockReset ? CLOCK_RESET : 0;
+        clockReset = false;
+
+        double bias = (epoch.clockFlags & GnssEpoch.HAS_BIAS) != 0 ? epoch.biasNanos : 0;
+        long gpsNanos = epoch.timeNanos - epoch.fullBiasNanos;
+        long week = Math.floorDiv(gpsNanos, WEEK_NANOS);
+        long rxNanos = gpsNanos - week * WEEK_NANOS; // whole part of the time of week
+        gpsWeek = (int) week;
+        towSeconds = (rxNanos - bias) * 1e-9;
+        gpsTimeNanos = gpsNanos - Math.round(bias);
+        long leapNanos = ((epoch.clockFlags & GnssEpoch.HAS_LEAP_SECOND) != 0
+                ? epoch.leapSecond : DEFAULT_LEAP_SECONDS) * 1000000000L;
+
+        int n = 0;
+        for (int i = 0; i < epoch.count; i++) {
+            int checks = filter != null ? filter.check(epoch, i) : 0;
+            if (SignalFilter.isRejected(checks)) continue;
+            int constellation = epoch.constellationType[i];
+            int state = epoch.state[i];
+            long rx;
+            long period;
+            if (constellation == CONSTELLATION_GLONASS) {
+                if ((state & (STATE_GLO_TOD_DECODED | STATE_GLO_TOD_KNOWN)) == 0) continue;
+                rx = Math.floorMod(rxNanos + MOSCOW_OFFSET_NANOS - leapNanos, DAY_NANOS);
+                period = DAY_NANOS;
+            } else {
+                if ((state & (STATE_TOW_DECODED | STATE_TOW_KNOWN)) == 0) continue;
+                rx = constellation == CONSTELLATION_BEIDOU
+                        ? Math.floorMod(rxNanos - BEIDOU_OFFSET_NANOS, WEEK_NANOS) : rxNanos;
+                period = WEEK_NANOS;
+            }
+            long travel = rx - epoch.receivedSvTimeNanos[i];
+            if (travel > period / 2) {
+                travel -= period;
+            } else if (travel < -period / 2) {
+                travel += period;
+            }
+            double travelNanos = travel + epoch.timeOffsetNanos[i] - bias;
+            if (travelNanos < MIN_TRAVEL_NANOS || travelNanos > MAX_TRAVEL_NANOS) continue;
+
+            int signal = GnssSignalTable.lookup(constellation,
+                    (epoch.flags[i] & GnssEpoch.HAS_CARRIER_FREQUENCY) != 0
+                            ? epoch.carrierFrequencyHz[i] : 0, epoch.codeType[i]);
+            if (signal == GnssSignalTable.NONE) continue;
+            double cyclesPerMeter = GnssSignalTable.cyclesPerMeter(signal);
+            constellationType[n] = constellation;
+            svid[n] = epoch.svid[i];
+            frequencySlot[n] = GnssSignalTable.slot(signal);
+            rtklibCode[n] = GnssSignalTable.code(signal);
+            pseudorangeMeters[n] = travelNanos * 1e-9 * SPEED_OF_LIGHT;
+            carrierCycles[n] = (checks & SignalFilter.NO_CARRIER) == 0
+                    && (epoch.accumulatedDeltaRangeState[i] & ADR_STATE_VALID) != 0
+                    ? epoch.accumulatedDeltaRangeMeters[i] * cyclesPerMeter : 0;
+            dopplerHz[n] = -epoch.pseudorangeRateMetersPerSecond[i] * cyclesPerMeter;
+            cn0DbHz[n] = epoch.cn0DbHz[i];
+            adrState[n] = epoch.accumulatedDeltaRangeState[i];
+            this.cyclesPerMeter[n] = cyclesPerMeter;
+            lli[n] = 0;
+            n++;
+        }
+        count = n;
+        if (tracker != null) {
+            tracker.track(this);
+        }
+        return true;
+    }
+
+    /** Quality checks run on every measurement; null, the default, checks nothing more. */
+    public void setFilter(SignalFilter filter) {
+        this.filter = filter;
+    }
+
+    /** Sets the loss-of-lock indicators of every built epoch; null, the default, sets none. */
+    public void setTracker(CycleSlipTracker tracker) {
+        this.tracker = tracker;
+    }
+
+    /** Forgets the clock history, as at the start of a new session. */
+    public void reset() {
+        started = false;
+        clockReset = false;
+        if (tracker != null) {
+            tracker.reset();
+        }
+    }
+
+    public long getSkippedEpochs() {
+        return skippedEpochs;
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.geodgnss;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary layout of the GNSS log written by {@link GnssLogger} and read by
+ * {@link GnssLogReader}. All values are little-endian.
+ *
+ * <pre>
+ * header   int magic "GNSL", short version, short reserved
+ * epoch*   int recordSize (whole record, including this field)
+ *          clock block (CLOCK_SIZE bytes)
+ *          short measurementCount, short legacyCount
+ *          measurementCount x measurement (MEASUREMENT_SIZE bytes)
+ *          legacyCount x legacy carrier entry (LEGACY_SIZE bytes)
+ * index    indexCount x (long epochTimeNanos, long fileOffset)
+ * trailer  long indexOffset, int indexCount, int magic "GNSI"
+ * </pre>
+ *
+ * <p>The deprecated carrier cycle/phase fields are rarely reported, so they are kept out of
+ * the fixed-width measurement and stored per epoch only for the measurements that have
+ * them. The index holds every {@link #INDEX_INTERVAL}th epoch; a file without a trailer
+ * (an interrupted session) is still readable front to back.
+ */
+public final class GnssLogFormat {
+
+    public static final int MAGIC = 0x4C534E47;       // "GNSL" in little-endian byte order
+    public static final int INDEX_MAGIC = 0x49534E47; // "GNSI"
+    public static final short VERSION = 2;
+    public static final int HEADER_SIZE = 8;
+    public static final int TRAILER_SIZE = 16;
+    public static final int INDEX_ENTRY_SIZE = 16;
+    public static final int INDEX_INTERVAL = 16;
+
+    public static final int CLOCK_SIZE =
+            8      // timeNanos
+            + 8    // fullBiasNanos
+            + 8    // biasNanos
+            + 8    // biasUncertaintyNanos
+            + 8    // driftNanosPerSecond
+            + 8    // driftUncertaintyNanosPerSecond
+            + 8    // timeUncertaintyNanos
+            + 8    // elapsedRealtimeNanos
+            + 8    // elapsedRealtimeUncertaintyNanos
+            + 4    // hardwareClockDiscontinuityCount
+            + 2    // leapSecond
+            + 2;   // clockFlags
+
+    public static final int MEASUREMENT_SIZE =
+            1      // svid
+            + 1    // constellationType
+            + 1    // multipathIndicator
+            + 1    // flags
+            + 4    // state
+            + 2    // accumulatedDeltaRangeState
+            + 2    // codeType (0 when unknown; reserved and 0 in older files)
+            + 4    // carrierFrequencyHz
+            + 8    // timeOffsetNanos
+            + 8    // receivedSvTimeNanos
+            + 8    // receivedSvTimeUncertaintyNanos
+            + 8    // cn0DbHz
+            + 8    // pseudorangeRateMetersPerSecond
+            + 8    // pseudorangeRateUncertaintyMetersPerSecond
+            + 8    // accumulatedDeltaRangeMeters
+            + 8    // accumulatedDeltaRangeUncertaintyMeters
+            + 8    // snrInDb
+            + 8;   // automaticGainControlLevelDb
+
+    public static final int LEGACY_SIZE =
+            1      // measurement index
+            + 8    // carrierCycles
+            + 8    // carrierPhase
+            + 8;   // carrierPhaseUncertainty
+
+    private static final int LEGACY_FLAGS = GnssEpoch.HAS_CARRIER_CYCLES
+            | GnssEpoch.HAS_CARRIER_PHASE | GnssEpoch.HAS_CARRIER_PHASE_UNCERTAINTY;
+
+    /** Record size, clock block and counts: the smallest possible epoch record. */
+    public static final int RECORD_HEADER_SIZE = 4 + CLOCK_SIZE + 4;
+
+    /** Largest possible epoch record. */
+    public static final int MAX_EPOCH_SIZE = RECORD_HEADER_SIZE
+            + GnssEpoch.MAX_MEASUREMENTS * (MEASUREMENT_SIZE + LEGACY_SIZE);
+
+    private GnssLogFormat() {
+    }
+
+    public static ByteBuffer allocateEpochBuffer() {
+        return ByteBuffer.allocate(MAX_EPOCH_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public static void writeHeader(ByteBuffer out) {
+        out.putInt(MAGIC);
+        out.putShort(VERSION);
+        out.putShort((short) 0);
+    }
+
+    /** Checks the header at the current position and skips past it. */
+    public static void readHeader(ByteBuffer in) {
+        if (in.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a GNSS log");
+        }
+        short version = in.getShort();
+        in.getShort();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported GNSS log version " + version);
+        }
+    }
+
+    /** Appends one epoch record for {@code epoch}. */
+    public static void writeEpoch(ByteBuffer out, GnssEpoch epoch) {
+        int start = out.position();
+        out.putInt(0); // record size, patched below
+        out.putLong(epoch.timeNanos);
+        out.putLong(epoch.fullBiasNanos);
+        out.putDouble(epoch.biasNanos);
+        out.putDouble(epoch.biasUncertaintyNanos);
+        out.putDouble(epoch.driftNanosPerSecond);
+        out.putDouble(epoch.driftUncertaintyNanosPerSecond);
+        out.putDouble(epoch.timeUncertaintyNanos);
+        out.putLong(epoch.elapsedRealtimeNanos);
+        out.putDouble(epoch.elapsedRealtimeUncertaintyNanos);
+        out.putInt(epoch.hardwareClockDiscontinuityCount);
+        out.putShort((short) epoch.leapSecond);
+        out.putShort((short) epoch.clockFlags);
+
+        int legacyCount = 0;
+        for (int i = 0; i < epoch.count; i++) {
+            if ((epoch.flags[i] & LEGACY_FLAGS) != 0) {
+                legacyCount++;
+            }
+        }
+        out.putShort((short) epoch.count);
+        out.putShort((short) legacyCount);
+
+        for (int i = 0; i < epoch.count; i++) {
+            out.put((byte) epoch.svid[i]);
+            out.put((byte) epoch.constellationType[i]);
+            out.put((byte) epoch.multipathIndicator[i]);
+            out.put((byte) epoch.flags[i]);
+            out.putInt(epoch.state[i]);
+            out.putShort((short) epoch.accumulatedDeltaRangeState[i]);
+            out.putShort((short) epoch.codeType[i]);
+            out.putFloat(epoch.carrierFrequencyHz[i]);
+            out.putDouble(epoch.timeOffsetNanos[i]);
+            out.putLong(epoch.receivedSvTimeNanos[i]);
+            out.putLong(epoch.receivedSvTimeUncertaintyNanos[i]);
+            out.putDouble(epoch.cn0DbHz[i]);
+            out.putDouble(epoch.pseudorangeRateMetersPerSecond[i]);
+            out.putDouble(epoch.pseudorangeRateUncertaintyMetersPerSecond[i]);
+            out.putDouble(epoch.accumulatedDeltaRangeMeters[i]);
+            out.putDouble(epoch.accumulatedDeltaRangeUncertaintyMeters[i]);
+            out.putDouble(epoch.snrInDb[i]);
+            out.putDouble(epoch.automaticGainControlLevelDb[i]);
+        }
+
+        for (int i = 0; i < epoch.count && legacyCount > 0; i++) {
+            if ((epoch.flags[i] & LEGACY_FLAGS) != 0) {
+                out.put((byte) i);
+                out.putLong(epoch.carrierCycles[i]);
+                out.putDouble(epoch.carrierPhase[i]);
+                out.putDouble(epoch.carrierPhaseUncertainty[i]);
+            }
+        }
+
+        out.putInt(start, out.position() - start);
+    }
+
+    /**
+     * Reads the epoch record at the current position into {@code epoch}; the buffer must
+     * hold the whole record. Returns false for a record whose counts do not fit it, as
+     * left by a damaged file; legacy entries for measurements the record lacks are skipped.
+     */
+    public static boolean readEpoch(ByteBuffer in, GnssEpoch epoch) {
+        int size = in.getInt(in.position());
+        int count = in.getShort(in.position() + RECORD_HEADER_SIZE - 4);
+        int legacyCount = in.getShort(in.position() + RECORD_HEADER_SIZE - 2);
+        if (count < 0 || count > GnssEpoch.MAX_MEASUREMENTS
+                || legacyCount < 0 || legacyCount > GnssEpoch.MAX_MEASUREMENTS
+                || RECORD_HEADER_SIZE + count * MEASUREMENT_SIZE + legacyCount * LEGACY_SIZE
+                        > size) {
+            return false;
+        }
+        in.getInt(); // record size
+        epoch.timeNanos = in.getLong();
+        epoch.fullBiasNanos = in.getLong();
+        epoch.biasNanos = in.getDouble();
+        epoch.biasUncertaintyNanos = in.getDouble();
+        epoch.driftNanosPerSecond = in.getDouble();
+        epoch.driftUncertaintyNanosPerSecond = in.getDouble();
+        epoch.timeUncertaintyNanos = in.getDouble();
+        epoch.elapsedRealtimeNanos = in.getLong();
+        epoch.elapsedRealtimeUncertaintyNanos = in.getDouble();
+        epoch.hardwareClockDiscontinuityCount = in.getInt();
+        epoch.leapSecond = in.getShort();
+        epoch.clockFlags = in.getShort() & 0xFFFF;
+
+        in.getShort(); // measurement count, checked above
+        in.getShort(); // legacy count
+        epoch.count = count;
+        for (int i = 0; i < count; i++) {
+            epoch.svid[i] = in.get() & 0xFF;
+            epoch.constellationType[i] = in.get() & 0xFF;
+            epoch.multipathIndicator[i] = in.get() & 0xFF;
+            epoch.flags[i] = in.get() & 0xFF;
+            epoch.state[i] = in.getInt();
+            epoch.accumulatedDeltaRangeState[i] = in.getShort() & 0xFFFF;
+            epoch.codeType[i] = (char) in.getShort();
+            epoch.carrierFrequencyHz[i] = in.getFloat();
+            epoch.timeOffsetNanos[i] = in.getDouble();
+            epoch.receivedSvTimeNanos[i] = in.getLong();
+            epoch.receivedSvTimeUncertaintyNanos[i] = in.getLong();
+            epoch.cn0DbHz[i] = in.getDouble();
+            epoch.pseudorangeRateMetersPerSecond[i] = in.getDouble();
+            epoch.pseudorangeRateUncertaintyMetersPerSecond[i] = in.getDouble();
+            epoch.accumulatedDeltaRangeMeters[i] = in.getDouble();
+            epoch.accumulatedDeltaRangeUncertaintyMeters[i] = in.getDouble();
+            epoch.snrInDb[i] = in.getDouble();
+            epoch.automaticGainControlLevelDb[i] = in.getDouble();
+            epoch.carrierCycles[i] = 0L;
+            epoch.carrierPhase[i] = 0.0;
+            epoch.carrierPhaseUncertainty[i] = 0.0;
+        }
+        for (int k = 0; k < legacyCount; k++) {
+            int i = in.get() & 0xFF;
+            if (i >= count) {
+                in.position(in.position() + LEGACY_SIZE - 1);
+                continue;
+            }
+            epoch.carrierCycles[i] = in.getLong();
+            epoch.carrierPhase[i] = in.getDouble();
+            epoch.carrierPhaseUncertainty[i] = in.getDouble();
+        }
+        return true;
+    }
+
+    public static void writeIndexEntry(ByteBuffer out, long epochTimeNanos, long fileOffset) {
+        out.putLong(epochTimeNanos);
+        out.putLong(fileOffset);
+    }
+
+    public static void writeTrailer(ByteBuffer out, long indexOffset, int indexCount) {
+        out.putLong(indexOffset);
+        out.putInt(indexCount);
+        out.putInt(INDEX_MAGIC);
+    }
+}
@@ -0,0 +1,246 @@
+package com.example.geodgnss;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads a {@link GnssLogFormat} file epoch by epoch.
+ *
+ * <p>{@link #seek} uses the index footer to jump close to a time without parsing the
+ * records in front of it; files without a footer (an interrupted session) are indexed by
+ * one pass over the record headers instead. Epochs are decoded into a caller-supplied
+ * {@link GnssEpoch}, so streaming a file allocates nothing per epoch.
+ */
+public class GnssLogReader implements Closeable {
+
+    public interface EpochHandler {
+        /** Called for each epoch; {@code epoch} is reused, copy what must outlive the call. */
+        void onEpoch(GnssEpoch epoch);
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer =
+            ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private long dataEnd;         // file offset where the epoch records end
+    private long[] indexTimes;
+    private long[] indexOffsets;
+
+    private long bufferOffset;    // file offset of buffer[0]
+
+    public GnssLogReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(GnssLogFormat.HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            readFully(header, 0);
+            GnssLogFormat.readHeader(header);
+
+            if (size < GnssLogFormat.HEADER_SIZE + GnssLogFormat.TRAILER_SIZE
+                    || !readFooter(size)) {
+                scan(size);
+            }
+            rewind();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** Moves back to the first epoch. */
+    public void rewind() {
+        bufferOffset = GnssLogFormat.HEADER_SIZE;
+        buffer.clear().limit(0);
+    }
+
+    /**
+     * Positions the reader on the first epoch whose time tag
+     * ({@link GnssEpoch#epochTimeNanos}) is at or after {@code epochTimeNanos}.
+     */
+    public void seek(long epochTimeNanos) throws IOException {
+        int i = Arrays.binarySearch(indexTimes, epochTimeNanos);
+        if (i < 0) {
+            i = -i - 2; // last entry before the requested time
+        } else {
+            // equal time tags can repeat across entries; start at the first of them
+            while (i > 0 && indexTimes[i - 1] == epochTimeNanos) {
+                i--;
+            }
+        }
+        bufferOffset = i >= 0 ? indexOffsets[i] : GnssLogFormat.HEADER_SIZE;
+        buffer.clear().limit(0);
+
+        // Skip forward record by record, reading only the record headers
+        while (true) {
+            if (!ensure(4 + GnssLogFormat.CLOCK_SIZE)) {
+                return;
+            }
+            int p = buffer.position();
+            long timeNanos = buffer.getLong(p + 4);
+            long fullBiasNanos = buffer.getLong(p + 12);
+            int clockFlags = buffer.getShort(p + 4 + GnssLogFormat.CLOCK_SIZE - 2) & 0xFFFF;
+            long t = (clockFlags & GnssEpoch.HAS_FULL_BIAS) != 0
+                    ? timeNanos - fullBiasNanos : timeNanos;
+            if (t >= epochTimeNanos) {
+                return;
+            }
+            int size = buffer.getInt(p);
+            if (size < GnssLogFormat.RECORD_HEADER_SIZE || !ensure(size)) {
+                return;
+            }
+            buffer.position(p + size);
+        }
+    }
+
+    /**
+     * Reads the next epoch into {@code epoch}; returns false at the end of the data. A
+     * damaged record ends the data, as it ends the index of a file without a footer.
+     */
+    public boolean next(GnssEpoch epoch) throws IOException {
+        if (!ensure(4)) {
+            return false;
+        }
+        int size = buffer.getInt(buffer.position());
+        if (size < GnssLogFormat.RECORD_HEADER_SIZE || !ensure(size)) {
+            return false; // truncated tail record from an interrupted session
+        }
+        int end = buffer.position() + size;
+        if (!GnssLogFormat.readEpoch(buffer, epoch)) {
+            return false;
+        }
+        buffer.position(end);
+        return true;
+    }
+
+    /** Streams every epoch with a time tag in [{@code fromNanos}, {@code toNanos}). */
+    public long read(long fromNanos, long toNanos, EpochHandler handler) throws IOException {
+        GnssEpoch epoch = new GnssEpoch();
+        long epochs = 0;
+        seek(fromNanos);
+        while (next(epoch) && epoch.epochTimeNanos() < toNanos) {
+            handler.onEpoch(epoch);
+            epochs++;
+        }
+        return epochs;
+    }
+
+    /** Time tag of the first indexed epoch, or {@code Long.MIN_VALUE} for an empty log. */
+    public long getStartTimeNanos() {
+        return indexTimes.length > 0 ? indexTimes[0] : Long.MIN_VALUE;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Makes sure the next {@code n} bytes of epoch data are in the buffer; returns false
+     * if the data ends first.
+     */
+    private boolean ensure(int n) throws IOException {
+        if (buffer.remaining() >= n) {
+            return true;
+        }
+        long position = bufferOffset + buffer.position();
+        if (position + n > dataEnd || n > buffer.capacity()) {
+            return false;
+        }
+        buffer.compact();
+        bufferOffset = position;
+        while (buffer.position() < n) {
+            long readAt = bufferOffset + buffer.position();
+            int max = (int) Math.min(buffer.remaining(), dataEnd - readAt);
+            if (max <= 0) {
+                break;
+            }
+            buffer.limit(buffer.position() + max);
+            int read = channel.read(buffer, readAt);
+            buffer.limit(buffer.capacity());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer.remaining() >= n;
+    }
+
+    private boolean readFooter(long size) throws IOException {
+        ByteBuffer trailer = ByteBuffer.allocate(GnssLogFormat.TRAILER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        readFully(trailer, size - GnssLogFormat.TRAILER_SIZE);
+        long indexOffset = trailer.getLong();
+        int count = trailer.getInt();
+        if (trailer.getInt() != GnssLogFormat.INDEX_MAGIC || count < 0
+                || indexOffset + (long) count * GnssLogFormat.INDEX_ENTRY_SIZE
+                        + GnssLogFormat.TRAILER_SIZE != size) {
+            return false;
+        }
+        ByteBuffer entries = ByteBuffer.allocate(count * GnssLogFormat.INDEX_ENTRY_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        readFully(entries, indexOffset);
+        indexTimes = new long[count];
+        indexOffsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            indexTimes[i] = entries.getLong();
+            indexOffsets[i] = entries.getLong();
+        }
+        dataEnd = indexOffset;
+        return true;
+    }
+
+    /** Builds the index of a file without a footer by hopping from record to record. */
+    private void scan(long size) throws IOException {
+        ByteBuffer head = ByteBuffer.allocate(4 + GnssLogFormat.CLOCK_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        long[] times = new long[256];
+        long[] offsets = new long[256];
+        int count = 0;
+        long epochs = 0;
+        long offset = GnssLogFormat.HEADER_SIZE;
+        while (offset + head.capacity() <= size) {
+            head.clear();
+            readFully(head, offset);
+            int recordSize = head.getInt(0);
+            if (recordSize < GnssLogFormat.RECORD_HEADER_SIZE || offset + recordSize > size) {
+                break;
+            }
+            if (epochs++ % GnssLogFormat.INDEX_INTERVAL == 0) {
+                if (count == times.length) {
+                    times = Arrays.copyOf(times, count * 2);
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                long timeNanos = head.getLong(4);
+                long fullBiasNanos = head.getLong(12);
+                int clockFlags = head.getShort(head.capacity() - 2) & 0xFFFF;
+                times[count] = (clockFlags & GnssEpoch.HAS_FULL_BIAS) != 0
+                        ? timeNanos - fullBiasNanos : timeNanos;
+                offsets[count] = offset;
+                count++;
+            }
+            offset += recordSize;
+        }
+        indexTimes = Arrays.copyOf(times, count);
+        indexOffsets = Arrays.copyOf(offsets, count);
+        dataEnd = offset;
+    }
+
+    private void readFully(ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            int read = channel.read(dst, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of GNSS log");
+            }
+            position += read;
+        }
+        dst.flip();
+    }
+}
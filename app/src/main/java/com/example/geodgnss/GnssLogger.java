@@ -0,0 +1,241 @@
+package com.example.geodgnss;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Binary GNSS logger with one long-lived {@link FileChannel}, writing the
+ * {@link GnssLogFormat} epoch records.
+ *
+ * <p>The producer (the GNSS callback) encodes each epoch into a preallocated ring buffer; a
+ * single writer thread drains the ring to disk at the end of every epoch, when the pending
+ * data passes a size threshold, or at the latest after the flush interval. Nothing is
+ * allocated per record. If the disk stalls and the ring fills up, new epochs are dropped
+ * and their measurements counted instead of blocking the caller. The epoch-time index is
+ * collected as epochs are queued and written as the file footer on {@link #close}.
+ *
+ * <p>{@link #log} must be called from one thread at a time, and not concurrently with
+ * {@link #close}.
+ */
+public class GnssLogger {
+
+    public static final int DEFAULT_RING_SIZE = 1 << 20;
+    public static final int DEFAULT_FLUSH_THRESHOLD = 64 * 1024;
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final File file;
+    private final ByteBuffer ring;
+    private final ByteBuffer ringWriteView;
+    private final ByteBuffer ringReadView;
+    private final ByteBuffer record = GnssLogFormat.allocateEpochBuffer();
+    private final int flushThreshold;
+
+    // Byte counters: the producer owns head, the writer owns tail
+    private volatile long head;
+    private volatile long tail;
+    private volatile boolean epochPending;
+    private volatile boolean running;
+
+    private volatile long loggedRecords;
+    private volatile long droppedRecords;
+    private volatile IOException lastError;
+
+    // Epoch-time index, appended by the producer and read by the writer once it has stopped
+    private long[] indexTimes = new long[1024];
+    private long[] indexOffsets = new long[1024];
+    private int indexCount;
+    private long loggedEpochs;
+
+    private FileChannel channel;
+    private Thread writerThread;
+
+    public GnssLogger(File file) {
+        this(file, DEFAULT_RING_SIZE, DEFAULT_FLUSH_THRESHOLD);
+    }
+
+    public GnssLogger(File file, int ringSize, int flushThreshold) {
+        this.file = file;
+        this.flushThreshold = flushThreshold;
+        ring = ByteBuffer.allocateDirect(ringSize).order(ByteOrder.LITTLE_ENDIAN);
+        ringWriteView = ring.duplicate();
+        ringReadView = ring.duplicate();
+    }
+
+    /** Creates (or truncates) the log file and starts the writer thread. */
+    public synchronized void open() throws IOException {
+        if (running) {
+            return;
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(GnssLogFormat.HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        GnssLogFormat.writeHeader(header);
+        header.flip();
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        running = true;
+        writerThread = new Thread(this::writeLoop, "GnssLogger");
+        writerThread.start();
+    }
+
+    /** Queues {@code epoch} as one record and asks the writer to flush it. */
+    public void log(GnssEpoch epoch) {
+        record.clear();
+        GnssLogFormat.writeEpoch(record, epoch);
+        record.flip();
+        int size = record.remaining();
+
+        long h = head;
+        if (ring.capacity() - (h - tail) < size) {
+            droppedRecords += epoch.count;
+            return;
+        }
+        if (loggedEpochs++ % GnssLogFormat.INDEX_INTERVAL == 0) {
+            addIndexEntry(epoch.epochTimeNanos(), GnssLogFormat.HEADER_SIZE + h);
+        }
+        putRecord(h, size);
+        loggedRecords += epoch.count;
+        head = h + size;
+
+        epochPending = true;
+        Thread writer = writerThread;
+        if (writer != null) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Flushes everything queued so far, writes the index footer, stops the writer thread
+     * and closes the file.
+     */
+    public void close() {
+        Thread writer;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            writer = writerThread;
+        }
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writerThread = null;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** Measurements accepted into the ring; all of them reach the file before close returns. */
+    public long getLoggedRecords() {
+        return loggedRecords;
+    }
+
+    /** Measurements in epochs dropped because the ring was full. */
+    public long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    public long getWrittenBytes() {
+        return tail;
+    }
+
+    /** Returns the error that stopped the writer, or null. */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    private void addIndexEntry(long epochTimeNanos, long offset) {
+        if (indexCount == indexTimes.length) {
+            indexTimes = Arrays.copyOf(indexTimes, indexCount * 2);
+            indexOffsets = Arrays.copyOf(indexOffsets, indexCount * 2);
+        }
+        indexTimes[indexCount] = epochTimeNanos;
+        indexOffsets[indexCount] = offset;
+        indexCount++;
+    }
+
+    private void putRecord(long position, int size) {
+        int capacity = ring.capacity();
+        int index = (int) (position % capacity);
+        int firstPart = Math.min(size, capacity - index);
+        ringWriteView.clear().position(index);
+        record.limit(firstPart);
+        ringWriteView.put(record);
+        if (firstPart < size) {
+            record.limit(size);
+            ringWriteView.clear();
+            ringWriteView.put(record);
+        }
+    }
+
+    private void writeLoop() {
+        try {
+            while (running) {
+                if (!epochPending && head - tail < flushThreshold) {
+                    LockSupport.parkNanos(this, FLUSH_INTERVAL_NANOS);
+                }
+                epochPending = false;
+                drain();
+            }
+            drain();
+            writeFooter();
+        } catch (IOException e) {
+            lastError = e;
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (lastError == null) {
+                    lastError = e;
+                }
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        long h = head;
+        long t = tail;
+        int capacity = ring.capacity();
+        while (t < h) {
+            int index = (int) (t % capacity);
+            int length = (int) Math.min(h - t, capacity - index);
+            ringReadView.limit(index + length).position(index);
+            while (ringReadView.hasRemaining()) {
+                channel.write(ringReadView);
+            }
+            t += length;
+            // Release space to the producer as soon as each segment is on disk
+            tail = t;
+        }
+    }
+
+    private void writeFooter() throws IOException {
+        long indexOffset = GnssLogFormat.HEADER_SIZE + tail;
+        int count = indexCount;
+        ByteBuffer footer = ByteBuffer
+                .allocate(count * GnssLogFormat.INDEX_ENTRY_SIZE + GnssLogFormat.TRAILER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < count; i++) {
+            GnssLogFormat.writeIndexEntry(footer, indexTimes[i], indexOffsets[i]);
+        }
+        GnssLogFormat.writeTrailer(footer, indexOffset, count);
+        footer.flip();
+        while (footer.hasRemaining()) {
+            channel.write(footer);
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.geodgnss;
+
+/**
+ * Precomputed mapping from an Android signal (constellation, carrier frequency, code type)
+ * to where RTKLIB keeps it: the frequency slot of the satellite's observation record, the
+ * RTKLIB observation code and the carrier wavelength, held as cycles per meter.
+ *
+ * <p>The carrier frequency is bucketed to the nearest MHz through a per-constellation byte
+ * table, so a lookup costs a multiplication, a few array reads and no division. GLONASS
+ * FDMA bands additionally resolve the frequency channel from the offset to the band's base
+ * frequency; every channel's wavelength is computed once when the class is loaded.
+ *
+ * <p>Slots follow RTKLIB's {@code code2idx()} for NFREQ = 3, so signals on the same carrier
+ * (B1I and B1C, for instance) share a slot and bands beyond the third (E6, B3, L6) are not
+ * mapped. A signal is identified by an int from {@link #lookup}; {@link #NONE} means it has
+ * no slot.
+ */
+public final class GnssSignalTable {
+
+    public static final int NONE = -1;
+
+    /** Frequency slots in an RTKLIB observation record (NFREQ). */
+    public static final int SLOTS = 3;
+
+    // RTKLIB obs codes (rtklib.h CODE_*) of the signals Android reports
+    static final int CODE_L1C = 1;
+    static final int CODE_L1P = 2;
+    static final int CODE_L1S = 7;
+    static final int CODE_L1L = 8;
+    static final int CODE_L1B = 11;
+    static final int CODE_L1X = 12;
+    static final int CODE_L1Z = 13;
+    static final int CODE_L2C = 14;
+    static final int CODE_L2S = 16;
+    static final int CODE_L2L = 17;
+    static final int CODE_L2X = 18;
+    static final int CODE_L2P = 19;
+    static final int CODE_L5I = 24;
+    static final int CODE_L5Q = 25;
+    static final int CODE_L5X = 26;
+    static final int CODE_L7I = 27;
+    static final int CODE_L7Q = 28;
+    static final int CODE_L7X = 29;
+    static final int CODE_L2I = 40;
+    static final int CODE_L2Q = 41;
+    static final int CODE_L3I = 44;
+    static final int CODE_L3Q = 45;
+    static final int CODE_L3X = 46;
+    static final int CODE_L5A = 49;
+    static final int CODE_L1D = 56;
+    static final int CODE_L5D = 57;
+    static final int CODE_L5P = 58;
+    static final int CODE_L7D = 61;
+    static final int CODE_L7P = 62;
+    static final int CODE_L7Z = 63;
+
+    // android.location.GnssStatus constellation types
+    static final int GPS = 1;
+    static final int SBAS = 2;
+    static final int GLONASS = 3;
+    static final int QZSS = 4;
+    static final int BEIDOU = 5;
+    static final int GALILEO = 6;
+    static final int IRNSS = 7;
+    private static final int CONSTELLATIONS = 8;
+
+    static final double FREQ_L1 = 1575.42e6;
+    static final double FREQ_L2 = 1227.60e6;
+    static final double FREQ_L5 = 1176.45e6;
+    static final double FREQ_E5B = 1207.14e6;
+    static final double FREQ_B1I = 1561.098e6;
+    static final double FREQ_G1 = 1602.0e6;
+    static final double FREQ_G1_STEP = 0.5625e6;
+    static final double FREQ_G2 = 1246.0e6;
+    static final double FREQ_G2_STEP = 0.4375e6;
+    static final double FREQ_G3 = 1202.025e6;
+
+    // GLONASS frequency channels -7..6
+    static final int MIN_CHANNEL = -7;
+    static final int CHANNELS = 14;
+
+    private static final int MIN_MHZ = 1150;
+    private static final int MAX_MHZ = 1610;
+    private static final int MHZ_SPAN = MAX_MHZ - MIN_MHZ + 1;
+    private static final int MAX_BANDS = 16;
+    private static final int LETTERS = 26;
+
+    // Band of each (constellation, MHz) bucket, plus one; 0 for no band
+    private static final byte[] bandOfMhz = new byte[CONSTELLATIONS * MHZ_SPAN];
+    private static final double[] primaryFrequency = new double[CONSTELLATIONS];
+
+    private static int bandCount;
+    private static final int[] bandSlot = new int[MAX_BANDS];
+    private static final int[] bandDefaultCode = new int[MAX_BANDS];
+    private static final double[] bandBase = new double[MAX_BANDS];
+    private static final double[] bandInverseStep = new double[MAX_BANDS];  // 0 unless FDMA
+    // RTKLIB code for each band and code type letter A..Z, 0 when not listed
+    private static final byte[] bandCode = new byte[MAX_BANDS * LETTERS];
+    // Slot and cycles per meter for each band and channel (channel 0 for CDMA bands)
+    private static final int[] carrierSlot = new int[MAX_BANDS * CHANNELS];
+    private static final double[] cyclesPerMeter = new double[MAX_BANDS * CHANNELS];
+
+    static {
+        int l1 = band(GPS, FREQ_L1, 0, CODE_L1C,
+                'C', CODE_L1C, 'S', CODE_L1S, 'L', CODE_L1L, 'X', CODE_L1X, 'P', CODE_L1P);
+        int l2 = band(GPS, FREQ_L2, 1, CODE_L2X,
+                'C', CODE_L2C, 'S', CODE_L2S, 'L', CODE_L2L, 'X', CODE_L2X, 'P', CODE_L2P);
+        int l5 = band(GPS, FREQ_L5, 2, CODE_L5Q,
+                'I', CODE_L5I, 'Q', CODE_L5Q, 'X', CODE_L5X);
+        alias(QZSS, l1, l2, l5);
+        band(SBAS, FREQ_L1, 0, CODE_L1C, 'C', CODE_L1C);
+        band(SBAS, FREQ_L5, 1, CODE_L5I, 'I', CODE_L5I, 'Q', CODE_L5Q, 'X', CODE_L5X);
+
+        fdma(FREQ_G1, FREQ_G1_STEP, 0, CODE_L1C, 'C', CODE_L1C, 'P', CODE_L1P);
+        fdma(FREQ_G2, FREQ_G2_STEP, 1, CODE_L2C, 'C', CODE_L2C, 'P', CODE_L2P);
+        band(GLONASS, FREQ_G3, 2, CODE_L3Q, 'I', CODE_L3I, 'Q', CODE_L3Q, 'X', CODE_L3X);
+
+        band(GALILEO, FREQ_L1, 0, CODE_L1C,
+                'B', CODE_L1B, 'C', CODE_L1C, 'X', CODE_L1X, 'Z', CODE_L1Z);
+        band(GALILEO, FREQ_E5B, 1, CODE_L7Q, 'I', CODE_L7I, 'Q', CODE_L7Q, 'X', CODE_L7X);
+        band(GALILEO, FREQ_L5, 2, CODE_L5Q, 'I', CODE_L5I, 'Q', CODE_L5Q, 'X', CODE_L5X);
+
+        band(BEIDOU, FREQ_B1I, 0, CODE_L2I, 'I', CODE_L2I, 'Q', CODE_L2Q, 'X', CODE_L2X);
+        band(BEIDOU, FREQ_L1, 0, CODE_L1P,
+                'D', CODE_L1D, 'P', CODE_L1P, 'X', CODE_L1X);
+        band(BEIDOU, FREQ_E5B, 1, CODE_L7I,
+                'I', CODE_L7I, 'Q', CODE_L7Q, 'X', CODE_L7X,
+                'D', CODE_L7D, 'P', CODE_L7P, 'Z', CODE_L7Z);
+        band(BEIDOU, FREQ_L5, 2, CODE_L5P, 'D', CODE_L5D, 'P', CODE_L5P, 'X', CODE_L5X);
+
+        band(IRNSS, FREQ_L5, 0, CODE_L5A, 'A', CODE_L5A);
+
+        primaryFrequency[GPS] = FREQ_L1;
+        primaryFrequency[SBAS] = FREQ_L1;
+        primaryFrequency[QZSS] = FREQ_L1;
+        primaryFrequency[GALILEO] = FREQ_L1;
+        primaryFrequency[BEIDOU] = FREQ_B1I;
+        primaryFrequency[IRNSS] = FREQ_L5;
+        // GLONASS stays 0: without a carrier frequency the channel is unknown
+    }
+
+    private GnssSignalTable() {
+    }
+
+    /**
+     * Returns the signal for a measurement, or {@link #NONE} if RTKLIB has no slot for it.
+     * A {@code carrierFrequencyHz} of 0 means the constellation's primary signal, as for
+     * measurements without {@code hasCarrierFrequencyHz()}. {@code codeType} is the letter
+     * from {@code GnssMeasurement.getCodeType()}, or 0 when unknown; unknown and unlisted
+     * letters map to the band's most common code.
+     */
+    public static int lookup(int constellation, double carrierFrequencyHz, char codeType) {
+        if (constellation <= 0 || constellation >= CONSTELLATIONS) {
+            return NONE;
+        }
+        double frequency = carrierFrequencyHz > 0 ? carrierFrequencyHz
+                : primaryFrequency[constellation];
+        int mhz = (int) (frequency * 1e-6 + 0.5) - MIN_MHZ;
+        if (mhz < 0 || mhz >= MHZ_SPAN) {
+            return NONE;
+        }
+        int band = bandOfMhz[constellation * MHZ_SPAN + mhz] - 1;
+        if (band < 0 || bandSlot[band] >= SLOTS) {
+            return NONE;
+        }
+        int channel = 0;
+        if (bandInverseStep[band] != 0) {
+            channel = (int) Math.round((frequency - bandBase[band]) * bandInverseStep[band])
+                    - MIN_CHANNEL;
+            if (channel < 0 || channel >= CHANNELS) {
+                return NONE;
+            }
+        }
+        int code = codeType >= 'A' && codeType <= 'Z'
+                ? bandCode[band * LETTERS + codeType - 'A'] : 0;
+        if (code == 0) {
+            code = bandDefaultCode[band];
+        }
+        return (band * CHANNELS + channel) << 8 | code;
+    }
+
+    /** Frequency slot of {@code signal} in the satellite's observation record. */
+    public static int slot(int signal) {
+        return carrierSlot[signal >>> 8];
+    }
+
+    /** RTKLIB observation code of {@code signal}. */
+    public static int code(int signal) {
+        return signal & 0xFF;
+    }
+
+    /** Reciprocal of the carrier wavelength of {@code signal}, from the nominal frequency. */
+    public static double cyclesPerMeter(int signal) {
+        return cyclesPerMeter[signal >>> 8];
+    }
+
+    private static int band(int constellation, double frequency, int slot, int defaultCode,
+                            int... letterCodes) {
+        int band = newBand(slot, defaultCode, frequency, 0, letterCodes);
+        carrierSlot[band * CHANNELS] = slot;
+        cyclesPerMeter[band * CHANNELS] = frequency / GnssEpochBuilder.SPEED_OF_LIGHT;
+        int mhz = (int) Math.round(frequency * 1e-6) - MIN_MHZ;
+        for (int k = mhz - 1; k <= mhz + 1; k++) {
+            bandOfMhz[constellation * MHZ_SPAN + k] = (byte) (band + 1);
+        }
+        return band;
+    }
+
+    private static void fdma(double base, double step, int slot, int defaultCode,
+                             int... letterCodes) {
+        int band = newBand(slot, defaultCode, base, 1 / step, letterCodes);
+        for (int c = 0; c < CHANNELS; c++) {
+            double frequency = base + (c + MIN_CHANNEL) * step;
+            carrierSlot[band * CHANNELS + c] = slot;
+            cyclesPerMeter[band * CHANNELS + c] = frequency / GnssEpochBuilder.SPEED_OF_LIGHT;
+            int mhz = (int) Math.round(frequency * 1e-6) - MIN_MHZ;
+            bandOfMhz[GLONASS * MHZ_SPAN + mhz] = (byte) (band + 1);
+        }
+    }
+
+    private static int newBand(int slot, int defaultCode, double base, double inverseStep,
+                               int[] letterCodes) {
+        int band = bandCount++;
+        bandSlot[band] = slot;
+        bandDefaultCode[band] = defaultCode;
+        bandBase[band] = base;
+        bandInverseStep[band] = inverseStep;
+        for (int k = 0; k < letterCodes.length; k += 2) {
+            bandCode[band * LETTERS + letterCodes[k] - 'A'] = (byte) letterCodes[k + 1];
+        }
+        return band;
+    }
+
+    // Maps the MHz buckets of existing bands for another constellation
+    private static void alias(int constellation, int... bands) {
+        for (int k = 0; k < MHZ_SPAN; k++) {
+            int band = bandOfMhz[GPS * MHZ_SPAN + k] - 1;
+            for (int b : bands) {
+                if (band == b) {
+                    bandOfMhz[constellation * MHZ_SPAN + k] = (byte) (band + 1);
+                }
+            }
+        }
+    }
+}
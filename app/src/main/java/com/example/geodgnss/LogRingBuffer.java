@@ -0,0 +1,96 @@
+package com.example.geodgnss;
+
+import java.util.Arrays;
+
+/**
+ * Bounded buffer of text lines for the on-screen logs.
+ *
+ * <p>Text is appended from any thread and split on {@code '\n'}; once {@code capacity} lines
+ * are held, each new line replaces the oldest. Readers ask for the last few lines only, so
+ * the cost of a redraw depends on what is visible rather than on how much was logged.
+ * {@link #getVersion} changes on every append, which lets a renderer skip frames where
+ * nothing happened.
+ */
+public class LogRingBuffer {
+
+    private final String[] lines;
+    private final StringBuilder partial = new StringBuilder();
+    private int first;
+    private int count;
+    private long droppedLines;
+    private volatile long version;
+
+    public LogRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        lines = new String[capacity];
+    }
+
+    public synchronized void append(CharSequence text) {
+        int length = text.length();
+        int lineStart = 0;
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) == '\n') {
+                String line;
+                if (partial.length() == 0) {
+                    line = text.subSequence(lineStart, i).toString();
+                } else {
+                    line = partial.append(text, lineStart, i).toString();
+                    partial.setLength(0);
+                }
+                addLine(line);
+                lineStart = i + 1;
+            }
+        }
+        if (lineStart < length) {
+            partial.append(text, lineStart, length);
+        }
+        version++;
+    }
+
+    /**
+     * Appends the last {@code maxLines} complete lines, plus any unterminated text, to
+     * {@code out}, separated by newlines. Returns the number of complete lines appended.
+     */
+    public synchronized int appendTail(StringBuilder out, int maxLines) {
+        int n = Math.min(maxLines, count);
+        for (int k = count - n; k < count; k++) {
+            out.append(lines[(first + k) % lines.length]).append('\n');
+        }
+        out.append(partial);
+        return n;
+    }
+
+    public synchronized int getLineCount() {
+        return count;
+    }
+
+    /** Lines pushed out of the buffer by newer ones. */
+    public synchronized long getDroppedLines() {
+        return droppedLines;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(lines, null);
+        first = 0;
+        count = 0;
+        partial.setLength(0);
+        version++;
+    }
+
+    private void addLine(String line) {
+        if (count == lines.length) {
+            lines[first] = line;
+            first = (first + 1) % lines.length;
+            droppedLines++;
+        } else {
+            lines[(first + count) % lines.length] = line;
+            count++;
+        }
+    }
+}
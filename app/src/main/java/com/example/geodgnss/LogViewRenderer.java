@@ -0,0 +1,101 @@
+package com.example.geodgnss;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.View;
+import android.widget.TextView;
+
+import androidx.core.widget.NestedScrollView;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Draws a {@link LogRingBuffer} into a {@link TextView} at a capped frame rate.
+ *
+ * <p>{@link #append} can be called from any thread at any rate: it only stores the text and
+ * makes sure one frame is scheduled. Each frame sets the text once to the visible tail of
+ * the buffer and scrolls to the bottom once, however many appends came in since the last
+ * frame. Nothing is scheduled while the log is idle.
+ */
+public class LogViewRenderer {
+
+    public static final int DEFAULT_FRAME_INTERVAL_MS = 100;
+
+    private final TextView textView;
+    private final LogRingBuffer buffer;
+    private final int visibleLines;
+    private final long frameIntervalMs;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean frameScheduled = new AtomicBoolean();
+    private final StringBuilder text = new StringBuilder(4096);
+    private final Runnable renderFrame = this::render;
+
+    private volatile long lastFrameUptimeMs;
+    private volatile long frames;
+    private long renderedVersion = -1;
+
+    /**
+     * @param capacity lines kept in the buffer
+     * @param visibleLines lines drawn per frame, counted from the end
+     */
+    public LogViewRenderer(TextView textView, int capacity, int visibleLines) {
+        this(textView, new LogRingBuffer(capacity), visibleLines, DEFAULT_FRAME_INTERVAL_MS);
+    }
+
+    public LogViewRenderer(TextView textView, LogRingBuffer buffer, int visibleLines,
+                           long frameIntervalMs) {
+        this.textView = textView;
+        this.buffer = buffer;
+        this.visibleLines = visibleLines;
+        this.frameIntervalMs = frameIntervalMs;
+    }
+
+    public void append(CharSequence line) {
+        buffer.append(line);
+        requestFrame();
+    }
+
+    public LogRingBuffer getBuffer() {
+        return buffer;
+    }
+
+    /** Frames drawn so far, i.e. actual view updates. */
+    public long getFrames() {
+        return frames;
+    }
+
+    /** Drops any pending frame; call when the view goes away. */
+    public void stop() {
+        handler.removeCallbacks(renderFrame);
+        frameScheduled.set(false);
+    }
+
+    private void requestFrame() {
+        if (!frameScheduled.compareAndSet(false, true)) {
+            return; // the pending frame will pick this append up
+        }
+        long delay = lastFrameUptimeMs + frameIntervalMs - SystemClock.uptimeMillis();
+        handler.postDelayed(renderFrame, Math.max(0, delay));
+    }
+
+    private void render() {
+        // Clear first so appends made while drawing schedule another frame
+        frameScheduled.set(false);
+        lastFrameUptimeMs = SystemClock.uptimeMillis();
+        long version = buffer.getVersion();
+        if (version == renderedVersion) {
+            return;
+        }
+        renderedVersion = version;
+        frames++;
+        text.setLength(0);
+        buffer.appendTail(text, visibleLines);
+        textView.setText(text);
+
+        if (textView.getParent() instanceof NestedScrollView) {
+            NestedScrollView scrollView = (NestedScrollView) textView.getParent();
+            scrollView.post(() -> scrollView.fullScroll(View.FOCUS_DOWN));
+        }
+    }
+}
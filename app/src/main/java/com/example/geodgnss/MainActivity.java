@@ -8,13 +8,11 @@ import android.Manifest;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.graphics.Color;
-import android.location.GnssClock;
-import android.location.GnssMeasurement;
 import android.location.GnssMeasurementsEvent;
+import android.location.GnssStatus;
 import android.location.Location;
 import android.location.LocationListener;
 import android.location.LocationManager;
-import android.os.Build;
 import android.os.Bundle;
 
 import com.google.android.material.snackbar.Snackbar;
@@ -23,13 +21,13 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 
 import android.os.Handler;
+import android.os.Looper;
 import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
-import androidx.core.widget.NestedScrollView;
 import androidx.navigation.NavController;
 import androidx.navigation.Navigation;
 import androidx.navigation.ui.AppBarConfiguration;
@@ -42,62 +40,137 @@ import android.view.MenuItem;
 import android.widget.ScrollView;
 import android.widget.TextView;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Locale;
-import java.util.TimeZone;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
 
 public class MainActivity extends AppCompatActivity
-        implements RTKProcessor.RtkResultListener, NtripClient.NtripCallback {
-    private NtripClient ntripClient;
+        implements RtkEngine.Listener, RtkSolutionPublisher.Listener,
+        NtripBaseManager.Listener {
+    private NtripBaseManager ntripBases;
     private LocationManager locationManager;
     private boolean isLocationUpdatesRequested = false;
 
     private TextView logTextView;
     private TextView ntripTextView;
-    private StringBuilder gnssLogBuilder = new StringBuilder();
-    private StringBuilder ntripLogBuilder = new StringBuilder();
+    // On-screen logs, redrawn at most every LogViewRenderer.DEFAULT_FRAME_INTERVAL_MS
+    private LogViewRenderer gnssLog;
+    private LogViewRenderer ntripLog;
 
     private Handler ggaHandler = new Handler();
     private Runnable ggaRunnable;
     private Location lastLocation;
     private int satelliteCount;
+    private final NmeaEncoder nmeaEncoder = new NmeaEncoder();
+    private final byte[] ggaBytes = new byte[NmeaEncoder.MAX_SENTENCE_LENGTH];
 
     // Add these declarations
     private View statusIndicator;
-    private List<GnssMeasurement> currentMeasurements = new ArrayList<>();
-    private String gnssFileName;
-    private String rtcmFileName;
-    private ExecutorService fileExecutor = Executors.newSingleThreadExecutor();
-    private ExecutorService rtkExecutor = Executors.newSingleThreadExecutor();
-
-    //rtk processor
+    // Main thread only
+    private RtkSolution.Status lastSolutionStatus;
+    // Sessions under files/sessions, rotated hourly or at 64 MB, gzipped, within 2 GB
+    private static final long STORAGE_BUDGET_BYTES = 2L << 30;
+    private static final long SEGMENT_BYTES = 64L << 20;
+    private static final long SEGMENT_MILLIS = 3600_000L;
+    private SessionStorage sessionStorage;
+    private SessionStorage.Stream gnssStream;
+    private SessionStorage.Stream rtcmStream;
+    private SessionStorage.Stream metricsStream;
+    private MetricsExporter metricsExporter;
+
+    // Hot-path metrics, recorded on the stage, solver and decoder threads; see
+    // registerMetrics()
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private final MetricsRegistry.Histogram solveNanos = metrics.histogram("rtk.solve_ns");
+    private final MetricsRegistry.Histogram solveWaitNanos = metrics.histogram("rtk.wait_ns");
+    private final MetricsRegistry.Histogram correctionAgeMillis =
+            metrics.histogram("rtk.correction_age_ms");
+    private final MetricsRegistry.CounterArray solutionStatus =
+            metrics.counterArray("rtk.status", RTKProcessor.SOLUTION_PPP + 1);
+    private final MetricsRegistry.Counter rtcmBytes = metrics.counter("rtcm.bytes");
+    private final MetricsRegistry.CounterArray rtcmMessages =
+            metrics.counterArray("rtcm.messages", 4096);
+    // Epoch of the latest RTCM observation message, GPS time of week
+    private volatile long rtcmEpochMillis = RtcmFramer.NO_EPOCH_TIME;
+    // Only touched on the log stage thread
+    private GnssLogger gnssLogger;
+    // Checks run on the solve stage thread, elevations set from the GNSS status callback
+    private final SignalFilter signalFilter = new SignalFilter();
+    // Only touched on the solve stage thread, counters read by the metrics exporter
+    private final CycleSlipTracker slipTracker = new CycleSlipTracker();
+    private final EpochPipeline<GnssMeasurementsEvent> measurementPipeline =
+            createMeasurementPipeline();
+    // Only touched on the display stage thread
+    private final StringBuilder displayBuilder = new StringBuilder(8192);
+
+    // RTK solver: the engine's thread owns the native context, epochs from the solve stage
+    // and corrections from the decoder thread are queued to it
     private RTKProcessor rtkProcessor;
-    private long rtkContextHandle;
+    private RtkEngine rtkEngine;
+    // Ephemerides from RTCM, kept for the next start; fed and saved by the RTCM decoder thread
+    private EphemerisStore ephemerides;
+
+    // RTCM path: NtripClient's pooled receive buffers go straight to one decoder thread,
+    // which frames them in place, queues them for the solver, appends them to the RTCM file
+    // and hands them back. No UI thread hop on the way.
+    private final ArrayBlockingQueue<ByteBuffer> rtcmQueue =
+            new ArrayBlockingQueue<>(NtripClient.RECEIVE_BUFFERS);
+    private Thread rtcmThread;
+
+    // Only touched on rtcmThread
+    private FileChannel rtcmChannel;
+    private long rtcmSegmentBytes;
+    private ByteBuffer rtcmChunk;
+    private ByteBuffer rtcmRunBuffer;
+    private int rtcmRunStart;
+    private int rtcmRunEnd;
+    private long rtcmStatsBytes;
+    private int rtcmStatsChunks;
+    private long rtcmStatsSince;
+    // Header, the 7 payload bytes holding the epoch time, CRC
+    private static final int MIN_TIMED_RTCM_FRAME =
+            RtcmFramer.HEADER_LENGTH + 7 + RtcmFramer.CRC_LENGTH;
+    private final RtcmFramer rtcmFramer = new RtcmFramer(
+            (buffer, offset, length, messageType, stationId) -> {
+                rtcmMessages.increment(messageType);
+                if (EphemerisStore.isEphemeris(messageType)) {
+                    ephemerides.offer(buffer, offset, length, messageType,
+                            EphemerisStore.gpsMillis(System.currentTimeMillis()));
+                }
+                if (length >= MIN_TIMED_RTCM_FRAME) {
+                    long epoch = RtcmFramer.gpsTimeOfWeekMillis(buffer,
+                            offset + RtcmFramer.HEADER_LENGTH, messageType);
+                    if (epoch != RtcmFramer.NO_EPOCH_TIME) {
+                        rtcmEpochMillis = epoch;
+                    }
+                }
+                // Consecutive valid frames in one chunk go to the solver in one call
+                if (buffer == rtcmRunBuffer && offset == rtcmRunEnd) {
+                    rtcmRunEnd += length;
+                    return;
+                }
+                flushRtcmRun();
+                if (buffer == rtcmChunk) {
+                    rtcmRunBuffer = buffer;
+                    rtcmRunStart = offset;
+                    rtcmRunEnd = offset + length;
+                } else {
+                    // Reassembled across chunks, only valid during this call
+                    rtkEngine.submitCorrections(buffer, offset, length,
+                            System.currentTimeMillis());
+                }
+            });
 
     private GnssMeasurementsEvent.Callback gnssCallback = new GnssMeasurementsEvent.Callback() {
         @Override
         public void onGnssMeasurementsReceived(GnssMeasurementsEvent event) {
-            synchronized (currentMeasurements) {
-                currentMeasurements.clear();
-                currentMeasurements.addAll(event.getMeasurements());
-
-                GnssMeasurement[] measurements = getCurrentMeasurements();
-                rtkProcessor.processRtkData(rtkContextHandle, measurements,
-                        System.currentTimeMillis());
-
-            }
-            processMeasurements(event);
+            // Everything else happens on the pipeline's stage threads
+            measurementPipeline.submit(event);
         }
 
         @Override
@@ -106,39 +179,92 @@ public class MainActivity extends AppCompatActivity
         }
     };
 
+    private final GnssStatus.Callback gnssStatusCallback = new GnssStatus.Callback() {
+        @Override
+        public void onSatelliteStatusChanged(@NonNull GnssStatus status) {
+            for (int i = 0; i < status.getSatelliteCount(); i++) {
+                // Without orbit data the elevation is a placeholder, usually 0
+                if (status.hasEphemerisData(i) || status.hasAlmanacData(i)) {
+                    signalFilter.setElevation(status.getConstellationType(i),
+                            status.getSvid(i), status.getElevationDegrees(i));
+                }
+            }
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
         logTextView = findViewById(R.id.logTextView);
         ntripTextView = findViewById(R.id.ntripTextView);
+        gnssLog = new LogViewRenderer(logTextView, 500, 60);
+        ntripLog = new LogViewRenderer(ntripTextView, 200, 40);
         statusIndicator = findViewById(R.id.statusIndicator);
 
         rtkProcessor = new RTKProcessor();
-        rtkProcessor.setResultListener(this);
-        rtkContextHandle = rtkProcessor.initRtkContext();
-        rtkProcessor.initNavigation();
+        ephemerides = new EphemerisStore(new File(getFilesDir(), "ephemeris.rtcm"));
+        try {
+            int loaded = ephemerides.load(EphemerisStore.gpsMillis(System.currentTimeMillis()));
+            gnssLog.append("Loaded " + loaded + " stored ephemerides\n");
+        } catch (IOException e) {
+            Log.e("MainActivity", "Error loading ephemerides", e);
+        }
+        rtkEngine = new RtkEngine(RtkEngine.nativeContext(rtkProcessor, ephemerides), this);
+        // Picks up the filter state of the last run if it is recent enough
+        rtkEngine.setCheckpoint(new RtkCheckpoint(new File(getFilesDir(), "rtk.checkpoint")));
+        rtkEngine.getSolutions().addListener(getMainExecutor(), this);
+        rtkEngine.start();
 
 
-        // Initialize NTRIP client
-        ntripClient = new NtripClient("rtk.geodnet.com", 2101, "AUTO", "davidchen", "geodnet2024");
-//        ntripClient = new NtripClient("120.253.226.97", 8001, "RTCM33_GRCEJ", "cuke004", "4h5s68ja");
+        // Initialize NTRIP: nearest base from the caster's sourcetable, AUTO until then
+        ntripBases = new NtripBaseManager("rtk.geodnet.com", 2101, "davidchen", "geodnet2024",
+                "AUTO", new File(getCacheDir(), "sourcetable_rtk.geodnet.com.txt"));
+//        ntripBases = new NtripBaseManager("120.253.226.97", 8001, "cuke004", "4h5s68ja",
+//                "RTCM33_GRCEJ", new File(getCacheDir(), "sourcetable_120.253.226.97.txt"));
 
         // Initialize location manager
         locationManager = (LocationManager) getSystemService(LOCATION_SERVICE);
         requestLocationUpdates();
 
-// Initialize file names with timestamp
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
-        String timestamp = sdf.format(new Date());
-        gnssFileName = "gnss_" + timestamp + ".log";
-        rtcmFileName = "rtcm_" + timestamp + ".bin";
+        // Binary measurement log (see GnssCsvExporter for the CSV form) and raw RTCM, both
+        // opened on first write by their own threads
+        sessionStorage = new SessionStorage(new File(getFilesDir(), "sessions"),
+                STORAGE_BUDGET_BYTES, SEGMENT_BYTES, SEGMENT_MILLIS);
+        sessionStorage.startSession(System.currentTimeMillis());
+        gnssStream = sessionStorage.openStream("gnss_", ".log");
+        rtcmStream = sessionStorage.openStream("rtcm_", ".bin");
+        metricsStream = sessionStorage.openStream("metrics_", ".tsv");
+        registerMetrics();
+        metricsExporter = new MetricsExporter(metrics, metricsStream,
+                MetricsExporter.DEFAULT_INTERVAL_MS);
+        metricsExporter.start();
+        measurementPipeline.start();
+
+        rtcmThread = new Thread(this::decodeRtcm, "RtcmDecoder");
+        rtcmThread.start();
 
     }
 
     @Override
     protected void onDestroy() {
-        rtkProcessor.shutdownRtkContext(rtkContextHandle);
+        // Capture stops first; epochs already queued still reach the log before it closes
+        measurementPipeline.stop();
+        ntripBases.stop();
+        stopRtcmDecoder();
+        saveEphemerides();
+        gnssLog.stop();
+        ntripLog.stop();
+        metricsExporter.stop();
+        if (gnssLogger != null) {
+            gnssLogger.close();
+        }
+        // Segments still to compress are picked up on the next start
+        gnssStream.close();
+        rtcmStream.close();
+        metricsStream.close();
+        // Nothing feeds the engine any more: solve what is queued and free the context
+        rtkEngine.close();
         super.onDestroy();
     }
 
@@ -176,46 +302,44 @@ public class MainActivity extends AppCompatActivity
                 startGnssListening();
                 requestLocationUpdates();
             } else {
-                ntripLogBuilder.append("Location permission denied\n");
-                updateNtripLog();
+                ntripLog.append("Location permission denied\n");
             }
         }
     }
 
     @Override
-    public void onPositionUpdate(double lat, double lon, double alt) {
-        runOnUiThread(() -> {
-            gnssLogBuilder.append(String.format(Locale.US,
-                    "RTK Fix: %.8f, %.8f, %.2f\n", lat, lon, alt));
-            updateGnssLog();
-        });
-    }
-
-    @Override
-    public void onSolutionStatus(String status) {
-        runOnUiThread(() -> {
-            String statusMessage = "RTK Status: " + status + "\n";
-            gnssLogBuilder.append(statusMessage);
-
-            // Update status indicator
-            switch(status) {
-                case "FIXED":
+    public void onSolution(RtkSolution solution) {
+        // Main thread, latest solution only
+        if (solution.status != lastSolutionStatus) {
+            lastSolutionStatus = solution.status;
+            gnssLog.append("RTK Status: " + solution.status + "\n");
+            switch (solution.status) {
+                case FIX:
                     statusIndicator.setBackgroundColor(Color.GREEN);
                     break;
-                case "FLOAT":
+                case FLOAT:
                     statusIndicator.setBackgroundColor(Color.YELLOW);
                     break;
                 default:
                     statusIndicator.setBackgroundColor(Color.RED);
             }
-
-            updateGnssLog();
-        });
+        }
+        if (solution.hasPosition()) {
+            satelliteCount = solution.satellites;
+            gnssLog.append(String.format(Locale.US,
+                    "RTK %s: %.8f, %.8f, %.2f, %d sats, age %.1f s, ratio %.1f\n",
+                    solution.status, solution.latitudeDegrees, solution.longitudeDegrees,
+                    solution.heightMeters, solution.satellites, solution.ageSeconds,
+                    solution.ratio));
+        }
     }
 
     private void startGnssListening() {
         if (locationManager != null) {
             locationManager.registerGnssMeasurementsCallback(gnssCallback);
+            // On the main thread, where the single-argument overload used to deliver it
+            locationManager.registerGnssStatusCallback(gnssStatusCallback,
+                    new Handler(Looper.getMainLooper()));
             if (ActivityCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
                 return;
             }
@@ -226,85 +350,229 @@ public class MainActivity extends AppCompatActivity
     private void stopGnssListening() {
         if (locationManager != null) {
             locationManager.unregisterGnssMeasurementsCallback(gnssCallback);
+            locationManager.unregisterGnssStatusCallback(gnssStatusCallback);
         }
     }
 
 
-    // Add these file writing methods
-    private void writeGnssToFile(String dataLine) {
-        fileExecutor.execute(() -> {
-            File file = new File(getFilesDir(), gnssFileName);
-            try (FileWriter fw = new FileWriter(file, true);
-                 BufferedWriter bw = new BufferedWriter(fw)) {
-                bw.write(dataLine);
-                bw.newLine();
+    /**
+     * capture (GNSS callback) -> convert -> solve / log / display, each stage on its own
+     * thread. The solver drops the oldest queued epoch when it falls behind so it always
+     * works on recent data; the display only ever shows the latest epoch.
+     */
+    private EpochPipeline<GnssMeasurementsEvent> createMeasurementPipeline() {
+        EpochPipeline<GnssMeasurementsEvent> pipeline = new EpochPipeline<>(
+                (event, epoch) -> {
+                    epoch.set(event);
+                    return true;
+                });
+        GnssEpochBuilder solverEpoch = new GnssEpochBuilder();
+        solverEpoch.setFilter(signalFilter);
+        solverEpoch.setTracker(slipTracker);
+        pipeline.addStage("solve", 2, EpochPipeline.Overflow.DROP_OLDEST,
+                (epoch, event) -> {
+                    if (solverEpoch.build(epoch)) {
+                        rtkEngine.submitEpoch(solverEpoch);
+                    }
+                });
+        pipeline.addStage("log", 8, EpochPipeline.Overflow.DROP_NEWEST,
+                (epoch, event) -> logEpoch(epoch));
+        pipeline.addStage("display", 1, EpochPipeline.Overflow.COALESCE,
+                (epoch, event) -> processMeasurements(epoch));
+        pipeline.setErrorListener((stage, e) -> Log.e("MainActivity",
+                "Pipeline stage " + stage.getName() + " failed", e));
+        return pipeline;
+    }
+
+    /**
+     * Queue depths, drops and capture-to-done latency of every pipeline stage, the RTCM
+     * queue and the screen's frame rate; the hot-path histograms and counters are fields.
+     */
+    private void registerMetrics() {
+        for (EpochPipeline.Stage<GnssMeasurementsEvent> stage : measurementPipeline.getStages()) {
+            String name = "pipeline." + stage.getName();
+            metrics.gauge(name + ".queue", stage::getQueueDepth);
+            metrics.counter(name + ".processed", stage::getProcessed);
+            metrics.counter(name + ".dropped", stage::getDropped);
+            metrics.counter(name + ".errors", stage::getErrors);
+            metrics.histogram(name + ".latency_ns", stage.getLatencyHistogram());
+        }
+        metrics.counter("pipeline.capture_dropped", measurementPipeline::getCaptureDropped);
+        metrics.gauge("rtcm.queue", rtcmQueue::size);
+        metrics.gauge("rtk.queue", rtkEngine::getQueueDepth);
+        metrics.counter("rtk.dropped_epochs", rtkEngine::getDroppedEpochs);
+        metrics.counter("rtk.dropped_rtcm_bytes", rtkEngine::getDroppedCorrectionBytes);
+        metrics.counter("rtk.errors", rtkEngine::getErrors);
+        metrics.counter("rtk.checkpoints", rtkEngine::getCheckpointsSaved);
+        metrics.counter("rtk.checkpoint_errors", rtkEngine::getCheckpointErrors);
+        metrics.gauge("ephemeris.entries", ephemerides::size);
+        for (int check = 1; check <= SignalFilter.NO_CARRIER; check <<= 1) {
+            int c = check;
+            metrics.counter("signals.rejected." + SignalFilter.checkName(c),
+                    () -> signalFilter.getRejected(c));
+        }
+        metrics.counter("slips.reported", slipTracker::getReportedSlips);
+        metrics.counter("slips.gap", slipTracker::getGapSlips);
+        metrics.counter("slips.doppler", slipTracker::getDopplerSlips);
+        metrics.counter("slips.code", slipTracker::getCodeSlips);
+        metrics.counter("ui.gnss_log.frames", gnssLog::getFrames);
+        metrics.counter("ui.ntrip_log.frames", ntripLog::getFrames);
+    }
+
+    @Override
+    public void onEpochSolved(double towSeconds, int status, long waitNanos, long solveNanos) {
+        // Solver thread
+        recordCorrectionAge(towSeconds);
+        solveWaitNanos.record(waitNanos);
+        this.solveNanos.record(solveNanos);
+        solutionStatus.increment(status);
+    }
+
+    // How old the base observations are against the epoch being solved
+    private void recordCorrectionAge(double towSeconds) {
+        long base = rtcmEpochMillis;
+        if (base == RtcmFramer.NO_EPOCH_TIME) {
+            return;
+        }
+        long half = RtcmFramer.WEEK_MILLIS / 2;
+        long age = Math.floorMod(Math.round(towSeconds * 1000) - base + half,
+                RtcmFramer.WEEK_MILLIS) - half;
+        correctionAgeMillis.record(age);
+    }
+
+    // Log stage: starts a new log file whenever the session storage asks for one
+    private void logEpoch(GnssEpoch epoch) {
+        long now = System.currentTimeMillis();
+        if (gnssStream.shouldRotate(gnssLogger != null ? gnssLogger.getWrittenBytes() : 0, now)) {
+            if (gnssLogger != null) {
+                gnssLogger.close();
+                gnssLogger = null;
+            }
+            GnssLogger logger = new GnssLogger(gnssStream.rotate(now));
+            try {
+                logger.open();
+                gnssLogger = logger;
             } catch (IOException e) {
-                Log.e("MainActivity", "Error writing GNSS data", e);
+                Log.e("MainActivity", "Error opening GNSS log", e);
             }
-        });
+        }
+        if (gnssLogger != null) {
+            gnssLogger.log(epoch);
+        }
     }
 
-    private void writeRtcmToFile(byte[] data) {
-        fileExecutor.execute(() -> {
-            File file = new File(getFilesDir(), rtcmFileName);
-            try (FileOutputStream fos = new FileOutputStream(file, true)) {
-                fos.write(data);
-            } catch (IOException e) {
-                Log.e("MainActivity", "Error writing RTCM data", e);
+    private void processMeasurements(GnssEpoch epoch) {
+        // Format on the display stage thread; the renderer coalesces epochs into frames
+        displayBuilder.setLength(0);
+        for (int i = 0; i < epoch.count; i++) {
+            GnssCsvEncoder.append(displayBuilder, epoch, i);
+            displayBuilder.append("\n\n");
+        }
+        gnssLog.append(displayBuilder);
+    }
+
+
+    private void decodeRtcm() {
+        while (true) {
+            ByteBuffer chunk;
+            try {
+                chunk = rtcmQueue.take();
+            } catch (InterruptedException e) {
+                return;
             }
-        });
+            int start = chunk.position();
+            int end = chunk.limit();
+
+            // Only complete frames with a valid CRC are passed on
+            rtcmChunk = chunk;
+            rtcmFramer.feed(chunk);
+            flushRtcmRun();
+            rtcmChunk = null;
+
+            // The raw stream goes to the file as received
+            chunk.limit(end).position(start);
+            writeRtcmToFile(chunk);
+            rtcmBytes.add(end - start);
+            ntripBases.releaseBuffer(chunk);
+
+            logRtcmStats(end - start);
+        }
     }
-    private void processMeasurements(GnssMeasurementsEvent event) {
-        runOnUiThread(() -> {
-            GnssClock clock = event.getClock();
-          for (GnssMeasurement measurement : event.getMeasurements()) {
-
-                //gnssLogBuilder.append(clockStream).append("\n");
-                String measurementStream =
-                        String.format(
-                                "%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s",
-                                measurement.getSvid(),
-                                measurement.getTimeOffsetNanos(),
-                                measurement.getState(),
-                                measurement.getReceivedSvTimeNanos(),
-                                measurement.getReceivedSvTimeUncertaintyNanos(),
-                                measurement.getCn0DbHz(),
-                                measurement.getPseudorangeRateMetersPerSecond(),
-                                measurement.getPseudorangeRateUncertaintyMetersPerSecond(),
-                                measurement.getAccumulatedDeltaRangeState(),
-                                measurement.getAccumulatedDeltaRangeMeters(),
-                                measurement.getAccumulatedDeltaRangeUncertaintyMeters(),
-                                measurement.hasCarrierFrequencyHz() ? measurement.getCarrierFrequencyHz() : "",
-                                measurement.hasCarrierCycles() ? measurement.getCarrierCycles() : "",
-                                measurement.hasCarrierPhase() ? measurement.getCarrierPhase() : "",
-                                measurement.hasCarrierPhaseUncertainty()
-                                        ? measurement.getCarrierPhaseUncertainty()
-                                        : "",
-                                measurement.getMultipathIndicator(),
-                                measurement.hasSnrInDb() ? measurement.getSnrInDb() : "",
-                                measurement.getConstellationType(),
-                                Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
-                                        && measurement.hasAutomaticGainControlLevelDb()
-                                        ? measurement.getAutomaticGainControlLevelDb()
-                                        : "");
-
-              gnssLogBuilder.append(measurementStream).append("\n\n");
-              writeGnssToFile(measurementStream);
-
-
-              updateGnssLog();
-
-          }
-        });
+
+    private void flushRtcmRun() {
+        if (rtcmRunBuffer == null) {
+            return;
+        }
+        rtkEngine.submitCorrections(rtcmRunBuffer, rtcmRunStart, rtcmRunEnd - rtcmRunStart,
+                System.currentTimeMillis());
+        rtcmRunBuffer = null;
     }
 
+    private void writeRtcmToFile(ByteBuffer data) {
+        try {
+            long now = System.currentTimeMillis();
+            if (rtcmStream.shouldRotate(rtcmSegmentBytes, now)) {
+                if (rtcmChannel != null) {
+                    rtcmChannel.close();
+                    rtcmChannel = null;
+                }
+                rtcmChannel = FileChannel.open(rtcmStream.rotate(now).toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+                rtcmSegmentBytes = 0;
+            }
+            if (rtcmChannel == null) {
+                return;
+            }
+            while (data.hasRemaining()) {
+                rtcmSegmentBytes += rtcmChannel.write(data);
+            }
+        } catch (IOException e) {
+            Log.e("MainActivity", "Error writing RTCM data", e);
+        }
+    }
 
-    private void processRtcmData(byte[] rtcmData) {
-        rtkExecutor.execute(() -> {
-            //GnssMeasurement[] measurements = getCurrentMeasurements();
-            rtkProcessor.updateRtcmData(rtkContextHandle, rtcmData,
-                    System.currentTimeMillis());
-        });
+    /** One line per second instead of one per chunk. */
+    private void logRtcmStats(int bytes) {
+        rtcmStatsBytes += bytes;
+        rtcmStatsChunks++;
+        long now = SystemClock.elapsedRealtime();
+        if (now - rtcmStatsSince >= 1000) {
+            ntripLog.append("Received RTCM: " + rtcmStatsBytes + " bytes in "
+                    + rtcmStatsChunks + " chunks\n");
+            rtcmStatsBytes = 0;
+            rtcmStatsChunks = 0;
+            rtcmStatsSince = now;
+            // A few KB, rewritten only when an ephemeris came or went
+            saveEphemerides();
+        }
+    }
+
+    private void saveEphemerides() {
+        try {
+            ephemerides.evict(EphemerisStore.gpsMillis(System.currentTimeMillis()));
+            ephemerides.save();
+        } catch (IOException e) {
+            Log.e("MainActivity", "Error saving ephemerides", e);
+        }
+    }
+
+    private void stopRtcmDecoder() {
+        rtcmThread.interrupt();
+        try {
+            rtcmThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        ByteBuffer pending;
+        while ((pending = rtcmQueue.poll()) != null) {
+            ntripBases.releaseBuffer(pending);
+        }
+        try {
+            if (rtcmChannel != null) rtcmChannel.close();
+        } catch (IOException e) {
+            Log.e("MainActivity", "Error closing RTCM log", e);
+        }
     }
 
     // Add to locationListener
@@ -313,12 +581,12 @@ public class MainActivity extends AppCompatActivity
         @Override
         public void onLocationChanged(Location location) {
             lastLocation = location;
+            ntripBases.updatePosition(location.getLatitude(), location.getLongitude());
             Log.e("LocationManager", "" + location);
             if(!bLocationUpdated) {
-                ntripLogBuilder.append("Location updated: "
+                ntripLog.append("Location updated: "
                         + location.getLatitude() + ", "
                         + location.getLongitude() + "\n");
-                updateNtripLog();
                 bLocationUpdated = true;
             }
         }
@@ -330,14 +598,12 @@ public class MainActivity extends AppCompatActivity
 
         @Override
         public void onProviderEnabled(String provider) {
-            ntripLogBuilder.append("GPS enabled\n");
-            updateNtripLog();
+            ntripLog.append("GPS enabled\n");
         }
 
         @Override
         public void onProviderDisabled(String provider) {
-            ntripLogBuilder.append("GPS disabled\n");
-            updateNtripLog();
+            ntripLog.append("GPS disabled\n");
         }
     };
 
@@ -364,57 +630,28 @@ public class MainActivity extends AppCompatActivity
                 }
 
                 isLocationUpdatesRequested = true;
-                ntripLogBuilder.append("Started location updates\n");
-                updateNtripLog();
+                ntripLog.append("Started location updates\n");
 
             } catch (SecurityException e) {
-                ntripLogBuilder.append("Location permission denied\n");
-                updateNtripLog();
+                ntripLog.append("Location permission denied\n");
             }
         }
     }
 
-    private void updateGnssLog() {
-        // Limit log size
-        if (gnssLogBuilder.length() > 3000) {
-            gnssLogBuilder.delete(0, 1500);
-        }
-
-        logTextView.setText(gnssLogBuilder.toString());
-        // Correct scrolling implementation
-        final NestedScrollView scrollView = (NestedScrollView) logTextView.getParent();
-        scrollView.post(() -> scrollView.fullScroll(View.FOCUS_DOWN));
-    }
-
-    private void updateNtripLog() {
-        // Limit log size
-        if (ntripLogBuilder.length() > 3000) {
-            ntripLogBuilder.delete(0, 1500);
-        }
-        ntripTextView.setText(ntripLogBuilder.toString());
-        // Correct scrolling implementation
-        final NestedScrollView scrollView = (NestedScrollView) ntripTextView.getParent();
-        scrollView.post(() -> scrollView.fullScroll(View.FOCUS_DOWN));
-    }
-
     @Override
-    public void onRtcmDataReceived(byte[] data) {
-        runOnUiThread(() -> {
-            // Process RTCM data
-            String message = "Received RTCM: " + data.length + " bytes\n";
-            ntripLogBuilder.append(message);
-            updateNtripLog();
-            writeRtcmToFile(data);
-            processRtcmData(data);
-        });
+    public void onRtcmDataReceived(ByteBuffer data) {
+        // Runs on the NTRIP receive thread; the queue holds as many entries as the client has
+        // buffers, so this never fails in practice
+        if (!rtcmQueue.offer(data)) {
+            ntripBases.releaseBuffer(data);
+        }
     }
 
     @Override
     public void onConnectionStatusChanged(boolean connected) {
         runOnUiThread(() -> {
             String status = connected ? "Connected to NTRIP" : "Disconnected";
-            ntripLogBuilder.append(status).append("\n");
-            updateNtripLog();
+            ntripLog.append(status + "\n");
 
             if (connected) {
                 startGgaUpdates();
@@ -425,67 +662,29 @@ public class MainActivity extends AppCompatActivity
         });
     }
 
+    @Override
+    public void onBaseChanged(String mountpoint, double distanceMeters) {
+        ntripLog.append(Double.isNaN(distanceMeters) ? "Base: " + mountpoint + "\n"
+                : "Base: " + mountpoint + ", " + Math.round(distanceMeters / 1000) + " km\n");
+    }
+
     @Override
     public void onError(String message) {
-        runOnUiThread(() -> {
-            ntripLogBuilder.append("Error: ").append(message).append("\n");
-            updateNtripLog();
-        });
+        ntripLog.append("Error: " + message + "\n");
     }
 
     // Add connection controls
     public void onConnectClick(View view) {
-        ntripClient.connect(this);
+        ntripBases.start(this);
     }
 
     public void onDisconnectClick(View view) {
-        ntripClient.disconnect();
+        ntripBases.stop();
     }
 
-    private GnssMeasurement[] getCurrentMeasurements() {
-        synchronized (currentMeasurements) {
-            return currentMeasurements.toArray(new GnssMeasurement[0]);
-        }
-    }
-    private String generateGGA(GnssMeasurement measurement, Location location) {
-        // Convert time to NMEA format
-        SimpleDateFormat sdf = new SimpleDateFormat("HHmmss.SSS", Locale.getDefault());
-        String time = sdf.format(new Date(measurement.getReceivedSvTimeNanos() / 1000000));
-
-        // Convert coordinates to NMEA format
-        double lat = location.getLatitude();
-        double lon = location.getLongitude();
-        String nsew = lat >= 0 ? "N" : "S";
-        String ew = lon >= 0 ? "E" : "W";
-
-        String latStr = convertToNmeaFormat(Math.abs(lat), true);
-        String lonStr = convertToNmeaFormat(Math.abs(lon), false);
-
-        // Construct GGA sentence
-        String gga = String.format(Locale.US, "$GPGGA,%s,%s,%s,%s,%s,1,%02d,%.1f,%.1f,M,,M,,",
-                time, latStr, nsew, lonStr, ew,
-                measurement.getSvid(),
-                location.getAccuracy(),
-                location.getAltitude());
-
-        // Calculate checksum
-        int checksum = 0;
-        for (int i = 1; i < gga.length(); i++) {
-            checksum ^= gga.charAt(i);
-        }
-
-        return String.format("*%02X\r\n", checksum);
-    }
-
-    private String convertToNmeaFormat(double decimalDegrees, boolean isLatitude) {
-        int degrees = (int) decimalDegrees;
-        double minutes = (decimalDegrees - degrees) * 60;
-        return String.format(Locale.US, "%02d%07.4f", degrees, minutes);
-    }
-
-
     // Add GGA transmission methods
     private void startGgaUpdates() {
+        stopGgaUpdates();
         ggaRunnable = new Runnable() {
             @Override
             public void run() {
@@ -493,11 +692,14 @@ public class MainActivity extends AppCompatActivity
                 ggaHandler.postDelayed(this, GGA_INTERVAL);
             }
         };
-        ggaHandler.postDelayed(ggaRunnable, GGA_INTERVAL);
+        // First sentence right away: VRS casters send nothing until they have one
+        ggaHandler.post(ggaRunnable);
     }
 
     private void stopGgaUpdates() {
-        ggaHandler.removeCallbacks(ggaRunnable);
+        if (ggaRunnable != null) {
+            ggaHandler.removeCallbacks(ggaRunnable);
+        }
     }
 
     private void sendGgaToServer() {
@@ -507,38 +709,17 @@ public class MainActivity extends AppCompatActivity
         }
 
         if (lastLocation != null) {
-            String gga = generateGGA(lastLocation, satelliteCount);
-            ntripClient.sendGga(gga);
-
-            ntripLogBuilder.append("Sent GGA: ").append(gga).append("\n");
-            updateNtripLog();
+            // Location reports no HDOP, so the field stays empty
+            int length = nmeaEncoder.gga(ggaBytes, 0, lastLocation.getTime(),
+                    lastLocation.getLatitude(), lastLocation.getLongitude(),
+                    NmeaEncoder.QUALITY_GPS, satelliteCount, Double.NaN,
+                    lastLocation.getAltitude());
+            ntripBases.sendGga(ggaBytes, 0, length);
+
+            ntripLog.append("Sent GGA: "
+                    + new String(ggaBytes, 0, length - 2, StandardCharsets.US_ASCII) + "\n");
         } else {
-            ntripLogBuilder.append("No location available for GGA\n");
-            updateNtripLog();
+            ntripLog.append("No location available for GGA\n");
         }
     }
-
-
-    // Updated GGA generator
-    private String generateGGA(Location location, int satelliteCount) {
-        SimpleDateFormat sdf = new SimpleDateFormat("HHmmss.SSS", Locale.US);
-        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-        String time = sdf.format(new Date(location.getTime()));
-
-        DecimalFormat df = new DecimalFormat("00.000000");
-        String lat = df.format(Math.abs(location.getLatitude()));
-        String ns = location.getLatitude() >= 0 ? "N" : "S";
-        String lon = df.format(Math.abs(location.getLongitude()));
-        String ew = location.getLongitude() >= 0 ? "E" : "W";
-
-        return String.format(Locale.US, "$GPGGA,%s,%s,%s,%s,%s,1,%02d,%.1f,%.1f,M,,M,,",
-                time,
-                lat.substring(0, 2) + lat.substring(3), // Degrees + decimal minutes
-                ns,
-                lon.substring(0, 3) + lon.substring(4), // Degrees + decimal minutes
-                ew,
-                satelliteCount,
-                location.getAccuracy(),
-                location.getAltitude());
-    }
 }
\ No newline at end of file
@@ -0,0 +1,113 @@
+package com.example.geodgnss;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Appends a {@link MetricsRegistry} snapshot to a session stream at a fixed interval, so
+ * a field session keeps a record of latencies, rates and queue depths next to its logs.
+ *
+ * <p>Runs on its own thread; {@link #stop} writes a last snapshot and closes the file.
+ */
+public class MetricsExporter {
+
+    public static final long DEFAULT_INTERVAL_MS = 10_000;
+
+    private final MetricsRegistry registry;
+    private final SessionStorage.Stream stream;
+    private final long intervalMillis;
+    private final StringBuilder snapshot = new StringBuilder(8192);
+    private Thread thread;
+
+    // Only touched on the exporting thread (or by stop() once it has ended)
+    private Writer writer;
+    private long writtenBytes;
+    private volatile IOException lastError;
+
+    public MetricsExporter(MetricsRegistry registry, SessionStorage.Stream stream,
+                           long intervalMillis) {
+        this.registry = registry;
+        this.stream = stream;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this::run, "MetricsExporter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Stops the thread, writes a final snapshot and closes the current file. */
+    public synchronized void stop() {
+        if (thread == null) {
+            return;
+        }
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        export(System.currentTimeMillis());
+        close();
+    }
+
+    /** Returns the last error from writing a snapshot, or null. */
+    public IOException getLastError() {
+        return lastError;
+    }
+
+    private void run() {
+        while (true) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            export(System.currentTimeMillis());
+        }
+    }
+
+    /** Writes one snapshot, starting a new file whenever the stream asks for one. */
+    void export(long nowMillis) {
+        snapshot.setLength(0);
+        registry.snapshot(snapshot, nowMillis);
+        try {
+            if (stream.shouldRotate(writtenBytes, nowMillis)) {
+                close();
+                writer = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(stream.rotate(nowMillis), true),
+                        StandardCharsets.US_ASCII));
+                writtenBytes = 0;
+            }
+            if (writer == null) {
+                return; // the segment could not be opened; retried at the next rotation
+            }
+            writer.append(snapshot);
+            writer.flush();
+            writtenBytes += snapshot.length();
+        } catch (IOException e) {
+            lastError = e;
+        }
+    }
+
+    void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            lastError = e;
+        }
+        writer = null;
+    }
+}
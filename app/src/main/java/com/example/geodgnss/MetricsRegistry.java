@@ -0,0 +1,292 @@
+package com.example.geodgnss;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, gauges and latency histograms for the hot paths, written out as text
+ * snapshots.
+ *
+ * <p>Metrics are created once, up front, and the returned objects are kept by the code that
+ * records into them: recording is one or two atomic operations, with no lookup, lock or
+ * allocation. {@link #snapshot} runs on the exporting thread only and reports each counter's
+ * total and rate, each gauge's value, and each histogram's count, percentiles and maximum
+ * over the interval since the previous snapshot.
+ *
+ * <p>Snapshot lines are tab-separated: time (ms), name, kind, then the kind's fields as
+ * {@code key=value} pairs.
+ */
+public class MetricsRegistry {
+
+    /** A monotonic count, safe to increment from any thread. */
+    public static final class Counter {
+        private final AtomicLong count = new AtomicLong();
+
+        public void increment() {
+            count.incrementAndGet();
+        }
+
+        public void add(long n) {
+            count.addAndGet(n);
+        }
+
+        public long get() {
+            return count.get();
+        }
+    }
+
+    /**
+     * One counter per small integer key, e.g. per RTCM message type or per solution status.
+     * Keys outside {@code [0, size)} are counted in the last slot.
+     */
+    public static final class CounterArray {
+        private final AtomicLongArray counts;
+
+        CounterArray(int size) {
+            counts = new AtomicLongArray(size);
+        }
+
+        public void increment(int key) {
+            counts.incrementAndGet(key >= 0 && key < counts.length() ? key : counts.length() - 1);
+        }
+
+        public long get(int key) {
+            return counts.get(key);
+        }
+
+        public int size() {
+            return counts.length();
+        }
+    }
+
+    /**
+     * Log-linear histogram in the manner of HdrHistogram: each power of two is split into
+     * {@link #SUB_BUCKETS} linear buckets, so any recorded value is known to within 1/16
+     * (about 6%) over the whole non-negative {@code long} range. Recording is lock-free and
+     * safe from any thread.
+     */
+    public static final class Histogram {
+        static final int SUB_BUCKET_BITS = 4;
+        static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+        static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong max = new AtomicLong();
+
+        /** Records {@code value}; negative values count as 0. */
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            counts.incrementAndGet(bucketOf(value));
+            long m;
+            while (value > (m = max.get()) && !max.compareAndSet(m, value)) {
+                // another thread raised the maximum, try again
+            }
+        }
+
+        public long getCount() {
+            long n = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                n += counts.get(i);
+            }
+            return n;
+        }
+
+        /** Largest value recorded so far, exactly. */
+        public long getMax() {
+            return max.get();
+        }
+
+        /** Value at percentile {@code p} (0 to 100) of everything recorded so far. */
+        public long getValueAtPercentile(double p) {
+            long[] snapshot = new long[BUCKETS];
+            copyCounts(snapshot);
+            return Math.min(valueAtPercentile(snapshot, p), max.get());
+        }
+
+        void copyCounts(long[] into) {
+            for (int i = 0; i < BUCKETS; i++) {
+                into[i] = counts.get(i);
+            }
+        }
+
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+            return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+        }
+
+        /** Largest value that falls into {@code bucket}. */
+        static long highestValueOf(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+            long lowest = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+            return lowest + (1L << shift) - 1;
+        }
+
+        /** Returns 0 for an empty histogram. */
+        static long valueAtPercentile(long[] counts, double p) {
+            long total = 0;
+            for (long c : counts) {
+                total += c;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p / 100 * total));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValueOf(i);
+                }
+            }
+            return highestValueOf(counts.length - 1);
+        }
+    }
+
+    private static final double[] PERCENTILES = {50, 90, 99};
+
+    /** A registered metric and whatever it needs to report one interval. */
+    private abstract static class Entry {
+        final String name;
+
+        Entry(String name) {
+            this.name = name;
+        }
+
+        abstract void export(StringBuilder out, long nowMillis, double seconds);
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private long lastSnapshotMillis;
+
+    public MetricsRegistry() {
+        lastSnapshotMillis = System.currentTimeMillis();
+    }
+
+    public synchronized Counter counter(String name) {
+        Counter counter = new Counter();
+        counter(name, counter::get);
+        return counter;
+    }
+
+    /** Reports a monotonic total kept elsewhere, e.g. a stage's processed count, as a counter. */
+    public synchronized void counter(String name, LongSupplier total) {
+        entries.add(new Entry(name) {
+            long previous;
+
+            @Override
+            void export(StringBuilder out, long nowMillis, double seconds) {
+                long value = total.getAsLong();
+                line(out, nowMillis, name, "counter");
+                out.append("\ttotal=").append(value);
+                out.append("\trate=").append(rate(value - previous, seconds));
+                out.append('\n');
+                previous = value;
+            }
+        });
+    }
+
+    /** Only keys that moved during the interval are reported, as {@code name[key]}. */
+    public synchronized CounterArray counterArray(String name, int size) {
+        CounterArray counters = new CounterArray(size);
+        long[] previous = new long[size];
+        entries.add(new Entry(name) {
+            @Override
+            void export(StringBuilder out, long nowMillis, double seconds) {
+                for (int key = 0; key < size; key++) {
+                    long value = counters.get(key);
+                    if (value == previous[key]) {
+                        continue;
+                    }
+                    out.append(nowMillis).append('\t').append(name).append('[').append(key)
+                            .append("]\tcounter");
+                    out.append("\ttotal=").append(value);
+                    out.append("\trate=").append(rate(value - previous[key], seconds));
+                    out.append('\n');
+                    previous[key] = value;
+                }
+            }
+        });
+        return counters;
+    }
+
+    public synchronized void gauge(String name, LongSupplier value) {
+        entries.add(new Entry(name) {
+            @Override
+            void export(StringBuilder out, long nowMillis, double seconds) {
+                line(out, nowMillis, name, "gauge");
+                out.append("\tvalue=").append(value.getAsLong());
+                out.append('\n');
+            }
+        });
+    }
+
+    public synchronized Histogram histogram(String name) {
+        Histogram histogram = new Histogram();
+        histogram(name, histogram);
+        return histogram;
+    }
+
+    /** Reports a histogram owned elsewhere, e.g. an {@link EpochPipeline} stage's latency. */
+    public synchronized void histogram(String name, Histogram histogram) {
+        long[] previous = new long[Histogram.BUCKETS];
+        long[] interval = new long[Histogram.BUCKETS];
+        entries.add(new Entry(name) {
+            @Override
+            void export(StringBuilder out, long nowMillis, double seconds) {
+                histogram.copyCounts(interval);
+                long count = 0;
+                int highest = -1;
+                for (int i = 0; i < Histogram.BUCKETS; i++) {
+                    long c = interval[i];
+                    interval[i] = c - previous[i];
+                    previous[i] = c;
+                    if (interval[i] != 0) {
+                        count += interval[i];
+                        highest = i;
+                    }
+                }
+                line(out, nowMillis, name, "histogram");
+                out.append("\tcount=").append(count);
+                for (double p : PERCENTILES) {
+                    out.append("\tp").append((int) p).append('=')
+                            .append(Histogram.valueAtPercentile(interval, p));
+                }
+                // Within the bucket's precision; the exact maximum is all-time only
+                out.append("\tmax=").append(highest < 0 ? 0 : Histogram.highestValueOf(highest));
+                out.append('\n');
+            }
+        });
+    }
+
+    /**
+     * Appends one line per metric covering the interval since the previous snapshot.
+     * Call from one thread only.
+     */
+    public synchronized void snapshot(StringBuilder out, long nowMillis) {
+        double seconds = Math.max(1, nowMillis - lastSnapshotMillis) / 1000.0;
+        for (Entry entry : entries) {
+            entry.export(out, nowMillis, seconds);
+        }
+        lastSnapshotMillis = nowMillis;
+    }
+
+    private static void line(StringBuilder out, long nowMillis, String name, String kind) {
+        out.append(nowMillis).append('\t').append(name).append('\t').append(kind);
+    }
+
+    private static String rate(long delta, double seconds) {
+        return String.format(Locale.US, "%.2f", delta / seconds);
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.geodgnss;
+
+import java.util.List;
+
+/**
+ * Nearest-mountpoint lookup for a sourcetable.
+ *
+ * <p>Positions are stored as unit vectors in a k-d tree laid out implicitly in flat arrays:
+ * the median of each range is its node, the halves on either side its subtrees. Straight-line
+ * distance between unit vectors grows with great-circle distance, so the nearest vector is
+ * the nearest station, with no special cases at the poles or the antimeridian. Lookups visit
+ * O(log n) nodes and allocate nothing.
+ */
+public class MountpointIndex {
+
+    public static final double EARTH_RADIUS_M = 6371000.0;
+
+    private final Sourcetable.Mountpoint[] points;
+    private final double[] x;
+    private final double[] y;
+    private final double[] z;
+    private final byte[] axis;
+
+    // Query scratch, see nearest()
+    private int found;
+    private int[] best;
+    private double[] bestDistance;
+
+    public MountpointIndex(List<Sourcetable.Mountpoint> mountpoints) {
+        int n = mountpoints.size();
+        points = mountpoints.toArray(new Sourcetable.Mountpoint[0]);
+        x = new double[n];
+        y = new double[n];
+        z = new double[n];
+        axis = new byte[n];
+        for (int i = 0; i < n; i++) {
+            double lat = Math.toRadians(points[i].latitude);
+            double lon = Math.toRadians(points[i].longitude);
+            x[i] = Math.cos(lat) * Math.cos(lon);
+            y[i] = Math.cos(lat) * Math.sin(lon);
+            z[i] = Math.sin(lat);
+        }
+        build(0, n);
+    }
+
+    public int size() {
+        return points.length;
+    }
+
+    /** Returns the mountpoint nearest to the position, or null if the index is empty. */
+    public synchronized Sourcetable.Mountpoint nearest(double latitude, double longitude) {
+        return query(latitude, longitude, 1) > 0 ? points[best[0]] : null;
+    }
+
+    /**
+     * Fills {@code out} with the {@code out.length} mountpoints nearest to the position,
+     * closest first, and returns how many were found.
+     */
+    public synchronized int nearest(double latitude, double longitude,
+                                    Sourcetable.Mountpoint[] out) {
+        int n = query(latitude, longitude, out.length);
+        for (int i = 0; i < n; i++) {
+            out[i] = points[best[i]];
+        }
+        return n;
+    }
+
+    /** Great-circle distance in meters, on a spherical Earth. */
+    public static double distanceMeters(double latitude, double longitude,
+                                        Sourcetable.Mountpoint m) {
+        double lat1 = Math.toRadians(latitude);
+        double lat2 = Math.toRadians(m.latitude);
+        double dLat = lat2 - lat1;
+        double dLon = Math.toRadians(m.longitude - longitude);
+        double h = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(lat1) * Math.cos(lat2) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+
+    private int query(double latitude, double longitude, int k) {
+        if (k == 0 || points.length == 0) {
+            return 0;
+        }
+        if (best == null || best.length < k) {
+            best = new int[k];
+            bestDistance = new double[k];
+        }
+        found = 0;
+        double lat = Math.toRadians(latitude);
+        double lon = Math.toRadians(longitude);
+        search(0, points.length, Math.cos(lat) * Math.cos(lon), Math.cos(lat) * Math.sin(lon),
+                Math.sin(lat), k);
+        return found;
+    }
+
+    private void build(int lo, int hi) {
+        if (hi - lo < 2) {
+            return;
+        }
+        int a = widestAxis(lo, hi);
+        int mid = (lo + hi) >>> 1;
+        select(lo, hi - 1, mid, a);
+        axis[mid] = (byte) a;
+        build(lo, mid);
+        build(mid + 1, hi);
+    }
+
+    private int widestAxis(int lo, int hi) {
+        double[] spread = new double[3];
+        for (int a = 0; a < 3; a++) {
+            double[] c = coordinate(a);
+            double min = c[lo];
+            double max = c[lo];
+            for (int i = lo + 1; i < hi; i++) {
+                min = Math.min(min, c[i]);
+                max = Math.max(max, c[i]);
+            }
+            spread[a] = max - min;
+        }
+        return spread[0] >= spread[1] ? (spread[0] >= spread[2] ? 0 : 2)
+                : (spread[1] >= spread[2] ? 1 : 2);
+    }
+
+    /** Quickselect: puts the k-th smallest on axis {@code a} at k, smaller ones before it. */
+    private void select(int lo, int hi, int k, int a) {
+        double[] c = coordinate(a);
+        while (lo < hi) {
+            double pivot = c[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (c[i] < pivot) i++;
+                while (c[j] > pivot) j--;
+                if (i <= j) {
+                    swap(i++, j--);
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        Sourcetable.Mountpoint p = points[i];
+        points[i] = points[j];
+        points[j] = p;
+        double t = x[i];
+        x[i] = x[j];
+        x[j] = t;
+        t = y[i];
+        y[i] = y[j];
+        y[j] = t;
+        t = z[i];
+        z[i] = z[j];
+        z[j] = t;
+    }
+
+    private double[] coordinate(int a) {
+        return a == 0 ? x : a == 1 ? y : z;
+    }
+
+    private void search(int lo, int hi, double qx, double qy, double qz, int k) {
+        if (lo >= hi) {
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        double dx = x[mid] - qx;
+        double dy = y[mid] - qy;
+        double dz = z[mid] - qz;
+        offer(mid, dx * dx + dy * dy + dz * dz, k);
+        if (hi - lo == 1) {
+            return;
+        }
+        int a = axis[mid];
+        double diff = (a == 0 ? qx : a == 1 ? qy : qz) - coordinate(a)[mid];
+        boolean leftFirst = diff < 0;
+        search(leftFirst ? lo : mid + 1, leftFirst ? mid : hi, qx, qy, qz, k);
+        if (found < k || diff * diff < bestDistance[found - 1]) {
+            search(leftFirst ? mid + 1 : lo, leftFirst ? hi : mid, qx, qy, qz, k);
+        }
+    }
+
+    /** Insertion into the sorted k-best list. */
+    private void offer(int index, double distance, int k) {
+        if (found == k && distance >= bestDistance[k - 1]) {
+            return;
+        }
+        int i = found < k ? found++ : k - 1;
+        while (i > 0 && bestDistance[i - 1] > distance) {
+            best[i] = best[i - 1];
+            bestDistance[i] = bestDistance[i - 1];
+            i--;
+        }
+        best[i] = index;
+        bestDistance[i] = distance;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.geodgnss;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue for many producer threads and one consumer thread.
+ *
+ * <p>Each cell carries a sequence number that says whose turn it is (Vyukov's bounded
+ * queue): producers claim a cell with one compare-and-set on the tail, write the element
+ * and publish it by advancing the cell's sequence; the consumer reads cells in order
+ * without any compare-and-set. Neither side allocates or blocks, and a full queue is
+ * reported to the producer rather than waited on.
+ */
+public class MpscQueue<E> {
+
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    // Only advanced by the consumer; volatile so size() can be read anywhere
+    private volatile long head;
+
+    /** @param capacity rounded up to a power of two */
+    public MpscQueue(int capacity) {
+        int n = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        elements = new Object[n];
+        sequences = new AtomicLongArray(n);
+        mask = n - 1;
+        for (int i = 0; i < n; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /** Adds {@code element} from any thread; returns false if the queue is full. */
+    public boolean offer(E element) {
+        long t;
+        int i;
+        while (true) {
+            t = tail.get();
+            i = (int) t & mask;
+            long turn = sequences.get(i) - t;
+            if (turn == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    break;
+                }
+            } else if (turn < 0) {
+                return false; // the consumer has not freed this cell yet
+            }
+            // else another producer claimed t first
+        }
+        elements[i] = element;
+        sequences.set(i, t + 1);
+        return true;
+    }
+
+    /** Removes the oldest element, or returns null if there is none. Consumer thread only. */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head;
+        int i = (int) h & mask;
+        if (sequences.get(i) != h + 1) {
+            return null;
+        }
+        E element = (E) elements[i];
+        elements[i] = null;
+        sequences.set(i, h + elements.length);
+        head = h + 1;
+        return element;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /** Elements claimed by producers and not yet polled; approximate while they race. */
+    public int size() {
+        long n = tail.get() - head;
+        return (int) Math.max(0, Math.min(n, elements.length));
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.geodgnss;
+
+/**
+ * Writes NMEA 0183 GGA and RMC sentences into a caller-supplied byte array.
+ *
+ * <p>Time, coordinates and fixed-point fields are produced with integer arithmetic: a
+ * coordinate is rounded once to 1e-5 minutes and split into degrees and minutes afterwards,
+ * so 59.999999' carries into the next degree instead of printing as 60.0000'. The checksum
+ * is accumulated as the bytes are written. Encoding allocates nothing; an encoder instance is
+ * not thread-safe.
+ */
+public class NmeaEncoder {
+
+    /** Longest sentence written, including the leading '$' and the trailing CR LF. */
+    public static final int MAX_SENTENCE_LENGTH = 96;
+
+    /** GGA fix quality indicators. */
+    public static final int QUALITY_INVALID = 0;
+    public static final int QUALITY_GPS = 1;
+    public static final int QUALITY_DGPS = 2;
+    public static final int QUALITY_RTK_FIXED = 4;
+    public static final int QUALITY_RTK_FLOAT = 5;
+
+    private static final long DAY_MILLIS = 86400000L;
+    private static final int MINUTE_DECIMALS = 5;
+    private static final long MINUTE_SCALE = 100000L;
+    private static final double KNOTS_PER_METER_PER_SECOND = 3600.0 / 1852.0;
+    private static final byte[] HEX = "0123456789ABCDEF".getBytes();
+
+    private byte[] out;
+    private int position;
+    private int checksum;
+
+    /**
+     * Writes a GGA sentence at {@code offset} of {@code dst} and returns its length. NaN
+     * {@code hdop} or {@code altitude} leave the field empty; the geoid separation is
+     * always empty, so the altitude is whatever height {@code altitude} holds.
+     *
+     * @param utcMillis milliseconds since the Unix epoch, only the time of day is written
+     */
+    public int gga(byte[] dst, int offset, long utcMillis, double latitude, double longitude,
+                   int quality, int satellites, double hdop, double altitude) {
+        start(dst, offset, "$GPGGA,");
+        time(utcMillis);
+        comma();
+        position(latitude, longitude);
+        comma();
+        digits(Math.max(0, Math.min(quality, 9)), 1);
+        comma();
+        digits(Math.max(0, Math.min(satellites, 99)), 2);
+        comma();
+        fixed(hdop, 1);
+        comma();
+        fixed(altitude, 3);
+        ascii(",M,,M,,");
+        return end(offset);
+    }
+
+    /**
+     * Writes an RMC sentence at {@code offset} of {@code dst} and returns its length. NaN
+     * {@code speed} or {@code course} leave the field empty.
+     *
+     * @param speed  ground speed in m/s
+     * @param course course over ground in degrees
+     */
+    public int rmc(byte[] dst, int offset, long utcMillis, boolean valid, double latitude,
+                   double longitude, double speed, double course) {
+        start(dst, offset, "$GPRMC,");
+        time(utcMillis);
+        comma();
+        put(valid ? 'A' : 'V');
+        comma();
+        position(latitude, longitude);
+        comma();
+        fixed(speed * KNOTS_PER_METER_PER_SECOND, 2);
+        comma();
+        fixed(course, 1);
+        comma();
+        date(utcMillis);
+        ascii(",,,");
+        put(valid ? 'A' : 'N');
+        return end(offset);
+    }
+
+    private void start(byte[] dst, int offset, String header) {
+        out = dst;
+        position = offset;
+        out[position++] = '$';
+        checksum = 0;
+        for (int i = 1; i < header.length(); i++) {
+            put(header.charAt(i));
+        }
+    }
+
+    private int end(int offset) {
+        int sum = checksum;
+        out[position++] = '*';
+        out[position++] = HEX[(sum >> 4) & 0xF];
+        out[position++] = HEX[sum & 0xF];
+        out[position++] = '\r';
+        out[position++] = '\n';
+        out = null;
+        return position - offset;
+    }
+
+    /** hhmmss.ss of the UTC time of day. */
+    private void time(long utcMillis) {
+        long ms = Math.floorMod(utcMillis, DAY_MILLIS);
+        int seconds = (int) (ms / 1000);
+        digits(seconds / 3600, 2);
+        digits(seconds / 60 % 60, 2);
+        digits(seconds % 60, 2);
+        put('.');
+        digits(ms % 1000 / 10, 2);
+    }
+
+    /** ddmmyy of the UTC date. */
+    private void date(long utcMillis) {
+        // Civil date from days since 1970-01-01 (Howard Hinnant's algorithm)
+        long z = Math.floorDiv(utcMillis, DAY_MILLIS) + 719468;
+        long era = Math.floorDiv(z, 146097);
+        long doe = z - era * 146097;
+        long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+        long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+        long mp = (5 * doy + 2) / 153;
+        int day = (int) (doy - (153 * mp + 2) / 5 + 1);
+        int month = (int) (mp < 10 ? mp + 3 : mp - 9);
+        long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+        digits(day, 2);
+        digits(month, 2);
+        digits(Math.floorMod(year, 100), 2);
+    }
+
+    /** ddmm.mmmmm,N,dddmm.mmmmm,E */
+    private void position(double latitude, double longitude) {
+        coordinate(latitude, 2);
+        comma();
+        put(latitude < 0 ? 'S' : 'N');
+        comma();
+        coordinate(longitude, 3);
+        comma();
+        put(longitude < 0 ? 'W' : 'E');
+    }
+
+    private void coordinate(double degrees, int degreeDigits) {
+        long scaled = Math.round(Math.abs(degrees) * 60 * MINUTE_SCALE);
+        long minutesPerDegree = 60 * MINUTE_SCALE;
+        digits(scaled / minutesPerDegree, degreeDigits);
+        long minutes = scaled % minutesPerDegree;
+        digits(minutes / MINUTE_SCALE, 2);
+        put('.');
+        digits(minutes % MINUTE_SCALE, MINUTE_DECIMALS);
+    }
+
+    /** {@code value} rounded to {@code decimals} places; nothing for NaN. */
+    private void fixed(double value, int decimals) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) {
+            scale *= 10;
+        }
+        long scaled = Math.round(value * scale);
+        if (scaled < 0) {
+            put('-');
+            scaled = -scaled;
+        }
+        digits(scaled / scale, 1);
+        put('.');
+        digits(scaled % scale, decimals);
+    }
+
+    /** Non-negative {@code value} zero-padded to at least {@code width} digits. */
+    private void digits(long value, int width) {
+        long s = 1;
+        for (int i = 1; i < width || s <= value / 10; i++) {
+            s *= 10;
+        }
+        for (; s > 0; s /= 10) {
+            put((char) ('0' + value / s % 10));
+        }
+    }
+
+    private void ascii(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            put(s.charAt(i));
+        }
+    }
+
+    private void comma() {
+        put(',');
+    }
+
+    private void put(char c) {
+        out[position++] = (byte) c;
+        checksum ^= c;
+    }
+}
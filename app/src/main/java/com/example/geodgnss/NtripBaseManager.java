@@ -0,0 +1,336 @@
+package com.example.geodgnss;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the rover on the nearest reference station of one caster.
+ *
+ * <p>The caster's sourcetable is loaded from a cache younger than a day or downloaded, and its
+ * single-base RTCM 3 mountpoints are indexed by position. Every position update looks up the
+ * nearest bases; a switch happens only when a base is clearly closer than the current one,
+ * so the rover does not flap between two stations at similar range. The new stream is opened
+ * next to the current one and promoted when its first data arrives, so corrections never
+ * stop during a switch. With hot standby the next-nearest base is kept streaming too and
+ * takes over at once when the active stream drops.
+ *
+ * <p>Until a table and a position are known, corrections come from the fallback mountpoint.
+ * All streams share one buffer pool, and only the active stream's data reaches the listener.
+ */
+public class NtripBaseManager {
+
+    public interface Listener extends NtripClient.NtripCallback {
+        /**
+         * Called when corrections start coming from another mountpoint. The distance is
+         * NaN for the fallback mountpoint or while the position is unknown.
+         */
+        void onBaseChanged(String mountpoint, double distanceMeters);
+    }
+
+    /** A closer base must be this much closer, and below the ratio, to be switched to. */
+    public static final double SWITCH_MIN_GAIN_M = 2000;
+    public static final double SWITCH_MAX_RATIO = 0.8;
+
+    private static final int FETCH_TIMEOUT_MS = 15000;
+
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+    private final String fallbackMountpoint;
+    private final File cacheFile;
+    private final DirectBufferPool bufferPool =
+            new DirectBufferPool(NtripClient.RECEIVE_BUFFERS, NtripClient.RECEIVE_BUFFER_SIZE);
+
+    private volatile boolean hotStandby;
+    private volatile MountpointIndex index;
+    // The last GGA sentence, for streams opened later; guarded by gga
+    private final byte[] gga = new byte[NmeaEncoder.MAX_SENTENCE_LENGTH];
+    private int ggaLength;
+    private Listener listener;
+
+    // Written under the lock, read without it on the data path
+    private volatile boolean running;
+    private volatile Stream active;
+    private volatile Stream pending;
+    private volatile Stream standby;
+
+    // Guarded by this
+    private boolean hasPosition;
+    private double latitude;
+    private double longitude;
+    private boolean reportedConnected;
+    private final Sourcetable.Mountpoint[] candidates = new Sourcetable.Mountpoint[2];
+
+    /**
+     * @param fallbackMountpoint used before a base is chosen, may be null
+     * @param cacheFile          where the sourcetable is kept between runs, may be null
+     */
+    public NtripBaseManager(String host, int port, String username, String password,
+                            String fallbackMountpoint, File cacheFile) {
+        this.host = host;
+        this.port = port;
+        this.username = username;
+        this.password = password;
+        this.fallbackMountpoint = fallbackMountpoint;
+        this.cacheFile = cacheFile;
+    }
+
+    /** Keeps the next-nearest base streaming so a dropped stream is replaced at once. */
+    public void setHotStandby(boolean hotStandby) {
+        this.hotStandby = hotStandby;
+    }
+
+    /** Uses {@code table} instead of loading one. */
+    public void setSourcetable(Sourcetable table) {
+        List<Sourcetable.Mountpoint> bases = new ArrayList<>();
+        for (Sourcetable.Mountpoint m : table.getMountpoints()) {
+            if (m.isSingleBaseRtcm3()) {
+                bases.add(m);
+            }
+        }
+        index = new MountpointIndex(bases);
+        synchronized (this) {
+            reselect();
+        }
+    }
+
+    public synchronized void start(Listener listener) {
+        if (running) return;
+        this.listener = listener;
+        running = true;
+        if (fallbackMountpoint != null) {
+            pending = open(null, fallbackMountpoint);
+        }
+        if (index == null) {
+            new Thread(this::loadSourcetable, "NtripSourcetable").start();
+        } else {
+            reselect();
+        }
+    }
+
+    public synchronized void stop() {
+        running = false;
+        for (Stream s : new Stream[]{active, pending, standby}) {
+            if (s != null) s.client.disconnect();
+        }
+        active = null;
+        pending = null;
+        standby = null;
+        report(false);
+    }
+
+    /** Feeds the rover position; cheap enough to call on every location fix. */
+    public synchronized void updatePosition(double latitude, double longitude) {
+        this.latitude = latitude;
+        this.longitude = longitude;
+        hasPosition = true;
+        reselect();
+    }
+
+    /** Sends the GGA to every open stream and remembers it for streams opened later. */
+    public void sendGga(String gga) {
+        byte[] bytes = gga.getBytes(StandardCharsets.US_ASCII);
+        sendGga(bytes, 0, bytes.length);
+    }
+
+    /** As {@link #sendGga(String)}, copying the sentence without allocating. */
+    public void sendGga(byte[] src, int offset, int length) {
+        if (length > gga.length) return;
+        synchronized (gga) {
+            System.arraycopy(src, offset, gga, 0, length);
+            ggaLength = length;
+        }
+        Stream active = this.active;
+        Stream pending = this.pending;
+        Stream standby = this.standby;
+        if (active != null) active.client.sendGga(src, offset, length);
+        if (pending != null) pending.client.sendGga(src, offset, length);
+        if (standby != null) standby.client.sendGga(src, offset, length);
+    }
+
+    /** Hands a buffer received in {@link Listener#onRtcmDataReceived} back to the pool. */
+    public void releaseBuffer(ByteBuffer buffer) {
+        bufferPool.release(buffer);
+        Stream s;
+        if ((s = active) != null) s.client.bufferReleased();
+        if ((s = pending) != null) s.client.bufferReleased();
+        if ((s = standby) != null) s.client.bufferReleased();
+    }
+
+    /** Mountpoint currently feeding the listener, or null. */
+    public String getActiveMountpoint() {
+        Stream s = active;
+        return s == null ? null : s.name;
+    }
+
+    public String getStandbyMountpoint() {
+        Stream s = standby;
+        return s == null ? null : s.name;
+    }
+
+    static boolean shouldSwitch(double currentMeters, double candidateMeters) {
+        return candidateMeters < currentMeters * SWITCH_MAX_RATIO
+                && currentMeters - candidateMeters > SWITCH_MIN_GAIN_M;
+    }
+
+    private void loadSourcetable() {
+        Sourcetable table = cacheFile == null ? null
+                : Sourcetable.loadCache(cacheFile, Sourcetable.DEFAULT_MAX_AGE_MS);
+        if (table == null) {
+            try {
+                table = Sourcetable.fetch(host, port, username, password, FETCH_TIMEOUT_MS);
+                if (cacheFile != null) {
+                    table.saveCache(cacheFile);
+                }
+            } catch (IOException e) {
+                listener.onError("Sourcetable: " + e.getMessage());
+                if (table == null) return;
+            }
+        }
+        setSourcetable(table);
+    }
+
+    /** Moves to the nearest base if it is clearly better, and refreshes the standby. */
+    private void reselect() {
+        MountpointIndex idx = index;
+        if (!running || idx == null || !hasPosition) return;
+        int n = idx.nearest(latitude, longitude, candidates);
+        if (n == 0) return;
+
+        Stream current = pending != null ? pending : active;
+        Sourcetable.Mountpoint best = candidates[0];
+        if (current == null || current.base == null
+                || (current.base != best && shouldSwitch(distance(current.base), distance(best)))) {
+            switchTo(best);
+            current = pending != null ? pending : active;
+        }
+
+        if (!hotStandby) {
+            if (standby != null) {
+                standby.client.disconnect();
+                standby = null;
+            }
+            return;
+        }
+        Sourcetable.Mountpoint next = null;
+        for (int i = 0; i < n && next == null; i++) {
+            if (candidates[i] != current.base) next = candidates[i];
+        }
+        if (next != null && (standby == null || standby.base != next)) {
+            if (standby != null) standby.client.disconnect();
+            standby = open(next, next.name);
+        }
+    }
+
+    private void switchTo(Sourcetable.Mountpoint base) {
+        if (pending != null && pending.base == base) return;
+        if (pending != null) {
+            pending.client.disconnect();
+            pending = null;
+        }
+        if (standby != null && standby.base == base) {
+            Stream s = standby;
+            standby = null;
+            if (s.streaming) {
+                promote(s);
+            } else {
+                pending = s;
+            }
+            return;
+        }
+        pending = open(base, base.name);
+    }
+
+    private Stream open(Sourcetable.Mountpoint base, String name) {
+        Stream s = new Stream(base, name);
+        s.client.connect(s);
+        synchronized (gga) {
+            if (ggaLength > 0) {
+                s.client.sendGga(gga, 0, ggaLength);
+            }
+        }
+        return s;
+    }
+
+    /** Makes {@code s} the stream whose data reaches the listener. */
+    private synchronized void promote(Stream s) {
+        if (s == active || !running) return;
+        if (s == pending) pending = null;
+        if (s == standby) standby = null;
+        Stream old = active;
+        active = s;
+        if (old != null) {
+            if (hotStandby && standby == null && old.base != null) {
+                standby = old;
+            } else {
+                old.client.disconnect();
+            }
+        }
+        listener.onBaseChanged(s.name, s.base == null || !hasPosition
+                ? Double.NaN : distance(s.base));
+        report(s.streaming);
+    }
+
+    private synchronized void statusChanged(Stream s, boolean connected) {
+        if (s != active) return;
+        Stream backup = standby;
+        if (!connected && backup != null && backup.streaming) {
+            promote(backup);
+            reselect();
+            return;
+        }
+        report(connected);
+    }
+
+    private void report(boolean connected) {
+        if (connected != reportedConnected && listener != null) {
+            reportedConnected = connected;
+            listener.onConnectionStatusChanged(connected);
+        }
+    }
+
+    private double distance(Sourcetable.Mountpoint base) {
+        return MountpointIndex.distanceMeters(latitude, longitude, base);
+    }
+
+    private class Stream implements NtripClient.NtripCallback {
+        final Sourcetable.Mountpoint base; // null for the fallback mountpoint
+        final String name;
+        final NtripClient client;
+        volatile boolean streaming;
+
+        Stream(Sourcetable.Mountpoint base, String name) {
+            this.base = base;
+            this.name = name;
+            client = new NtripClient(host, port, name, username, password, bufferPool);
+        }
+
+        @Override
+        public void onRtcmDataReceived(ByteBuffer data) {
+            if (this == pending) {
+                promote(this);
+            }
+            if (this == active) {
+                listener.onRtcmDataReceived(data);
+            } else {
+                releaseBuffer(data);
+            }
+        }
+
+        @Override
+        public void onConnectionStatusChanged(boolean connected) {
+            streaming = connected;
+            statusChanged(this, connected);
+        }
+
+        @Override
+        public void onError(String message) {
+            listener.onError(name + ": " + message);
+        }
+    }
+}
@@ -1,46 +1,109 @@
 package com.example.geodgnss;
 
-import android.util.Base64;
-import android.util.Log;
-
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.net.Socket;
-import java.util.Arrays;
-
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
 
+/**
+ * NTRIP client running on a single I/O thread around a {@link Selector}.
+ *
+ * <p>The thread connects, sends the NTRIP 1.0 or 2.0 request, parses the caster's response
+ * header and then hands the correction stream to the callback in pooled direct buffers,
+ * removing HTTP chunked framing in place for 2.0 casters. A connection that does not open
+ * within the connect timeout, or that stays silent for the read timeout, is dropped and
+ * reopened after an exponentially growing delay. The last GGA sentence is sent again on
+ * every new connection, so VRS and nearest-base mountpoints resume without waiting for the
+ * next GGA interval.
+ *
+ * <p>{@link #sendGga} and {@link #disconnect} may be called from any thread; they only hand
+ * work to the I/O thread. A disconnected client can be connected again.
+ */
 public class NtripClient {
-    private static final String TAG = "NtripClient";
-    private Socket socket;
-    private BufferedWriter writer;
-    private BufferedReader reader;
-    private Thread connectionThread;
-    private boolean isRunning = false;
+    public enum Version { V1, V2 }
 
-    // NTRIP parameters
-    private String serverIp;
-    private int serverPort;
-    private String mountPoint;
-    private String username;
-    private String password;
+    // Receive buffers, passed to the callback and handed back through releaseBuffer
+    public static final int RECEIVE_BUFFERS = 16;
+    public static final int RECEIVE_BUFFER_SIZE = 16 * 1024;
+
+    public static final long DEFAULT_CONNECT_TIMEOUT_MS = 10000;
+    public static final long DEFAULT_READ_TIMEOUT_MS = 15000;
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 1000;
+    public static final long DEFAULT_MAX_BACKOFF_MS = 60000;
 
     // Add this constant
     public static final int GGA_INTERVAL = 30000; // 30 seconds
 
+    private static final int MAX_REQUEST_SIZE = 2048;
+    private static final int MAX_SENTENCE_LENGTH = 256;
 
+    private enum State { CONNECTING, HEADER, STREAMING }
 
     public interface NtripCallback {
-        void onRtcmDataReceived(byte[] data);
+        /**
+         * Called on the I/O thread for every read. The bytes are between the position and
+         * the limit of {@code data}, a pooled direct buffer now owned by the callee, which
+         * must pass it to {@link #releaseBuffer} once done, from any thread. While the
+         * callee holds every buffer the client stops reading and TCP pushes back.
+         */
+        void onRtcmDataReceived(ByteBuffer data);
+        /** Called on the I/O thread when a stream starts and when it is lost. */
         void onConnectionStatusChanged(boolean connected);
         void onError(String message);
     }
 
+    private final DirectBufferPool bufferPool;
+
+    // NTRIP parameters
+    private final String serverIp;
+    private final int serverPort;
+    private final String mountPoint;
+    private final String username;
+    private final String password;
+    private volatile Version version = Version.V1;
+    private volatile long connectTimeoutMs = DEFAULT_CONNECT_TIMEOUT_MS;
+    private volatile long readTimeoutMs = DEFAULT_READ_TIMEOUT_MS;
+    private volatile long initialBackoffMs = DEFAULT_INITIAL_BACKOFF_MS;
+    private volatile long maxBackoffMs = DEFAULT_MAX_BACKOFF_MS;
+
+    // Shared between callers and the I/O thread
+    private volatile boolean isRunning;
+    private volatile boolean starved;
+    private volatile Selector selector;
+    // The last GGA line, CR LF included, and whether it still has to go out; guarded by gga
+    private final byte[] gga = new byte[MAX_SENTENCE_LENGTH];
+    private int ggaLength;
+    private boolean ggaPending;
+    private volatile long bytesReceived;
+    private volatile int connections;
+    private Thread ioThread;
+
+    // Owned by the I/O thread
+    private NtripCallback callback;
+    private SocketChannel channel;
+    private SelectionKey key;
+    private State state;
+    private long deadlineNanos;
+    private ByteBuffer headerBuffer;
+    private boolean isChunked;
+    private final ChunkedDecoder chunkedDecoder = new ChunkedDecoder();
+    private final ByteBuffer outbound = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+
     public NtripClient(String serverIp, int serverPort, String mountPoint,
                        String username, String password) {
+        this(serverIp, serverPort, mountPoint, username, password,
+                new DirectBufferPool(RECEIVE_BUFFERS, RECEIVE_BUFFER_SIZE));
+    }
+
+    /** Receives into {@code bufferPool}, which several clients may share. */
+    public NtripClient(String serverIp, int serverPort, String mountPoint,
+                       String username, String password, DirectBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
         this.serverIp = serverIp;
         this.serverPort = serverPort;
         this.mountPoint = mountPoint;
@@ -48,80 +111,558 @@ public class NtripClient {
         this.password = password;
     }
 
-    public void connect(NtripCallback callback) {
+    public void setVersion(Version version) {
+        this.version = version;
+    }
+
+    public void setConnectTimeoutMs(long connectTimeoutMs) {
+        this.connectTimeoutMs = connectTimeoutMs;
+    }
+
+    /** A stream that delivers nothing for this long is treated as dead and reopened. */
+    public void setReadTimeoutMs(long readTimeoutMs) {
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    /** Reconnect delays start at {@code initialMs} and double per failed attempt. */
+    public void setReconnectBackoff(long initialMs, long maxMs) {
+        this.initialBackoffMs = initialMs;
+        this.maxBackoffMs = maxMs;
+    }
+
+    /** Starts the I/O thread; it keeps the stream open until {@link #disconnect}. */
+    public synchronized void connect(NtripCallback callback) {
         if (isRunning) return;
+        awaitStopped();
+        try {
+            selector = Selector.open();
+        } catch (IOException e) {
+            callback.onError("Connection error: " + e.getMessage());
+            return;
+        }
+        this.callback = callback;
+        isRunning = true;
+        ioThread = new Thread(this::run, "NtripClient");
+        ioThread.start();
+    }
+
+    public void disconnect() {
+        isRunning = false;
+        wakeup();
+    }
+
+    /** Hands a buffer received in {@link NtripCallback#onRtcmDataReceived} back to the pool. */
+    public void releaseBuffer(ByteBuffer buffer) {
+        bufferPool.release(buffer);
+        bufferReleased();
+    }
+
+    /** Resumes reading if the client stalled on an empty pool; for shared pools. */
+    void bufferReleased() {
+        if (starved) {
+            wakeup();
+        }
+    }
+
+    /**
+     * Queues a GGA sentence for the caster. Only the newest unsent sentence is kept, and it is
+     * remembered for the next connection.
+     */
+    public void sendGga(String ggaSentence) {
+        byte[] bytes = ggaSentence.getBytes(StandardCharsets.US_ASCII);
+        sendGga(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Queues the GGA sentence in {@code length} bytes of {@code src} at {@code offset}, with
+     * or without its CR LF, as {@link #sendGga(String)} does. The bytes are copied, so the
+     * caller may reuse {@code src}; nothing is allocated.
+     */
+    public void sendGga(byte[] src, int offset, int length) {
+        while (length > 0 && src[offset + length - 1] <= ' ') {
+            length--;
+        }
+        while (length > 0 && src[offset] <= ' ') {
+            offset++;
+            length--;
+        }
+        if (length == 0 || length + 2 > MAX_SENTENCE_LENGTH) return;
+        synchronized (gga) {
+            System.arraycopy(src, offset, gga, 0, length);
+            gga[length] = '\r';
+            gga[length + 1] = '\n';
+            ggaLength = length + 2;
+            ggaPending = true;
+        }
+        wakeup();
+    }
+
+    public String getMountPoint() {
+        return mountPoint;
+    }
+
+    public boolean isRunning() {
+        return isRunning;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /** Number of streams that reached the data phase, including reconnects. */
+    public int getConnections() {
+        return connections;
+    }
 
-        connectionThread = new Thread(() -> {
+    private void wakeup() {
+        Selector s = selector;
+        if (s != null) {
+            s.wakeup();
+        }
+    }
+
+    private void awaitStopped() {
+        Thread previous = ioThread;
+        if (previous != null && previous != Thread.currentThread()) {
             try {
-                socket = new Socket(serverIp, serverPort);
-                writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
-                reader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-
-                // Send NTRIP request
-                String auth = Base64.encodeToString((username + ":" + password).getBytes(), Base64.NO_WRAP);
-                String request = "GET /" + mountPoint + " HTTP/1.1\r\n" +
-                        "User-Agent: NTRIP AndroidClient\r\n" +
-                        "Authorization: Basic " + auth + "\r\n\r\n";
-                writer.write(request);
-                writer.flush();
-
-                // Read response
-                String response = reader.readLine();
-                if (response != null && response.contains("200")) {
-                    isRunning = true;
-                    callback.onConnectionStatusChanged(true);
-                    readRtcmData(callback);
-                } else {
-                    callback.onError("Connection failed: " + response);
-                }
-            } catch (IOException e) {
-                callback.onError("Connection error: " + e.getMessage());
+                previous.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
-        });
-        connectionThread.start();
+        }
     }
 
-    private void readRtcmData(NtripCallback callback) {
+    private void run() {
+        int failures = 0;
         try {
-            InputStream input = socket.getInputStream();
-            byte[] buffer = new byte[4096];
-            int bytesRead;
+            while (isRunning) {
+                boolean streamed = session();
+                if (!isRunning) break;
+                failures = streamed ? 0 : failures + 1;
+                long delay = backoffDelay(failures);
+                callback.onError("Reconnecting in " + delay + " ms");
+                pause(delay);
+            }
+        } catch (IOException e) {
+            callback.onError("Connection error: " + e.getMessage());
+        } finally {
+            isRunning = false;
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    long backoffDelay(int failures) {
+        long delay = initialBackoffMs << Math.min(failures, 20);
+        return Math.min(delay, maxBackoffMs);
+    }
 
-            while (isRunning && (bytesRead = input.read(buffer)) != -1) {
-                byte[] rtcmData = Arrays.copyOf(buffer, bytesRead);
-                callback.onRtcmDataReceived(rtcmData);
+    private void pause(long delayMs) throws IOException {
+        long until = System.nanoTime() + delayMs * 1000000L;
+        while (isRunning) {
+            long left = (until - System.nanoTime()) / 1000000L;
+            if (left <= 0) return;
+            selector.select(left);
+            selector.selectedKeys().clear();
+        }
+    }
+
+    /** Runs one connection until it fails or the client stops; true if data flowed. */
+    private boolean session() throws IOException {
+        try {
+            open();
+            while (isRunning) {
+                long left = (deadlineNanos - System.nanoTime()) / 1000000L;
+                if (left <= 0) {
+                    throw new IOException(state == State.CONNECTING
+                            ? "Connect timed out" : "No data for " + readTimeoutMs + " ms");
+                }
+                selector.select(left);
+                // Ready ops are stale unless the key was selected; a wakeup selects nothing
+                boolean ready = selector.selectedKeys().remove(key);
+                if (!isRunning) break;
+                handleReady(ready);
             }
         } catch (IOException e) {
-            callback.onError("Data read error: " + e.getMessage());
+            if (isRunning) {
+                callback.onError("Connection error: " + e.getMessage());
+            }
         } finally {
-            disconnect();
+            close();
         }
+        return state == State.STREAMING;
     }
 
-    // Modify sendGga method
-    public void sendGga(String ggaSentence) {
-        if (writer != null && isRunning && !ggaSentence.isEmpty()) {
-            // Execute network operations in background thread
-            new Thread(() -> {
-                try {
-                    String nmea = ggaSentence + "\r\n";
-                    writer.write(nmea);
-                    writer.flush();
-                    Log.d(TAG, "Sent GGA: " + nmea.trim());
-                } catch (IOException e) {
-                    Log.e(TAG, "Error sending GGA: " + e.getMessage());
+    private void open() throws IOException {
+        state = State.CONNECTING;
+        isChunked = false;
+        chunkedDecoder.reset();
+        outbound.clear().flip();
+        deadlineNanos = System.nanoTime() + connectTimeoutMs * 1000000L;
+        channel = SocketChannel.open();
+        channel.configureBlocking(false);
+        key = channel.register(selector, SelectionKey.OP_CONNECT);
+        if (channel.connect(new InetSocketAddress(serverIp, serverPort))) {
+            connected();
+        }
+    }
+
+    private void handleReady(boolean ready) throws IOException {
+        if (state == State.CONNECTING) {
+            if (ready && key.isConnectable() && channel.finishConnect()) {
+                connected();
+            }
+            return;
+        }
+        if (ready && key.isWritable()) {
+            flush();
+        }
+        if (ready && key.isReadable()) {
+            if (state == State.HEADER) {
+                readHeader();
+            } else {
+                readData();
+            }
+        }
+        if (starved) {
+            // Consumer is holding every buffer; not reading is not a dead stream
+            deadlineNanos = System.nanoTime() + readTimeoutMs * 1000000L;
+            if (bufferPool.getAvailable() > 0) {
+                starved = false;
+                interest(SelectionKey.OP_READ, true);
+            }
+        }
+        if (state == State.STREAMING && !outbound.hasRemaining()) {
+            boolean pending;
+            synchronized (gga) {
+                pending = ggaPending;
+                if (pending) {
+                    ggaPending = false;
+                    outbound.clear();
+                    outbound.put(gga, 0, ggaLength).flip();
                 }
-            }).start();
+            }
+            if (pending) {
+                flush();
+            }
         }
     }
-    public void disconnect() {
-        isRunning = false;
+
+    private void connected() throws IOException {
+        state = State.HEADER;
+        deadlineNanos = System.nanoTime() + readTimeoutMs * 1000000L;
+        key.interestOps(SelectionKey.OP_READ);
+
+        // The remembered GGA goes out with the request, as VRS casters wait for it: in the
+        // Ntrip-GGA header for 2.0, as a line straight after the request for 1.0
+        synchronized (gga) {
+            ggaPending = false;
+            String line = ggaLength > 0
+                    ? new String(gga, 0, ggaLength - 2, StandardCharsets.US_ASCII) : null;
+            outbound.clear();
+            outbound.put(request(line).getBytes(StandardCharsets.US_ASCII));
+            if (line != null && version == Version.V1) {
+                outbound.put(gga, 0, ggaLength);
+            }
+        }
+        outbound.flip();
+        flush();
+    }
+
+    private String request(String gga) {
+        String auth = Base64.getEncoder().encodeToString(
+                (username + ":" + password).getBytes(StandardCharsets.UTF_8));
+        if (version == Version.V1) {
+            return "GET /" + mountPoint + " HTTP/1.0\r\n" +
+                    "User-Agent: NTRIP GeoDGNSS/1.0\r\n" +
+                    "Authorization: Basic " + auth + "\r\n\r\n";
+        }
+        String request = "GET /" + mountPoint + " HTTP/1.1\r\n" +
+                "Host: " + serverIp + ":" + serverPort + "\r\n" +
+                "Ntrip-Version: Ntrip/2.0\r\n" +
+                "User-Agent: NTRIP GeoDGNSS/2.0\r\n";
+        if (gga != null) {
+            request += "Ntrip-GGA: " + gga + "\r\n";
+        }
+        return request + "Authorization: Basic " + auth + "\r\n" +
+                "Connection: close\r\n\r\n";
+    }
+
+    private void flush() throws IOException {
+        channel.write(outbound);
+        interest(SelectionKey.OP_WRITE, outbound.hasRemaining());
+    }
+
+    private void interest(int op, boolean on) {
+        int ops = key.interestOps();
+        key.interestOps(on ? ops | op : ops & ~op);
+    }
+
+    /** Collects the response header in the first receive buffer, then starts the stream. */
+    private void readHeader() throws IOException {
+        if (headerBuffer == null) {
+            headerBuffer = acquire();
+            if (headerBuffer == null) return;
+        }
+        if (channel.read(headerBuffer) < 0) {
+            int lineEnd = indexOf(headerBuffer, 0, headerBuffer.position(), "\r\n");
+            throw new IOException(lineEnd < 0 ? "Connection closed by caster"
+                    : "Connection failed: " + text(headerBuffer, lineEnd));
+        }
+        deadlineNanos = System.nanoTime() + readTimeoutMs * 1000000L;
+
+        int dataStart = headerEnd(headerBuffer);
+        if (dataStart < 0) {
+            if (!headerBuffer.hasRemaining()) {
+                throw new IOException("Response header too long");
+            }
+            return;
+        }
+        String header = text(headerBuffer, dataStart);
+        String status = header.substring(0, header.indexOf("\r\n"));
+        if (status.startsWith("SOURCETABLE")) {
+            throw new IOException("Mountpoint " + mountPoint + " not found");
+        }
+        if (!status.matches("(ICY|HTTP/1\\.[01]) 200\\b.*")) {
+            throw new IOException("Connection failed: " + status);
+        }
+        isChunked = header.toLowerCase(Locale.US).contains("\r\ntransfer-encoding: chunked");
+
+        state = State.STREAMING;
+        connections++;
+        callback.onConnectionStatusChanged(true);
+
+        ByteBuffer first = headerBuffer;
+        headerBuffer = null;
+        first.limit(first.position()).position(dataStart);
+        deliver(first);
+    }
+
+    private void readData() throws IOException {
+        ByteBuffer buffer = acquire();
+        if (buffer == null) return;
+        int bytesRead;
+        try {
+            bytesRead = channel.read(buffer);
+        } catch (IOException e) {
+            bufferPool.release(buffer);
+            throw e;
+        }
+        if (bytesRead < 0) {
+            bufferPool.release(buffer);
+            throw new IOException("Connection closed by caster");
+        }
+        if (bytesRead > 0) {
+            deadlineNanos = System.nanoTime() + readTimeoutMs * 1000000L;
+        }
+        buffer.flip();
+        deliver(buffer);
+    }
+
+    /** Takes a free receive buffer, or stops reading until the consumer returns one. */
+    private ByteBuffer acquire() throws IOException {
+        ByteBuffer buffer;
+        try {
+            buffer = bufferPool.acquire(0);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted");
+        }
+        if (buffer == null) {
+            starved = true;
+            interest(SelectionKey.OP_READ, false);
+        }
+        return buffer;
+    }
+
+    private void deliver(ByteBuffer buffer) throws IOException {
+        boolean more = true;
+        if (isChunked) {
+            more = chunkedDecoder.decode(buffer);
+        }
+        if (buffer.hasRemaining()) {
+            bytesReceived += buffer.remaining();
+            callback.onRtcmDataReceived(buffer);
+        } else {
+            bufferPool.release(buffer);
+        }
+        if (!more) {
+            throw new IOException("Stream ended by caster");
+        }
+    }
+
+    private void close() {
+        if (headerBuffer != null) {
+            bufferPool.release(headerBuffer);
+            headerBuffer = null;
+        }
         try {
-            if (writer != null) writer.close();
-            if (reader != null) reader.close();
-            if (socket != null) socket.close();
+            if (channel != null) channel.close();
+            selector.selectNow(); // flush the cancelled key
         } catch (IOException e) {
-            Log.e(TAG, "Disconnect error: " + e.getMessage());
+            callback.onError("Disconnect error: " + e.getMessage());
+        }
+        channel = null;
+        key = null;
+        starved = false;
+        if (state == State.STREAMING) {
+            callback.onConnectionStatusChanged(false);
+        }
+    }
+
+    /**
+     * Returns the index where the stream data starts, or -1 while the header is incomplete.
+     * NTRIP 1.0 data may follow the ICY status line directly or after a blank line; there is
+     * no waiting for more, since VRS casters send nothing before a GGA and a late blank line
+     * is skipped by the framer like any other stray byte.
+     */
+    static int headerEnd(ByteBuffer buffer) {
+        int lineEnd = indexOf(buffer, 0, buffer.position(), "\r\n");
+        if (lineEnd < 3) {
+            return -1;
+        }
+        if (buffer.get(0) == 'I' && buffer.get(1) == 'C' && buffer.get(2) == 'Y') {
+            int end = lineEnd + 2;
+            if (indexOf(buffer, end, buffer.position(), "\r\n") == end) {
+                end += 2;
+            }
+            return end;
+        }
+        int headerEnd = indexOf(buffer, 0, buffer.position(), "\r\n\r\n");
+        return headerEnd < 0 ? -1 : headerEnd + 4;
+    }
+
+    private static String text(ByteBuffer buffer, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static int indexOf(ByteBuffer buffer, int from, int to, String pattern) {
+        outer:
+        for (int i = from; i <= to - pattern.length(); i++) {
+            for (int k = 0; k < pattern.length(); k++) {
+                if (buffer.get(i + k) != pattern.charAt(k)) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Removes HTTP/1.1 chunked transfer framing in place. The payload never takes more room
+     * than its framing, so it is moved towards the start of the same buffer.
+     */
+    static final class ChunkedDecoder {
+        private static final int SIZE = 0;
+        private static final int EXTENSION = 1;
+        private static final int SIZE_LF = 2;
+        private static final int DATA = 3;
+        private static final int DATA_CR = 4;
+        private static final int DATA_LF = 5;
+        private static final int DONE = 6;
+
+        private int state;
+        private int remaining;
+        private boolean sawDigit;
+
+        void reset() {
+            state = SIZE;
+            remaining = 0;
+            sawDigit = false;
+        }
+
+        /**
+         * Decodes the bytes between position and limit; afterwards position to limit holds
+         * only payload. Returns false once the terminating zero-size chunk has been seen.
+         */
+        boolean decode(ByteBuffer b) throws IOException {
+            int start = b.position();
+            int in = start;
+            int out = start;
+            int end = b.limit();
+            while (in < end && state != DONE) {
+                if (state == DATA) {
+                    int n = Math.min(remaining, end - in);
+                    if (out != in) {
+                        for (int k = 0; k < n; k++) {
+                            b.put(out + k, b.get(in + k));
+                        }
+                    }
+                    in += n;
+                    out += n;
+                    remaining -= n;
+                    if (remaining == 0) {
+                        state = DATA_CR;
+                    }
+                    continue;
+                }
+                byte c = b.get(in++);
+                switch (state) {
+                    case SIZE:
+                        int digit = Character.digit(c, 16);
+                        if (digit >= 0) {
+                            if (remaining > 0x7FFFFFF) {
+                                throw new IOException("Chunk too large");
+                            }
+                            remaining = remaining * 16 + digit;
+                            sawDigit = true;
+                        } else if (c == ';' || c == ' ' || c == '\t') {
+                            state = EXTENSION;
+                        } else if (c == '\r') {
+                            state = SIZE_LF;
+                        } else if (c == '\n') {
+                            endOfSize();
+                        } else {
+                            throw new IOException("Bad chunk size");
+                        }
+                        break;
+                    case EXTENSION:
+                        if (c == '\r') {
+                            state = SIZE_LF;
+                        } else if (c == '\n') {
+                            endOfSize();
+                        }
+                        break;
+                    case SIZE_LF:
+                        if (c != '\n') {
+                            throw new IOException("Bad chunk size");
+                        }
+                        endOfSize();
+                        break;
+                    case DATA_CR:
+                        if (c == '\n') {
+                            state = SIZE;
+                        } else if (c == '\r') {
+                            state = DATA_LF;
+                        } else {
+                            throw new IOException("Missing chunk terminator");
+                        }
+                        break;
+                    case DATA_LF:
+                        if (c != '\n') {
+                            throw new IOException("Missing chunk terminator");
+                        }
+                        state = SIZE;
+                        break;
+                }
+            }
+            b.limit(out).position(start);
+            return state != DONE;
+        }
+
+        private void endOfSize() throws IOException {
+            if (!sawDigit) {
+                throw new IOException("Bad chunk size");
+            }
+            sawDigit = false;
+            state = remaining == 0 ? DONE : DATA;
         }
     }
 }
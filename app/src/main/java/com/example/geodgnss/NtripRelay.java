@@ -0,0 +1,589 @@
+package com.example.geodgnss;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A small NTRIP caster serving one upstream stream: a single {@link NtripClient} connection
+ * to the real caster, fanned out to any number of rovers on the local network.
+ *
+ * <p>Everything downstream runs on one I/O thread around a {@link Selector}. Each receive
+ * buffer from the upstream client is queued, unchanged, on every streaming rover, with a
+ * count of the rovers still holding it; the buffer goes back to the upstream pool when the
+ * last of them has written it. Nothing is copied or allocated per buffer or per rover: a
+ * write sets the shared buffer's position and limit to the rover's place in it, which is
+ * safe because only the I/O thread touches them.
+ *
+ * <p>A rover that falls {@link #BACKLOG_CHUNKS} buffers behind loses its backlog and skips to
+ * the newest data (RTCM frames are CRC-checked, so its decoder just resynchronises); one
+ * that makes no write progress for the stall timeout is disconnected. Rovers therefore only
+ * ever hold the newest {@link #BACKLOG_CHUNKS} buffers between them, and a slow one can
+ * stall neither the upstream stream nor the other rovers.
+ *
+ * <p>Rovers connect with NTRIP 1.0 or 2.0. The 2.0 reply is not chunked and ends with the
+ * connection, which HTTP/1.1 allows. {@code GET /} returns a one-line sourcetable.
+ */
+public class NtripRelay implements NtripClient.NtripCallback {
+
+    /** Buffers a rover may fall behind before its backlog is dropped. */
+    public static final int BACKLOG_CHUNKS = 32;
+    /** Upstream receive buffers, enough for every rover's backlog plus the newest data. */
+    public static final int UPSTREAM_BUFFERS = 2 * BACKLOG_CHUNKS;
+    public static final int DEFAULT_MAX_CLIENTS = 1000;
+    public static final long DEFAULT_STALL_TIMEOUT_MS = 10000;
+    public static final long REQUEST_TIMEOUT_MS = 5000;
+    // Per rover: plenty for correction rates, and keeps a stalled rover from hiding
+    // megabytes in the kernel before its backlog starts to count
+    public static final int SOCKET_SEND_BUFFER = 64 * 1024;
+
+    private static final int MAX_REQUEST_SIZE = 2048;
+    private static final long TIMER_MS = 250;
+
+    private enum State { REQUEST, STREAMING, CLOSING }
+
+    /** One upstream receive buffer and the rovers still holding it. I/O thread only. */
+    private static final class Chunk {
+        final ByteBuffer buffer;
+        int start;
+        int end;
+        int references;
+
+        Chunk(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    /** One rover connection. I/O thread only. */
+    private final class Client {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final long connectedNanos;
+        State state = State.REQUEST;
+        ByteBuffer request = ByteBuffer.allocate(MAX_REQUEST_SIZE);
+        ByteBuffer reply;
+        final Chunk[] backlog = new Chunk[BACKLOG_CHUNKS];
+        int head;
+        int count;
+        // Bytes of the head chunk already written
+        int offset;
+        long lastProgressNanos;
+
+        Client(SocketChannel channel, SelectionKey key, long now) {
+            this.channel = channel;
+            this.key = key;
+            this.connectedNanos = now;
+            this.lastProgressNanos = now;
+        }
+    }
+
+    private final NtripClient upstream;
+    private final String mountPoint;
+    private final String authorization;
+    private volatile int maxClients = DEFAULT_MAX_CLIENTS;
+    private volatile long stallTimeoutMs = DEFAULT_STALL_TIMEOUT_MS;
+
+    // Upstream buffers, handed from the upstream I/O thread to the relay's
+    private final MpscQueue<ByteBuffer> received = new MpscQueue<>(1024);
+    private volatile Selector selector;
+    private volatile boolean isRunning;
+    private Thread ioThread;
+
+    // Owned by the I/O thread
+    private ServerSocketChannel server;
+    private SelectionKey serverKey;
+    private final List<Client> clients = new ArrayList<>();
+    private final IdentityHashMap<ByteBuffer, Chunk> chunks = new IdentityHashMap<>();
+    private final ByteBuffer discard = ByteBuffer.allocateDirect(1024);
+    private long nextTimerNanos;
+
+    private volatile int streaming;
+    private volatile boolean upstreamConnected;
+    private volatile String lastUpstreamError;
+    private volatile long upstreamBytes;
+    private volatile long bytesSent;
+    private volatile long accepted;
+    private volatile long refused;
+    private volatile long droppedBytes;
+    private volatile long droppedBacklogs;
+    private volatile long stalled;
+
+    /**
+     * Relays {@code upstream}, which should receive into a pool of at least
+     * {@link #UPSTREAM_BUFFERS} buffers, as {@code mountPoint}. Rovers must log in with
+     * {@code username} and {@code password}, unless {@code username} is null.
+     */
+    public NtripRelay(NtripClient upstream, String mountPoint, String username,
+                      String password) {
+        this.upstream = upstream;
+        this.mountPoint = mountPoint;
+        this.authorization = username == null ? null : Base64.getEncoder().encodeToString(
+                (username + ":" + password).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public void setMaxClients(int maxClients) {
+        this.maxClients = maxClients;
+    }
+
+    /** A rover whose socket takes no bytes for this long while data waits is dropped. */
+    public void setStallTimeoutMs(long stallTimeoutMs) {
+        this.stallTimeoutMs = stallTimeoutMs;
+    }
+
+    /** Listens on {@code address} (port 0 picks one) and connects upstream. */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (isRunning) return;
+        selector = Selector.open();
+        server = ServerSocketChannel.open();
+        try {
+            server.bind(address, 128);
+            server.configureBlocking(false);
+            serverKey = server.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            server.close();
+            selector.close();
+            throw e;
+        }
+        isRunning = true;
+        ioThread = new Thread(this::run, "NtripRelay");
+        ioThread.start();
+        upstream.connect(this);
+    }
+
+    /** Disconnects upstream and every rover and waits for the I/O thread to end. */
+    public synchronized void stop() {
+        if (!isRunning) return;
+        upstream.disconnect();
+        isRunning = false;
+        selector.wakeup();
+        try {
+            ioThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** The port rovers connect to, once started. */
+    public int getLocalPort() {
+        return server.socket().getLocalPort();
+    }
+
+    // NtripCallback, on the upstream client's I/O thread
+
+    @Override
+    public void onRtcmDataReceived(ByteBuffer data) {
+        upstreamBytes += data.remaining();
+        if (!isRunning || !received.offer(data)) {
+            upstream.releaseBuffer(data);
+            return;
+        }
+        selector.wakeup();
+    }
+
+    @Override
+    public void onConnectionStatusChanged(boolean connected) {
+        upstreamConnected = connected;
+    }
+
+    @Override
+    public void onError(String message) {
+        lastUpstreamError = message;
+    }
+
+    public boolean isUpstreamConnected() {
+        return upstreamConnected;
+    }
+
+    public String getLastUpstreamError() {
+        return lastUpstreamError;
+    }
+
+    /** Rovers currently receiving the stream. */
+    public int getClients() {
+        return streaming;
+    }
+
+    public long getUpstreamBytes() {
+        return upstreamBytes;
+    }
+
+    /** Bytes written to all rovers together. */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /** Rovers that were sent the stream, including those gone since. */
+    public long getAccepted() {
+        return accepted;
+    }
+
+    /** Connections answered with an error or a sourcetable, or closed before a request. */
+    public long getRefused() {
+        return refused;
+    }
+
+    /** Bytes skipped by rovers that fell {@link #BACKLOG_CHUNKS} behind. */
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    /** Times a rover fell {@link #BACKLOG_CHUNKS} behind; disconnects are not counted. */
+    public long getDroppedBacklogs() {
+        return droppedBacklogs;
+    }
+
+    /** Rovers disconnected after the stall timeout. */
+    public long getStalled() {
+        return stalled;
+    }
+
+    private void run() {
+        try {
+            while (isRunning) {
+                selector.select(TIMER_MS);
+                if (!isRunning) break;
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.attachment() == null) {
+                        accept();
+                    } else {
+                        ready((Client) key.attachment());
+                    }
+                }
+                fanOut();
+                long now = System.nanoTime();
+                if (now - nextTimerNanos >= 0) {
+                    checkTimeouts(now);
+                    nextTimerNanos = now + TIMER_MS * 1000000L;
+                }
+            }
+        } catch (IOException e) {
+            lastUpstreamError = "Relay error: " + e.getMessage();
+        } finally {
+            for (int i = clients.size() - 1; i >= 0; i--) {
+                close(clients.get(i));
+            }
+            ByteBuffer data;
+            while ((data = received.poll()) != null) {
+                upstream.releaseBuffer(data);
+            }
+            try {
+                server.close();
+                selector.close();
+            } catch (IOException ignored) {
+            }
+            isRunning = false;
+        }
+    }
+
+    /**
+     * Takes every pending connection. A connection that fails to set up is closed and
+     * refused on its own; only a closed server socket ends the relay.
+     */
+    private void accept() throws IOException {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = server.accept();
+            } catch (IOException e) {
+                if (!server.isOpen()) {
+                    throw e;
+                }
+                // Out of descriptors or the like: pause accepting until the next timer tick
+                // instead of spinning on the connection still pending
+                serverKey.interestOps(0);
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                configure(channel);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                Client client = new Client(channel, key, System.nanoTime());
+                key.attach(client);
+                clients.add(client);
+            } catch (IOException e) {
+                refused++;
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /** Sets up an accepted rover connection before it is registered. */
+    void configure(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        channel.socket().setSendBufferSize(SOCKET_SEND_BUFFER);
+    }
+
+    private void ready(Client client) {
+        try {
+            if (client.key.isReadable()) {
+                if (client.state == State.REQUEST) {
+                    readRequest(client);
+                } else {
+                    // GGA sentences and the like; only the end of the stream matters
+                    discard.clear();
+                    if (client.channel.read(discard) < 0) {
+                        close(client);
+                        return;
+                    }
+                }
+            }
+            if (client.key.isValid() && client.key.isWritable()) {
+                write(client);
+            }
+        } catch (IOException e) {
+            close(client);
+        }
+    }
+
+    private void readRequest(Client client) throws IOException {
+        ByteBuffer request = client.request;
+        if (client.channel.read(request) < 0) {
+            refused++;
+            close(client);
+            return;
+        }
+        String text = new String(request.array(), 0, request.position(),
+                StandardCharsets.US_ASCII);
+        int end = text.indexOf("\r\n\r\n");
+        if (end < 0) {
+            if (!request.hasRemaining()) {
+                refuse(client, "HTTP/1.1 400 Bad Request\r\n\r\n");
+            }
+            return;
+        }
+        client.request = null;
+        String[] lines = text.substring(0, end).split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[0].equals("GET")) {
+            refuse(client, "HTTP/1.1 400 Bad Request\r\n\r\n");
+            return;
+        }
+        boolean v2 = false;
+        String credentials = null;
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i].toLowerCase(Locale.US);
+            if (line.startsWith("ntrip-version:") && line.contains("ntrip/2.0")) {
+                v2 = true;
+            } else if (line.startsWith("authorization: basic ")) {
+                credentials = lines[i].substring("authorization: basic ".length()).trim();
+            }
+        }
+        String path = requestLine[1];
+        if (!path.equals("/" + mountPoint)) {
+            refuse(client, sourcetable(v2));
+        } else if (authorization != null && !authorization.equals(credentials)) {
+            refuse(client, "HTTP/1.1 401 Unauthorized\r\n"
+                    + "WWW-Authenticate: Basic realm=\"/" + mountPoint + "\"\r\n\r\n");
+        } else if (streaming >= maxClients) {
+            refuse(client, "HTTP/1.1 503 Service Unavailable\r\n\r\n");
+        } else {
+            client.state = State.STREAMING;
+            client.lastProgressNanos = System.nanoTime();
+            streaming++;
+            accepted++;
+            client.reply = ascii(v2
+                    ? "HTTP/1.1 200 OK\r\nNtrip-Version: Ntrip/2.0\r\n"
+                    + "Server: NTRIP GeoDGNSS relay\r\nContent-Type: gnss/data\r\n"
+                    + "Cache-Control: no-store, no-cache, max-age=0\r\n"
+                    + "Connection: close\r\n\r\n"
+                    : "ICY 200 OK\r\n");
+            write(client);
+        }
+    }
+
+    private String sourcetable(boolean v2) {
+        String table = "STR;" + mountPoint + ";" + mountPoint + ";RTCM 3;;2;;;;0.00;0.00;0;0;"
+                + "GeoDGNSS relay;none;" + (authorization == null ? "N" : "B") + ";N;0;\r\n"
+                + "ENDSOURCETABLE\r\n";
+        return (v2 ? "HTTP/1.1 200 OK\r\nNtrip-Version: Ntrip/2.0\r\n"
+                + "Content-Type: gnss/sourcetable\r\n" : "SOURCETABLE 200 OK\r\n"
+                + "Content-Type: text/plain\r\n")
+                + "Content-Length: " + table.length() + "\r\nConnection: close\r\n\r\n" + table;
+    }
+
+    /** Sends {@code reply} and closes once it is written. */
+    private void refuse(Client client, String reply) throws IOException {
+        refused++;
+        client.state = State.CLOSING;
+        client.reply = ascii(reply);
+        write(client);
+    }
+
+    private static ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /** Queues every buffer received since the last pass on every streaming rover. */
+    private void fanOut() {
+        ByteBuffer data;
+        while ((data = received.poll()) != null) {
+            Chunk chunk = chunks.get(data);
+            if (chunk == null) {
+                chunk = new Chunk(data);
+                chunks.put(data, chunk);
+            }
+            chunk.start = data.position();
+            chunk.end = data.limit();
+            chunk.references = 1; // held by this loop until every rover has it
+            for (int i = clients.size() - 1; i >= 0; i--) {
+                Client client = clients.get(i);
+                if (client.state == State.STREAMING) {
+                    enqueue(client, chunk);
+                }
+            }
+            release(chunk);
+        }
+    }
+
+    private void enqueue(Client client, Chunk chunk) {
+        if (client.count == BACKLOG_CHUNKS) {
+            dropBacklog(client);
+        }
+        boolean idle = client.count == 0;
+        client.backlog[(client.head + client.count) % BACKLOG_CHUNKS] = chunk;
+        client.count++;
+        chunk.references++;
+        if (idle && client.reply == null) {
+            try {
+                write(client);
+            } catch (IOException e) {
+                close(client);
+            }
+        }
+    }
+
+    /**
+     * Skips everything queued, including the rest of a partly written chunk, so the rover
+     * only ever holds buffers among the newest {@link #BACKLOG_CHUNKS}. The frame cut short
+     * fails the rover's CRC check like any other damaged frame.
+     */
+    private void dropBacklog(Client client) {
+        droppedBytes += releaseBacklog(client);
+        droppedBacklogs++;
+    }
+
+    /** Empties the backlog and returns how many of its bytes were never sent. */
+    private long releaseBacklog(Client client) {
+        long bytes = -client.offset;
+        while (client.count > 0) {
+            Chunk chunk = client.backlog[client.head];
+            bytes += chunk.end - chunk.start;
+            client.backlog[client.head] = null;
+            client.head = (client.head + 1) % BACKLOG_CHUNKS;
+            client.count--;
+            release(chunk);
+        }
+        client.offset = 0;
+        return bytes;
+    }
+
+    /** Writes the pending reply and then as much of the backlog as the socket takes. */
+    private void write(Client client) throws IOException {
+        long now = System.nanoTime();
+        if (client.reply != null) {
+            client.channel.write(client.reply);
+            if (client.reply.hasRemaining()) {
+                interest(client, true);
+                return;
+            }
+            client.reply = null;
+            if (client.state == State.CLOSING) {
+                close(client);
+                return;
+            }
+            client.lastProgressNanos = now;
+        }
+        while (client.count > 0) {
+            Chunk chunk = client.backlog[client.head];
+            ByteBuffer b = chunk.buffer;
+            b.limit(chunk.end).position(chunk.start + client.offset);
+            int n = client.channel.write(b);
+            if (n > 0) {
+                client.offset += n;
+                client.lastProgressNanos = now;
+                bytesSent += n;
+            }
+            if (chunk.start + client.offset < chunk.end) {
+                interest(client, true);
+                return;
+            }
+            client.backlog[client.head] = null;
+            client.head = (client.head + 1) % BACKLOG_CHUNKS;
+            client.count--;
+            client.offset = 0;
+            release(chunk);
+        }
+        interest(client, false);
+    }
+
+    private static void interest(Client client, boolean write) {
+        int ops = write ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (client.key.interestOps() != ops) {
+            client.key.interestOps(ops);
+        }
+    }
+
+    private void release(Chunk chunk) {
+        if (--chunk.references == 0) {
+            upstream.releaseBuffer(chunk.buffer);
+        }
+    }
+
+    private void checkTimeouts(long now) {
+        if (serverKey.interestOps() == 0) {
+            serverKey.interestOps(SelectionKey.OP_ACCEPT);
+        }
+        long stallNanos = stallTimeoutMs * 1000000L;
+        for (int i = clients.size() - 1; i >= 0; i--) {
+            Client client = clients.get(i);
+            if (client.state == State.REQUEST
+                    && now - client.connectedNanos > REQUEST_TIMEOUT_MS * 1000000L) {
+                refused++;
+                close(client);
+            } else if ((client.count > 0 || client.reply != null)
+                    && now - client.lastProgressNanos > stallNanos) {
+                if (client.state == State.STREAMING) {
+                    stalled++;
+                }
+                close(client);
+            }
+        }
+    }
+
+    private void close(Client client) {
+        if (!clients.remove(client)) {
+            return;
+        }
+        releaseBacklog(client); // a hang-up, not a rover falling behind
+        if (client.state == State.STREAMING) {
+            streaming--;
+        }
+        client.state = State.CLOSING;
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -1,8 +1,6 @@
 package com.example.geodgnss;
 
-import android.location.GnssMeasurement;
-import android.os.Handler;
-import android.os.Looper;
+import java.nio.ByteBuffer;
 
 public class RTKProcessor {
 
@@ -11,42 +9,42 @@ public class RTKProcessor {
         System.loadLibrary("rtkprocessor");
     }
 
-    public interface RtkResultListener {
-        void onPositionUpdate(double lat, double lon, double alt);
-        void onSolutionStatus(String status);
-    }
-
-    private RtkResultListener listener;
-
-    public native void initNavigation();
+    // Solution status returned by processEpochBuffer, RTKLIB's SOLQ_* values
+    public static final int SOLUTION_NONE = 0;
+    public static final int SOLUTION_FIX = 1;
+    public static final int SOLUTION_FLOAT = 2;
+    public static final int SOLUTION_SBAS = 3;
+    public static final int SOLUTION_DGPS = 4;
+    public static final int SOLUTION_SINGLE = 5;
+    public static final int SOLUTION_PPP = 6;
+
+    // A context is not thread-safe: every call on it must come from one thread, which
+    // RtkEngine guarantees by owning the context on its solver thread
     public native long initRtkContext();
-
-    public native void updateRtcmData(long contextHandle, byte[] rtcmData,
-                                      long receiverTime);
-    public native void processRtkData(long contextHandle,
-                                      GnssMeasurement[] measurements,
-                                      long receiverTime);
+    // Decodes length bytes of RTCM ephemeris frames from the start of a direct buffer into
+    // the context's navigation data, as kept by EphemerisStore; call right after
+    // initRtkContext
+    public native void initNavigation(long contextHandle, ByteBuffer frames, int length);
+
+    // Takes CRC-checked frames as produced by RtcmFramer, read in place from a direct
+    // buffer: length bytes starting at absolute index offset. The bytes are decoded as a
+    // stream, so a frame may be split across calls.
+    public native void updateRtcmBuffer(long contextHandle, ByteBuffer frames, int offset,
+                                        int length, long receiverTime);
+    // Reads an epoch packed by GnssEpochBuffer in place, without calling back into Java,
+    // solves it and returns the solution status (SOLUTION_*). The epoch carries its own
+    // GPS time. Unless solution is null, the solution is written into it, a buffer from
+    // RtkSolution.allocateBuffer().
+    public native int processEpochBuffer(long contextHandle, ByteBuffer epoch,
+                                         ByteBuffer solution);
+    // Writes the filter state (position, velocity, ambiguities and their covariance, base
+    // position, satellite lock history) into a direct buffer from position 0 and returns
+    // its length, or minus the length needed if the buffer is too small. See RtkCheckpoint.
+    public native int saveState(long contextHandle, ByteBuffer state);
+    // Puts back length bytes written by saveState, right after initRtkContext and
+    // initNavigation; without keepAmbiguities only position, velocity and base are restored.
+    // Returns false, changing nothing, for a state from another layout or configuration.
+    public native boolean restoreState(long contextHandle, ByteBuffer state, int length,
+                                       boolean keepAmbiguities);
     public native void shutdownRtkContext(long contextHandle);
-
-    public void setResultListener(RtkResultListener listener) {
-        this.listener = listener;
-    }
-
-    // Called from native code
-    @SuppressWarnings("unused")
-    private void updatePosition(double lat, double lon, double alt) {
-        if (listener != null) {
-            new Handler(Looper.getMainLooper()).post(() ->
-                    listener.onPositionUpdate(lat, lon, alt));
-        }
-    }
-
-    // Called from native code
-    @SuppressWarnings("unused")
-    private void solutionStatus(String str) {
-        if (listener != null) {
-            new Handler(Looper.getMainLooper()).post(() ->
-                    listener.onSolutionStatus(str));
-        }
-    }
 }
@@ -0,0 +1,266 @@
+package com.example.geodgnss;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Re-runs a recorded session, a {@link GnssLogger} file and the RTCM capture written next to
+ * it, through a solver, either as fast as possible or at a multiple of the recorded pace.
+ *
+ * <p>RTCM captures are the raw stream without receive times, so corrections are placed on
+ * the rover's timeline by their own epoch times: each observation message is handed to the
+ * solver before the first rover epoch at or after its epoch, and messages without an epoch
+ * time (station position, ephemerides, biases) travel with the next observation message.
+ * The capture is memory-mapped and frames go to the solver as slices of the mapping, so a
+ * replay copies no correction bytes and allocates nothing per epoch. Rover epochs get their
+ * loss-of-lock indicators from a {@link CycleSlipTracker}, as in the app.
+ *
+ * <p>Plain JVM code: the replay tool runs it headless against a host build of the native
+ * solver, and tests run it against a stand-in {@link Solver}.
+ */
+public class ReplayEngine {
+
+    public interface Solver {
+        /** Takes {@code length} bytes of whole RTCM frames at absolute index {@code offset}. */
+        void addCorrections(ByteBuffer frames, int offset, int length);
+
+        /** Solves one epoch packed by {@link GnssEpochBuffer}; returns RTKProcessor.SOLUTION_*. */
+        int solve(ByteBuffer epoch);
+    }
+
+    public static class Report {
+        public long epochs;
+        /** Epochs rejected by {@link GnssEpochBuilder}, such as those without a GPS time. */
+        public long skippedEpochs;
+        public long rtcmFrames;
+        public long rtcmBytes;
+        public long fixEpochs;
+        public long floatEpochs;
+        public long wallNanos;
+        /** GPS time covered by the solved epochs. */
+        public long sessionNanos;
+        /** Session time from the first epoch to the first fix, -1 without a fix. */
+        public long firstFixSessionNanos = -1;
+        /** Wall time spent before the first fix, -1 without a fix. */
+        public long firstFixWallNanos = -1;
+
+        public double getEpochsPerSecond() {
+            return wallNanos > 0 ? epochs * 1e9 / wallNanos : 0;
+        }
+
+        public double getFixRatio() {
+            return epochs > 0 ? (double) fixEpochs / epochs : 0;
+        }
+
+        /** Adds a replay that continued this one, as if both were one longer replay. */
+        public void add(Report next) {
+            if (firstFixSessionNanos < 0 && next.firstFixSessionNanos >= 0) {
+                firstFixSessionNanos = sessionNanos + next.firstFixSessionNanos;
+                firstFixWallNanos = wallNanos + next.firstFixWallNanos;
+            }
+            epochs += next.epochs;
+            skippedEpochs += next.skippedEpochs;
+            rtcmFrames += next.rtcmFrames;
+            rtcmBytes += next.rtcmBytes;
+            fixEpochs += next.fixEpochs;
+            floatEpochs += next.floatEpochs;
+            wallNanos += next.wallNanos;
+            sessionNanos += next.sessionNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "epochs %d (skipped %d), rtcm %d frames / %d bytes%n"
+                            + "wall %.3f s, %.1f epochs/s, session %.1f s%n"
+                            + "time to first fix %s%n"
+                            + "fix %d (%.1f %%), float %d",
+                    epochs, skippedEpochs, rtcmFrames, rtcmBytes,
+                    wallNanos / 1e9, getEpochsPerSecond(), sessionNanos / 1e9,
+                    firstFixSessionNanos < 0 ? "none" : String.format(Locale.US,
+                            "%.1f s session, %.3f s wall",
+                            firstFixSessionNanos / 1e9, firstFixWallNanos / 1e9),
+                    fixEpochs, 100 * getFixRatio(), floatEpochs);
+        }
+    }
+
+    private static final int PAYLOAD_OFFSET = RtcmFramer.HEADER_LENGTH;
+    private static final int MIN_TIMED_FRAME =
+            RtcmFramer.HEADER_LENGTH + 7 + RtcmFramer.CRC_LENGTH;
+
+    private double speed;
+    private SignalFilter filter;
+
+    // Frames of the capture in stream order; untimed ones carry the next timed frame's time
+    private int frameCount;
+    private int[] frameOffsets = new int[1024];
+    private int[] frameLengths = new int[1024];
+    private long[] frameTimes = new long[1024];
+
+    /**
+     * Replays at {@code speed} times the recorded pace; 0, the default, replays as fast as
+     * the solver allows.
+     */
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    /** Checks measurements as the app does before solving; null, the default, does not. */
+    public void setFilter(SignalFilter filter) {
+        this.filter = filter;
+    }
+
+    public Report run(File gnssLog, File rtcmCapture, Solver solver) throws IOException {
+        return run(Collections.singletonList(gnssLog), rtcmCapture, solver);
+    }
+
+    /**
+     * Replays the segments of one session, oldest first, as one log against the whole RTCM
+     * capture of the session, so the two streams need not have been split at the same times.
+     */
+    public Report run(List<File> gnssLogs, File rtcmCapture, Solver solver) throws IOException {
+        ByteBuffer rtcm = map(rtcmCapture);
+        index(rtcm);
+
+        Report report = new Report();
+        GnssEpoch epoch = new GnssEpoch();
+        GnssEpochBuilder built = new GnssEpochBuilder();
+        built.setFilter(filter);
+        built.setTracker(new CycleSlipTracker());
+        GnssEpochBuffer packed = new GnssEpochBuffer();
+        int nextFrame = 0;
+        long firstGpsNanos = 0;
+        long start = System.nanoTime();
+
+        for (File gnssLog : gnssLogs) {
+            try (GnssLogReader reader = new GnssLogReader(gnssLog)) {
+                while (reader.next(epoch)) {
+                    if (!built.build(epoch)) {
+                        report.skippedEpochs++;
+                        continue;
+                    }
+                    long gpsNanos = built.gpsTimeNanos;
+                    if (report.epochs == 0) {
+                        firstGpsNanos = gpsNanos;
+                    }
+                    long sessionNanos = gpsNanos - firstGpsNanos;
+                    pace(start, sessionNanos);
+
+                    long tow = Math.floorMod(Math.floorDiv(gpsNanos, 1000000L),
+                            RtcmFramer.WEEK_MILLIS);
+                    nextFrame = deliverUntil(rtcm, nextFrame, tow, solver, report);
+
+                    int status = solver.solve(packed.pack(built));
+                    report.epochs++;
+                    report.sessionNanos = sessionNanos;
+                    if (status == RTKProcessor.SOLUTION_FIX) {
+                        report.fixEpochs++;
+                        if (report.firstFixSessionNanos < 0) {
+                            report.firstFixSessionNanos = sessionNanos;
+                            report.firstFixWallNanos = System.nanoTime() - start;
+                        }
+                    } else if (status == RTKProcessor.SOLUTION_FLOAT) {
+                        report.floatEpochs++;
+                    }
+                }
+            }
+        }
+        report.wallNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /** Sleeps until the wall clock catches up with the session at the configured speed. */
+    private void pace(long start, long sessionNanos) {
+        if (speed <= 0) {
+            return;
+        }
+        long due = start + (long) (sessionNanos / speed);
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(wait);
+        }
+    }
+
+    /** Hands over every frame due at {@code tow}, contiguous frames in one call. */
+    private int deliverUntil(ByteBuffer rtcm, int next, long tow, Solver solver,
+                             Report report) {
+        int runStart = -1;
+        int runEnd = -1;
+        while (next < frameCount && !after(frameTimes[next], tow)) {
+            int offset = frameOffsets[next];
+            int length = frameLengths[next];
+            if (offset != runEnd) {
+                if (runStart >= 0) {
+                    solver.addCorrections(rtcm, runStart, runEnd - runStart);
+                }
+                runStart = offset;
+            }
+            runEnd = offset + length;
+            report.rtcmFrames++;
+            report.rtcmBytes += length;
+            next++;
+        }
+        if (runStart >= 0) {
+            solver.addCorrections(rtcm, runStart, runEnd - runStart);
+        }
+        return next;
+    }
+
+    /** True if time of week {@code a} lies after {@code b}, across week rollovers. */
+    static boolean after(long a, long b) {
+        if (a == RtcmFramer.NO_EPOCH_TIME) {
+            return true; // untimed frames at the end of the capture
+        }
+        long half = RtcmFramer.WEEK_MILLIS / 2;
+        return Math.floorMod(a - b + half, RtcmFramer.WEEK_MILLIS) - half > 0;
+    }
+
+    private void index(ByteBuffer rtcm) {
+        frameCount = 0;
+        RtcmFramer framer = new RtcmFramer((buffer, offset, length, type, station) -> {
+            if (frameCount == frameOffsets.length) {
+                int n = 2 * frameCount;
+                frameOffsets = Arrays.copyOf(frameOffsets, n);
+                frameLengths = Arrays.copyOf(frameLengths, n);
+                frameTimes = Arrays.copyOf(frameTimes, n);
+            }
+            frameOffsets[frameCount] = offset;
+            frameLengths[frameCount] = length;
+            frameTimes[frameCount] = length >= MIN_TIMED_FRAME
+                    ? RtcmFramer.gpsTimeOfWeekMillis(buffer, offset + PAYLOAD_OFFSET, type)
+                    : RtcmFramer.NO_EPOCH_TIME;
+            frameCount++;
+        });
+        framer.feed(rtcm.duplicate());
+
+        long next = RtcmFramer.NO_EPOCH_TIME;
+        for (int i = frameCount - 1; i >= 0; i--) {
+            if (frameTimes[i] == RtcmFramer.NO_EPOCH_TIME) {
+                frameTimes[i] = next;
+            } else {
+                next = frameTimes[i];
+            }
+        }
+    }
+
+    private static ByteBuffer map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("RTCM capture larger than 2 GB: " + file);
+            }
+            if (size == 0) {
+                return ByteBuffer.allocateDirect(0);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+}
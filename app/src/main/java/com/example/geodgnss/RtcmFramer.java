@@ -0,0 +1,310 @@
+package com.example.geodgnss;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Incremental RTCM3 frame parser.
+ *
+ * <p>Bytes are fed in arbitrary chunks as they come off the socket. The framer resyncs on the
+ * 0xD3 preamble, checks the reserved bits, the 10-bit length and the CRC-24Q, and hands only
+ * complete, validated frames to its {@link FrameListener}. When a candidate frame fails its
+ * checks the scan restarts one byte after its preamble, so a false sync never swallows a real
+ * frame.
+ *
+ * <p>Frames are validated in place: a frame that lies entirely inside the fed buffer is
+ * reported as a slice of that buffer, without copying. Only a frame split across two chunks
+ * is assembled in a small carry buffer, and is reported from there. No memory is allocated
+ * after construction when feeding {@link ByteBuffer}s.
+ *
+ * <p>Not thread-safe: feed a framer from one thread only.
+ */
+public class RtcmFramer {
+
+    public static final int PREAMBLE = 0xD3;
+    public static final int HEADER_LENGTH = 3;
+    public static final int CRC_LENGTH = 3;
+    public static final int MAX_PAYLOAD_LENGTH = 1023;
+    public static final int MAX_FRAME_LENGTH = HEADER_LENGTH + MAX_PAYLOAD_LENGTH + CRC_LENGTH;
+
+    /** Returned by {@link #stationId} for messages that carry no reference station ID. */
+    public static final int NO_STATION_ID = -1;
+
+    /** Returned by {@link #gpsTimeOfWeekMillis} for messages without a usable epoch time. */
+    public static final long NO_EPOCH_TIME = -1;
+
+    public static final long WEEK_MILLIS = 7 * 86400000L;
+    // GPS-UTC offset used to place GLONASS epochs (Moscow time) on GPS time
+    private static final long GPS_UTC_LEAP_MILLIS = 18000;
+
+    private static final int[] CRC24Q_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 16;
+            for (int j = 0; j < 8; j++) {
+                crc <<= 1;
+                if ((crc & 0x1000000) != 0) {
+                    crc ^= 0x1864CFB;
+                }
+            }
+            CRC24Q_TABLE[i] = crc & 0xFFFFFF;
+        }
+    }
+
+    public interface FrameListener {
+        /**
+         * Called for every complete frame with a valid CRC. The frame (preamble, header,
+         * payload and CRC) is {@code length} bytes of {@code buffer} starting at absolute
+         * index {@code offset}. {@code buffer} is either the buffer being fed, in which case
+         * the frame stays valid until the caller reuses that buffer, or the framer's carry
+         * buffer, which is only valid for the duration of the call.
+         */
+        void onRtcmFrame(ByteBuffer buffer, int offset, int length, int messageType,
+                         int stationId);
+    }
+
+    private final FrameListener listener;
+    // Start of a frame that continues in the next chunk, always beginning with the preamble
+    private final ByteBuffer carry = ByteBuffer.allocateDirect(MAX_FRAME_LENGTH);
+    private int carryLength;
+
+    private long validFrames;
+    private long crcErrors;
+    private long skippedBytes;
+
+    public RtcmFramer(FrameListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Feeds the bytes between {@code data}'s position and limit; on return all of them have
+     * been consumed and the position equals the limit.
+     */
+    public void feed(ByteBuffer data) {
+        int end = data.limit();
+        int p = completeCarry(data, data.position(), end);
+
+        while (p < end) {
+            if ((data.get(p) & 0xFF) != PREAMBLE) {
+                p++;
+                skippedBytes++;
+                continue;
+            }
+            if (end - p < HEADER_LENGTH) {
+                break;
+            }
+            int frameLength = frameLength(data, p);
+            if (frameLength < 0) {
+                p++;
+                skippedBytes++;
+                continue;
+            }
+            if (end - p < frameLength) {
+                break;
+            }
+            if (!crcMatches(data, p, frameLength)) {
+                crcErrors++;
+                p++;
+                skippedBytes++;
+                continue;
+            }
+            deliver(data, p, frameLength);
+            p += frameLength;
+        }
+
+        if (p < end) {
+            // Incomplete candidate: shorter than one frame, so it always fits
+            data.position(p);
+            carry.clear();
+            carry.put(data);
+            carryLength = end - p;
+        }
+        data.position(end);
+    }
+
+    /** Feeds {@code length} bytes of {@code data} starting at {@code offset}. */
+    public void feed(byte[] data, int offset, int length) {
+        feed(ByteBuffer.wrap(data, offset, length));
+    }
+
+    /** Drops any partially collected frame, e.g. after a reconnect. */
+    public void reset() {
+        carryLength = 0;
+    }
+
+    public long getValidFrames() {
+        return validFrames;
+    }
+
+    public long getCrcErrors() {
+        return crcErrors;
+    }
+
+    public long getSkippedBytes() {
+        return skippedBytes;
+    }
+
+    /**
+     * Finishes the frame carried over from the previous chunk with bytes from {@code data}
+     * and returns the index of the first byte not taken.
+     */
+    private int completeCarry(ByteBuffer data, int p, int end) {
+        while (carryLength > 0) {
+            int wanted = HEADER_LENGTH;
+            if (carryLength >= HEADER_LENGTH) {
+                wanted = frameLength(carry, 0);
+                if (wanted < 0) {
+                    dropCarriedCandidate();
+                    continue;
+                }
+            }
+            if (carryLength < wanted) {
+                int n = Math.min(wanted - carryLength, end - p);
+                for (int i = 0; i < n; i++) {
+                    carry.put(carryLength + i, data.get(p + i));
+                }
+                carryLength += n;
+                p += n;
+                if (carryLength < wanted) {
+                    return p; // chunk exhausted
+                }
+                continue; // the header may just have become complete
+            }
+            if (crcMatches(carry, 0, wanted)) {
+                deliver(carry, 0, wanted);
+                removeCarried(wanted);
+                skipToPreamble();
+            } else {
+                crcErrors++;
+                dropCarriedCandidate();
+            }
+        }
+        return p;
+    }
+
+    /** Abandons the carried candidate and resyncs on the next preamble inside the carry. */
+    private void dropCarriedCandidate() {
+        removeCarried(1);
+        skippedBytes++;
+        skipToPreamble();
+    }
+
+    private void skipToPreamble() {
+        int k = 0;
+        while (k < carryLength && (carry.get(k) & 0xFF) != PREAMBLE) {
+            k++;
+        }
+        skippedBytes += k;
+        removeCarried(k);
+    }
+
+    private void removeCarried(int n) {
+        if (n == 0) {
+            return;
+        }
+        carry.limit(carryLength).position(n);
+        carry.compact();
+        carryLength -= n;
+    }
+
+    private void deliver(ByteBuffer buffer, int frameStart, int frameLength) {
+        validFrames++;
+        int payload = frameStart + HEADER_LENGTH;
+        int payloadLength = frameLength - HEADER_LENGTH - CRC_LENGTH;
+        int type = payloadLength >= 2 ? messageType(buffer, payload) : 0;
+        int station = payloadLength >= 3 ? stationId(buffer, payload, type) : NO_STATION_ID;
+        listener.onRtcmFrame(buffer, frameStart, frameLength, type, station);
+    }
+
+    /** Total frame length for the header at {@code p}, or -1 if the reserved bits are set. */
+    private static int frameLength(ByteBuffer b, int p) {
+        // 6 reserved bits must be zero, followed by the 10-bit payload length
+        int hi = b.get(p + 1) & 0xFF;
+        if ((hi & 0xFC) != 0) {
+            return -1;
+        }
+        return HEADER_LENGTH + (((hi & 0x03) << 8) | (b.get(p + 2) & 0xFF)) + CRC_LENGTH;
+    }
+
+    private static boolean crcMatches(ByteBuffer b, int p, int frameLength) {
+        int crcOffset = p + frameLength - CRC_LENGTH;
+        int crc = ((b.get(crcOffset) & 0xFF) << 16)
+                | ((b.get(crcOffset + 1) & 0xFF) << 8)
+                | (b.get(crcOffset + 2) & 0xFF);
+        return crc24q(b, p, frameLength - CRC_LENGTH) == crc;
+    }
+
+    /** Computes the CRC-24Q over {@code length} bytes of {@code data} from absolute index {@code offset}. */
+    public static int crc24q(ByteBuffer data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) & 0xFFFFFF) ^ CRC24Q_TABLE[((crc >>> 16) ^ data.get(i)) & 0xFF];
+        }
+        return crc;
+    }
+
+    /** Returns the 12-bit message number at the start of the payload. */
+    public static int messageType(ByteBuffer data, int payloadOffset) {
+        return ((data.get(payloadOffset) & 0xFF) << 4)
+                | ((data.get(payloadOffset + 1) & 0xF0) >>> 4);
+    }
+
+    /**
+     * Returns the 12-bit reference station ID following the message number, or
+     * {@link #NO_STATION_ID} for message types that do not carry one (ephemerides).
+     */
+    public static int stationId(ByteBuffer data, int payloadOffset, int messageType) {
+        if (!hasStationId(messageType)) {
+            return NO_STATION_ID;
+        }
+        return ((data.get(payloadOffset + 1) & 0x0F) << 8) | (data.get(payloadOffset + 2) & 0xFF);
+    }
+
+    /**
+     * Returns the epoch time of an observation message (MSM or legacy GPS) as GPS time of
+     * week in milliseconds, or {@link #NO_EPOCH_TIME} for other messages and for GLONASS
+     * epochs without a day of week. The payload must be at least 7 bytes long.
+     */
+    public static long gpsTimeOfWeekMillis(ByteBuffer data, int payloadOffset, int messageType) {
+        // 30-bit epoch time right after the message number and station ID (bits 24..53)
+        long epoch = (((data.get(payloadOffset + 3) & 0xFFL) << 22)
+                | ((data.get(payloadOffset + 4) & 0xFFL) << 14)
+                | ((data.get(payloadOffset + 5) & 0xFFL) << 6)
+                | ((data.get(payloadOffset + 6) & 0xFFL) >>> 2));
+        long tow;
+        if ((messageType >= 1001 && messageType <= 1004)     // GPS legacy
+                || (messageType >= 1071 && messageType <= 1077)  // GPS MSM
+                || (messageType >= 1091 && messageType <= 1117)  // Galileo, SBAS, QZSS MSM
+                || (messageType >= 1131 && messageType <= 1137)) { // NavIC MSM
+            tow = epoch;
+        } else if (messageType >= 1081 && messageType <= 1087) {
+            // GLONASS: 3-bit day of week and ms of day in Moscow time (UTC+3)
+            long day = epoch >>> 27;
+            if (day == 7) {
+                return NO_EPOCH_TIME;
+            }
+            tow = day * 86400000L + (epoch & 0x7FFFFFF) - 3 * 3600000L + GPS_UTC_LEAP_MILLIS;
+        } else if (messageType >= 1121 && messageType <= 1127) {
+            tow = epoch + 14000; // BeiDou time runs 14 s behind GPS time
+        } else {
+            return NO_EPOCH_TIME;
+        }
+        return Math.floorMod(tow, WEEK_MILLIS);
+    }
+
+    /** Computes the CRC-24Q used by RTCM3 over {@code length} bytes of {@code data}. */
+    public static int crc24q(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) & 0xFFFFFF) ^ CRC24Q_TABLE[((crc >>> 16) ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    private static boolean hasStationId(int type) {
+        return (type >= 1001 && type <= 1013)    // legacy observables, station, antenna
+                || type == 1033                  // receiver and antenna descriptors
+                || (type >= 1071 && type <= 1137) // MSM observables
+                || type == 1230;                 // GLONASS code-phase biases
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.geodgnss;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * The RTK filter state kept in a file, so a restarted app picks up position, velocity, base
+ * and ambiguities where the last process left them instead of converging from scratch.
+ *
+ * <p>The state itself is an opaque snapshot from {@link RTKProcessor#saveState}, which checks
+ * its own layout on restore. This class adds a header and decides whether the snapshot is
+ * still worth restoring:
+ * <pre>
+ * offset  size  field
+ *      0     4  int  magic "RTKC"
+ *      4     4  int  file version ({@link #VERSION})
+ *      8     8  long wall-clock time of the save, ms since 1970
+ *     16     4  int  snapshot length n
+ *     20     4  int  CRC-32 of the snapshot
+ *     24     n       snapshot
+ * </pre>
+ * Native byte order, as the snapshot. A snapshot older than {@link #setMaxAgeMillis} is not
+ * loaded at all; one older than {@link #setMaxAmbiguityAgeMillis} is restored without its
+ * ambiguities, which rarely survive a longer gap in carrier tracking. A base change after the
+ * restore is caught by the solver, which drops the ambiguities when the base position in the
+ * correction stream moves. The file is replaced through a temporary file and a rename.
+ */
+public class RtkCheckpoint {
+
+    public static final int VERSION = 1;
+    public static final long DEFAULT_MAX_AGE_MILLIS = 10 * 60_000L;
+    public static final long DEFAULT_MAX_AMBIGUITY_AGE_MILLIS = 30_000L;
+    /** Solver-thread time between two periodic saves. */
+    public static final long DEFAULT_INTERVAL_MILLIS = 30_000L;
+
+    static final int MAGIC = 0x434B5452; // "RTKC" in little-endian byte order
+    static final int HEADER_SIZE = 24;
+
+    private final File file;
+    private long maxAgeMillis = DEFAULT_MAX_AGE_MILLIS;
+    private long maxAmbiguityAgeMillis = DEFAULT_MAX_AMBIGUITY_AGE_MILLIS;
+    private long ageMillis = -1;
+
+    public RtkCheckpoint(File file) {
+        this.file = file;
+    }
+
+    /** Writes {@code length} bytes of {@code state} from index 0 as the new checkpoint. */
+    public void save(ByteBuffer state, int length, long nowMillis) throws IOException {
+        ByteBuffer snapshot = state.duplicate();
+        snapshot.limit(length).position(0);
+        CRC32 crc = new CRC32();
+        crc.update(snapshot.duplicate());
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+        header.putInt(MAGIC).putInt(VERSION).putLong(nowMillis).putInt(length)
+                .putInt((int) crc.getValue()).flip();
+
+        File temporary = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            FileChannel channel = out.getChannel();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (snapshot.hasRemaining()) {
+                channel.write(snapshot);
+            }
+        }
+        if (!temporary.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * Returns the saved snapshot in a direct buffer, from position 0 to its limit, or null
+     * if there is none, it is damaged, from another version, or older than the maximum age
+     * at {@code nowMillis}. {@link #getAgeMillis} then tells how old it is.
+     */
+    public ByteBuffer load(long nowMillis) throws IOException {
+        ageMillis = -1;
+        if (!file.exists()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+            readFully(channel, header);
+            header.flip();
+            int magic = header.getInt();
+            int version = header.getInt();
+            long savedMillis = header.getLong();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            long age = nowMillis - savedMillis;
+            if (magic != MAGIC || version != VERSION || length != size - HEADER_SIZE
+                    || age < 0 || age > maxAgeMillis) {
+                return null;
+            }
+            ByteBuffer state = ByteBuffer.allocateDirect(length);
+            readFully(channel, state);
+            state.flip();
+            CRC32 crc = new CRC32();
+            crc.update(state.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                return null;
+            }
+            ageMillis = age;
+            return state;
+        }
+    }
+
+    /** Age of the snapshot returned by the last {@link #load}, -1 if none was returned. */
+    public long getAgeMillis() {
+        return ageMillis;
+    }
+
+    /** True if the snapshot last loaded is recent enough to keep its ambiguities. */
+    public boolean keepsAmbiguities() {
+        return ageMillis >= 0 && ageMillis <= maxAmbiguityAgeMillis;
+    }
+
+    /** Removes the checkpoint, so the next start converges from scratch. */
+    public void delete() throws IOException {
+        Files.deleteIfExists(file.toPath());
+    }
+
+    public void setMaxAgeMillis(long maxAgeMillis) {
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    public void setMaxAmbiguityAgeMillis(long maxAmbiguityAgeMillis) {
+        this.maxAmbiguityAgeMillis = maxAmbiguityAgeMillis;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Checkpoint truncated");
+            }
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package com.example.geodgnss;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs the RTK solver on one dedicated thread that owns the native context from creation to
+ * release, so epochs and corrections coming from different threads can never touch it at
+ * the same time and it cannot be freed while a call is in flight.
+ *
+ * <p>Producers copy their input into one of a fixed set of jobs and queue it on an
+ * {@link MpscQueue}: {@link #submitEpoch} packs a built epoch straight into the job's
+ * {@link GnssEpochBuffer}, {@link #submitCorrections} copies RTCM bytes, since the
+ * caller's buffers go back to the network client right away. The solver thread takes jobs
+ * in the order they were queued. Nothing blocks and nothing is allocated per job: when no
+ * job is free or the queue is full, the input is dropped and counted. Each solved epoch's
+ * {@link RtkSolution} goes out through {@link #getSolutions}.
+ *
+ * <p>Lifecycle: {@link State#INIT} accepts input but solves nothing until {@link #start};
+ * {@link State#RUNNING} solves; {@link #close} moves to {@link State#DRAINING}, where new
+ * input is rejected and queued jobs are still worked off, then releases the context on the
+ * solver thread and ends in {@link State#CLOSED}.
+ *
+ * <p>With an {@link RtkCheckpoint} set, the solver thread restores the filter state from it
+ * right after opening the context, saves it every {@link RtkCheckpoint#DEFAULT_INTERVAL_MILLIS}
+ * while solutions come out, and once more before releasing the context. A checkpoint that
+ * cannot be read or written costs only the head start; it never stops the solver. The
+ * carriers of a new process start from new ADR offsets that no tracker history can tie to
+ * the restored ambiguities, so each signal's first phase after such a restore is flagged as
+ * a slip and the solver starts its bias afresh; position, velocity and base carry over.
+ */
+public class RtkEngine {
+
+    /** The solver behind the engine; every call comes from the solver thread. */
+    public interface Context {
+        void open();
+
+        /** Takes {@code length} bytes of RTCM at absolute index {@code offset}. */
+        void addCorrections(ByteBuffer data, int offset, int length, long receiveMillis);
+
+        /**
+         * Solves one epoch packed by {@link GnssEpochBuffer}, writes the solution into
+         * {@code solution} (see {@link RtkSolution#unpack}) and returns its status,
+         * RTKProcessor.SOLUTION_*.
+         */
+        int solve(ByteBuffer epoch, ByteBuffer solution);
+
+        /**
+         * Writes the filter state into {@code state} from index 0; returns its length, or
+         * minus the length needed if {@code state} is too small. 0: nothing to save.
+         */
+        default int saveState(ByteBuffer state) {
+            return 0;
+        }
+
+        /** Puts back {@code length} bytes from {@link #saveState}; false if not taken. */
+        default boolean restoreState(ByteBuffer state, int length, boolean keepAmbiguities) {
+            return false;
+        }
+
+        void close();
+    }
+
+    public interface Listener {
+        /**
+         * Called on the solver thread after each epoch. {@code waitNanos} is the time the
+         * epoch spent queued, {@code solveNanos} the time spent in the solver.
+         */
+        void onEpochSolved(double towSeconds, int status, long waitNanos, long solveNanos);
+    }
+
+    public enum State { INIT, RUNNING, DRAINING, CLOSED }
+
+    public static final int EPOCH_JOBS = 4;
+    public static final int RTCM_JOBS = 16;
+    public static final int RTCM_JOB_SIZE = 4096;
+    // Holds the filter state of a few dozen satellites; grown when a state needs more
+    static final int STATE_BUFFER_SIZE = 64 * 1024;
+
+    /** A reusable unit of input, owned by a producer between acquire and queueing. */
+    static final class Job {
+        final AtomicBoolean busy = new AtomicBoolean();
+        // Epoch jobs pack into epoch; correction jobs copy into rtcm
+        final GnssEpochBuffer epoch;
+        final ByteBuffer rtcm;
+        int length;
+        long receiveMillis;
+        double towSeconds;
+        long queuedNanos;
+
+        Job(GnssEpochBuffer epoch, ByteBuffer rtcm) {
+            this.epoch = epoch;
+            this.rtcm = rtcm;
+        }
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final Job[] epochJobs = new Job[EPOCH_JOBS];
+    private final Job[] rtcmJobs = new Job[RTCM_JOBS];
+    private final MpscQueue<Job> queue = new MpscQueue<>(EPOCH_JOBS + RTCM_JOBS);
+    // Solver thread only, apart from the publisher's listener registration
+    private final ByteBuffer solutionBuffer = RtkSolution.allocateBuffer();
+    private final RtkSolution solution = new RtkSolution();
+    private final RtkSolutionPublisher solutions = new RtkSolutionPublisher();
+    private RtkCheckpoint checkpoint;
+    // Solver thread only
+    private ByteBuffer stateBuffer;
+    private long lastCheckpointMillis;
+    private boolean solvedSinceOpen;
+    // After a restore that kept ambiguities: the signals whose phase was seen since
+    private boolean[] seenSinceRestore;
+    private Thread thread;
+    private volatile State state = State.INIT;
+    private volatile boolean parked;
+
+    private final AtomicLong droppedEpochs = new AtomicLong();
+    private final AtomicLong droppedCorrectionBytes = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long solvedEpochs;
+    private volatile long errors;
+    private volatile RuntimeException lastError;
+    private volatile boolean restored;
+    private volatile long checkpointsSaved;
+    private volatile long checkpointErrors;
+
+    public RtkEngine(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+        for (int i = 0; i < EPOCH_JOBS; i++) {
+            epochJobs[i] = new Job(new GnssEpochBuffer(), null);
+        }
+        for (int i = 0; i < RTCM_JOBS; i++) {
+            rtcmJobs[i] = new Job(null, ByteBuffer.allocateDirect(RTCM_JOB_SIZE));
+        }
+    }
+
+    /**
+     * The native solver: one context from {@code initRtkContext} for the engine's lifetime,
+     * started with the ephemerides still valid in {@code ephemerides} (may be null).
+     */
+    public static Context nativeContext(RTKProcessor processor, EphemerisStore ephemerides) {
+        return new Context() {
+            private long handle;
+
+            @Override
+            public void open() {
+                handle = processor.initRtkContext();
+                if (ephemerides != null) {
+                    ByteBuffer frames = ephemerides.frames(
+                            EphemerisStore.gpsMillis(System.currentTimeMillis()));
+                    processor.initNavigation(handle, frames, frames.limit());
+                }
+            }
+
+            @Override
+            public void addCorrections(ByteBuffer data, int offset, int length,
+                                       long receiveMillis) {
+                processor.updateRtcmBuffer(handle, data, offset, length, receiveMillis);
+            }
+
+            @Override
+            public int solve(ByteBuffer epoch, ByteBuffer solution) {
+                return processor.processEpochBuffer(handle, epoch, solution);
+            }
+
+            @Override
+            public int saveState(ByteBuffer state) {
+                return processor.saveState(handle, state);
+            }
+
+            @Override
+            public boolean restoreState(ByteBuffer state, int length, boolean keepAmbiguities) {
+                return processor.restoreState(handle, state, length, keepAmbiguities);
+            }
+
+            @Override
+            public void close() {
+                processor.shutdownRtkContext(handle);
+                handle = 0;
+            }
+        };
+    }
+
+    /** Where the filter state is kept across restarts; set before {@link #start}. */
+    public void setCheckpoint(RtkCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /** Starts the solver thread, which opens the context before taking any job. */
+    public synchronized void start() {
+        if (state != State.INIT) {
+            return;
+        }
+        state = State.RUNNING;
+        thread = new Thread(this::run, "RtkSolver");
+        thread.start();
+    }
+
+    /**
+     * Rejects new input, waits for the queued jobs to be solved and the context to be
+     * released. Safe to call more than once and from any thread but the solver's.
+     */
+    public synchronized void close() {
+        if (state == State.INIT) {
+            state = State.CLOSED;
+            return;
+        }
+        if (state != State.RUNNING) {
+            return;
+        }
+        state = State.DRAINING;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues the epoch last built by {@code epoch}; returns false if it was dropped because
+     * the solver is behind, or rejected because the engine is closing.
+     */
+    public boolean submitEpoch(GnssEpochBuilder epoch) {
+        if (!accepting()) {
+            return false;
+        }
+        Job job = acquire(epochJobs);
+        if (job == null) {
+            droppedEpochs.incrementAndGet();
+            return false;
+        }
+        job.epoch.pack(epoch);
+        job.towSeconds = epoch.towSeconds;
+        return enqueue(job);
+    }
+
+    /**
+     * Copies {@code length} bytes of RTCM at absolute index {@code offset} of {@code data}
+     * and queues them; returns false if some or all of them were dropped or rejected.
+     * Calls from one producer are solved in order.
+     */
+    public boolean submitCorrections(ByteBuffer data, int offset, int length,
+                                     long receiveMillis) {
+        if (!accepting()) {
+            return false;
+        }
+        // The solver decodes RTCM as a byte stream, so larger runs may be split anywhere
+        int end = offset + length;
+        for (int start = offset; start < end; start += RTCM_JOB_SIZE) {
+            int n = Math.min(RTCM_JOB_SIZE, end - start);
+            Job job = acquire(rtcmJobs);
+            if (job == null) {
+                droppedCorrectionBytes.addAndGet(end - start);
+                return false;
+            }
+            // Absolute reads leave the caller's buffer untouched without a duplicate view
+            for (int i = 0; i < n; i++) {
+                job.rtcm.put(i, data.get(start + i));
+            }
+            job.length = n;
+            job.receiveMillis = receiveMillis;
+            if (!enqueue(job)) {
+                droppedCorrectionBytes.addAndGet(end - start - n);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Where listeners register for the solution of every solved epoch. */
+    public RtkSolutionPublisher getSolutions() {
+        return solutions;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getSolvedEpochs() {
+        return solvedEpochs;
+    }
+
+    /** Epochs dropped because every epoch job was still queued or being solved. */
+    public long getDroppedEpochs() {
+        return droppedEpochs.get();
+    }
+
+    /** RTCM bytes dropped because every correction job was in use. */
+    public long getDroppedCorrectionBytes() {
+        return droppedCorrectionBytes.get();
+    }
+
+    /** Submissions refused because the engine was closing or closed. */
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    /** Jobs whose solver call threw; the last exception is kept in {@link #getLastError}. */
+    public long getErrors() {
+        return errors;
+    }
+
+    public RuntimeException getLastError() {
+        return lastError;
+    }
+
+    /** True once the filter state was restored from the checkpoint. */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    public long getCheckpointsSaved() {
+        return checkpointsSaved;
+    }
+
+    /** Checkpoints that could not be read or written. */
+    public long getCheckpointErrors() {
+        return checkpointErrors;
+    }
+
+    private boolean accepting() {
+        State s = state;
+        if (s == State.INIT || s == State.RUNNING) {
+            return true;
+        }
+        rejected.incrementAndGet();
+        return false;
+    }
+
+    private static Job acquire(Job[] jobs) {
+        for (Job job : jobs) {
+            if (job.busy.compareAndSet(false, true)) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    private boolean enqueue(Job job) {
+        job.queuedNanos = System.nanoTime();
+        if (!queue.offer(job)) {
+            // Cannot happen with a queue as long as all jobs together, kept for safety
+            job.busy.set(false);
+            return false;
+        }
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+        return true;
+    }
+
+    private void run() {
+        try {
+            context.open();
+        } catch (RuntimeException e) {
+            lastError = e;
+            errors++;
+            state = State.CLOSED;
+            return;
+        }
+        restoreCheckpoint();
+        try {
+            while (true) {
+                Job job = queue.poll();
+                if (job == null) {
+                    if (state == State.DRAINING) {
+                        break;
+                    }
+                    park();
+                    continue;
+                }
+                try {
+                    process(job);
+                } catch (RuntimeException e) {
+                    lastError = e;
+                    errors++;
+                } finally {
+                    job.busy.set(false);
+                }
+            }
+        } finally {
+            try {
+                if (solvedSinceOpen) {
+                    saveCheckpoint(System.currentTimeMillis());
+                }
+            } finally {
+                context.close();
+                state = State.CLOSED;
+            }
+        }
+    }
+
+    private void process(Job job) {
+        if (job.epoch == null) {
+            context.addCorrections(job.rtcm, 0, job.length, job.receiveMillis);
+            return;
+        }
+        if (seenSinceRestore != null) {
+            flagFirstPhases(job.epoch.buffer());
+        }
+        long start = System.nanoTime();
+        int status = context.solve(job.epoch.buffer(), solutionBuffer);
+        long end = System.nanoTime();
+        solvedEpochs++;
+        solution.unpack(solutionBuffer);
+        solution.status = RtkSolution.Status.of(status);
+        solutions.publish(solution);
+        if (listener != null) {
+            listener.onEpochSolved(job.towSeconds, status, start - job.queuedNanos,
+                    end - start);
+        }
+        if (status != RTKProcessor.SOLUTION_NONE) {
+            solvedSinceOpen = true;
+            long now = System.currentTimeMillis();
+            if (now - lastCheckpointMillis >= RtkCheckpoint.DEFAULT_INTERVAL_MILLIS) {
+                saveCheckpoint(now);
+            }
+        }
+    }
+
+    private void restoreCheckpoint() {
+        if (checkpoint == null) {
+            return;
+        }
+        lastCheckpointMillis = System.currentTimeMillis();
+        try {
+            ByteBuffer saved = checkpoint.load(lastCheckpointMillis);
+            if (saved != null) {
+                restored = context.restoreState(saved, saved.limit(),
+                        checkpoint.keepsAmbiguities());
+                if (restored && checkpoint.keepsAmbiguities()) {
+                    seenSinceRestore =
+                            new boolean[SignalFilter.SATELLITES * GnssSignalTable.SLOTS];
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            checkpointErrors++;
+        }
+    }
+
+    /** Sets the slip flag on every signal's first carrier phase since the restore. */
+    private void flagFirstPhases(ByteBuffer epoch) {
+        int count = epoch.getInt(GnssEpochBuffer.OFFSET_COUNT);
+        for (int i = 0; i < count; i++) {
+            if (epoch.getDouble(GnssEpochBuffer.OFFSET_CARRIER_CYCLES + 8 * i) == 0) {
+                continue;
+            }
+            int k = SignalFilter.satellite(
+                    epoch.getInt(GnssEpochBuffer.OFFSET_CONSTELLATION + 4 * i),
+                    epoch.getInt(GnssEpochBuffer.OFFSET_SVID + 4 * i)) * GnssSignalTable.SLOTS
+                    + epoch.getInt(GnssEpochBuffer.OFFSET_FREQUENCY_SLOT + 4 * i);
+            if (!seenSinceRestore[k]) {
+                seenSinceRestore[k] = true;
+                int lli = GnssEpochBuffer.OFFSET_LLI + 4 * i;
+                epoch.putInt(lli, epoch.getInt(lli) | CycleSlipTracker.LLI_SLIP);
+            }
+        }
+    }
+
+    private void saveCheckpoint(long nowMillis) {
+        if (checkpoint == null) {
+            return;
+        }
+        lastCheckpointMillis = nowMillis;
+        try {
+            if (stateBuffer == null) {
+                stateBuffer = ByteBuffer.allocateDirect(STATE_BUFFER_SIZE);
+            }
+            int length = context.saveState(stateBuffer);
+            if (length < 0) {
+                stateBuffer = ByteBuffer.allocateDirect(-length);
+                length = context.saveState(stateBuffer);
+            }
+            if (length > 0) {
+                checkpoint.save(stateBuffer, length, nowMillis);
+                checkpointsSaved++;
+            }
+        } catch (IOException | RuntimeException e) {
+            checkpointErrors++;
+        }
+    }
+
+    private void park() {
+        parked = true;
+        // A producer that queued before seeing parked == true is caught by this check
+        if (queue.isEmpty() && state == State.RUNNING) {
+            LockSupport.park(this);
+        }
+        parked = false;
+    }
+}
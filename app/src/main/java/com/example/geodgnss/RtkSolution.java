@@ -0,0 +1,119 @@
+package com.example.geodgnss;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * One RTK solution: position, its covariance, quality and the figures needed to judge it.
+ *
+ * <p>Instances are reused: {@link RtkSolutionPublisher} hands each listener the same object
+ * on every call, so copy what must outlive the call. The native solver writes a solution into
+ * a direct buffer laid out as below (mirrored in rtk_solution_buffer.h), which
+ * {@link #unpack} reads without any JNI field access.
+ */
+public class RtkSolution {
+
+    /** Solution quality, RTKLIB's SOLQ_* in the same order. */
+    public enum Status {
+        NONE(RTKProcessor.SOLUTION_NONE),
+        FIX(RTKProcessor.SOLUTION_FIX),
+        FLOAT(RTKProcessor.SOLUTION_FLOAT),
+        SBAS(RTKProcessor.SOLUTION_SBAS),
+        DGPS(RTKProcessor.SOLUTION_DGPS),
+        SINGLE(RTKProcessor.SOLUTION_SINGLE),
+        PPP(RTKProcessor.SOLUTION_PPP);
+
+        // values() copies the array on every call
+        private static final Status[] BY_CODE = values();
+
+        public final int code;
+
+        Status(int code) {
+            this.code = code;
+        }
+
+        /** Unknown codes map to {@link #NONE}. */
+        public static Status of(int code) {
+            return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : NONE;
+        }
+    }
+
+    public static final int VERSION = 1;
+
+    static final int OFFSET_VERSION = 0;
+    static final int OFFSET_STATUS = 4;
+    static final int OFFSET_GPS_WEEK = 8;
+    static final int OFFSET_SATELLITES = 12;
+    static final int OFFSET_TOW_SECONDS = 16;
+    static final int OFFSET_ECEF = 24;
+    static final int OFFSET_LLH = OFFSET_ECEF + 3 * 8;
+    static final int OFFSET_COVARIANCE = OFFSET_LLH + 3 * 8;
+    static final int OFFSET_AGE = OFFSET_COVARIANCE + 6 * 4;
+    static final int OFFSET_RATIO = OFFSET_AGE + 4;
+    public static final int SIZE = OFFSET_RATIO + 4;
+
+    public Status status = Status.NONE;
+    public int gpsWeek;
+    public double towSeconds;
+    /** ECEF position, m. */
+    public final double[] ecef = new double[3];
+    public double latitudeDegrees;
+    public double longitudeDegrees;
+    /** Height above the WGS84 ellipsoid, m. */
+    public double heightMeters;
+    /** ECEF position covariance, m^2: xx, yy, zz, xy, yz, zx. */
+    public final float[] covariance = new float[6];
+    public int satellites;
+    /** Age of the differential corrections, s. */
+    public float ageSeconds;
+    /** Ambiguity validation ratio of the last fix attempt. */
+    public float ratio;
+    /** Counts published solutions from 1; 0 until the first one. */
+    public long sequence;
+
+    /** A buffer for the native solver to write solutions into. */
+    public static ByteBuffer allocateBuffer() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(SIZE).order(ByteOrder.nativeOrder());
+        buffer.putInt(OFFSET_VERSION, VERSION);
+        return buffer;
+    }
+
+    /** Reads a solution written by the native solver; {@link #sequence} is left alone. */
+    public void unpack(ByteBuffer b) {
+        status = Status.of(b.getInt(OFFSET_STATUS));
+        gpsWeek = b.getInt(OFFSET_GPS_WEEK);
+        satellites = b.getInt(OFFSET_SATELLITES);
+        towSeconds = b.getDouble(OFFSET_TOW_SECONDS);
+        for (int i = 0; i < 3; i++) {
+            ecef[i] = b.getDouble(OFFSET_ECEF + 8 * i);
+        }
+        latitudeDegrees = b.getDouble(OFFSET_LLH);
+        longitudeDegrees = b.getDouble(OFFSET_LLH + 8);
+        heightMeters = b.getDouble(OFFSET_LLH + 16);
+        for (int i = 0; i < 6; i++) {
+            covariance[i] = b.getFloat(OFFSET_COVARIANCE + 4 * i);
+        }
+        ageSeconds = b.getFloat(OFFSET_AGE);
+        ratio = b.getFloat(OFFSET_RATIO);
+    }
+
+    public void copyFrom(RtkSolution other) {
+        status = other.status;
+        gpsWeek = other.gpsWeek;
+        towSeconds = other.towSeconds;
+        System.arraycopy(other.ecef, 0, ecef, 0, 3);
+        latitudeDegrees = other.latitudeDegrees;
+        longitudeDegrees = other.longitudeDegrees;
+        heightMeters = other.heightMeters;
+        System.arraycopy(other.covariance, 0, covariance, 0, 6);
+        satellites = other.satellites;
+        ageSeconds = other.ageSeconds;
+        ratio = other.ratio;
+        sequence = other.sequence;
+    }
+
+    /** True for every status that comes with a position. */
+    public boolean hasPosition() {
+        return status != Status.NONE;
+    }
+}
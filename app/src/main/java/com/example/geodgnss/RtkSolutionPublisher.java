@@ -0,0 +1,109 @@
+package com.example.geodgnss;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands each RTK solution from the solver thread to any number of listeners, each called on
+ * the executor it registered with (the main thread, a logger thread, or the solver thread
+ * itself with {@code Runnable::run}).
+ *
+ * <p>Every listener has three reusable {@link RtkSolution} slots used as a triple buffer:
+ * {@link #publish} fills the writer's slot and swaps it with the middle one; the listener's
+ * task swaps the middle one into its own slot before calling the listener. Publishing
+ * never waits for a listener and nothing is allocated per solution. At most one task per
+ * listener is queued or running at a time, on any executor, so a listener is never called
+ * concurrently with itself and one that falls behind skips straight to the latest solution
+ * instead of piling up work.
+ */
+public class RtkSolutionPublisher {
+
+    public interface Listener {
+        /** {@code solution} is reused once this returns. */
+        void onSolution(RtkSolution solution);
+    }
+
+    private static final class Registration implements Runnable {
+        private static final int FRESH = 1;
+
+        final Listener listener;
+        final Executor executor;
+        final RtkSolution[] slots = {new RtkSolution(), new RtkSolution(), new RtkSolution()};
+        // Middle slot index << 1, plus FRESH when it holds a solution the listener has not seen
+        final AtomicInteger middle = new AtomicInteger(1 << 1);
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        int back = 0;   // publisher only
+        int front = 2;  // listener task only
+
+        Registration(Listener listener, Executor executor) {
+            this.listener = listener;
+            this.executor = executor;
+        }
+
+        void offer(RtkSolution solution) {
+            slots[back].copyFrom(solution);
+            back = middle.getAndSet((back << 1) | FRESH) >> 1;
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            if ((middle.get() & FRESH) != 0) {
+                front = middle.getAndSet(front << 1) >> 1;
+                listener.onSolution(slots[front]);
+            }
+            // Cleared only once the listener returns, so on a multi-threaded executor no
+            // second run reads front alongside this one. A solution published meanwhile
+            // found the flag set and scheduled nothing, so it is scheduled here instead.
+            scheduled.set(false);
+            if ((middle.get() & FRESH) != 0 && scheduled.compareAndSet(false, true)) {
+                executor.execute(this);
+            }
+        }
+    }
+
+    private volatile Registration[] registrations = new Registration[0];
+    private volatile long sequence;
+
+    /** Calls {@code listener} on {@code executor} with every solution it keeps up with. */
+    public synchronized void addListener(Executor executor, Listener listener) {
+        Registration[] current = registrations;
+        Registration[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = new Registration(listener, executor);
+        registrations = updated;
+    }
+
+    /** Tasks already handed to the listener's executor may still call it once. */
+    public synchronized void removeListener(Listener listener) {
+        Registration[] current = registrations;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].listener == listener) {
+                Registration[] updated = new Registration[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                registrations = updated;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Numbers {@code solution} and passes a copy to every listener. Call from one thread
+     * only; {@code solution} can be reused as soon as this returns.
+     */
+    public void publish(RtkSolution solution) {
+        solution.sequence = ++sequence;
+        for (Registration registration : registrations) {
+            registration.offer(solution);
+        }
+    }
+
+    /** Solutions published so far. */
+    public long getPublished() {
+        return sequence;
+    }
+}
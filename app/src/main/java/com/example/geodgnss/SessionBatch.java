@@ -0,0 +1,418 @@
+package com.example.geodgnss;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Post-processes many recorded sessions at once: finds them under a set of directories,
+ * replays each through its own solver on a fork/join pool and streams the solutions of each
+ * to its own file.
+ *
+ * <p>A session is a directory holding {@code gnss_<start>.log} and {@code rtcm_<start>.bin}
+ * segments as {@link SessionStorage} writes them, gzipped or not. Each stream rotates on its
+ * own first write after a boundary, so the two never share start times. All GNSS segments
+ * are therefore replayed, oldest first, as one log against the RTCM segments joined into one
+ * capture, which {@link ReplayEngine} interleaves by epoch time; the filter carries over
+ * from one segment to the next as it did on the device. Gzipped segments, and captures of
+ * more than one segment, are written out to temporary files first, since the replay maps
+ * its files. A session without any RTCM is solved without corrections. The solver is
+ * preloaded with the navigation frames of a {@link #NAVIGATION_FILE} in the session
+ * directory, such as a copy of the app's {@link EphemerisStore} file, else with those of
+ * {@link #setNavigation}.
+ *
+ * <p>Sessions are queued largest first and split in halves down to one per task; idle
+ * workers steal the halves still waiting, so a few long sessions do not leave cores idle
+ * at the end of the batch. A session that fails is reported with its error and does not
+ * stop the others.
+ */
+public class SessionBatch {
+
+    public static final String NAVIGATION_FILE = "ephemeris.rtcm";
+    public static final String SOLUTION_SUFFIX = ".pos";
+
+    static final String GNSS_PREFIX = "gnss_";
+    static final String GNSS_SUFFIX = ".log";
+    static final String RTCM_PREFIX = "rtcm_";
+    static final String RTCM_SUFFIX = ".bin";
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /** The solver of one session, used by one thread at a time. */
+    public interface Solver extends ReplayEngine.Solver {
+        /** Reads the solution of the last {@link #solve} into {@code solution}. */
+        void getSolution(RtkSolution solution);
+
+        /** Releases the solver once its session is done. */
+        void close();
+    }
+
+    public interface SolverFactory {
+        /** Opens a solver for one session, with {@code navigation} preloaded if not null. */
+        Solver open(File navigation) throws IOException;
+    }
+
+    public interface Listener {
+        /** Called on a worker thread as each session finishes, failed or not. */
+        void onSession(Session session);
+    }
+
+    public static class Session {
+        /** Directory path from the scanned root, starting with the root's own name. */
+        public final String name;
+        public final File directory;
+        /** Segments of each stream, oldest first. */
+        public final List<File> gnssLogs = new ArrayList<>();
+        public final List<File> rtcmCaptures = new ArrayList<>();
+        /** Navigation frames of the session directory, null for the batch default. */
+        public File navigation;
+        public long bytes;
+
+        // Set when the session has been processed
+        public File solutionFile;
+        public final ReplayEngine.Report report = new ReplayEngine.Report();
+        public long wallNanos;
+        /** Why the session failed, null if it did not. */
+        public Exception error;
+
+        Session(String name, File directory) {
+            this.name = name;
+            this.directory = directory;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return name + ": failed after " + report.epochs + " epochs: " + error;
+            }
+            return String.format(Locale.US,
+                    "%s: %d+%d segments, %d epochs, fix %.1f %%, float %d, %.1f epochs/s,"
+                            + " %.3f s",
+                    name, gnssLogs.size(), rtcmCaptures.size(), report.epochs,
+                    100 * report.getFixRatio(), report.floatEpochs,
+                    report.getEpochsPerSecond(), wallNanos / 1e9);
+        }
+    }
+
+    public static class Report {
+        public int sessions;
+        public int failedSessions;
+        /** GNSS and RTCM segments replayed. */
+        public int segments;
+        public int threads;
+        /** The replays of all sessions added up. */
+        public final ReplayEngine.Report total = new ReplayEngine.Report();
+        /** Wall time of the whole batch. */
+        public long wallNanos;
+        /** Wall time of every session added up, over all workers. */
+        public long sessionWallNanos;
+
+        /** Epochs solved per second of batch wall time, over all workers. */
+        public double getEpochsPerSecond() {
+            return wallNanos > 0 ? total.epochs * 1e9 / wallNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                    "sessions %d (failed %d), segments %d, threads %d%n"
+                            + "epochs %d (skipped %d), fix %d (%.1f %%), float %d%n"
+                            + "wall %.3f s, %.1f epochs/s, session time %.3f s (%.1fx)",
+                    sessions, failedSessions, segments, threads,
+                    total.epochs, total.skippedEpochs, total.fixEpochs,
+                    100 * total.getFixRatio(), total.floatEpochs,
+                    wallNanos / 1e9, getEpochsPerSecond(), sessionWallNanos / 1e9,
+                    wallNanos > 0 ? (double) sessionWallNanos / wallNanos : 0);
+        }
+    }
+
+    private final File outputDirectory;
+    private final SolverFactory factory;
+    private final List<Session> sessions = new ArrayList<>();
+    private File navigation;
+    private SignalFilter filter;
+    private File temporaryDirectory;
+    private Listener listener;
+
+    /** Writes the solution files of the sessions below {@code outputDirectory}. */
+    public SessionBatch(File outputDirectory, SolverFactory factory) {
+        this.outputDirectory = outputDirectory;
+        this.factory = factory;
+    }
+
+    /** Navigation frames for sessions without a {@link #NAVIGATION_FILE}; null for none. */
+    public void setNavigation(File navigation) {
+        this.navigation = navigation;
+    }
+
+    /**
+     * Checks measurements as the app does before solving; null, the default, does not. The
+     * filter is shared by all workers, so its counters add up over the batch.
+     */
+    public void setFilter(SignalFilter filter) {
+        this.filter = filter;
+    }
+
+    /** Where segments are expanded and joined; null, the default, is the system's. */
+    public void setTemporaryDirectory(File temporaryDirectory) {
+        this.temporaryDirectory = temporaryDirectory;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** Adds the sessions in {@code root} and every directory below it. */
+    public void scan(File root) throws IOException {
+        File directory = root.getCanonicalFile();
+        if (!directory.isDirectory()) {
+            throw new IOException("Not a directory: " + root);
+        }
+        scan(directory, directory.getName());
+    }
+
+    public List<Session> getSessions() {
+        return sessions;
+    }
+
+    /** Processes every session found so far on {@code threads} workers. */
+    public Report run(int threads) {
+        List<Session> queue = new ArrayList<>(sessions);
+        queue.sort((a, b) -> Long.compare(b.bytes, a.bytes));
+        long start = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new Batch(queue, 0, queue.size()));
+        } finally {
+            pool.shutdown();
+        }
+
+        Report report = new Report();
+        report.wallNanos = System.nanoTime() - start;
+        report.threads = threads;
+        for (Session session : sessions) {
+            report.sessions++;
+            if (session.error != null) {
+                report.failedSessions++;
+            }
+            report.segments += session.gnssLogs.size() + session.rtcmCaptures.size();
+            report.total.add(session.report);
+            report.sessionWallNanos += session.wallNanos;
+        }
+        return report;
+    }
+
+    private void scan(File directory, String name) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        // Sorted, so a plain segment comes before a gzipped copy of itself and wins
+        Arrays.sort(files);
+        Map<String, File> gnssLogs = new TreeMap<>();
+        Map<String, File> rtcmCaptures = new TreeMap<>();
+        File sessionNavigation = null;
+        for (File file : files) {
+            String fileName = file.getName();
+            if (file.isDirectory()) {
+                scan(file, name + "/" + fileName);
+            } else if (fileName.equals(NAVIGATION_FILE)) {
+                sessionNavigation = file;
+            } else {
+                String start = segmentStart(fileName, GNSS_PREFIX, GNSS_SUFFIX);
+                if (start != null) {
+                    gnssLogs.putIfAbsent(start, file);
+                }
+                start = segmentStart(fileName, RTCM_PREFIX, RTCM_SUFFIX);
+                if (start != null) {
+                    rtcmCaptures.putIfAbsent(start, file);
+                }
+            }
+        }
+
+        Session session = new Session(name, directory);
+        // Start times sort as they were formatted, oldest first
+        session.gnssLogs.addAll(gnssLogs.values());
+        session.rtcmCaptures.addAll(rtcmCaptures.values());
+        for (File file : gnssLogs.values()) {
+            session.bytes += file.length();
+        }
+        for (File file : rtcmCaptures.values()) {
+            session.bytes += file.length();
+        }
+        if (!session.gnssLogs.isEmpty()) {
+            session.navigation = sessionNavigation;
+            sessions.add(session);
+        }
+    }
+
+    /** Start time of a segment named {@code prefix + start + suffix [+ .gz]}, else null. */
+    static String segmentStart(String fileName, String prefix, String suffix) {
+        if (!fileName.startsWith(prefix)) {
+            return null;
+        }
+        String compressed = suffix + SessionStorage.COMPRESSED_SUFFIX;
+        if (fileName.endsWith(suffix)) {
+            return fileName.substring(prefix.length(), fileName.length() - suffix.length());
+        }
+        if (fileName.endsWith(compressed)) {
+            return fileName.substring(prefix.length(), fileName.length() - compressed.length());
+        }
+        return null;
+    }
+
+    private void process(Session session) {
+        long start = System.nanoTime();
+        session.solutionFile = new File(outputDirectory, session.name + SOLUTION_SUFFIX);
+        try {
+            session.solutionFile.getParentFile().mkdirs();
+            Solver solver = factory.open(
+                    session.navigation != null ? session.navigation : navigation);
+            try (PrintWriter out = new PrintWriter(new OutputStreamWriter(
+                    new FileOutputStream(session.solutionFile), StandardCharsets.US_ASCII))) {
+                SolutionWriter writer = new SolutionWriter(solver, out);
+                ReplayEngine engine = new ReplayEngine();
+                engine.setFilter(filter);
+                List<File> temporaries = new ArrayList<>();
+                try {
+                    List<File> gnssLogs = new ArrayList<>();
+                    for (File gnssLog : session.gnssLogs) {
+                        gnssLogs.add(expand(gnssLog, temporaries));
+                    }
+                    File rtcmCapture = join(session.rtcmCaptures, temporaries);
+                    session.report.add(engine.run(gnssLogs, rtcmCapture, writer));
+                } finally {
+                    for (File temporary : temporaries) {
+                        temporary.delete();
+                    }
+                }
+                if (out.checkError()) {
+                    throw new IOException("Cannot write " + session.solutionFile);
+                }
+            } finally {
+                solver.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            session.error = e;
+        }
+        session.wallNanos = System.nanoTime() - start;
+        Listener l = listener;
+        if (l != null) {
+            l.onSession(session);
+        }
+    }
+
+    /** The file itself if it is not gzipped, else a temporary copy of its contents. */
+    private File expand(File file, List<File> temporaries) throws IOException {
+        if (!isCompressed(file)) {
+            return file;
+        }
+        return join(Collections.singletonList(file), temporaries);
+    }
+
+    /**
+     * The one plain file of {@code files}, else a temporary file with the contents of all of
+     * them in order. A raw RTCM stream split into segments joins back into the stream.
+     */
+    private File join(List<File> files, List<File> temporaries) throws IOException {
+        if (files.size() == 1 && !isCompressed(files.get(0))) {
+            return files.get(0);
+        }
+        File temporary = File.createTempFile("segment", ".tmp", temporaryDirectory);
+        temporaries.add(temporary);
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        try (OutputStream out = new FileOutputStream(temporary)) {
+            for (File file : files) {
+                try (InputStream in = isCompressed(file)
+                        ? new GZIPInputStream(new FileInputStream(file), COPY_BUFFER_SIZE)
+                        : new FileInputStream(file)) {
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                }
+            }
+        }
+        return temporary;
+    }
+
+    private static boolean isCompressed(File file) {
+        return file.getName().endsWith(SessionStorage.COMPRESSED_SUFFIX);
+    }
+
+    /** Sessions {@code from} to {@code to} of the queue, halved until one is left. */
+    @SuppressWarnings("serial") // ForkJoinTask is Serializable; these tasks never leave the pool
+    private final class Batch extends RecursiveAction {
+        private final List<Session> queue;
+        private final int from;
+        private final int to;
+
+        Batch(List<Session> queue, int from, int to) {
+            this.queue = queue;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Batch(queue, from, middle), new Batch(queue, middle, to));
+            } else if (to > from) {
+                process(queue.get(from));
+            }
+        }
+    }
+
+    /** Passes epochs on to the solver and writes a line for each solution with a position. */
+    private static final class SolutionWriter implements ReplayEngine.Solver {
+        private final Solver solver;
+        private final PrintWriter out;
+        private final RtkSolution solution = new RtkSolution();
+
+        SolutionWriter(Solver solver, PrintWriter out) {
+            this.solver = solver;
+            this.out = out;
+            out.print("% week tow(s) Q ns latitude(deg) longitude(deg) height(m)"
+                    + " sdx(m) sdy(m) sdz(m) age(s) ratio\n");
+        }
+
+        @Override
+        public void addCorrections(ByteBuffer frames, int offset, int length) {
+            solver.addCorrections(frames, offset, length);
+        }
+
+        @Override
+        public int solve(ByteBuffer epoch) {
+            int status = solver.solve(epoch);
+            if (status != RTKProcessor.SOLUTION_NONE) {
+                solver.getSolution(solution);
+                float[] c = solution.covariance;
+                out.printf(Locale.US,
+                        "%d %.3f %d %d %.9f %.9f %.4f %.4f %.4f %.4f %.1f %.1f\n",
+                        solution.gpsWeek, solution.towSeconds, status, solution.satellites,
+                        solution.latitudeDegrees, solution.longitudeDegrees,
+                        solution.heightMeters, Math.sqrt(c[0]), Math.sqrt(c[1]),
+                        Math.sqrt(c[2]), solution.ageSeconds, solution.ratio);
+            }
+            return status;
+        }
+    }
+}
@@ -0,0 +1,421 @@
+package com.example.geodgnss;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps the logs of unattended sessions within a disk budget.
+ *
+ * <p>Each session gets a directory under the root, named after its UTC start time. Every
+ * logged stream ({@code gnss_*.log}, {@code rtcm_*.bin}, ...) is written as a series of
+ * segments named after their own start time. A stream rotates on its first write after its
+ * segment reaches the size limit or crosses a wall-clock boundary of the segment duration.
+ * Each stream starts and rotates on its own writes, so the segments of two streams in one
+ * session cover about the same periods but do not share names; match them by time, as
+ * {@link SessionBatch} does. Every segment is a complete file on its own.
+ *
+ * <p>Closed segments are gzipped one at a time on a background thread and the original is
+ * deleted. After each change, closed segments are evicted until the stored bytes plus room
+ * for a full segment per open stream fit the budget. Older sessions go first. Within the
+ * current session only the oldest closed segments are evicted, so a run of several days
+ * keeps its latest data.
+ *
+ * <p>A manifest in the root lists every segment with its size and state. The session list
+ * and the budget are therefore known without scanning the files. The manifest is rewritten
+ * (to a temporary file, then renamed) whenever a segment changes state. Segments left open
+ * by a crash are closed and compressed when the storage is next opened.
+ */
+public class SessionStorage {
+
+    public static final String MANIFEST = "sessions.manifest";
+    public static final String COMPRESSED_SUFFIX = ".gz";
+
+    static final int OPEN = 0;
+    static final int CLOSED = 1;
+    static final int COMPRESSED = 2;
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /** One file of a stream, as listed in the manifest. Fields are guarded by the storage. */
+    static final class Segment {
+        final String session;
+        String name;
+        long bytes;
+        int state;
+
+        Segment(String session, String name, long bytes, int state) {
+            this.session = session;
+            this.name = name;
+            this.bytes = bytes;
+            this.state = state;
+        }
+    }
+
+    /** A logged stream of the current session; see {@link #openStream}. */
+    public final class Stream {
+        private final String prefix;
+        private final String suffix;
+        private Segment current;
+        private long rotateAtMillis;
+
+        Stream(String prefix, String suffix) {
+            this.prefix = prefix;
+            this.suffix = suffix;
+        }
+
+        /** True if the open segment is full, due, or not yet started. */
+        public boolean shouldRotate(long writtenBytes, long nowMillis) {
+            return current == null || writtenBytes >= segmentBytes || nowMillis >= rotateAtMillis;
+        }
+
+        /**
+         * Closes the open segment, which the caller has finished writing, and starts the
+         * next one. Returns the file to write next.
+         */
+        public File rotate(long nowMillis) {
+            synchronized (SessionStorage.this) {
+                closeSegment(current);
+                String base = prefix + format(nowMillis);
+                String name = base + suffix;
+                for (int n = 1; find(session, name) != null; n++) {
+                    name = base + "_" + n + suffix;
+                }
+                current = new Segment(session, name, 0, OPEN);
+                segments.add(current);
+                rotateAtMillis = (Math.floorDiv(nowMillis, segmentMillis) + 1) * segmentMillis;
+                writeManifest();
+                evict();
+                return getFile(current);
+            }
+        }
+
+        /** Closes the open segment, which the caller has finished writing. */
+        public void close() {
+            synchronized (SessionStorage.this) {
+                closeSegment(current);
+                current = null;
+                openStreams.remove(this);
+                writeManifest();
+                evict();
+            }
+        }
+    }
+
+    private final File root;
+    private final long budgetBytes;
+    private final long segmentBytes;
+    private final long segmentMillis;
+    private final SimpleDateFormat nameFormat =
+            new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US);
+
+    // Guarded by this; oldest first
+    private final List<Segment> segments = new ArrayList<>();
+    private final List<Stream> openStreams = new ArrayList<>();
+    private String session;
+    private IOException lastError;
+
+    private final LinkedBlockingQueue<Segment> compressQueue = new LinkedBlockingQueue<>();
+    private final Thread compressor;
+
+    /**
+     * @param budgetBytes   total size of all sessions, including room for the open segments
+     * @param segmentBytes  size at which a stream rotates
+     * @param segmentMillis duration after which streams rotate, on aligned boundaries
+     */
+    public SessionStorage(File root, long budgetBytes, long segmentBytes, long segmentMillis) {
+        this.root = root;
+        this.budgetBytes = budgetBytes;
+        this.segmentBytes = segmentBytes;
+        this.segmentMillis = segmentMillis;
+        nameFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        root.mkdirs();
+        synchronized (this) {
+            readManifest();
+            for (Segment s : new ArrayList<>(segments)) {
+                if (s.state == OPEN) {
+                    // Left open by a crash: the writer is gone, the file is as complete as it gets
+                    closeSegment(s);
+                } else if (s.state == CLOSED) {
+                    compressQueue.add(s);
+                }
+            }
+            writeManifest();
+        }
+        compressor = new Thread(this::compressLoop, "SessionStorage");
+        compressor.setDaemon(true);
+        compressor.start();
+    }
+
+    /** Starts a new session, which the streams opened from now on belong to. */
+    public synchronized String startSession(long nowMillis) {
+        String id = format(nowMillis);
+        for (int n = 1; new File(root, id).exists(); n++) {
+            id = format(nowMillis) + "_" + n;
+        }
+        new File(root, id).mkdirs();
+        session = id;
+        return id;
+    }
+
+    /**
+     * Opens a stream of the current session whose segments are named
+     * {@code prefix + startTime + suffix}; call {@link Stream#rotate} for the first file.
+     */
+    public synchronized Stream openStream(String prefix, String suffix) {
+        if (session == null) {
+            throw new IllegalStateException("No session started");
+        }
+        Stream stream = new Stream(prefix, suffix);
+        openStreams.add(stream);
+        evict();
+        return stream;
+    }
+
+    /** Sessions in the manifest, oldest first. */
+    public synchronized List<String> getSessions() {
+        List<String> sessions = new ArrayList<>();
+        for (Segment s : segments) {
+            if (!sessions.contains(s.session)) {
+                sessions.add(s.session);
+            }
+        }
+        return sessions;
+    }
+
+    /** Current files of {@code session}, oldest first, compressed ones ending in .gz. */
+    public synchronized List<File> getFiles(String session) {
+        List<File> files = new ArrayList<>();
+        for (Segment s : segments) {
+            if (s.session.equals(session)) {
+                files.add(getFile(s));
+            }
+        }
+        return files;
+    }
+
+    /** Bytes of all closed segments, as recorded in the manifest. */
+    public synchronized long getStoredBytes() {
+        long total = 0;
+        for (Segment s : segments) {
+            total += s.bytes;
+        }
+        return total;
+    }
+
+    /** Returns the last error from compressing or writing the manifest, or null. */
+    public synchronized IOException getLastError() {
+        return lastError;
+    }
+
+    /** Closes every open stream and waits for the compression of the closed segments. */
+    public void close() throws InterruptedException {
+        synchronized (this) {
+            for (Stream stream : new ArrayList<>(openStreams)) {
+                stream.close();
+            }
+            compressQueue.add(new Segment(null, null, 0, CLOSED)); // end marker
+        }
+        compressor.join();
+    }
+
+    private File getFile(Segment s) {
+        return new File(new File(root, s.session), s.name);
+    }
+
+    private Segment find(String session, String name) {
+        for (Segment s : segments) {
+            if (s.session.equals(session) && s.name.equals(name)) {
+                return s;
+            }
+        }
+        return null;
+    }
+
+    private void closeSegment(Segment s) {
+        if (s == null || s.state != OPEN) {
+            return;
+        }
+        if (!getFile(s).exists()) {
+            segments.remove(s); // never written
+            return;
+        }
+        s.bytes = getFile(s).length();
+        s.state = CLOSED;
+        compressQueue.add(s);
+    }
+
+    private void compressLoop() {
+        while (true) {
+            Segment s;
+            try {
+                s = compressQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (s.session == null) {
+                return;
+            }
+            String name;
+            synchronized (this) {
+                if (!segments.contains(s)) {
+                    continue; // evicted while queued
+                }
+                name = s.name;
+            }
+            File source = new File(new File(root, s.session), name);
+            File target = new File(source.getPath() + COMPRESSED_SUFFIX);
+            File temporary = new File(target.getPath() + ".tmp");
+            try {
+                compress(source, temporary);
+                synchronized (this) {
+                    if (!segments.contains(s)) {
+                        temporary.delete();
+                        continue;
+                    }
+                    if (!temporary.renameTo(target)) {
+                        throw new IOException("Cannot rename " + temporary);
+                    }
+                    source.delete();
+                    s.name = target.getName();
+                    s.bytes = target.length();
+                    s.state = COMPRESSED;
+                    writeManifest();
+                    evict();
+                }
+            } catch (IOException e) {
+                temporary.delete();
+                synchronized (this) {
+                    if (segments.contains(s)) {
+                        lastError = e;
+                    }
+                }
+            }
+        }
+    }
+
+    private static void compress(File source, File target) throws IOException {
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new GZIPOutputStream(
+                     new FileOutputStream(target), COPY_BUFFER_SIZE) {
+                 {
+                     // Logs compress well even at the fastest level; keep the CPU cost low
+                     def.setLevel(Deflater.BEST_SPEED);
+                 }
+             }) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    /** Deletes closed segments, oldest sessions first, until the budget is met. */
+    private void evict() {
+        long used = getStoredBytes() + openStreams.size() * segmentBytes;
+        boolean changed = false;
+        Segment victim;
+        while (used > budgetBytes && (victim = oldestEvictable()) != null) {
+            used -= victim.bytes;
+            getFile(victim).delete();
+            segments.remove(victim);
+            changed = true;
+            if (!victim.session.equals(session) && !getSessions().contains(victim.session)) {
+                new File(root, victim.session).delete();
+            }
+        }
+        if (changed) {
+            writeManifest();
+        }
+    }
+
+    // The oldest closed segment of an earlier session, else of the current one
+    private Segment oldestEvictable() {
+        Segment own = null;
+        for (Segment s : segments) {
+            if (s.state == OPEN) {
+                continue;
+            }
+            if (!s.session.equals(session)) {
+                return s;
+            }
+            if (own == null) {
+                own = s;
+            }
+        }
+        return own;
+    }
+
+    // One line per segment: session, name, bytes, state, tab-separated
+    private void readManifest() {
+        File file = new File(root, MANIFEST);
+        if (!file.exists()) {
+            return;
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] f = line.split("\t");
+                if (f.length != 4) {
+                    continue;
+                }
+                Segment s = new Segment(f[0], f[1], Long.parseLong(f[2]), Integer.parseInt(f[3]));
+                if (getFile(s).exists()) {
+                    segments.add(s);
+                } else if (s.state == CLOSED
+                        && new File(getFile(s).getPath() + COMPRESSED_SUFFIX).exists()) {
+                    // Compressed, but the manifest was not rewritten before the process died
+                    s.name += COMPRESSED_SUFFIX;
+                    s.bytes = getFile(s).length();
+                    s.state = COMPRESSED;
+                    segments.add(s);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            lastError = e instanceof IOException ? (IOException) e
+                    : new IOException("Corrupt manifest", e);
+        }
+    }
+
+    private void writeManifest() {
+        File temporary = new File(root, MANIFEST + ".tmp");
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(temporary),
+                StandardCharsets.UTF_8)) {
+            StringBuilder sb = new StringBuilder();
+            for (Segment s : segments) {
+                sb.append(s.session).append('\t').append(s.name).append('\t')
+                        .append(s.bytes).append('\t').append(s.state).append('\n');
+            }
+            out.write(sb.toString());
+        } catch (IOException e) {
+            lastError = e;
+            return;
+        }
+        if (!temporary.renameTo(new File(root, MANIFEST))) {
+            lastError = new IOException("Cannot replace " + MANIFEST);
+        }
+    }
+
+    private String format(long millis) {
+        return nameFormat.format(new Date(millis));
+    }
+}
@@ -0,0 +1,205 @@
+package com.example.geodgnss;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Quality checks on each raw measurement of a {@link GnssEpoch}, so signals the solver would
+ * only be misled by never reach it: no code lock or unresolved time of week, a millisecond
+ * ambiguity, a large transmit-time uncertainty, weak C/N0, detected multipath, or a satellite
+ * below the elevation mask. A measurement whose code is fine but whose carrier phase is not
+ * (ADR not valid, or too uncertain) is kept with {@link #NO_CARRIER} so only the phase is
+ * left out.
+ *
+ * <p>{@link #check} scores one measurement as the set of checks it fails, reading the
+ * epoch's primitive arrays and allocating nothing; {@link GnssEpochBuilder#setFilter} runs it
+ * on every measurement. Each failure is counted per satellite and per reason in atomic
+ * arrays, so the counters can be read from any thread.
+ *
+ * <p>Elevations come from {@code GnssStatus} through {@link #setElevation}, usually on
+ * another thread than the checks; a satellite with no elevation yet passes the mask. The
+ * thresholds are set up before the filter is used, or on the thread that runs the checks.
+ */
+public class SignalFilter {
+
+    // Check bits returned by check()
+    public static final int REJECT_STATE = 1;
+    public static final int REJECT_UNCERTAINTY = 1 << 1;
+    public static final int REJECT_CN0 = 1 << 2;
+    public static final int REJECT_MULTIPATH = 1 << 3;
+    public static final int REJECT_ELEVATION = 1 << 4;
+    /** Not a rejection: the code measurement is kept, the carrier phase is not usable. */
+    public static final int NO_CARRIER = 1 << 5;
+    static final int REASONS = 6;
+    private static final int REJECTED = NO_CARRIER - 1;
+    private static final String[] REASON_NAMES = {
+            "state", "uncertainty", "cn0", "multipath", "elevation", "carrier"};
+
+    /** Satellite index space: constellation type in the high bits, svid in the low 8. */
+    public static final int SATELLITES = 8 << 8;
+
+    public static final double DEFAULT_MIN_CN0_DB_HZ = 20;
+    public static final long DEFAULT_MAX_SV_TIME_UNCERTAINTY_NANOS = 100; // 30 m
+    public static final double DEFAULT_MAX_ADR_UNCERTAINTY_METERS = 0.1;
+    public static final float DEFAULT_ELEVATION_MASK_DEGREES = 10;
+
+    // android.location.GnssMeasurement states, ADR states and multipath indicator
+    static final int STATE_CODE_LOCK = 1;
+    static final int STATE_MSEC_AMBIGUOUS = 1 << 4;
+    static final int STATE_GAL_E1BC_CODE_LOCK = 1 << 10;
+    static final int MULTIPATH_INDICATOR_DETECTED = 1;
+    // RINEX system letters by constellation type, '?' for unknown
+    private static final String SYSTEM_LETTERS = "?GSRJCEI";
+
+    private double minCn0DbHz = DEFAULT_MIN_CN0_DB_HZ;
+    private long maxSvTimeUncertaintyNanos = DEFAULT_MAX_SV_TIME_UNCERTAINTY_NANOS;
+    private double maxAdrUncertaintyMeters = DEFAULT_MAX_ADR_UNCERTAINTY_METERS;
+    private float elevationMaskDegrees = DEFAULT_ELEVATION_MASK_DEGREES;
+    private boolean rejectMultipath = true;
+
+    // Float bits of the degrees per satellite index, NaN until known; atomic so the checks
+    // see what the GnssStatus thread writes
+    private final AtomicIntegerArray elevations = new AtomicIntegerArray(SATELLITES);
+    private final AtomicLongArray rejectedBySatellite = new AtomicLongArray(SATELLITES * REASONS);
+    private final AtomicLongArray rejectedByReason = new AtomicLongArray(REASONS);
+
+    public SignalFilter() {
+        clearElevations();
+    }
+
+    /** Index of a satellite in the per-satellite arrays; out-of-range svids wrap. */
+    public static int satellite(int constellation, int svid) {
+        return (constellation & 7) << 8 | (svid & 0xFF);
+    }
+
+    /**
+     * Returns the checks measurement {@code i} of {@code epoch} fails, 0 if it passes all.
+     * The measurement is to be dropped when any bit other than {@link #NO_CARRIER} is set,
+     * see {@link #isRejected}.
+     */
+    public int check(GnssEpoch epoch, int i) {
+        int constellation = epoch.constellationType[i];
+        int state = epoch.state[i];
+        int result = 0;
+        if ((state & (STATE_CODE_LOCK | STATE_GAL_E1BC_CODE_LOCK)) == 0
+                || (state & STATE_MSEC_AMBIGUOUS) != 0
+                || (constellation == GnssEpochBuilder.CONSTELLATION_GLONASS
+                ? (state & (GnssEpochBuilder.STATE_GLO_TOD_DECODED
+                | GnssEpochBuilder.STATE_GLO_TOD_KNOWN)) == 0
+                : (state & (GnssEpochBuilder.STATE_TOW_DECODED
+                | GnssEpochBuilder.STATE_TOW_KNOWN)) == 0)) {
+            result |= REJECT_STATE;
+        }
+        if (epoch.receivedSvTimeUncertaintyNanos[i] > maxSvTimeUncertaintyNanos) {
+            result |= REJECT_UNCERTAINTY;
+        }
+        if (epoch.cn0DbHz[i] < minCn0DbHz) {
+            result |= REJECT_CN0;
+        }
+        if (rejectMultipath && epoch.multipathIndicator[i] == MULTIPATH_INDICATOR_DETECTED) {
+            result |= REJECT_MULTIPATH;
+        }
+        int satellite = satellite(constellation, epoch.svid[i]);
+        // False for NaN, an unknown elevation
+        if (Float.intBitsToFloat(elevations.get(satellite)) < elevationMaskDegrees) {
+            result |= REJECT_ELEVATION;
+        }
+        if ((result & REJECTED) == 0
+                && ((epoch.accumulatedDeltaRangeState[i] & GnssEpochBuilder.ADR_STATE_VALID) == 0
+                || epoch.accumulatedDeltaRangeUncertaintyMeters[i] > maxAdrUncertaintyMeters)) {
+            result |= NO_CARRIER;
+        }
+        if (result != 0) {
+            count(satellite, result);
+        }
+        return result;
+    }
+
+    /** True if {@code checks}, as returned by {@link #check}, drop the measurement. */
+    public static boolean isRejected(int checks) {
+        return (checks & REJECTED) != 0;
+    }
+
+    /** Short name of one check bit, as used in {@link #describe}. */
+    public static String checkName(int check) {
+        return REASON_NAMES[Integer.numberOfTrailingZeros(check)];
+    }
+
+    private void count(int satellite, int checks) {
+        for (int reason = 0; reason < REASONS; reason++) {
+            if ((checks & (1 << reason)) != 0) {
+                rejectedBySatellite.incrementAndGet(satellite * REASONS + reason);
+                rejectedByReason.incrementAndGet(reason);
+            }
+        }
+    }
+
+    /** Records a satellite's elevation, e.g. from {@code GnssStatus.getElevationDegrees}. */
+    public void setElevation(int constellation, int svid, float degrees) {
+        elevations.lazySet(satellite(constellation, svid), Float.floatToIntBits(degrees));
+    }
+
+    /** Forgets every elevation, so all satellites pass the mask until they are reported. */
+    public void clearElevations() {
+        int nan = Float.floatToIntBits(Float.NaN);
+        for (int i = 0; i < SATELLITES; i++) {
+            elevations.lazySet(i, nan);
+        }
+    }
+
+    public void setMinCn0DbHz(double minCn0DbHz) {
+        this.minCn0DbHz = minCn0DbHz;
+    }
+
+    public void setMaxSvTimeUncertaintyNanos(long maxSvTimeUncertaintyNanos) {
+        this.maxSvTimeUncertaintyNanos = maxSvTimeUncertaintyNanos;
+    }
+
+    public void setMaxAdrUncertaintyMeters(double maxAdrUncertaintyMeters) {
+        this.maxAdrUncertaintyMeters = maxAdrUncertaintyMeters;
+    }
+
+    /** 0 turns the mask off; satellites below the horizon are still rejected. */
+    public void setElevationMaskDegrees(float elevationMaskDegrees) {
+        this.elevationMaskDegrees = elevationMaskDegrees;
+    }
+
+    public void setRejectMultipath(boolean rejectMultipath) {
+        this.rejectMultipath = rejectMultipath;
+    }
+
+    /** Measurements of one satellite that failed {@code check}, one of the check bits. */
+    public long getRejected(int constellation, int svid, int check) {
+        return rejectedBySatellite.get(
+                satellite(constellation, svid) * REASONS + Integer.numberOfTrailingZeros(check));
+    }
+
+    /** Measurements of all satellites that failed {@code check}, one of the check bits. */
+    public long getRejected(int check) {
+        return rejectedByReason.get(Integer.numberOfTrailingZeros(check));
+    }
+
+    /**
+     * Appends one line per satellite with failed checks, such as
+     * {@code G05 cn0=12 elevation=3}, for diagnostics; allocates, so not for the hot path.
+     */
+    public void describe(StringBuilder out) {
+        for (int satellite = 0; satellite < SATELLITES; satellite++) {
+            int start = out.length();
+            for (int reason = 0; reason < REASONS; reason++) {
+                long n = rejectedBySatellite.get(satellite * REASONS + reason);
+                if (n != 0) {
+                    if (out.length() == start) {
+                        out.append(SYSTEM_LETTERS.charAt(satellite >> 8));
+                        int svid = satellite & 0xFF;
+                        out.append(svid < 10 ? "0" : "").append(svid);
+                    }
+                    out.append(' ').append(REASON_NAMES[reason]).append('=').append(n);
+                }
+            }
+            if (out.length() != start) {
+                out.append('\n');
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.example.geodgnss;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Mountpoints ({@code STR;} records) of an NTRIP caster's sourcetable.
+ *
+ * <p>The raw table is small enough to keep as text, so the cache file is just the caster's
+ * reply; it is parsed once into {@link Mountpoint}s and handed to a {@link MountpointIndex}
+ * for lookups.
+ */
+public class Sourcetable {
+
+    /** One {@code STR;} record; fields follow the NTRIP 2.0 sourcetable layout. */
+    public static class Mountpoint {
+        public final String name;
+        public final String identifier;
+        public final String format;
+        public final String formatDetails;
+        public final int carrier;
+        public final String navSystem;
+        public final String network;
+        public final String country;
+        public final double latitude;
+        public final double longitude;
+        public final boolean nmea;
+        public final int solution;
+        public final int bitrate;
+
+        public Mountpoint(String name, String identifier, String format, String formatDetails,
+                          int carrier, String navSystem, String network, String country,
+                          double latitude, double longitude, boolean nmea, int solution,
+                          int bitrate) {
+            this.name = name;
+            this.identifier = identifier;
+            this.format = format;
+            this.formatDetails = formatDetails;
+            this.carrier = carrier;
+            this.navSystem = navSystem;
+            this.network = network;
+            this.country = country;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.nmea = nmea;
+            this.solution = solution;
+            this.bitrate = bitrate;
+        }
+
+        /**
+         * True for a physical reference station streaming RTCM 3, the only kind whose
+         * coordinates say how long the baseline will be. Network (VRS) mountpoints list an
+         * arbitrary position.
+         */
+        public boolean isSingleBaseRtcm3() {
+            String f = format.replace(" ", "");
+            return solution == 0 && f.regionMatches(true, 0, "RTCM3", 0, 5)
+                    && (latitude != 0 || longitude != 0);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    public static final long DEFAULT_MAX_AGE_MS = 24 * 60 * 60 * 1000L;
+
+    private static final int STR_FIELDS = 18;
+    private static final String END = "ENDSOURCETABLE\r\n";
+
+    private final List<Mountpoint> mountpoints;
+    private final String text;
+
+    private Sourcetable(List<Mountpoint> mountpoints, String text) {
+        this.mountpoints = Collections.unmodifiableList(mountpoints);
+        this.text = text;
+    }
+
+    public List<Mountpoint> getMountpoints() {
+        return mountpoints;
+    }
+
+    /** Parses the caster's reply; lines other than {@code STR;} records are ignored. */
+    public static Sourcetable parse(String text) {
+        List<Mountpoint> result = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            String[] fields = new String[STR_FIELDS];
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("STR;")) continue;
+                Mountpoint m = parseStr(line, fields);
+                if (m != null) {
+                    result.add(m);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // StringReader does not fail
+        }
+        return new Sourcetable(result, text);
+    }
+
+    /** Returns the record, or null if it is too short or its coordinates do not parse. */
+    static Mountpoint parseStr(String line, String[] fields) {
+        // Split on ';' without a regex; trailing fields (misc) may contain anything
+        int n = 0;
+        int start = 0;
+        while (n < fields.length) {
+            int end = line.indexOf(';', start);
+            if (end < 0) {
+                fields[n++] = line.substring(start);
+                break;
+            }
+            fields[n++] = line.substring(start, end);
+            start = end + 1;
+        }
+        if (n < 11 || fields[1].isEmpty()) {
+            return null;
+        }
+        double lat;
+        double lon;
+        try {
+            lat = Double.parseDouble(fields[9]);
+            lon = Double.parseDouble(fields[10]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (lat < -90 || lat > 90 || lon < -180 || lon > 360) {
+            return null;
+        }
+        if (lon > 180) {
+            lon -= 360; // some casters list 0..360
+        }
+        return new Mountpoint(fields[1], fields[2], fields[3], fields[4], parseInt(fields, n, 5),
+                fields[6], fields[7], fields[8], lat, lon, parseInt(fields, n, 11) == 1,
+                parseInt(fields, n, 12), parseInt(fields, n, 17));
+    }
+
+    private static int parseInt(String[] fields, int count, int i) {
+        if (i >= count) return 0;
+        try {
+            return Integer.parseInt(fields[i].trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /** Returns the cached table if it is younger than {@code maxAgeMs}, otherwise null. */
+    public static Sourcetable loadCache(File file, long maxAgeMs) {
+        if (!file.isFile() || System.currentTimeMillis() - file.lastModified() > maxAgeMs) {
+            return null;
+        }
+        try (InputStream in = new FileInputStream(file)) {
+            return parse(readAll(new InputStreamReader(in, StandardCharsets.ISO_8859_1)));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void saveCache(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+    }
+
+    /**
+     * Downloads the sourcetable with a plain NTRIP 1.0 request. Blocking; call it off the
+     * main thread.
+     */
+    public static Sourcetable fetch(String host, int port, String username, String password,
+                                    int timeoutMs) throws IOException {
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            String auth = Base64.getEncoder().encodeToString(
+                    (username + ":" + password).getBytes(StandardCharsets.UTF_8));
+            String request = "GET / HTTP/1.0\r\n" +
+                    "User-Agent: NTRIP GeoDGNSS/1.0\r\n" +
+                    "Authorization: Basic " + auth + "\r\n\r\n";
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+
+            InputStream in = socket.getInputStream();
+            byte[] reply = new byte[64 * 1024];
+            int length = 0;
+            int n;
+            while ((n = in.read(reply, length, reply.length - length)) > 0) {
+                length += n;
+                if (endsWith(reply, length, END)) break; // casters may keep the socket open
+                if (length == reply.length) {
+                    reply = Arrays.copyOf(reply, 2 * reply.length);
+                }
+            }
+            String text = new String(reply, 0, length, StandardCharsets.ISO_8859_1);
+            if (!text.startsWith("SOURCETABLE 200") && !text.matches("(?s)HTTP/1\\.[01] 200\\b.*")) {
+                int eol = text.indexOf("\r\n");
+                throw new IOException("Sourcetable request failed: "
+                        + (eol < 0 ? text : text.substring(0, eol)));
+            }
+            return parse(text);
+        }
+    }
+
+    private static boolean endsWith(byte[] bytes, int length, String tail) {
+        if (length < tail.length()) return false;
+        for (int i = 0; i < tail.length(); i++) {
+            if (bytes[length - tail.length() + i] != tail.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        char[] buf = new char[8192];
+        int n;
+        while ((n = reader.read(buf)) > 0) {
+            sb.append(buf, 0, n);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.geodgnss;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class CycleSlipTrackerTest {
+
+    private static final int GPS = GnssEpochBuilderTest.GPS;
+    private static final long START = 2300 * GnssEpochBuilder.WEEK_NANOS + 100_000_000_000_000L;
+    private static final long STEP = 100_000_000L; // 10 Hz
+    private static final double LAMBDA = GnssEpochBuilder.SPEED_OF_LIGHT / 1575.42e6;
+    // Satellite 1 approaches, satellite 2 recedes
+    private static final double[] RATES = {-600, 350};
+
+    private final GnssEpoch epoch = new GnssEpoch();
+    private final GnssEpochBuilder builder = new GnssEpochBuilder();
+    private final CycleSlipTracker tracker = new CycleSlipTracker();
+    private final double[] carrierOffset = new double[2];
+
+    @Before
+    public void setUp() {
+        builder.setTracker(tracker);
+    }
+
+    @Test
+    public void steadyPhase_hasNoSlips() {
+        for (int n = 0; n < 100; n++) {
+            epoch(n);
+            assertEquals("epoch " + n, 0, builder.lli[0] | builder.lli[1]);
+        }
+        assertEquals(0, tracker.getDopplerSlips() + tracker.getCodeSlips()
+                + tracker.getGapSlips() + tracker.getReportedSlips());
+    }
+
+    @Test
+    public void dopplerPrediction_catchesAFewCycles() {
+        run(0, 20);
+        carrierOffset[0] = 3 * LAMBDA;
+        epoch(20);
+        assertEquals(CycleSlipTracker.LLI_SLIP, builder.lli[0]);
+        assertEquals(0, builder.lli[1]);
+        assertEquals(1, tracker.getDopplerSlips());
+        // Continues from the new phase
+        epoch(21);
+        assertEquals(0, builder.lli[0]);
+    }
+
+    @Test
+    public void phaseMinusCode_catchesLargeSlipsTheDopplerTestAllows() {
+        tracker.setDopplerTolerance(1000, 0);
+        run(0, 20);
+        carrierOffset[1] = -100;
+        epoch(20);
+        assertEquals(CycleSlipTracker.LLI_SLIP, builder.lli[1]);
+        assertEquals(1, tracker.getCodeSlips());
+        assertEquals(0, tracker.getDopplerSlips());
+        // The mean starts over from the new offset
+        run(21, 40);
+        assertEquals(1, tracker.getCodeSlips());
+    }
+
+    @Test
+    public void adrStateAndGaps_areFlagged() {
+        run(0, 5);
+        observe(5);
+        epoch.accumulatedDeltaRangeState[0] |= CycleSlipTracker.ADR_STATE_CYCLE_SLIP;
+        epoch.accumulatedDeltaRangeState[1] |= CycleSlipTracker.ADR_STATE_HALF_CYCLE_REPORTED;
+        build();
+        assertEquals(CycleSlipTracker.LLI_SLIP, builder.lli[0]);
+        assertEquals(CycleSlipTracker.LLI_HALF_CYCLE, builder.lli[1]);
+        assertEquals(1, tracker.getReportedSlips());
+
+        // Ten seconds without the signals
+        epoch(105);
+        assertEquals(CycleSlipTracker.LLI_SLIP, builder.lli[0]);
+        assertEquals(CycleSlipTracker.LLI_SLIP, builder.lli[1]);
+        assertEquals(2, tracker.getGapSlips());
+    }
+
+    @Test
+    public void lostCarrier_flagsTheFirstEpochBack() {
+        run(0, 5);
+        observe(5);
+        epoch.accumulatedDeltaRangeState[0] = 0;
+        build();
+        assertEquals(0, builder.carrierCycles[0], 0);
+        assertEquals(0, builder.lli[0]);
+        // Back with a new arbitrary phase and no reset bit
+        carrierOffset[0] = 1234.5;
+        epoch(6);
+        assertEquals(CycleSlipTracker.LLI_SLIP, builder.lli[0]);
+        assertEquals(0, builder.lli[1]);
+        assertEquals(1, tracker.getGapSlips());
+        // Continuous from there on
+        epoch(7);
+        assertEquals(0, builder.lli[0]);
+    }
+
+    @Test
+    public void packedEpoch_carriesTheFlags() {
+        run(0, 5);
+        carrierOffset[0] = 10 * LAMBDA;
+        epoch(5);
+        ByteBuffer b = new GnssEpochBuffer().pack(builder);
+        assertEquals(CycleSlipTracker.LLI_SLIP, b.getInt(GnssEpochBuffer.OFFSET_LLI));
+        assertEquals(0, b.getInt(GnssEpochBuffer.OFFSET_LLI + 4));
+    }
+
+    private void run(int from, int to) {
+        for (int n = from; n < to; n++) {
+            epoch(n);
+        }
+    }
+
+    private void epoch(int n) {
+        observe(n);
+        build();
+    }
+
+    private void build() {
+        assertTrue(builder.build(epoch));
+        assertEquals(2, builder.count);
+    }
+
+    private void observe(int n) {
+        double t = n * STEP * 1e-9;
+        double[] ranges = new double[2];
+        for (int i = 0; i < 2; i++) {
+            ranges[i] = 21_000_000 + i * 1_000_000 + RATES[i] * t;
+        }
+        GnssEpochBuilderTest.observe(epoch, START + n * STEP, 0, new int[]{GPS, GPS}, ranges);
+        for (int i = 0; i < 2; i++) {
+            epoch.accumulatedDeltaRangeState[i] = GnssEpochBuilder.ADR_STATE_VALID;
+            // The carrier starts at an arbitrary offset to the code, with its noise
+            epoch.accumulatedDeltaRangeMeters[i] = ranges[i] - 21_000_000 + 57.3 * (i + 1)
+                    + carrierOffset[i] + 0.002 * Math.sin(7 * n);
+            epoch.pseudorangeRateMetersPerSecond[i] = RATES[i];
+        }
+    }
+}
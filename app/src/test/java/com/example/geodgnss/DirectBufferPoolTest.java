@@ -0,0 +1,39 @@
+package com.example.geodgnss;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class DirectBufferPoolTest {
+
+    @Test
+    public void acquiredBuffers_areClearedAndReused() throws InterruptedException {
+        DirectBufferPool pool = new DirectBufferPool(2, 64);
+        ByteBuffer a = pool.acquire(0);
+        a.put((byte) 1).flip();
+        pool.release(a);
+
+        ByteBuffer b = pool.acquire(0);
+        ByteBuffer c = pool.acquire(0);
+
+        assertTrue(b.isDirect());
+        assertTrue(b == a || c == a);
+        assertEquals(0, a.position());
+        assertEquals(64, a.limit());
+        assertEquals(0, pool.getAvailable());
+    }
+
+    @Test
+    public void exhaustedPool_timesOut() throws InterruptedException {
+        DirectBufferPool pool = new DirectBufferPool(1, 16);
+        assertNotNull(pool.acquire(0));
+        assertNull(pool.acquire(10));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void foreignBuffer_isRejected() {
+        new DirectBufferPool(1, 16).release(ByteBuffer.allocate(16));
+    }
+}
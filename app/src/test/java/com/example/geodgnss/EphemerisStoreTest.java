@@ -0,0 +1,223 @@
+package com.example.geodgnss;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EphemerisStoreTest {
+
+    // 2026-01-01 00:00:00 UTC, Thursday
+    private static final long NOW = EphemerisStore.gpsMillis(1767225600_000L);
+    // GPS midnight, on the step of every toe field
+    private static final long MIDNIGHT = NOW - EphemerisStore.GPS_UTC_LEAP_MILLIS;
+    private static final long HOUR = 3600_000L;
+    private static final long WEEK = RtcmFramer.WEEK_MILLIS;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void offer_keysBySatelliteAndIode() {
+        EphemerisStore store = new EphemerisStore(folder.getRoot());
+        assertTrue(offer(store, gps(5, 10, NOW)));
+        assertFalse("same IODE again", offer(store, gps(5, 10, NOW)));
+        assertTrue(offer(store, gps(5, 11, NOW + HOUR)));
+        assertTrue(offer(store, gps(6, 10, NOW)));
+        assertEquals(3, store.size());
+
+        // A third IODE pushes out the one with the oldest toe
+        assertTrue(offer(store, gps(5, 12, NOW + HOUR / 2)));
+        List<Integer> iodes = new ArrayList<>();
+        for (EphemerisStore.Entry entry : store.entries(1019, 5)) {
+            iodes.add(entry.iode);
+        }
+        iodes.sort(null);
+        assertEquals(Arrays.asList(11, 12), iodes);
+        assertEquals(1, store.getEvicted());
+
+        // Galileo F/NAV and I/NAV of one IODnav are separate ephemeris sets in RTKLIB
+        assertTrue(offer(store, galileo(1045, 7, 100, NOW)));
+        assertTrue(offer(store, galileo(1046, 7, 100, NOW)));
+        assertEquals(5, store.size());
+    }
+
+    @Test
+    public void offer_rejectsShortStaleAndOtherFrames() {
+        EphemerisStore store = new EphemerisStore(folder.getRoot());
+        byte[] full = gps(5, 10, NOW);
+        assertFalse(offer(store, frame(Arrays.copyOf(payload(full), 60))));
+        assertFalse("toe 3 h old", offer(store, gps(5, 10, NOW - 3 * HOUR)));
+        assertFalse(offer(store, frame(new byte[]{(byte) 0x3E, (byte) 0xD0, 0, 0, 0, 0, 0})));
+        assertEquals(0, store.size());
+        assertFalse(EphemerisStore.isEphemeris(1077));
+        assertTrue(EphemerisStore.isEphemeris(1042));
+    }
+
+    @Test
+    public void toe_isPlacedInTheWeekOrDayNearestNow() {
+        assertEquals(MIDNIGHT + HOUR, toe(gps(1, 1, MIDNIGHT + HOUR)));
+        assertEquals(MIDNIGHT - HOUR, toe(qzss(2, 1, MIDNIGHT - HOUR)));
+        assertEquals(MIDNIGHT + 2 * HOUR, toe(galileo(1046, 3, 1, MIDNIGHT + 2 * HOUR)));
+        // BeiDou time is 14 s behind, GLONASS runs on UTC
+        long beidou = MIDNIGHT - 3 * HOUR + 14_000;
+        assertEquals(beidou, toe(beidou(4, 1, beidou)));
+        assertEquals(NOW + HOUR / 4, toe(glonass(5, NOW + HOUR / 4)));
+        assertEquals(NOW - 12 * HOUR, toe(glonass(5, NOW - 12 * HOUR)));
+
+        // Just after the week rollover a toe from the end of the last week stays there
+        long rollover = (MIDNIGHT / WEEK + 1) * WEEK;
+        byte[] frame = gps(1, 1, rollover - HOUR);
+        ByteBuffer b = ByteBuffer.wrap(frame);
+        assertEquals(rollover - HOUR, EphemerisStore.toeGpsMillis(b, 3, 1019, rollover + HOUR));
+    }
+
+    @Test
+    public void evict_usesTheSystemsToeLimits() {
+        EphemerisStore store = new EphemerisStore(folder.getRoot());
+        offer(store, gps(1, 1, NOW));
+        offer(store, glonass(2, NOW));
+        offer(store, beidou(3, 1, NOW));
+        assertEquals(3, store.size());
+        assertEquals(0, store.evict(NOW + 20 * 60_000));
+        assertEquals("GLONASS after 30 min", 1, store.evict(NOW + 40 * 60_000));
+        assertEquals("GPS after 2 h", 1, store.evict(NOW + 3 * HOUR));
+        assertEquals(1, store.size());
+        assertEquals("BeiDou after 6 h", 1, store.evict(NOW + 7 * HOUR));
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void saveAndLoad_keepValidFramesOnly() throws Exception {
+        File file = new File(folder.getRoot(), "ephemeris.rtcm");
+        EphemerisStore store = new EphemerisStore(file);
+        assertEquals(0, store.load(NOW));
+        List<byte[]> frames = Arrays.asList(gps(1, 1, NOW), glonass(2, NOW),
+                beidou(3, 1, NOW), qzss(4, 1, NOW), galileo(1046, 5, 1, NOW));
+        for (byte[] frame : frames) {
+            assertTrue(offer(store, frame));
+        }
+        store.save();
+        assertEquals(frames.stream().mapToInt(f -> f.length).sum(), file.length());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        EphemerisStore reloaded = new EphemerisStore(file);
+        assertEquals(5, reloaded.load(NOW + 20 * 60_000));
+        // The GLONASS one is too old by now
+        assertEquals(4, new EphemerisStore(file).load(NOW + HOUR));
+
+        // The preload buffer holds every frame unchanged
+        ByteBuffer preload = reloaded.frames(NOW);
+        List<ByteBuffer> seen = new ArrayList<>();
+        new RtcmFramer((buffer, offset, length, messageType, stationId) -> {
+            ByteBuffer copy = ByteBuffer.allocate(length);
+            for (int i = 0; i < length; i++) {
+                copy.put(buffer.get(offset + i));
+            }
+            seen.add(copy.flip());
+        }).feed(preload);
+        assertEquals(5, seen.size());
+        for (byte[] frame : frames) {
+            assertTrue(seen.contains(ByteBuffer.wrap(frame)));
+        }
+
+        // A torn write loses only the damaged frame
+        byte[] data = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(data, data.length - 10));
+        assertEquals(4, new EphemerisStore(file).load(NOW));
+    }
+
+    private static boolean offer(EphemerisStore store, byte[] frame) {
+        ByteBuffer b = ByteBuffer.allocateDirect(frame.length + 5);
+        b.position(5);
+        b.put(frame);
+        return store.offer(b, 5, frame.length, RtcmFramer.messageType(b, 5 + 3), NOW);
+    }
+
+    private static long toe(byte[] frame) {
+        ByteBuffer b = ByteBuffer.wrap(frame);
+        return EphemerisStore.toeGpsMillis(b, 3, RtcmFramer.messageType(b, 3), NOW);
+    }
+
+    // Field positions are bits after the start of the payload, as in RTKLIB's rtcm3.c
+
+    private static byte[] gps(int prn, int iode, long toe) {
+        byte[] p = payload(1019, 12 + 476);
+        set(p, 12, 6, prn);
+        set(p, 48, 8, iode);
+        set(p, 288, 16, Math.floorMod(toe, WEEK) / 16_000);
+        return frame(p);
+    }
+
+    private static byte[] qzss(int prn, int iode, long toe) {
+        byte[] p = payload(1044, 12 + 473);
+        set(p, 12, 4, prn);
+        set(p, 78, 8, iode);
+        set(p, 246, 16, Math.floorMod(toe, WEEK) / 16_000);
+        return frame(p);
+    }
+
+    private static byte[] galileo(int type, int prn, int iode, long toe) {
+        byte[] p = payload(type, 12 + (type == 1045 ? 484 : 492));
+        set(p, 12, 6, prn);
+        set(p, 30, 10, iode);
+        set(p, 294, 14, Math.floorMod(toe, WEEK) / 60_000);
+        return frame(p);
+    }
+
+    private static byte[] beidou(int prn, int iode, long toe) {
+        byte[] p = payload(1042, 12 + 499);
+        set(p, 12, 6, prn);
+        set(p, 49, 5, iode);
+        set(p, 299, 17, Math.floorMod(toe - 14_000, WEEK) / 8_000);
+        return frame(p);
+    }
+
+    /** tb is the Moscow time of day in 15 min steps; {@code toe} must be on a step. */
+    private static byte[] glonass(int prn, long toe) {
+        byte[] p = payload(1020, 12 + 348);
+        set(p, 12, 6, prn);
+        long moscow = toe - EphemerisStore.GPS_UTC_LEAP_MILLIS + 3 * HOUR;
+        set(p, 41, 7, Math.floorMod(moscow, 86400_000L) / 900_000);
+        return frame(p);
+    }
+
+    private static byte[] payload(int type, int bits) {
+        byte[] p = new byte[(bits + 7) / 8];
+        set(p, 0, 12, type);
+        return p;
+    }
+
+    private static void set(byte[] p, int position, int length, long value) {
+        for (int i = 0; i < length; i++) {
+            int bit = (int) (value >>> (length - 1 - i)) & 1;
+            int n = position + i;
+            p[n >>> 3] |= (byte) (bit << (7 - (n & 7)));
+        }
+    }
+
+    private static byte[] payload(byte[] frame) {
+        return Arrays.copyOfRange(frame, 3, frame.length - 3);
+    }
+
+    private static byte[] frame(byte[] payload) {
+        byte[] frame = new byte[payload.length + 6];
+        frame[0] = (byte) 0xD3;
+        frame[1] = (byte) (payload.length >> 8);
+        frame[2] = (byte) payload.length;
+        System.arraycopy(payload, 0, frame, 3, payload.length);
+        int crc = RtcmFramer.crc24q(frame, 0, payload.length + 3);
+        frame[payload.length + 3] = (byte) (crc >> 16);
+        frame[payload.length + 4] = (byte) (crc >> 8);
+        frame[payload.length + 5] = (byte) crc;
+        return frame;
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.geodgnss;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EpochPipelineTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    private final EpochPipeline<Integer> pipeline = new EpochPipeline<>(
+            (e, epoch) -> {
+                GnssLoggerTest.fill(epoch, e, 8);
+                return true;
+            }, 16, 4);
+
+    @After
+    public void tearDown() {
+        pipeline.stop();
+    }
+
+    @Test
+    public void everyStageSeesEveryEpochInOrder() throws InterruptedException {
+        List<Long> solved = Collections.synchronizedList(new ArrayList<>());
+        List<Long> logged = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(2 * 50);
+        pipeline.addStage("solve", 8, EpochPipeline.Overflow.DROP_OLDEST, (epoch, e) -> {
+            solved.add(epoch.epochTimeNanos());
+            done.countDown();
+        });
+        pipeline.addStage("log", 8, EpochPipeline.Overflow.DROP_NEWEST, (epoch, e) -> {
+            logged.add(epoch.epochTimeNanos());
+            done.countDown();
+        });
+        pipeline.start();
+
+        for (int e = 0; e < 50; e++) {
+            // Paced like the 1 Hz callback: the convert queue itself never overflows
+            assertTrue(pipeline.submit(e));
+            awaitConverted(e + 1);
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+
+        assertEquals(50, solved.size());
+        assertEquals(solved, logged);
+        for (int e = 1; e < 50; e++) {
+            assertEquals(SECOND, solved.get(e) - solved.get(e - 1));
+        }
+        awaitFreeSlots(16);
+        for (EpochPipeline.Stage<Integer> stage : pipeline.getStages()) {
+            assertEquals(50, stage.getProcessed());
+            assertEquals(0, stage.getDropped());
+            assertTrue(stage.getMeanLatencyNanos() > 0);
+        }
+    }
+
+    @Test
+    public void stalledStage_dropsOldest_withoutHoldingUpOthers() throws InterruptedException {
+        CountDownLatch unblock = new CountDownLatch(1);
+        CountDownLatch logged = new CountDownLatch(6);
+        List<Integer> solved = Collections.synchronizedList(new ArrayList<>());
+        EpochPipeline.Stage<Integer> solve = pipeline.addStage("solve", 2,
+                EpochPipeline.Overflow.DROP_OLDEST, (epoch, e) -> {
+                    unblock.await();
+                    solved.add(e);
+                });
+        EpochPipeline.Stage<Integer> log = pipeline.addStage("log", 8,
+                EpochPipeline.Overflow.DROP_NEWEST, (epoch, e) -> logged.countDown());
+        pipeline.start();
+
+        for (int e = 0; e < 6; e++) {
+            assertTrue(pipeline.submit(e));
+            awaitQueued(log, e + 1);
+            if (e == 0) {
+                awaitTaken(solve);
+            }
+        }
+        // The logger keeps up although the solver has been stuck since the first epoch
+        assertTrue(logged.await(5, TimeUnit.SECONDS));
+        assertEquals(2, solve.getQueueDepth());
+
+        unblock.countDown();
+        awaitFreeSlots(16);
+        // Epoch 0 was in the handler; of the rest only the two newest stayed queued
+        assertEquals(List.of(0, 4, 5), solved);
+        assertEquals(3, solve.getDropped());
+        assertEquals(6, log.getProcessed());
+    }
+
+    @Test
+    public void coalescingStage_onlyProcessesLatestEpoch() throws InterruptedException {
+        CountDownLatch unblock = new CountDownLatch(1);
+        List<Integer> shown = Collections.synchronizedList(new ArrayList<>());
+        EpochPipeline.Stage<Integer> display = pipeline.addStage("display", 4,
+                EpochPipeline.Overflow.COALESCE, (epoch, e) -> {
+                    unblock.await();
+                    shown.add(e);
+                });
+        pipeline.start();
+
+        for (int e = 0; e < 5; e++) {
+            assertTrue(pipeline.submit(e));
+            awaitConverted(e + 1);
+            if (e == 0) {
+                awaitTaken(display);
+            }
+        }
+        unblock.countDown();
+        awaitFreeSlots(16);
+
+        assertEquals(List.of(0, 4), shown);
+        assertEquals(3, display.getDropped());
+    }
+
+    @Test
+    public void exhaustedPool_dropsAtCapture_withoutBlocking() throws InterruptedException {
+        CountDownLatch unblock = new CountDownLatch(1);
+        pipeline.addStage("solve", 32, EpochPipeline.Overflow.DROP_NEWEST,
+                (epoch, e) -> unblock.await());
+        pipeline.start();
+
+        int accepted = 0;
+        for (int e = 0; e < 40; e++) {
+            if (pipeline.submit(e)) {
+                accepted++;
+            }
+            awaitConverted(Math.min(accepted, 16));
+        }
+        assertEquals(16, accepted);
+        assertEquals(24, pipeline.getCaptureDropped());
+        assertEquals(0, pipeline.getFreeSlots());
+
+        unblock.countDown();
+        awaitFreeSlots(16);
+        assertEquals(16, pipeline.getStages().get(1).getProcessed());
+    }
+
+    @Test
+    public void stop_finishesTheQueuedEpochsAfterCaptureStops() throws InterruptedException {
+        List<Integer> logged = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch unblock = new CountDownLatch(1);
+        EpochPipeline.Stage<Integer> log = pipeline.addStage("log", 8,
+                EpochPipeline.Overflow.DROP_NEWEST, (epoch, e) -> {
+                    unblock.await();
+                    logged.add(e);
+                });
+        pipeline.start();
+        for (int e = 0; e < 6; e++) {
+            assertTrue(pipeline.submit(e));
+            awaitConverted(e + 1);
+        }
+        // The log stage is still stuck on its first epoch when stop begins
+        Thread release = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException ignored) {
+            }
+            unblock.countDown();
+        });
+        release.start();
+        pipeline.stop();
+        release.join();
+
+        assertEquals(List.of(0, 1, 2, 3, 4, 5), logged);
+        assertEquals(0, log.getDropped());
+        assertEquals(0, log.getErrors());
+        assertEquals(16, pipeline.getFreeSlots());
+        assertFalse(pipeline.submit(100));
+    }
+
+    @Test
+    public void stop_interruptsAStageStillBusyAfterTheTimeout() {
+        pipeline.setStopTimeoutMillis(50);
+        CountDownLatch never = new CountDownLatch(1);
+        EpochPipeline.Stage<Integer> solve = pipeline.addStage("solve", 4,
+                EpochPipeline.Overflow.DROP_NEWEST, (epoch, e) -> never.await());
+        pipeline.start();
+        for (int e = 0; e < 3; e++) {
+            assertTrue(pipeline.submit(e));
+        }
+
+        long start = System.nanoTime();
+        pipeline.stop();
+        assertTrue(System.nanoTime() - start < 5 * SECOND);
+        assertEquals(16, pipeline.getFreeSlots());
+        assertTrue(solve.getErrors() >= 1);
+    }
+
+    @Test
+    public void failingStage_reportsItsFirstErrorAndCountsTheRest() throws InterruptedException {
+        List<String> reported = Collections.synchronizedList(new ArrayList<>());
+        pipeline.setErrorListener((stage, e) -> reported.add(stage.getName() + ": "
+                + e.getMessage()));
+        EpochPipeline.Stage<Integer> log = pipeline.addStage("log", 8,
+                EpochPipeline.Overflow.DROP_NEWEST, (epoch, e) -> {
+                    throw new IllegalStateException("epoch " + e);
+                });
+        EpochPipeline.Stage<Integer> display = pipeline.addStage("display", 8,
+                EpochPipeline.Overflow.DROP_NEWEST, (epoch, e) -> { });
+        pipeline.start();
+
+        for (int e = 0; e < 3; e++) {
+            assertTrue(pipeline.submit(e));
+            awaitConverted(e + 1);
+        }
+        awaitFreeSlots(16);
+
+        assertEquals(Collections.singletonList("log: epoch 0"), reported);
+        assertEquals(3, log.getErrors());
+        assertEquals("epoch 2", log.getLastError().getMessage());
+        assertEquals(3, log.getProcessed());
+        assertEquals(0, display.getErrors());
+        assertNull(display.getLastError());
+    }
+
+    private void awaitConverted(long count) throws InterruptedException {
+        EpochPipeline.Stage<Integer> convert = pipeline.getStages().get(0);
+        long deadline = System.nanoTime() + 5 * SECOND;
+        while (convert.getProcessed() < count) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitQueued(EpochPipeline.Stage<Integer> stage, long count)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + 5 * SECOND;
+        while (stage.getProcessed() + stage.getQueueDepth() < count) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    /** Waits until the stage thread has taken the queued epoch into its handler. */
+    private void awaitTaken(EpochPipeline.Stage<Integer> stage) throws InterruptedException {
+        long deadline = System.nanoTime() + 5 * SECOND;
+        while (stage.getQueueDepth() > 0) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitFreeSlots(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + 5 * SECOND;
+        while (pipeline.getFreeSlots() < count) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
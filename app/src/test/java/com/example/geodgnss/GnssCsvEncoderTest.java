@@ -0,0 +1,72 @@
+package com.example.geodgnss;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class GnssCsvEncoderTest {
+
+    @Test
+    public void matchesStringFormat_forEdgeValues() {
+        GnssEpoch epoch = new GnssEpoch();
+        GnssLoggerTest.fill(epoch, 0, 4);
+        epoch.svid[0] = Integer.MIN_VALUE;
+        epoch.receivedSvTimeNanos[0] = Long.MIN_VALUE;
+        epoch.timeOffsetNanos[0] = -0.0;
+        epoch.cn0DbHz[0] = Double.NaN;
+        epoch.pseudorangeRateMetersPerSecond[0] = Double.POSITIVE_INFINITY;
+        epoch.accumulatedDeltaRangeMeters[0] = 1e-7;
+        epoch.accumulatedDeltaRangeUncertaintyMeters[0] = 1.2345678901234567e21;
+        epoch.flags[1] = 0xFF;
+        epoch.carrierFrequencyHz[1] = 1.57542e9f;
+        epoch.carrierCycles[1] = Long.MAX_VALUE;
+        epoch.carrierPhase[1] = 0.1 + 0.2;
+        epoch.carrierPhaseUncertainty[1] = Double.MIN_VALUE;
+        epoch.snrInDb[1] = -3.0;
+        epoch.automaticGainControlLevelDb[1] = 1e-3;
+        epoch.flags[2] = 0;
+
+        GnssCsvEncoder encoder = new GnssCsvEncoder();
+        for (int i = 0; i < epoch.count; i++) {
+            assertEncodes(encoder, epoch, i);
+        }
+    }
+
+    @Test
+    public void matchesStringFormat_forRandomMeasurements() {
+        Random random = new Random(42);
+        GnssEpoch epoch = new GnssEpoch();
+        GnssCsvEncoder encoder = new GnssCsvEncoder();
+        for (int e = 0; e < 200; e++) {
+            GnssLoggerTest.fill(epoch, e, 16);
+            for (int i = 0; i < epoch.count; i++) {
+                epoch.flags[i] = random.nextInt(64);
+                epoch.state[i] = random.nextInt();
+                epoch.receivedSvTimeNanos[i] = random.nextLong();
+                epoch.cn0DbHz[i] = random.nextDouble() * 60;
+                epoch.pseudorangeRateMetersPerSecond[i] = random.nextGaussian() * 1e3;
+                epoch.accumulatedDeltaRangeMeters[i] = Double.longBitsToDouble(random.nextLong());
+                epoch.carrierFrequencyHz[i] = Float.intBitsToFloat(random.nextInt());
+                epoch.carrierCycles[i] = random.nextLong();
+                epoch.carrierPhase[i] = random.nextDouble();
+            }
+            for (int i = 0; i < epoch.count; i++) {
+                assertEncodes(encoder, epoch, i);
+            }
+        }
+    }
+
+    private static void assertEncodes(GnssCsvEncoder encoder, GnssEpoch epoch, int i) {
+        String expected = GnssLoggerTest.legacyCsv(epoch, i);
+        StringBuilder sb = new StringBuilder("x");
+        GnssCsvEncoder.append(sb, epoch, i);
+        assertEquals("x" + expected, sb.toString());
+
+        int length = encoder.encode(epoch, i);
+        assertEquals(expected + "\n",
+                new String(encoder.bytes(), 0, length, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.geodgnss;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class GnssEpochBufferTest {
+
+    @Test
+    public void pack_writesGpsTimeAndStructOfArrays() {
+        GnssEpoch epoch = new GnssEpoch();
+        GnssEpochBuilderTest.observe(epoch, 2300 * GnssEpochBuilder.WEEK_NANOS + 1_000_000_000L, 0,
+                new int[]{1, 3, 5, 6, 1}, new double[]{2.0e7, 2.1e7, 3.8e7, 2.4e7, 2.2e7});
+        GnssEpochBuilder built = new GnssEpochBuilder();
+        assertTrue(built.build(epoch));
+        GnssEpochBuffer packer = new GnssEpochBuffer();
+        ByteBuffer b = packer.pack(built);
+
+        assertTrue(b.isDirect());
+        assertEquals(GnssEpochBuffer.SIZE, b.capacity());
+        assertEquals(GnssEpochBuffer.VERSION, b.getInt(GnssEpochBuffer.OFFSET_VERSION));
+        assertEquals(5, b.getInt(GnssEpochBuffer.OFFSET_COUNT));
+        assertEquals(2300, b.getInt(GnssEpochBuffer.OFFSET_GPS_WEEK));
+        assertEquals(built.epochFlags, b.getInt(GnssEpochBuffer.OFFSET_EPOCH_FLAGS));
+        assertEquals(built.towSeconds, b.getDouble(GnssEpochBuffer.OFFSET_TOW_SECONDS), 0);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(built.pseudorangeMeters[i],
+                    b.getDouble(GnssEpochBuffer.OFFSET_PSEUDORANGE + 8 * i), 0);
+            assertEquals(built.cn0DbHz[i], b.getDouble(GnssEpochBuffer.OFFSET_CN0 + 8 * i), 0);
+            assertEquals(built.constellationType[i],
+                    b.getInt(GnssEpochBuffer.OFFSET_CONSTELLATION + 4 * i));
+            assertEquals(built.svid[i], b.getInt(GnssEpochBuffer.OFFSET_SVID + 4 * i));
+            assertEquals(built.frequencySlot[i],
+                    b.getInt(GnssEpochBuffer.OFFSET_FREQUENCY_SLOT + 4 * i));
+            assertEquals(built.rtklibCode[i], b.getInt(GnssEpochBuffer.OFFSET_RTKLIB_CODE + 4 * i));
+            assertEquals(built.lli[i], b.getInt(GnssEpochBuffer.OFFSET_LLI + 4 * i));
+        }
+    }
+
+    @Test
+    public void layout_isAlignedAndMatchesNativeHeader() throws IOException, IllegalAccessException {
+        String header = new String(Files.readAllBytes(
+                Paths.get("src/main/cpp/gnss_epoch_buffer.h")), StandardCharsets.UTF_8);
+        Map<String, Integer> javaOffsets = new HashMap<>();
+        for (Field f : GnssEpochBuffer.class.getDeclaredFields()) {
+            if (Modifier.isStatic(f.getModifiers()) && f.getType() == int.class) {
+                javaOffsets.put(f.getName(), f.getInt(null));
+            }
+        }
+        Matcher m = Pattern.compile("constexpr int(?:32_t)? (OFFSET_\\w+|HEADER_SIZE|SIZE|VERSION|MAX) =")
+                .matcher(header);
+        int checked = 0;
+        while (m.find()) {
+            String name = m.group(1);
+            assertTrue("Missing in Java: " + name, javaOffsets.containsKey(name));
+            checked++;
+        }
+        assertEquals(javaOffsets.size(), checked);
+
+        // Values are expressions in the header, so check them through the Java constants:
+        // every 8-byte array must be 8-aligned, and arrays must not overlap
+        assertEquals(0, GnssEpochBuffer.HEADER_SIZE % 8);
+        assertEquals(0, GnssEpochBuffer.OFFSET_CONSTELLATION % 8);
+        assertEquals(GnssEpochBuffer.SIZE,
+                GnssEpochBuffer.HEADER_SIZE + GnssEpochBuffer.MAX * (4 * 8 + 5 * 4));
+        // Pinned by a static_assert in the header
+        assertEquals(6680, GnssEpochBuffer.SIZE);
+        assertTrue(header.contains("static_assert(SIZE == " + GnssEpochBuffer.SIZE));
+        assertTrue(header.contains("constexpr int MAX = " + GnssEpoch.MAX_MEASUREMENTS + ";"));
+        assertTrue(header.contains("constexpr int32_t VERSION = " + GnssEpochBuffer.VERSION + ";"));
+        assertTrue(header.contains("constexpr int HEADER_SIZE = " + GnssEpochBuffer.HEADER_SIZE + ";"));
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.geodgnss;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GnssEpochBuilderTest {
+
+    static final int GPS = 1;
+    static final int GLONASS = 3;
+    static final int BEIDOU = 5;
+    static final int GALILEO = 6;
+    static final int STATE_TOW = 16431;
+    static final int STATE_GLO_TOD = 0x8083;
+
+    private static final double C = GnssEpochBuilder.SPEED_OF_LIGHT;
+    // GPS week 2300, Wednesday 12:00:00.5
+    private static final long WEEK = 2300;
+    private static final long TOW_NANOS = (3 * 86400 + 43200) * 1_000_000_000L + 500_000_000L;
+    private static final long GPS_NANOS = WEEK * GnssEpochBuilder.WEEK_NANOS + TOW_NANOS;
+    private static final double BIAS = 0.3;
+
+    private final GnssEpochBuilder builder = new GnssEpochBuilder();
+    private final GnssEpoch epoch = new GnssEpoch();
+
+    @Test
+    public void build_tagsTheEpochWithGpsTimeAndDerivesPseudoranges() {
+        observe(epoch, GPS_NANOS, 0, new int[]{GPS, GLONASS, BEIDOU, GALILEO},
+                new double[]{20_200_000, 19_100_000, 38_000_000, 23_222_000});
+
+        assertTrue(builder.build(epoch));
+        assertEquals(WEEK, builder.gpsWeek);
+        assertEquals((TOW_NANOS - BIAS) * 1e-9, builder.towSeconds, 1e-9);
+        assertEquals(0, builder.epochFlags);
+        assertEquals(4, builder.count);
+        assertEquals(20_200_000, builder.pseudorangeMeters[0], 0.5);
+        assertEquals(19_100_000, builder.pseudorangeMeters[1], 0.5);
+        assertEquals(38_000_000, builder.pseudorangeMeters[2], 0.5);
+        assertEquals(23_222_000, builder.pseudorangeMeters[3], 0.5);
+        assertEquals(GLONASS, builder.constellationType[1]);
+        assertEquals(2, builder.svid[1]);
+    }
+
+    @Test
+    public void build_handlesWeekRollover() {
+        // 20 ms into the week: the signals left the satellites in the previous week
+        long gpsNanos = WEEK * GnssEpochBuilder.WEEK_NANOS + 20_000_000L;
+        observe(epoch, gpsNanos, 0, new int[]{GPS, BEIDOU}, new double[]{22_000_000, 21_500_000});
+
+        assertTrue(builder.build(epoch));
+        assertEquals(2, builder.count);
+        assertEquals(22_000_000, builder.pseudorangeMeters[0], 0.5);
+        assertEquals(21_500_000, builder.pseudorangeMeters[1], 0.5);
+    }
+
+    @Test
+    public void build_convertsCarrierAndDoppler() {
+        observe(epoch, GPS_NANOS, 0, new int[]{GPS, GPS}, new double[]{20_000_000, 21_000_000});
+        epoch.accumulatedDeltaRangeState[0] = GnssEpochBuilder.ADR_STATE_VALID;
+        epoch.accumulatedDeltaRangeMeters[0] = 190.29367279836487;
+        epoch.pseudorangeRateMetersPerSecond[0] = -190.29367279836487;
+        epoch.accumulatedDeltaRangeState[1] = 0;
+
+        assertTrue(builder.build(epoch));
+        double lambda = C / 1575.42e6;
+        assertEquals(190.29367279836487 / lambda, builder.carrierCycles[0], 1e-3);
+        assertEquals(190.29367279836487 / lambda, builder.dopplerHz[0], 1e-3);
+        assertEquals(0, builder.carrierCycles[1], 0);
+    }
+
+    @Test
+    public void build_mapsEachSignalToItsSlotAndWavelength() {
+        observe(epoch, GPS_NANOS, 0, new int[]{GPS, GPS, GALILEO},
+                new double[]{20_000_000, 20_000_000, 25_000_000});
+        epoch.svid[1] = epoch.svid[0];
+        epoch.carrierFrequencyHz[1] = 1176.45e6f;
+        epoch.codeType[1] = 'Q';
+        epoch.carrierFrequencyHz[2] = 1278.75e6f; // E6 has no slot
+        epoch.accumulatedDeltaRangeState[1] = GnssEpochBuilder.ADR_STATE_VALID;
+        epoch.accumulatedDeltaRangeMeters[1] = 100;
+
+        assertTrue(builder.build(epoch));
+        assertEquals(2, builder.count);
+        assertEquals(0, builder.frequencySlot[0]);
+        assertEquals(GnssSignalTable.CODE_L1C, builder.rtklibCode[0]);
+        assertEquals(2, builder.frequencySlot[1]);
+        assertEquals(GnssSignalTable.CODE_L5Q, builder.rtklibCode[1]);
+        assertEquals(100 * 1176.45e6 / C, builder.carrierCycles[1], 1e-9);
+    }
+
+    @Test
+    public void measurementsWithoutTimeOfWeek_areLeftOut() {
+        observe(epoch, GPS_NANOS, 0, new int[]{GPS, GLONASS, GALILEO},
+                new double[]{20_000_000, 20_000_000, 25_000_000});
+        epoch.state[0] = 1;          // code lock only
+        epoch.state[1] = STATE_TOW;  // GLONASS needs its time of day
+        epoch.receivedSvTimeNanos[2] += 1_000_000_000L; // not a satellite range
+
+        assertTrue(builder.build(epoch));
+        assertEquals(0, builder.count);
+    }
+
+    @Test
+    public void invalidEpochs_areSkipped() {
+        observe(epoch, GPS_NANOS, 3, new int[]{GPS}, new double[]{20_000_000});
+        assertTrue(builder.build(epoch));
+
+        // Same epoch delivered again
+        assertFalse(builder.build(epoch));
+
+        observe(epoch, GPS_NANOS + 1_000_000_000L, 3, new int[]{GPS}, new double[]{20_000_000});
+        epoch.clockFlags &= ~GnssEpoch.HAS_FULL_BIAS;
+        assertFalse(builder.build(epoch));
+
+        observe(epoch, GPS_NANOS + 2_000_000_000L, 3, new int[]{GPS}, new double[]{20_000_000});
+        epoch.biasUncertaintyNanos = 5e6;
+        assertFalse(builder.build(epoch));
+        assertEquals(3, builder.getSkippedEpochs());
+    }
+
+    @Test
+    public void clockDiscontinuity_skipsOneEpochAndFlagsTheNext() {
+        observe(epoch, GPS_NANOS, 3, new int[]{GPS}, new double[]{20_000_000});
+        assertTrue(builder.build(epoch));
+
+        observe(epoch, GPS_NANOS + 1_000_000_000L, 4, new int[]{GPS}, new double[]{20_000_000});
+        assertFalse(builder.build(epoch));
+
+        observe(epoch, GPS_NANOS + 2_000_000_000L, 4, new int[]{GPS}, new double[]{20_000_000});
+        assertTrue(builder.build(epoch));
+        assertEquals(GnssEpochBuilder.CLOCK_RESET, builder.epochFlags);
+
+        observe(epoch, GPS_NANOS + 3_000_000_000L, 4, new int[]{GPS}, new double[]{20_000_000});
+        assertTrue(builder.build(epoch));
+        assertEquals(0, builder.epochFlags);
+    }
+
+    /**
+     * Fills {@code epoch} as a receiver at GPS time {@code gpsNanos} (plus the bias) would
+     * report satellites of the given constellations at the given ranges, on their primary
+     * signal (L1, G1 or B1I).
+     */
+    static void observe(GnssEpoch epoch, long gpsNanos, int discontinuityCount,
+                        int[] constellations, double[] ranges) {
+        // The hardware clock advances with GPS time, so repeated epochs stay in order
+        epoch.timeNanos = 7_000_000_000_000L + Math.floorMod(gpsNanos, 1_000_000_000_000L);
+        epoch.fullBiasNanos = epoch.timeNanos - gpsNanos;
+        epoch.biasNanos = BIAS;
+        epoch.biasUncertaintyNanos = 20;
+        epoch.hardwareClockDiscontinuityCount = discontinuityCount;
+        epoch.leapSecond = 18;
+        epoch.clockFlags = GnssEpoch.HAS_FULL_BIAS | GnssEpoch.HAS_BIAS
+                | GnssEpoch.HAS_BIAS_UNCERTAINTY | GnssEpoch.HAS_LEAP_SECOND;
+        epoch.count = ranges.length;
+        for (int i = 0; i < ranges.length; i++) {
+            long transmit = gpsNanos - Math.round(BIAS + ranges[i] / C * 1e9);
+            int constellation = constellations[i];
+            epoch.constellationType[i] = constellation;
+            epoch.svid[i] = i + 1;
+            epoch.timeOffsetNanos[i] = 0;
+            epoch.cn0DbHz[i] = 40;
+            epoch.carrierFrequencyHz[i] = (float) (constellation == GLONASS
+                    ? GnssSignalTable.FREQ_G1 + (i - 3) * GnssSignalTable.FREQ_G1_STEP
+                    : constellation == BEIDOU ? GnssSignalTable.FREQ_B1I : GnssSignalTable.FREQ_L1);
+            epoch.flags[i] = GnssEpoch.HAS_CARRIER_FREQUENCY;
+            epoch.codeType[i] = constellation == BEIDOU ? 'I' : 'C';
+            epoch.accumulatedDeltaRangeState[i] = 0;
+            epoch.accumulatedDeltaRangeMeters[i] = 0;
+            epoch.pseudorangeRateMetersPerSecond[i] = 0;
+            if (constellation == GLONASS) {
+                epoch.state[i] = STATE_GLO_TOD;
+                epoch.receivedSvTimeNanos[i] = Math.floorMod(
+                        transmit + 3 * 3_600_000_000_000L - 18_000_000_000L,
+                        GnssEpochBuilder.DAY_NANOS);
+            } else {
+                epoch.state[i] = STATE_TOW;
+                epoch.receivedSvTimeNanos[i] = Math.floorMod(
+                        constellation == BEIDOU ? transmit - 14_000_000_000L : transmit,
+                        GnssEpochBuilder.WEEK_NANOS);
+            }
+        }
+    }
+}
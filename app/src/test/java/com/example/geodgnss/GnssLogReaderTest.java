@@ -0,0 +1,178 @@
+package com.example.geodgnss;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class GnssLogReaderTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTrip_keepsClockAndLegacyCarrierFields() throws IOException {
+        GnssEpoch written = new GnssEpoch();
+        GnssLoggerTest.fill(written, 4, 3);
+        written.flags[1] |= GnssEpoch.HAS_CARRIER_CYCLES | GnssEpoch.HAS_CARRIER_PHASE;
+        written.carrierCycles[1] = 123_456_789L;
+        written.carrierPhase[1] = 0.375;
+        File log = writeLog(written);
+
+        GnssEpoch read = new GnssEpoch();
+        try (GnssLogReader reader = new GnssLogReader(log)) {
+            assertTrue(reader.next(read));
+            assertFalse(reader.next(read));
+        }
+        assertEquals(written.timeNanos, read.timeNanos);
+        assertEquals(written.fullBiasNanos, read.fullBiasNanos);
+        assertEquals(written.biasNanos, read.biasNanos, 0);
+        assertEquals(written.leapSecond, read.leapSecond);
+        assertEquals(written.clockFlags, read.clockFlags);
+        assertEquals(3, read.count);
+        assertEquals(123_456_789L, read.carrierCycles[1]);
+        assertEquals(0.375, read.carrierPhase[1], 0);
+        assertEquals(0L, read.carrierCycles[0]);
+        assertEquals('Q', read.codeType[0]);
+        assertEquals('C', read.codeType[1]);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(GnssLoggerTest.legacyCsv(written, i), csv(read, i));
+        }
+    }
+
+    @Test
+    public void read_seeksToTimeRangeUsingIndex() throws IOException {
+        File log = writeSession(200);
+        List<Long> times = new ArrayList<>();
+        try (GnssLogReader reader = new GnssLogReader(log)) {
+            long from = startTime() + 37 * SECOND;
+            long count = reader.read(from, from + 5 * SECOND,
+                    epoch -> times.add(epoch.epochTimeNanos()));
+            assertEquals(5, count);
+        }
+        assertEquals(startTime() + 37 * SECOND, (long) times.get(0));
+        assertEquals(startTime() + 41 * SECOND, (long) times.get(4));
+    }
+
+    @Test
+    public void seekBeforeStart_readsFromFirstEpoch() throws IOException {
+        File log = writeSession(20);
+        GnssEpoch epoch = new GnssEpoch();
+        try (GnssLogReader reader = new GnssLogReader(log)) {
+            reader.seek(Long.MIN_VALUE);
+            assertTrue(reader.next(epoch));
+            assertEquals(startTime(), epoch.epochTimeNanos());
+            assertEquals(startTime(), reader.getStartTimeNanos());
+        }
+    }
+
+    @Test
+    public void interruptedSession_withoutFooter_isStillIndexed() throws IOException {
+        File log = writeSession(100);
+        int footer = ((100 + GnssLogFormat.INDEX_INTERVAL - 1) / GnssLogFormat.INDEX_INTERVAL)
+                * GnssLogFormat.INDEX_ENTRY_SIZE + GnssLogFormat.TRAILER_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            // Drop the footer and half of the last record
+            raf.setLength(raf.length() - footer - 50);
+        }
+
+        List<Long> times = new ArrayList<>();
+        try (GnssLogReader reader = new GnssLogReader(log)) {
+            reader.read(startTime() + 90 * SECOND, Long.MAX_VALUE,
+                    epoch -> times.add(epoch.epochTimeNanos()));
+        }
+        assertEquals(9, times.size());
+        assertEquals(startTime() + 98 * SECOND, (long) times.get(8));
+    }
+
+    @Test
+    public void damagedRecords_endTheData() throws IOException {
+        File log = writeSession(3);
+        int second = GnssLogFormat.HEADER_SIZE + GnssLogFormat.RECORD_HEADER_SIZE
+                + GnssLogFormat.MEASUREMENT_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.seek(second);
+            raf.writeInt(0); // a size of 0 would never advance
+        }
+        GnssEpoch epoch = new GnssEpoch();
+        try (GnssLogReader reader = new GnssLogReader(log)) {
+            assertTrue(reader.next(epoch));
+            assertFalse(reader.next(epoch));
+            assertFalse(reader.next(epoch));
+        }
+
+        log = writeSession(3);
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.seek(GnssLogFormat.HEADER_SIZE + GnssLogFormat.RECORD_HEADER_SIZE - 4);
+            raf.writeShort(Short.reverseBytes((short) (GnssEpoch.MAX_MEASUREMENTS + 1)));
+        }
+        try (GnssLogReader reader = new GnssLogReader(log)) {
+            assertFalse(reader.next(epoch));
+        }
+    }
+
+    @Test
+    public void legacyEntryForAMissingMeasurement_isSkipped() throws IOException {
+        GnssEpoch written = new GnssEpoch();
+        GnssLoggerTest.fill(written, 0, 2);
+        written.flags[1] |= GnssEpoch.HAS_CARRIER_CYCLES;
+        written.carrierCycles[1] = 42;
+        File log = writeLog(written);
+        try (RandomAccessFile raf = new RandomAccessFile(log, "rw")) {
+            raf.seek(GnssLogFormat.HEADER_SIZE + GnssLogFormat.RECORD_HEADER_SIZE
+                    + 2 * GnssLogFormat.MEASUREMENT_SIZE);
+            raf.write(200); // measurement index
+        }
+        GnssEpoch read = new GnssEpoch();
+        try (GnssLogReader reader = new GnssLogReader(log)) {
+            assertTrue(reader.next(read));
+            assertFalse(reader.next(read));
+        }
+        assertEquals(2, read.count);
+        assertEquals(0L, read.carrierCycles[1]);
+    }
+
+    private long startTime() {
+        GnssEpoch epoch = new GnssEpoch();
+        GnssLoggerTest.fill(epoch, 0, 1);
+        return epoch.epochTimeNanos();
+    }
+
+    private File writeSession(int epochs) throws IOException {
+        File log = folder.newFile();
+        GnssLogger logger = new GnssLogger(log);
+        logger.open();
+        GnssEpoch epoch = new GnssEpoch();
+        for (int e = 0; e < epochs; e++) {
+            GnssLoggerTest.fill(epoch, e, 1 + e % 9);
+            logger.log(epoch);
+        }
+        logger.close();
+        assertEquals(0, logger.getDroppedRecords());
+        return log;
+    }
+
+    private File writeLog(GnssEpoch epoch) throws IOException {
+        File log = folder.newFile();
+        GnssLogger logger = new GnssLogger(log);
+        logger.open();
+        logger.log(epoch);
+        logger.close();
+        return log;
+    }
+
+    private static String csv(GnssEpoch epoch, int i) {
+        StringBuilder sb = new StringBuilder();
+        GnssCsvEncoder.append(sb, epoch, i);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.geodgnss;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class GnssLoggerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loggedEpochs_exportToLegacyCsv() throws IOException {
+        File log = folder.newFile("gnss_test.log");
+        GnssLogger logger = new GnssLogger(log, 64 * 1024, 1024);
+        logger.open();
+
+        GnssEpoch epoch = new GnssEpoch();
+        StringBuilder expected = new StringBuilder();
+        for (int e = 0; e < 50; e++) {
+            fill(epoch, e, 7);
+            for (int i = 0; i < epoch.count; i++) {
+                expected.append(legacyCsv(epoch, i)).append('\n');
+            }
+            logger.log(epoch);
+        }
+        logger.close();
+
+        assertNull(logger.getLastError());
+        assertEquals(0, logger.getDroppedRecords());
+        assertEquals(350, logger.getLoggedRecords());
+
+        StringWriter csv = new StringWriter();
+        assertEquals(350, GnssCsvExporter.export(log, csv));
+        assertEquals(expected.toString(), csv.toString());
+    }
+
+    @Test
+    public void fullRing_dropsWholeEpochs() throws IOException {
+        File log = folder.newFile("gnss_stalled.log");
+        // Room for one two-measurement epoch; the writer is not started so nothing drains
+        int epochSize = 4 + GnssLogFormat.CLOCK_SIZE + 4 + 2 * GnssLogFormat.MEASUREMENT_SIZE;
+        GnssLogger logger = new GnssLogger(log, epochSize + 100, 1024);
+
+        GnssEpoch epoch = new GnssEpoch();
+        fill(epoch, 0, 2);
+        logger.log(epoch);
+        logger.log(epoch);
+
+        assertEquals(2, logger.getDroppedRecords());
+    }
+
+    static void fill(GnssEpoch epoch, int e, int count) {
+        epoch.timeNanos = 1_000_000_000L * e + 123_456;
+        epoch.fullBiasNanos = -1_325_000_000_000_000_000L;
+        epoch.biasNanos = 0.25 + e * 1e-3;
+        epoch.biasUncertaintyNanos = 22.5;
+        epoch.driftNanosPerSecond = -1.75;
+        epoch.timeUncertaintyNanos = 0;
+        epoch.hardwareClockDiscontinuityCount = 3;
+        epoch.leapSecond = 18;
+        epoch.clockFlags = GnssEpoch.HAS_FULL_BIAS | GnssEpoch.HAS_BIAS
+                | GnssEpoch.HAS_BIAS_UNCERTAINTY | GnssEpoch.HAS_DRIFT | GnssEpoch.HAS_LEAP_SECOND;
+        epoch.count = count;
+        for (int i = 0; i < count; i++) {
+            epoch.svid[i] = i + 1;
+            epoch.timeOffsetNanos[i] = 0.0;
+            epoch.state[i] = 16431;
+            epoch.receivedSvTimeNanos[i] = 345_600_000_000_000L + e * 1_000_000_000L + i;
+            epoch.receivedSvTimeUncertaintyNanos[i] = 12 + i;
+            epoch.cn0DbHz[i] = 30.5 + i * 0.1;
+            epoch.pseudorangeRateMetersPerSecond[i] = -512.123456789 + e;
+            epoch.pseudorangeRateUncertaintyMetersPerSecond[i] = 0.0375;
+            epoch.accumulatedDeltaRangeState[i] = i % 2 == 0 ? 1 : 16;
+            epoch.accumulatedDeltaRangeMeters[i] = 1234.5678 * e;
+            epoch.accumulatedDeltaRangeUncertaintyMeters[i] = 1e-3;
+            epoch.carrierFrequencyHz[i] = i % 3 == 0 ? 1.17645005E9f : 1.57542003E9f;
+            epoch.carrierCycles[i] = 0;
+            epoch.carrierPhase[i] = 0;
+            epoch.carrierPhaseUncertainty[i] = 0;
+            epoch.multipathIndicator[i] = 0;
+            epoch.snrInDb[i] = i % 2 == 0 ? 12.25 : 0;
+            epoch.constellationType[i] = 1 + i % 6;
+            epoch.automaticGainControlLevelDb[i] = i % 2 == 0 ? -1.5 : 0;
+            epoch.flags[i] = GnssEpoch.HAS_CARRIER_FREQUENCY
+                    | (i % 2 == 0 ? GnssEpoch.HAS_SNR | GnssEpoch.HAS_AGC : 0);
+            epoch.codeType[i] = i % 3 == 0 ? 'Q' : 'C';
+        }
+    }
+
+    /** The line MainActivity.processMeasurements used to write, built the same way. */
+    static String legacyCsv(GnssEpoch m, int i) {
+        int f = m.flags[i];
+        return String.format(
+                "%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s",
+                m.svid[i],
+                m.timeOffsetNanos[i],
+                m.state[i],
+                m.receivedSvTimeNanos[i],
+                m.receivedSvTimeUncertaintyNanos[i],
+                m.cn0DbHz[i],
+                m.pseudorangeRateMetersPerSecond[i],
+                m.pseudorangeRateUncertaintyMetersPerSecond[i],
+                m.accumulatedDeltaRangeState[i],
+                m.accumulatedDeltaRangeMeters[i],
+                m.accumulatedDeltaRangeUncertaintyMeters[i],
+                (f & GnssEpoch.HAS_CARRIER_FREQUENCY) != 0 ? m.carrierFrequencyHz[i] : "",
+                (f & GnssEpoch.HAS_CARRIER_CYCLES) != 0 ? m.carrierCycles[i] : "",
+                (f & GnssEpoch.HAS_CARRIER_PHASE) != 0 ? m.carrierPhase[i] : "",
+                (f & GnssEpoch.HAS_CARRIER_PHASE_UNCERTAINTY) != 0
+                        ? m.carrierPhaseUncertainty[i] : "",
+                m.multipathIndicator[i],
+                (f & GnssEpoch.HAS_SNR) != 0 ? m.snrInDb[i] : "",
+                m.constellationType[i],
+                (f & GnssEpoch.HAS_AGC) != 0 ? m.automaticGainControlLevelDb[i] : "");
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.geodgnss;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.example.geodgnss.GnssSignalTable.*;
+import static org.junit.Assert.*;
+
+public class GnssSignalTableTest {
+
+    private static final double C = GnssEpochBuilder.SPEED_OF_LIGHT;
+
+    @Test
+    public void dualFrequencySignals_getTheirOwnSlots() {
+        assertSignal(lookup(GPS, 1575.42e6f, 'C'), 0, CODE_L1C, FREQ_L1);
+        assertSignal(lookup(GPS, 1176.45e6f, 'Q'), 2, CODE_L5Q, FREQ_L5);
+        assertSignal(lookup(GALILEO, 1575.42e6f, 'B'), 0, CODE_L1B, FREQ_L1);
+        assertSignal(lookup(GALILEO, 1176.45e6f, 'Q'), 2, CODE_L5Q, FREQ_L5);
+        assertSignal(lookup(GALILEO, 1207.14e6f, 'Q'), 1, CODE_L7Q, FREQ_E5B);
+        assertSignal(lookup(BEIDOU, 1561.098e6f, 'I'), 0, CODE_L2I, FREQ_B1I);
+        assertSignal(lookup(BEIDOU, 1176.45e6f, 'P'), 2, CODE_L5P, FREQ_L5);
+        assertSignal(lookup(QZSS, 1176.45e6f, 'X'), 2, CODE_L5X, FREQ_L5);
+        assertSignal(lookup(SBAS, 1176.45e6f, 'I'), 1, CODE_L5I, FREQ_L5);
+    }
+
+    @Test
+    public void glonassChannels_getTheirOwnWavelength() {
+        for (int k = -7; k <= 6; k++) {
+            double g1 = FREQ_G1 + k * FREQ_G1_STEP;
+            assertSignal(lookup(GLONASS, (float) g1, 'C'), 0, CODE_L1C, g1);
+            double g2 = FREQ_G2 + k * FREQ_G2_STEP;
+            assertSignal(lookup(GLONASS, (float) g2, 'C'), 1, CODE_L2C, g2);
+        }
+        assertEquals(NONE, lookup(GLONASS, (float) (FREQ_G1 + 9 * FREQ_G1_STEP), 'C'));
+    }
+
+    @Test
+    public void missingFrequencyOrCodeType_fallBackToThePrimarySignal() {
+        assertSignal(lookup(GPS, 0, (char) 0), 0, CODE_L1C, FREQ_L1);
+        assertSignal(lookup(BEIDOU, 0, (char) 0), 0, CODE_L2I, FREQ_B1I);
+        assertSignal(lookup(GPS, 1176.45e6f, (char) 0), 2, CODE_L5Q, FREQ_L5);
+        assertSignal(lookup(GALILEO, 1575.42e6f, 'Y'), 0, CODE_L1C, FREQ_L1);
+        // The GLONASS channel cannot be guessed
+        assertEquals(NONE, lookup(GLONASS, 0, 'C'));
+    }
+
+    @Test
+    public void signalsWithoutASlot_areNone() {
+        assertEquals(NONE, lookup(GALILEO, 1278.75e6f, 'C'));  // E6
+        assertEquals(NONE, lookup(BEIDOU, 1268.52e6f, 'I'));   // B3
+        assertEquals(NONE, lookup(GPS, 1561.098e6f, 'C'));
+        assertEquals(NONE, lookup(0, 1575.42e6f, 'C'));
+        assertEquals(NONE, lookup(8, 1575.42e6f, 'C'));
+        assertEquals(NONE, lookup(GPS, 2492.028e6f, 'C'));
+    }
+
+    @Test
+    public void codes_matchRtklib() throws IOException, IllegalAccessException {
+        String header = new String(Files.readAllBytes(
+                Paths.get("src/main/cpp/rtklib/rtklib.h")), StandardCharsets.UTF_8);
+        int checked = 0;
+        for (Field f : GnssSignalTable.class.getDeclaredFields()) {
+            if (f.getName().startsWith("CODE_")) {
+                Matcher m = Pattern.compile("#define " + f.getName() + "\\s+(\\d+)").matcher(header);
+                assertTrue("Missing in rtklib.h: " + f.getName(), m.find());
+                assertEquals(f.getName(), Integer.parseInt(m.group(1)), f.getInt(null));
+                checked++;
+            }
+        }
+        assertTrue(checked > 20);
+        assertTrue(header.contains("#define NFREQ       " + SLOTS + " "));
+    }
+
+    private static void assertSignal(int signal, int slot, int code, double frequency) {
+        assertNotEquals(NONE, signal);
+        assertEquals(slot, slot(signal));
+        assertEquals(code, code(signal));
+        assertEquals(frequency / C, cyclesPerMeter(signal), 1e-9);
+    }
+}
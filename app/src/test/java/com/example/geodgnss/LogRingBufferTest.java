@@ -0,0 +1,54 @@
+package com.example.geodgnss;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LogRingBufferTest {
+
+    @Test
+    public void keepsOnlyNewestLines() {
+        LogRingBuffer buffer = new LogRingBuffer(3);
+        for (int i = 0; i < 5; i++) {
+            buffer.append("line " + i + "\n");
+        }
+        assertEquals(3, buffer.getLineCount());
+        assertEquals(2, buffer.getDroppedLines());
+        assertEquals("line 2\nline 3\nline 4\n", tail(buffer, 10));
+    }
+
+    @Test
+    public void tail_isLimitedToVisibleLines() {
+        LogRingBuffer buffer = new LogRingBuffer(100);
+        buffer.append("a\nb\nc\nd\n");
+        assertEquals("c\nd\n", tail(buffer, 2));
+    }
+
+    @Test
+    public void splitsMultiLineAppends_andJoinsPartialLines() {
+        LogRingBuffer buffer = new LogRingBuffer(10);
+        buffer.append("first\nsec");
+        buffer.append("ond\n\nthi");
+        assertEquals(3, buffer.getLineCount());
+        assertEquals("first\nsecond\n\nthi", tail(buffer, 10));
+        buffer.append("rd\n");
+        assertEquals("\nthird\n", tail(buffer, 2));
+    }
+
+    @Test
+    public void version_changesOnEveryAppend() {
+        LogRingBuffer buffer = new LogRingBuffer(2);
+        long v0 = buffer.getVersion();
+        buffer.append("x");
+        long v1 = buffer.getVersion();
+        buffer.append("\n");
+        assertNotEquals(v0, v1);
+        assertNotEquals(v1, buffer.getVersion());
+    }
+
+    private static String tail(LogRingBuffer buffer, int lines) {
+        StringBuilder sb = new StringBuilder();
+        buffer.appendTail(sb, lines);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.geodgnss;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.geodgnss.MetricsRegistry.Histogram.*;
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    // 2026-01-01 00:00:00 UTC
+    private static final long T0 = 1767225600_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void histogramBuckets_holdValuesToWithinASixteenth() {
+        Random random = new Random(17);
+        int previous = -1;
+        for (long v = 0; v < 4096; v++) {
+            int bucket = bucketOf(v);
+            assertTrue(bucket >= previous);
+            previous = bucket;
+            assertTrue(highestValueOf(bucket) >= v);
+        }
+        for (int i = 0; i < 100_000; i++) {
+            long v = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            long highest = highestValueOf(bucketOf(v));
+            assertTrue(v + " -> " + highest, highest >= v);
+            assertTrue(v + " -> " + highest, highest - v <= v / SUB_BUCKETS);
+        }
+        assertEquals(BUCKETS - 1, bucketOf(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, highestValueOf(BUCKETS - 1));
+    }
+
+    @Test
+    public void histogram_reportsPercentilesAndExactMax() {
+        MetricsRegistry.Histogram histogram = new MetricsRegistry.Histogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        for (long v = 1; v <= 10_000; v++) {
+            histogram.record(v * 1000);
+        }
+        histogram.record(-5);
+        assertEquals(10_001, histogram.getCount());
+        assertEquals(10_000_000, histogram.getMax());
+        assertEquals(5_000_000, histogram.getValueAtPercentile(50), 5_000_000 / 16.0);
+        assertEquals(9_900_000, histogram.getValueAtPercentile(99), 9_900_000 / 16.0);
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(0, histogram.getValueAtPercentile(0));
+    }
+
+    @Test
+    public void recording_fromManyThreadsLosesNothing() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Counter counter = registry.counter("c");
+        MetricsRegistry.CounterArray types = registry.counterArray("t", 8);
+        MetricsRegistry.Histogram histogram = registry.histogram("h");
+        AtomicInteger ids = new AtomicInteger();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                int id = ids.getAndIncrement();
+                for (int i = 0; i < 100_000; i++) {
+                    counter.increment();
+                    types.increment(id);
+                    histogram.record(i);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400_000, counter.get());
+        assertEquals(100_000, types.get(3));
+        assertEquals(400_000, histogram.getCount());
+        assertEquals(99_999, histogram.getMax());
+
+        // Out-of-range keys land in the last slot
+        types.increment(-1);
+        types.increment(1000);
+        assertEquals(2, types.get(7));
+    }
+
+    @Test
+    public void snapshot_coversTheIntervalSinceThePreviousOne() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Counter bytes = registry.counter("rtcm.bytes");
+        MetricsRegistry.CounterArray messages = registry.counterArray("rtcm.messages", 4096);
+        int[] depth = {3};
+        registry.gauge("rtcm.queue", () -> depth[0]);
+        MetricsRegistry.Histogram solve = registry.histogram("rtk.solve_ns");
+
+        StringBuilder out = new StringBuilder();
+        registry.snapshot(out, T0);
+        bytes.add(1000);
+        for (int i = 0; i < 4; i++) {
+            messages.increment(1077);
+        }
+        for (int i = 1; i <= 100; i++) {
+            solve.record(i * 1000);
+        }
+        out.setLength(0);
+        registry.snapshot(out, T0 + 2000);
+        String[] lines = out.toString().split("\n");
+        assertArrayEquals(new String[]{
+                T0 + 2000 + "\trtcm.bytes\tcounter\ttotal=1000\trate=500.00",
+                T0 + 2000 + "\trtcm.messages[1077]\tcounter\ttotal=4\trate=2.00",
+                T0 + 2000 + "\trtcm.queue\tgauge\tvalue=3",
+                T0 + 2000 + "\trtk.solve_ns\thistogram\tcount=100\tp50=51199\tp90=90111"
+                        + "\tp99=102399\tmax=102399",
+        }, lines);
+
+        // Nothing new: rates and the interval histogram drop to zero, idle keys are left out
+        depth[0] = 0;
+        out.setLength(0);
+        registry.snapshot(out, T0 + 3000);
+        assertEquals(T0 + 3000 + "\trtcm.bytes\tcounter\ttotal=1000\trate=0.00\n"
+                + (T0 + 3000) + "\trtcm.queue\tgauge\tvalue=0\n"
+                + (T0 + 3000) + "\trtk.solve_ns\thistogram\tcount=0\tp50=0\tp90=0\tp99=0\tmax=0\n",
+                out.toString());
+    }
+
+    @Test
+    public void exporter_appendsSnapshotsToTheSessionStream() throws Exception {
+        SessionStorage storage = new SessionStorage(folder.getRoot(), 1L << 30, 1 << 20,
+                3600_000L);
+        String session = storage.startSession(T0);
+        SessionStorage.Stream stream = storage.openStream("metrics_", ".tsv");
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricsRegistry.Counter counter = registry.counter("epochs");
+        MetricsExporter exporter = new MetricsExporter(registry, stream, 1000);
+
+        counter.increment();
+        exporter.export(T0);
+        counter.increment();
+        exporter.export(T0 + 1000);
+        exporter.close();
+        assertNull(exporter.getLastError());
+
+        File file = new File(new File(folder.getRoot(), session), "metrics_20260101_000000.tsv");
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.US_ASCII);
+        assertEquals(2, lines.size());
+        assertTrue(lines.get(0).startsWith(T0 + "\tepochs\tcounter\ttotal=1"));
+        assertEquals(T0 + 1000 + "\tepochs\tcounter\ttotal=2\trate=1.00", lines.get(1));
+        stream.close();
+        storage.close();
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.geodgnss;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MountpointIndexTest {
+
+    @Test
+    public void nearest_matchesBruteForce() {
+        Random random = new Random(42);
+        List<Sourcetable.Mountpoint> bases = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            bases.add(base("B" + i, random.nextDouble() * 180 - 90,
+                    random.nextDouble() * 360 - 180));
+        }
+        MountpointIndex index = new MountpointIndex(bases);
+        Sourcetable.Mountpoint[] out = new Sourcetable.Mountpoint[3];
+
+        for (int q = 0; q < 200; q++) {
+            double lat = random.nextDouble() * 180 - 90;
+            double lon = random.nextDouble() * 360 - 180;
+            Sourcetable.Mountpoint[] expected = bruteForce(bases, lat, lon);
+
+            assertEquals(3, index.nearest(lat, lon, out));
+            assertArrayEquals(expected, out);
+            assertSame(expected[0], index.nearest(lat, lon));
+        }
+    }
+
+    @Test
+    public void nearest_acrossTheAntimeridian() {
+        List<Sourcetable.Mountpoint> bases = new ArrayList<>();
+        bases.add(base("EAST", 0, 179.9));
+        bases.add(base("NEAR_ZERO", 0, 170));
+        MountpointIndex index = new MountpointIndex(bases);
+
+        assertEquals("EAST", index.nearest(0, -179.9).name);
+        assertEquals(22239, MountpointIndex.distanceMeters(0, -179.9, bases.get(0)), 1);
+    }
+
+    @Test
+    public void emptyIndex_findsNothing() {
+        MountpointIndex index = new MountpointIndex(new ArrayList<>());
+        assertNull(index.nearest(10, 10));
+        assertEquals(0, index.nearest(10, 10, new Sourcetable.Mountpoint[2]));
+    }
+
+    private static Sourcetable.Mountpoint[] bruteForce(List<Sourcetable.Mountpoint> bases,
+                                                       double lat, double lon) {
+        List<Sourcetable.Mountpoint> sorted = new ArrayList<>(bases);
+        sorted.sort((a, b) -> Double.compare(MountpointIndex.distanceMeters(lat, lon, a),
+                MountpointIndex.distanceMeters(lat, lon, b)));
+        return sorted.subList(0, 3).toArray(new Sourcetable.Mountpoint[0]);
+    }
+
+    static Sourcetable.Mountpoint base(String name, double lat, double lon) {
+        return new Sourcetable.Mountpoint(name, name, "RTCM 3.3", "", 2, "GPS", "NET", "XXX",
+                lat, lon, false, 0, 0);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.geodgnss;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class NmeaEncoderTest {
+
+    // 2023-11-14 22:13:20.987 UTC
+    private static final long TIME = 1_700_000_000_987L;
+
+    private final NmeaEncoder encoder = new NmeaEncoder();
+    private final byte[] buffer = new byte[NmeaEncoder.MAX_SENTENCE_LENGTH + 4];
+
+    @Test
+    public void gga_writesDegreesAndDecimalMinutes() {
+        String gga = gga(48.1173, 11.516666667, 14, 0.9, 545.4);
+        assertEquals(withChecksum("GPGGA,221320.98,4807.03800,N,01131.00000,E,1,14,0.9,545.400,"
+                + "M,,M,,"), gga);
+    }
+
+    @Test
+    public void gga_southWestAndEmptyFields() {
+        String gga = gga(-33.8688, -151.2093, 7, Double.NaN, Double.NaN);
+        assertEquals(withChecksum("GPGGA,221320.98,3352.12800,S,15112.55800,W,1,07,,,M,,M,,"),
+                gga);
+    }
+
+    @Test
+    public void minutesRoundingUp_carriesIntoTheDegree() {
+        String gga = gga(10.9999999999, -0.0000001, 3, 1.25, -12.3456);
+        assertTrue(gga, gga.contains(",1100.00000,N,00000.00001,W,"));
+        assertTrue(gga, gga.contains(",1.3,-12.346,M,"));
+    }
+
+    @Test
+    public void rmc_writesDateAndKnots() {
+        int length = encoder.rmc(buffer, 2, TIME, true, 48.1173, 11.516666667, 10.0, 84.4);
+        String rmc = new String(buffer, 2, length, StandardCharsets.US_ASCII);
+        assertEquals(withChecksum("GPRMC,221320.98,A,4807.03800,N,01131.00000,E,19.44,84.4,"
+                + "141123,,,A"), rmc);
+    }
+
+    @Test
+    public void timeOfDay_wrapsAtMidnight() {
+        int length = encoder.gga(buffer, 0, 86_400_000L * 19_000 + 5, 1, 1,
+                NmeaEncoder.QUALITY_RTK_FIXED, 12, 0.5, 1);
+        String gga = new String(buffer, 0, length, StandardCharsets.US_ASCII);
+        assertTrue(gga, gga.startsWith("$GPGGA,000000.00,"));
+        assertTrue(gga, gga.contains(",E,4,12,"));
+    }
+
+    private String gga(double lat, double lon, int satellites, double hdop, double altitude) {
+        int length = encoder.gga(buffer, 0, TIME, lat, lon, NmeaEncoder.QUALITY_GPS, satellites,
+                hdop, altitude);
+        assertTrue(length <= NmeaEncoder.MAX_SENTENCE_LENGTH);
+        return new String(buffer, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    private static String withChecksum(String body) {
+        int checksum = 0;
+        for (int i = 0; i < body.length(); i++) {
+            checksum ^= body.charAt(i);
+        }
+        return String.format("$%s*%02X\r\n", body, checksum);
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.geodgnss;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NtripBaseManagerTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private Caster caster;
+    private NtripBaseManager manager;
+    private final Recorder recorder = new Recorder();
+
+    @Before
+    public void setUp() throws IOException {
+        caster = new Caster();
+        manager = new NtripBaseManager("127.0.0.1", caster.port(), "user", "pass", null, null);
+        List<Sourcetable.Mountpoint> bases = new ArrayList<>();
+        bases.add(MountpointIndexTest.base("A", 50.0, 8.0));
+        bases.add(MountpointIndexTest.base("B", 50.0, 9.0));
+        bases.add(MountpointIndexTest.base("FAR", -30.0, 150.0));
+        manager.setSourcetable(table(bases));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        manager.stop();
+        caster.close();
+    }
+
+    @Test
+    public void movingRover_switchesToTheCloserBaseWithoutAGap() throws Exception {
+        manager.start(recorder);
+        manager.updatePosition(50.0, 8.1);
+        assertEquals("A", recorder.awaitBase());
+        recorder.awaitData("A");
+
+        // Halfway between the two bases: not enough gain to switch
+        manager.updatePosition(50.0, 8.55);
+        manager.updatePosition(50.0, 8.9);
+        assertEquals("B", recorder.awaitBase());
+        recorder.awaitData("B");
+        assertEquals("B", manager.getActiveMountpoint());
+        assertNull(recorder.bases.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void hotStandby_takesOverWhenTheActiveStreamDrops() throws Exception {
+        manager.setHotStandby(true);
+        manager.start(recorder);
+        manager.updatePosition(50.0, 8.1);
+        assertEquals("A", recorder.awaitBase());
+        assertTrue(caster.awaitStreaming("B"));
+
+        caster.drop("A");
+        assertEquals("B", recorder.awaitBase());
+        recorder.awaitData("B");
+    }
+
+    @Test
+    public void hysteresis_needsAClearGain() {
+        assertFalse(NtripBaseManager.shouldSwitch(10000, 9000));
+        assertFalse(NtripBaseManager.shouldSwitch(3000, 1500));
+        assertTrue(NtripBaseManager.shouldSwitch(30000, 20000));
+    }
+
+    private static Sourcetable table(List<Sourcetable.Mountpoint> bases) {
+        StringBuilder text = new StringBuilder("SOURCETABLE 200 OK\r\n\r\n");
+        for (Sourcetable.Mountpoint m : bases) {
+            text.append("STR;").append(m.name).append(";x;RTCM 3.3;;2;GPS;N;XXX;")
+                    .append(m.latitude).append(';').append(m.longitude)
+                    .append(";0;0;g;none;B;N;0;\r\n");
+        }
+        return Sourcetable.parse(text.append("ENDSOURCETABLE\r\n").toString());
+    }
+
+    /** Loopback caster that streams each mountpoint's name until the client goes away. */
+    private static class Caster {
+        private final ServerSocket server =
+                new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+        private final Set<String> refused = ConcurrentHashMap.newKeySet();
+        private final Set<String> streaming = ConcurrentHashMap.newKeySet();
+        private final Thread acceptor = new Thread(this::accept, "Caster");
+
+        Caster() throws IOException {
+            acceptor.start();
+        }
+
+        int port() {
+            return server.getLocalPort();
+        }
+
+        void accept() {
+            try {
+                while (true) {
+                    Socket s = server.accept();
+                    sockets.add(s);
+                    new Thread(() -> serve(s)).start();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+
+        void serve(Socket s) {
+            try (Socket socket = s) {
+                InputStream in = socket.getInputStream();
+                StringBuilder request = new StringBuilder();
+                while (request.indexOf("\r\n\r\n") < 0) {
+                    int c = in.read();
+                    if (c < 0) return;
+                    request.append((char) c);
+                }
+                String mount = request.substring(5, request.indexOf(" HTTP"));
+                OutputStream out = socket.getOutputStream();
+                if (refused.contains(mount)) {
+                    out.write("HTTP/1.1 404 Not Found\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                    return;
+                }
+                out.write("ICY 200 OK\r\n".getBytes(StandardCharsets.US_ASCII));
+                streaming.add(mount);
+                while (!refused.contains(mount)) {
+                    out.write(mount.getBytes(StandardCharsets.US_ASCII));
+                    out.flush();
+                    Thread.sleep(20);
+                }
+            } catch (IOException | InterruptedException ignored) {
+            }
+        }
+
+        boolean awaitStreaming(String mount) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (!streaming.contains(mount)) {
+                if (System.currentTimeMillis() > deadline) return false;
+                Thread.sleep(10);
+            }
+            return true;
+        }
+
+        void drop(String mount) {
+            refused.add(mount);
+        }
+
+        void close() throws IOException {
+            server.close();
+            for (Socket s : sockets) {
+                s.close();
+            }
+        }
+    }
+
+    private class Recorder implements NtripBaseManager.Listener {
+        final BlockingQueue<String> bases = new LinkedBlockingQueue<>();
+        private final StringBuilder data = new StringBuilder();
+
+        @Override
+        public void onBaseChanged(String mountpoint, double distanceMeters) {
+            bases.add(mountpoint);
+        }
+
+        @Override
+        public void onRtcmDataReceived(ByteBuffer buffer) {
+            synchronized (data) {
+                while (buffer.hasRemaining()) {
+                    data.append((char) buffer.get());
+                }
+            }
+            manager.releaseBuffer(buffer);
+        }
+
+        @Override
+        public void onConnectionStatusChanged(boolean connected) {
+        }
+
+        @Override
+        public void onError(String message) {
+        }
+
+        String awaitBase() throws InterruptedException {
+            return bases.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+
+        /** Waits until {@code mount}'s data has arrived since the last call. */
+        void awaitData(String mount) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (System.currentTimeMillis() < deadline) {
+                synchronized (data) {
+                    if (data.indexOf(mount + mount) >= 0) {
+                        data.setLength(0);
+                        return;
+                    }
+                }
+                Thread.sleep(10);
+            }
+            fail("No data from " + mount);
+        }
+    }
+}
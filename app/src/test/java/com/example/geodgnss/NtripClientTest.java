@@ -0,0 +1,254 @@
+package com.example.geodgnss;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class NtripClientTest {
+
+    private static final long TIMEOUT_MS = 5000;
+
+    private ServerSocket caster;
+    private NtripClient client;
+    private final Recorder recorder = new Recorder();
+
+    @Before
+    public void setUp() throws IOException {
+        caster = new ServerSocket(0, 5, InetAddress.getLoopbackAddress());
+        caster.setSoTimeout((int) TIMEOUT_MS);
+        client = new NtripClient("127.0.0.1", caster.getLocalPort(), "MOUNT", "user", "pass");
+        client.setReconnectBackoff(10, 100);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.disconnect();
+        caster.close();
+    }
+
+    @Test
+    public void v1_streamsDataThatArrivesWithTheHeader() throws Exception {
+        client.connect(recorder);
+        try (Socket s = caster.accept()) {
+            String request = readRequest(s.getInputStream());
+            assertTrue(request, request.startsWith("GET /MOUNT HTTP/1.0\r\n"));
+            assertTrue(request, request.contains("Authorization: Basic dXNlcjpwYXNz\r\n"));
+
+            write(s, "ICY 200 OK\r\n\r\nRTCM-1");
+            write(s, "RTCM-2");
+            assertTrue(recorder.awaitConnected(true));
+            assertEquals("RTCM-1RTCM-2", recorder.awaitData(12));
+        }
+    }
+
+    @Test
+    public void v2_chunkedStreamIsDecoded() throws Exception {
+        client.setVersion(NtripClient.Version.V2);
+        client.connect(recorder);
+        try (Socket s = caster.accept()) {
+            String request = readRequest(s.getInputStream());
+            assertTrue(request, request.startsWith("GET /MOUNT HTTP/1.1\r\n"));
+            assertTrue(request, request.contains("Ntrip-Version: Ntrip/2.0\r\n"));
+
+            write(s, "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nabc");
+            write(s, "de\r");
+            write(s, "\na;ext=1\r\n0123456789\r\n");
+            write(s, "3\r\nxyz\r\n");
+            assertEquals("abcde0123456789xyz", recorder.awaitData(18));
+        }
+    }
+
+    @Test
+    public void gga_isWrittenByTheIoThreadAndResentAfterReconnect() throws Exception {
+        client.connect(recorder);
+        try (Socket s = caster.accept()) {
+            readRequest(s.getInputStream());
+            write(s, "ICY 200 OK\r\n");
+            assertTrue(recorder.awaitConnected(true));
+
+            client.sendGga("$GPGGA,1*00");
+            assertEquals("$GPGGA,1*00", readLine(s.getInputStream()));
+        }
+        // Caster dropped the stream: the client comes back with the last GGA
+        assertTrue(recorder.awaitConnected(false));
+        try (Socket s = caster.accept()) {
+            InputStream in = s.getInputStream();
+            readRequest(in);
+            assertEquals("$GPGGA,1*00", readLine(in));
+        }
+        assertEquals(1, client.getConnections());
+    }
+
+    @Test
+    public void ggaBytes_areCopiedSoTheCallerCanReuseTheArray() throws Exception {
+        client.setVersion(NtripClient.Version.V2);
+        byte[] line = "$GPGGA,2*00\r\n".getBytes(StandardCharsets.US_ASCII);
+        client.sendGga(line, 0, line.length);
+        Arrays.fill(line, (byte) 'x');
+        client.connect(recorder);
+        try (Socket s = caster.accept()) {
+            InputStream in = s.getInputStream();
+            String request = readRequest(in);
+            assertTrue(request, request.contains("Ntrip-GGA: $GPGGA,2*00\r\n"));
+            write(s, "HTTP/1.1 200 OK\r\n\r\n");
+            assertTrue(recorder.awaitConnected(true));
+
+            byte[] encoded = new byte[NmeaEncoder.MAX_SENTENCE_LENGTH];
+            int length = new NmeaEncoder().gga(encoded, 0, 0, 48.1, 11.5,
+                    NmeaEncoder.QUALITY_GPS, 8, Double.NaN, 500);
+            client.sendGga(encoded, 0, length);
+            assertEquals(new String(encoded, 0, length - 2, StandardCharsets.US_ASCII),
+                    readLine(in));
+        }
+    }
+
+    @Test
+    public void silentStream_isReopened() throws Exception {
+        client.setReadTimeoutMs(200);
+        client.connect(recorder);
+        try (Socket first = caster.accept()) {
+            readRequest(first.getInputStream());
+            write(first, "ICY 200 OK\r\n");
+            assertTrue(recorder.awaitConnected(true));
+
+            try (Socket second = caster.accept()) {
+                readRequest(second.getInputStream());
+                write(second, "ICY 200 OK\r\nnext");
+                assertEquals("next", recorder.awaitData(4));
+            }
+        }
+    }
+
+    @Test
+    public void refusedRequest_isReportedAndRetried() throws Exception {
+        client.connect(recorder);
+        try (Socket s = caster.accept()) {
+            readRequest(s.getInputStream());
+            write(s, "HTTP/1.1 401 Unauthorized\r\n");
+        }
+        String error = recorder.errors.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertEquals("Connection error: Connection failed: HTTP/1.1 401 Unauthorized", error);
+        caster.accept().close();
+    }
+
+    @Test
+    public void backoffDoublesUpToTheLimit() {
+        client.setReconnectBackoff(500, 4000);
+        assertEquals(500, client.backoffDelay(0));
+        assertEquals(1000, client.backoffDelay(1));
+        assertEquals(4000, client.backoffDelay(3));
+        assertEquals(4000, client.backoffDelay(100));
+    }
+
+    @Test
+    public void chunkedDecoder_handlesFramingSplitAnywhere() throws IOException {
+        byte[] stream = "4\r\nRTCM\r\n1a\r\nabcdefghijklmnopqrstuvwxyz\r\n0\r\n\r\n"
+                .getBytes(StandardCharsets.US_ASCII);
+        for (int split = 1; split < stream.length; split++) {
+            NtripClient.ChunkedDecoder decoder = new NtripClient.ChunkedDecoder();
+            StringBuilder out = new StringBuilder();
+            boolean more = decode(decoder, stream, 0, split, out);
+            more = decode(decoder, stream, split, stream.length, out) && more;
+            assertEquals("RTCMabcdefghijklmnopqrstuvwxyz", out.toString());
+            assertFalse(more);
+        }
+    }
+
+    private static boolean decode(NtripClient.ChunkedDecoder decoder, byte[] stream, int from,
+                                  int to, StringBuilder out) throws IOException {
+        ByteBuffer b = ByteBuffer.allocateDirect(64);
+        b.put(stream, from, to - from).flip();
+        boolean more = decoder.decode(b);
+        while (b.hasRemaining()) {
+            out.append((char) b.get());
+        }
+        return more;
+    }
+
+    private static String readRequest(InputStream in) throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        while (!request.toString("US-ASCII").endsWith("\r\n\r\n")) {
+            int c = in.read();
+            if (c < 0) throw new IOException("Request incomplete");
+            request.write(c);
+        }
+        return request.toString("US-ASCII");
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != '\n') {
+            if (c < 0) throw new IOException("Line incomplete");
+            if (c != '\r') line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    private static void write(Socket s, String text) throws Exception {
+        OutputStream out = s.getOutputStream();
+        out.write(text.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        Thread.sleep(20); // separate reads on the client side
+    }
+
+    private class Recorder implements NtripClient.NtripCallback {
+        final BlockingQueue<Boolean> status = new LinkedBlockingQueue<>();
+        final BlockingQueue<String> errors = new LinkedBlockingQueue<>();
+        private final StringBuilder data = new StringBuilder();
+
+        @Override
+        public void onRtcmDataReceived(ByteBuffer buffer) {
+            synchronized (data) {
+                while (buffer.hasRemaining()) {
+                    data.append((char) buffer.get());
+                }
+                data.notifyAll();
+            }
+            client.releaseBuffer(buffer);
+        }
+
+        @Override
+        public void onConnectionStatusChanged(boolean connected) {
+            status.add(connected);
+        }
+
+        @Override
+        public void onError(String message) {
+            if (!message.startsWith("Reconnecting")) {
+                errors.add(message);
+            }
+        }
+
+        boolean awaitConnected(boolean expected) throws InterruptedException {
+            Boolean s = status.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            return s != null && s == expected;
+        }
+
+        String awaitData(int length) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            synchronized (data) {
+                while (data.length() < length && System.currentTimeMillis() < deadline) {
+                    data.wait(50);
+                }
+                return data.toString();
+            }
+        }
+    }
+}
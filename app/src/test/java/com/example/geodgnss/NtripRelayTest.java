@@ -0,0 +1,327 @@
+package com.example.geodgnss;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.*;
+
+public class NtripRelayTest {
+
+    private static final long TIMEOUT_MS = 10000;
+    private static final String REQUEST = "GET /RELAY HTTP/1.0\r\n"
+            + "Authorization: Basic cm92ZXI6c2VjcmV0\r\n\r\n"; // rover:secret
+
+    private ServerSocket caster;
+    private Socket upstreamSocket;
+    private NtripRelay relay;
+    private volatile boolean failConfigure;
+
+    @Before
+    public void setUp() throws IOException {
+        caster = new ServerSocket(0, 5, InetAddress.getLoopbackAddress());
+        caster.setSoTimeout((int) TIMEOUT_MS);
+        NtripClient upstream = new NtripClient("127.0.0.1", caster.getLocalPort(), "MOUNT",
+                "user", "pass", new DirectBufferPool(NtripRelay.UPSTREAM_BUFFERS,
+                NtripClient.RECEIVE_BUFFER_SIZE));
+        relay = new NtripRelay(upstream, "RELAY", "rover", "secret") {
+            @Override
+            void configure(SocketChannel channel) throws IOException {
+                if (failConfigure) {
+                    failConfigure = false;
+                    throw new IOException("setsockopt failed");
+                }
+                super.configure(channel);
+            }
+        };
+        relay.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        upstreamSocket = caster.accept();
+        readRequest(upstreamSocket.getInputStream());
+        write(upstreamSocket, "ICY 200 OK\r\n".getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        relay.stop();
+        upstreamSocket.close();
+        caster.close();
+    }
+
+    @Test
+    public void v1AndV2Rovers_receiveTheSameStream() throws Exception {
+        Recorder v1 = new Recorder();
+        Recorder v2 = new Recorder();
+        NtripClient rover1 = rover(NtripClient.Version.V1);
+        NtripClient rover2 = rover(NtripClient.Version.V2);
+        v1.client = rover1;
+        v2.client = rover2;
+        rover1.connect(v1);
+        rover2.connect(v2);
+        await(() -> relay.getClients() == 2);
+
+        byte[] data = pattern(0, 100_000);
+        write(upstreamSocket, data);
+        assertTrue(v1.await(data.length));
+        assertTrue(v2.await(data.length));
+        assertArrayEquals(data, v1.data.toByteArray());
+        assertArrayEquals(data, v2.data.toByteArray());
+        assertEquals(100_000, relay.getUpstreamBytes());
+        assertEquals(200_000, relay.getBytesSent());
+        assertEquals(2, relay.getAccepted());
+
+        rover1.disconnect();
+        rover2.disconnect();
+        await(() -> relay.getClients() == 0);
+        // Hang-ups are not counted as backlogs dropped by slow rovers
+        assertEquals(0, relay.getDroppedBacklogs());
+        assertEquals(0, relay.getDroppedBytes());
+    }
+
+    @Test
+    public void failedConnectionSetup_refusesOnlyThatRover() throws Exception {
+        Recorder first = new Recorder();
+        NtripClient rover1 = rover(NtripClient.Version.V1);
+        first.client = rover1;
+        rover1.connect(first);
+        await(() -> relay.getClients() == 1);
+
+        failConfigure = true;
+        try (Socket failed = new Socket(InetAddress.getLoopbackAddress(),
+                relay.getLocalPort())) {
+            failed.setSoTimeout((int) TIMEOUT_MS);
+            assertEquals("closed by the relay", -1, failed.getInputStream().read());
+        }
+        assertEquals(1, relay.getRefused());
+
+        Recorder second = new Recorder();
+        NtripClient rover2 = rover(NtripClient.Version.V2);
+        second.client = rover2;
+        rover2.connect(second);
+        await(() -> relay.getClients() == 2);
+        byte[] data = pattern(0, 10_000);
+        write(upstreamSocket, data);
+        assertTrue(first.await(data.length));
+        assertTrue(second.await(data.length));
+
+        rover1.disconnect();
+        rover2.disconnect();
+        await(() -> relay.getClients() == 0);
+    }
+
+    @Test
+    public void otherRequests_getASourcetableOrAnError() throws Exception {
+        String table = exchange("GET / HTTP/1.0\r\n\r\n");
+        assertTrue(table, table.startsWith("SOURCETABLE 200 OK\r\n"));
+        Sourcetable parsed = Sourcetable.parse(table);
+        assertEquals("RELAY", parsed.getMountpoints().get(0).name);
+
+        String denied = exchange("GET /RELAY HTTP/1.0\r\nAuthorization: Basic eDp5\r\n\r\n");
+        assertTrue(denied, denied.startsWith("HTTP/1.1 401 Unauthorized\r\n"));
+
+        relay.setMaxClients(0);
+        assertTrue(exchange(REQUEST).startsWith("HTTP/1.1 503 "));
+        assertEquals(3, relay.getRefused());
+        assertEquals(0, relay.getClients());
+    }
+
+    @Test
+    public void slowRover_losesItsBacklogAndIsDroppedWithoutHoldingUpOthers() throws Exception {
+        relay.setStallTimeoutMs(500);
+        Recorder fast = new Recorder();
+        NtripClient fastRover = rover(NtripClient.Version.V1);
+        fast.client = fastRover;
+        fastRover.connect(fast);
+        // Connects and then never reads
+        SocketChannel slow = SocketChannel.open();
+        slow.socket().setReceiveBufferSize(4096);
+        slow.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                relay.getLocalPort()));
+        slow.write(ByteBuffer.wrap(REQUEST.getBytes(StandardCharsets.US_ASCII)));
+        await(() -> relay.getClients() == 2);
+
+        long sent = 0;
+        byte[] block = new byte[NtripClient.RECEIVE_BUFFER_SIZE];
+        while (relay.getDroppedBacklogs() == 0 && sent < (1L << 30)) {
+            write(upstreamSocket, block);
+            sent += block.length;
+            Thread.sleep(1); // a pace the fast rover keeps up with
+        }
+        assertTrue(relay.getDroppedBytes() > 0);
+        // Every byte still reaches the rover that keeps up
+        long total = sent;
+        await(() -> fast.received() == total);
+
+        await(() -> relay.getStalled() == 1);
+        assertEquals(1, relay.getClients());
+        slow.close();
+        fastRover.disconnect();
+    }
+
+    @Test
+    public void hundredsOfRovers_allReceiveTheWholeStream() throws Exception {
+        int rovers = 300;
+        int length = 256 * 1024;
+        Selector selector = Selector.open();
+        long[] received = new long[rovers];
+        boolean[] intact = new boolean[rovers];
+        byte[] response = "ICY 200 OK\r\n".getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < rovers; i++) {
+            SocketChannel channel = SocketChannel.open(new InetSocketAddress(
+                    InetAddress.getLoopbackAddress(), relay.getLocalPort()));
+            channel.write(ByteBuffer.wrap(REQUEST.getBytes(StandardCharsets.US_ASCII)));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ, i);
+            received[i] = -response.length;
+            intact[i] = true;
+        }
+        await(() -> relay.getClients() == rovers);
+
+        Thread writer = new Thread(() -> {
+            // 500 KB/s upstream, 150 MB/s to the rovers
+            byte[] data = pattern(0, length);
+            try {
+                for (int i = 0; i < length; i += 1024) {
+                    upstreamSocket.getOutputStream().write(data, i, 1024);
+                    Thread.sleep(2);
+                }
+            } catch (Exception ignored) {
+            }
+        });
+        writer.start();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        int done = 0;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (done < rovers && System.currentTimeMillis() < deadline) {
+            selector.select(100);
+            for (SelectionKey key : selector.selectedKeys()) {
+                int i = (Integer) key.attachment();
+                buffer.clear();
+                int n = ((SocketChannel) key.channel()).read(buffer);
+                for (int k = 0; k < n; k++, received[i]++) {
+                    if (received[i] >= 0 && buffer.get(k) != (byte) (received[i] % 251)) {
+                        intact[i] = false;
+                    }
+                }
+                if (n > 0 && received[i] == length) {
+                    done++;
+                }
+            }
+            selector.selectedKeys().clear();
+        }
+        writer.join();
+        assertEquals(rovers, done);
+        for (int i = 0; i < rovers; i++) {
+            assertTrue("rover " + i, intact[i]);
+        }
+        assertEquals((long) rovers * length, relay.getBytesSent());
+        assertEquals(0, relay.getDroppedBytes());
+        for (SelectionKey key : selector.keys()) {
+            key.channel().close();
+        }
+        selector.close();
+    }
+
+    private NtripClient rover(NtripClient.Version version) {
+        NtripClient rover = new NtripClient("127.0.0.1", relay.getLocalPort(), "RELAY",
+                "rover", "secret");
+        rover.setVersion(version);
+        return rover;
+    }
+
+    private String exchange(String request) throws IOException {
+        try (Socket s = new Socket(InetAddress.getLoopbackAddress(), relay.getLocalPort())) {
+            s.setSoTimeout((int) TIMEOUT_MS);
+            s.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+            ByteArrayOutputStream reply = new ByteArrayOutputStream();
+            InputStream in = s.getInputStream();
+            int c;
+            while ((c = in.read()) >= 0) {
+                reply.write(c);
+            }
+            return reply.toString("US-ASCII");
+        }
+    }
+
+    private static byte[] pattern(long from, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ((from + i) % 251);
+        }
+        return data;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static void readRequest(InputStream in) throws IOException {
+        ByteArrayOutputStream request = new ByteArrayOutputStream();
+        while (!request.toString("US-ASCII").endsWith("\r\n\r\n")) {
+            int c = in.read();
+            if (c < 0) throw new IOException("Request incomplete");
+            request.write(c);
+        }
+    }
+
+    private static void write(Socket s, byte[] data) throws IOException {
+        OutputStream out = s.getOutputStream();
+        out.write(data);
+        out.flush();
+    }
+
+    private static class Recorder implements NtripClient.NtripCallback {
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        volatile NtripClient client;
+
+        @Override
+        public void onRtcmDataReceived(ByteBuffer buffer) {
+            synchronized (data) {
+                while (buffer.hasRemaining()) {
+                    data.write(buffer.get());
+                }
+            }
+            client.releaseBuffer(buffer);
+        }
+
+        @Override
+        public void onConnectionStatusChanged(boolean connected) {
+        }
+
+        @Override
+        public void onError(String message) {
+        }
+
+        long received() {
+            synchronized (data) {
+                return data.size();
+            }
+        }
+
+        boolean await(int length) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+            while (received() < length && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            return received() == length;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.geodgnss;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ReplayEngineTest {
+
+    // GPS time of week of GnssLoggerTest.fill(epoch, 0, n)
+    private static final long TOW0 = Math.floorMod(
+            (123_456 + 1_325_000_000_000_000_000L) / 1_000_000, RtcmFramer.WEEK_MILLIS);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void corrections_precedeTheRoverEpochOfTheSameTime() throws IOException {
+        File log = writeLog(5, -1);
+        ByteArrayOutputStream capture = new ByteArrayOutputStream();
+        for (int e = 0; e < 5; e++) {
+            write(capture, frame(1005, 0));         // untimed, rides with the next MSM
+            write(capture, frame(1077, TOW0 + 1000L * e));
+            capture.write(0x55);                    // noise splits the runs per epoch
+        }
+        write(capture, frame(1019, 0));             // trailing ephemeris, never due
+
+        Recorder solver = new Recorder();
+        ReplayEngine.Report report = new ReplayEngine().run(log, save(capture), solver);
+
+        List<String> expected = new ArrayList<>();
+        for (int e = 0; e < 5; e++) {
+            expected.add("1005");
+            expected.add("1077@" + e);
+            expected.add("E" + e);
+        }
+        assertEquals(expected, solver.events);
+        assertEquals(5, solver.calls);
+        assertEquals(5, report.epochs);
+        assertEquals(10, report.rtcmFrames);
+    }
+
+    @Test
+    public void report_countsFixesAndTimeToFirstFix() throws IOException {
+        File log = writeLog(10, 6);
+        Recorder solver = new Recorder();
+        solver.firstFloat = 1;
+        solver.firstFix = 3;
+
+        ReplayEngine.Report report = new ReplayEngine().run(log, save(new ByteArrayOutputStream()),
+                solver);
+
+        assertEquals(9, report.epochs);
+        assertEquals(1, report.skippedEpochs);
+        assertEquals(6, report.fixEpochs);
+        assertEquals(2, report.floatEpochs);
+        assertEquals(3_000_000_000L, report.firstFixSessionNanos, 1000);
+        assertEquals(9_000_000_000L, report.sessionNanos, 1000);
+        assertEquals(6 / 9.0, report.getFixRatio(), 1e-9);
+        assertTrue(report.getEpochsPerSecond() > 0);
+    }
+
+    @Test
+    public void timeOfWeek_comparesAcrossWeekRollover() {
+        long week = RtcmFramer.WEEK_MILLIS;
+        assertFalse(ReplayEngine.after(week - 1000, 500));
+        assertTrue(ReplayEngine.after(500, week - 1000));
+        assertFalse(ReplayEngine.after(1000, 1000));
+        assertTrue(ReplayEngine.after(RtcmFramer.NO_EPOCH_TIME, 1000));
+    }
+
+    /** Epochs one second apart; epoch {@code withoutBias} has no full bias (-1 for none). */
+    private File writeLog(int epochs, int withoutBias) throws IOException {
+        File file = folder.newFile("gnss_replay.log");
+        GnssLogger logger = new GnssLogger(file, 64 * 1024, 1024);
+        logger.open();
+        GnssEpoch epoch = new GnssEpoch();
+        for (int e = 0; e < epochs; e++) {
+            GnssLoggerTest.fill(epoch, e, 4);
+            epoch.biasNanos = 0;
+            if (e == withoutBias) {
+                epoch.clockFlags &= ~GnssEpoch.HAS_FULL_BIAS;
+            }
+            logger.log(epoch);
+        }
+        logger.close();
+        return file;
+    }
+
+    private File save(ByteArrayOutputStream capture) throws IOException {
+        File file = folder.newFile("rtcm_replay.bin");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            capture.writeTo(out);
+        }
+        return file;
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /** Frame with a 30-bit epoch time after the message number and station ID. */
+    static byte[] frame(int type, long epochTime) {
+        int payloadLength = 12;
+        byte[] frame = new byte[payloadLength + 6];
+        frame[0] = (byte) 0xD3;
+        frame[2] = (byte) payloadLength;
+        frame[3] = (byte) (type >> 4);
+        frame[4] = (byte) (type << 4);
+        frame[5] = 1;
+        frame[6] = (byte) (epochTime >> 22);
+        frame[7] = (byte) (epochTime >> 14);
+        frame[8] = (byte) (epochTime >> 6);
+        frame[9] = (byte) (epochTime << 2);
+        int crc = RtcmFramer.crc24q(frame, 0, payloadLength + 3);
+        frame[payloadLength + 3] = (byte) (crc >> 16);
+        frame[payloadLength + 4] = (byte) (crc >> 8);
+        frame[payloadLength + 5] = (byte) crc;
+        return frame;
+    }
+
+    private static class Recorder implements ReplayEngine.Solver {
+        final List<String> events = new ArrayList<>();
+        int calls;
+        int epochs;
+        int firstFloat = Integer.MAX_VALUE;
+        int firstFix = Integer.MAX_VALUE;
+
+        private final RtcmFramer framer = new RtcmFramer((buffer, offset, length, type, station) -> {
+            long tow = RtcmFramer.gpsTimeOfWeekMillis(buffer, offset + 3, type);
+            events.add(tow == RtcmFramer.NO_EPOCH_TIME
+                    ? String.valueOf(type) : type + "@" + (tow - TOW0) / 1000);
+        });
+
+        @Override
+        public void addCorrections(ByteBuffer frames, int offset, int length) {
+            calls++;
+            ByteBuffer slice = frames.duplicate();
+            slice.limit(offset + length).position(offset);
+            framer.feed(slice);
+        }
+
+        @Override
+        public int solve(ByteBuffer epoch) {
+            int e = epochs++;
+            events.add("E" + e);
+            return e >= firstFix ? RTKProcessor.SOLUTION_FIX
+                    : e >= firstFloat ? RTKProcessor.SOLUTION_FLOAT
+                    : RTKProcessor.SOLUTION_SINGLE;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package com.example.geodgnss;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RtcmFramerTest {
+
+    private final List<int[]> frames = new ArrayList<>();
+    private RtcmFramer framer;
+
+    @Before
+    public void setUp() {
+        frames.clear();
+        framer = new RtcmFramer((buffer, offset, length, messageType, stationId) ->
+                frames.add(new int[]{length, messageType, stationId}));
+    }
+
+    @Test
+    public void completeFrame_isDeliveredWithTypeAndStation() {
+        byte[] frame = frame(1077, 2201, 40);
+        framer.feed(frame, 0, frame.length);
+
+        assertEquals(1, frames.size());
+        assertArrayEquals(new int[]{frame.length, 1077, 2201}, frames.get(0));
+        assertEquals(0, framer.getSkippedBytes());
+    }
+
+    @Test
+    public void ephemeris_hasNoStationId() {
+        byte[] frame = frame(1019, 0, 58);
+        framer.feed(frame, 0, frame.length);
+
+        assertEquals(1, frames.size());
+        assertEquals(RtcmFramer.NO_STATION_ID, frames.get(0)[2]);
+    }
+
+    @Test
+    public void frameSplitAcrossChunks_isReassembled() {
+        byte[] data = concat(frame(1005, 7, 16), frame(1087, 7, 300));
+        for (int i = 0; i < data.length; i++) {
+            framer.feed(data, i, 1);
+        }
+        assertEquals(2, frames.size());
+        assertEquals(1005, frames.get(0)[1]);
+        assertEquals(1087, frames.get(1)[1]);
+    }
+
+    @Test
+    public void corruptFrame_isDroppedAndNextFrameSurvives() {
+        byte[] bad = frame(1077, 1, 100);
+        bad[50] ^= 0x01;
+        byte[] data = concat(new byte[]{0x11, 0x22}, bad, frame(1097, 1, 100));
+        framer.feed(data, 0, data.length);
+
+        assertEquals(1, frames.size());
+        assertEquals(1097, frames.get(0)[1]);
+        assertEquals(1, framer.getCrcErrors());
+    }
+
+    @Test
+    public void falsePreambleWithLongLength_doesNotSwallowRealFrames() {
+        // A stray 0xD3 that claims a 1000-byte payload followed by a run of short frames;
+        // they are held back until the bogus candidate fails its CRC, then all delivered
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xD3);
+        out.write(0x03);
+        out.write(0xE8);
+        for (int i = 0; i < 100; i++) {
+            byte[] f = frame(1230, i, 8);
+            out.write(f, 0, f.length);
+        }
+        byte[] data = out.toByteArray();
+        framer.feed(data, 0, 700);
+        framer.feed(data, 700, data.length - 700);
+
+        assertEquals(100, frames.size());
+        assertEquals(99, frames.get(99)[2]);
+        assertEquals(1, framer.getCrcErrors());
+    }
+
+    @Test
+    public void framesInsideChunk_areSlicesOfTheFedBuffer() {
+        byte[] a = frame(1077, 5, 200);
+        byte[] b = frame(1127, 5, 90);
+        ByteBuffer chunk = ByteBuffer.allocateDirect(a.length + b.length + 4);
+        chunk.put((byte) 0x42).put(a).put(b).put(new byte[]{(byte) 0xD3, 0, 9}).flip();
+        List<ByteBuffer> buffers = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        RtcmFramer inPlace = new RtcmFramer((buffer, offset, length, type, station) -> {
+            buffers.add(buffer);
+            offsets.add(offset);
+        });
+
+        inPlace.feed(chunk);
+
+        assertEquals(chunk.limit(), chunk.position());
+        assertEquals(2, buffers.size());
+        assertSame(chunk, buffers.get(0));
+        assertSame(chunk, buffers.get(1));
+        assertEquals(Integer.valueOf(1), offsets.get(0));
+        assertEquals(Integer.valueOf(1 + a.length), offsets.get(1));
+        assertEquals(1, inPlace.getSkippedBytes());
+    }
+
+    @Test
+    public void frameSplitAcrossBuffers_isDeliveredIntact() {
+        byte[] frame = frame(1097, 12, 500);
+        List<byte[]> delivered = new ArrayList<>();
+        RtcmFramer split = new RtcmFramer((buffer, offset, length, type, station) -> {
+            byte[] copy = new byte[length];
+            for (int i = 0; i < length; i++) {
+                copy[i] = buffer.get(offset + i);
+            }
+            delivered.add(copy);
+        });
+
+        split.feed(ByteBuffer.wrap(frame, 0, 2));
+        split.feed(ByteBuffer.wrap(frame, 2, 300));
+        split.feed(ByteBuffer.wrap(frame, 302, frame.length - 302));
+
+        assertEquals(1, delivered.size());
+        assertArrayEquals(frame, delivered.get(0));
+    }
+
+    @Test
+    public void reset_dropsPartialFrame() {
+        byte[] frame = frame(1006, 3, 21);
+        framer.feed(frame, 0, 10);
+        framer.reset();
+        framer.feed(frame, 0, frame.length);
+
+        assertEquals(1, frames.size());
+    }
+
+    @Test
+    public void crc24q_matchesReferenceVector() {
+        byte[] data = "123456789".getBytes();
+        assertEquals(0xCDE703, RtcmFramer.crc24q(data, 0, data.length));
+    }
+
+    @Test
+    public void epochTimes_arePlacedOnGpsTime() {
+        // Wednesday 00:00:30 GPS: Wednesday 03:00:12 Moscow, 00:00:16 BeiDou
+        long tow = 3 * 86400000L + 30000;
+        assertEquals(tow, RtcmFramer.gpsTimeOfWeekMillis(payload(tow), 0, 1077));
+        long glonass = (3L << 27) | (3 * 3600000L + 12000);
+        assertEquals(tow, RtcmFramer.gpsTimeOfWeekMillis(payload(glonass), 0, 1087));
+        assertEquals(tow, RtcmFramer.gpsTimeOfWeekMillis(payload(tow - 14000), 0, 1127));
+        assertEquals(RtcmFramer.NO_EPOCH_TIME,
+                RtcmFramer.gpsTimeOfWeekMillis(payload(7L << 27), 0, 1087));
+        assertEquals(RtcmFramer.NO_EPOCH_TIME, RtcmFramer.gpsTimeOfWeekMillis(payload(0), 0, 1005));
+    }
+
+    private static ByteBuffer payload(long epochTime) {
+        ByteBuffer payload = ByteBuffer.allocate(8);
+        payload.putLong(0, (epochTime & 0x3FFFFFFFL) << 10);
+        return payload;
+    }
+
+    private static byte[] frame(int type, int station, int payloadLength) {
+        byte[] frame = new byte[payloadLength + 6];
+        frame[0] = (byte) 0xD3;
+        frame[1] = (byte) (payloadLength >> 8);
+        frame[2] = (byte) payloadLength;
+        frame[3] = (byte) (type >> 4);
+        frame[4] = (byte) ((type << 4) | (station >> 8));
+        frame[5] = (byte) station;
+        for (int i = 6; i < payloadLength + 3; i++) {
+            frame[i] = (byte) (i * 31);
+        }
+        int crc = RtcmFramer.crc24q(frame, 0, payloadLength + 3);
+        frame[payloadLength + 3] = (byte) (crc >> 16);
+        frame[payloadLength + 4] = (byte) (crc >> 8);
+        frame[payloadLength + 5] = (byte) crc;
+        return frame;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
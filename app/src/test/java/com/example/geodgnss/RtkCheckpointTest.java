@@ -0,0 +1,93 @@
+package com.example.geodgnss;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class RtkCheckpointTest {
+
+    private static final long NOW = 1767225600_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void saveAndLoad_returnTheSnapshotAndItsAge() throws Exception {
+        File file = new File(folder.getRoot(), "rtk.checkpoint");
+        RtkCheckpoint checkpoint = new RtkCheckpoint(file);
+        assertNull("no file", checkpoint.load(NOW));
+        assertEquals(-1, checkpoint.getAgeMillis());
+
+        checkpoint.save(snapshot(1000), 900, NOW);
+        assertEquals(RtkCheckpoint.HEADER_SIZE + 900, file.length());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        ByteBuffer loaded = new RtkCheckpoint(file).load(NOW + 5000);
+        assertNotNull(loaded);
+        assertTrue(loaded.isDirect());
+        assertEquals(0, loaded.position());
+        assertEquals(900, loaded.limit());
+        assertEquals(snapshot(1000).limit(900), loaded);
+    }
+
+    @Test
+    public void age_decidesWhatIsRestored() throws Exception {
+        RtkCheckpoint checkpoint = new RtkCheckpoint(new File(folder.getRoot(), "c"));
+        checkpoint.save(snapshot(100), 100, NOW);
+
+        assertNotNull(checkpoint.load(NOW + RtkCheckpoint.DEFAULT_MAX_AMBIGUITY_AGE_MILLIS));
+        assertTrue(checkpoint.keepsAmbiguities());
+        assertNotNull(checkpoint.load(NOW + RtkCheckpoint.DEFAULT_MAX_AMBIGUITY_AGE_MILLIS + 1));
+        assertFalse("position only", checkpoint.keepsAmbiguities());
+        assertEquals(RtkCheckpoint.DEFAULT_MAX_AMBIGUITY_AGE_MILLIS + 1,
+                checkpoint.getAgeMillis());
+
+        assertNull(checkpoint.load(NOW + RtkCheckpoint.DEFAULT_MAX_AGE_MILLIS + 1));
+        assertFalse(checkpoint.keepsAmbiguities());
+        assertNull("clock went back", checkpoint.load(NOW - 1));
+
+        checkpoint.setMaxAgeMillis(Long.MAX_VALUE);
+        assertNotNull(checkpoint.load(NOW + 86400_000L));
+        checkpoint.delete();
+        assertNull(checkpoint.load(NOW));
+    }
+
+    @Test
+    public void damagedOrForeignFiles_areIgnored() throws Exception {
+        File file = new File(folder.getRoot(), "rtk.checkpoint");
+        RtkCheckpoint checkpoint = new RtkCheckpoint(file);
+        checkpoint.save(snapshot(500), 500, NOW);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(RtkCheckpoint.HEADER_SIZE + 100);
+            raw.write(0x55);
+        }
+        assertNull("bad CRC", checkpoint.load(NOW));
+
+        checkpoint.save(snapshot(500), 500, NOW);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.setLength(file.length() - 1);
+        }
+        assertNull("truncated", checkpoint.load(NOW));
+
+        checkpoint.save(snapshot(500), 500, NOW);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(4);
+            raw.write(RtkCheckpoint.VERSION + 1);
+        }
+        assertNull("other version", checkpoint.load(NOW));
+    }
+
+    private static ByteBuffer snapshot(int length) {
+        ByteBuffer b = ByteBuffer.allocateDirect(length);
+        for (int i = 0; i < length; i++) {
+            b.put(i, (byte) (i * 31));
+        }
+        return b;
+    }
+}
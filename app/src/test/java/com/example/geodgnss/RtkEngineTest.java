@@ -0,0 +1,355 @@
+package com.example.geodgnss;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RtkEngineTest {
+
+    /** Checks that every call comes from one thread, one at a time, between open and close. */
+    private static class RecordingContext implements RtkEngine.Context {
+        final AtomicInteger inFlight = new AtomicInteger();
+        volatile Thread owner;
+        volatile boolean opened;
+        volatile boolean closed;
+        volatile String violation;
+        // Next expected sequence number per producer, from the first two bytes of a run
+        final int[] next = new int[8];
+        final List<Double> solved = Collections.synchronizedList(new ArrayList<>());
+        volatile RuntimeException failure;
+
+        private void enter() {
+            if (owner == null) {
+                owner = Thread.currentThread();
+            }
+            if (owner != Thread.currentThread() || inFlight.incrementAndGet() != 1
+                    || (opened && closed)) {
+                violation = "Concurrent or foreign call on " + Thread.currentThread().getName();
+            }
+        }
+
+        private void exit() {
+            inFlight.decrementAndGet();
+        }
+
+        @Override
+        public void open() {
+            enter();
+            opened = true;
+            exit();
+        }
+
+        @Override
+        public void addCorrections(ByteBuffer data, int offset, int length, long receiveMillis) {
+            enter();
+            int producer = data.get(offset);
+            int sequence = data.getInt(offset + 1);
+            if (!opened || sequence != next[producer] || length != 100) {
+                violation = "Out of order: producer " + producer + " sequence " + sequence;
+            }
+            next[producer]++;
+            exit();
+        }
+
+        @Override
+        public int solve(ByteBuffer epoch, ByteBuffer solution) {
+            enter();
+            try {
+                if (failure != null) {
+                    throw failure;
+                }
+                double tow = epoch.getDouble(GnssEpochBuffer.OFFSET_TOW_SECONDS);
+                solved.add(tow);
+                solution.putDouble(RtkSolution.OFFSET_TOW_SECONDS, tow);
+                return RTKProcessor.SOLUTION_FLOAT;
+            } finally {
+                exit();
+            }
+        }
+
+        @Override
+        public void close() {
+            enter();
+            closed = true;
+            exit();
+        }
+    }
+
+    private final RecordingContext context = new RecordingContext();
+    private final List<Integer> statuses = Collections.synchronizedList(new ArrayList<>());
+    private final RtkEngine engine = new RtkEngine(context,
+            (tow, status, waitNanos, solveNanos) -> statuses.add(status));
+
+    private final RtkSolution lastSolution = new RtkSolution();
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    {
+        engine.getSolutions().addListener(Runnable::run, lastSolution::copyFrom);
+    }
+
+    @After
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Test
+    public void epochsAndCorrectionsFromManyThreads_areSolvedOnOneThreadInOrder()
+            throws InterruptedException {
+        engine.start();
+        int runs = 2000;
+        Thread[] producers = new Thread[3];
+        for (int p = 0; p < producers.length; p++) {
+            int id = p;
+            producers[p] = new Thread(() -> {
+                ByteBuffer run = ByteBuffer.allocateDirect(300);
+                for (int i = 0; i < runs; i++) {
+                    // Each run sits in the middle of the producer's buffer
+                    run.put(100, (byte) id).putInt(101, i);
+                    while (!engine.submitCorrections(run, 100, 100, i)) {
+                        Thread.yield();
+                    }
+                }
+            });
+            producers[p].start();
+        }
+        GnssEpochBuilder epoch = new GnssEpochBuilder();
+        for (int e = 0; e < 200; e++) {
+            epoch.towSeconds = e;
+            while (!engine.submitEpoch(epoch)) {
+                Thread.yield();
+            }
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        engine.close();
+
+        assertNull(context.violation);
+        assertEquals(RtkEngine.State.CLOSED, engine.getState());
+        assertTrue(context.opened && context.closed);
+        assertNotEquals(Thread.currentThread(), context.owner);
+        for (int p = 0; p < producers.length; p++) {
+            assertEquals(runs, context.next[p]);
+        }
+        assertEquals(200, context.solved.size());
+        for (int e = 0; e < 200; e++) {
+            assertEquals(e, context.solved.get(e), 0);
+        }
+        assertEquals(200, engine.getSolvedEpochs());
+        assertEquals(200, engine.getSolutions().getPublished());
+        assertEquals(199.0, lastSolution.towSeconds, 0);
+        assertEquals(RtkSolution.Status.FLOAT, lastSolution.status);
+        assertEquals(200, statuses.size());
+        assertEquals(0, engine.getQueueDepth());
+    }
+
+    @Test
+    public void close_drainsQueuedInputThenRejectsNewInput() {
+        GnssEpochBuilder epoch = new GnssEpochBuilder();
+        // Queued before the solver runs: only as many epochs as there are jobs fit
+        for (int e = 0; e < RtkEngine.EPOCH_JOBS + 2; e++) {
+            epoch.towSeconds = e;
+            assertEquals(e < RtkEngine.EPOCH_JOBS, engine.submitEpoch(epoch));
+        }
+        assertEquals(2, engine.getDroppedEpochs());
+        assertFalse(context.opened);
+
+        engine.start();
+        engine.close();
+        assertEquals(RtkEngine.State.CLOSED, engine.getState());
+        assertEquals(RtkEngine.EPOCH_JOBS, context.solved.size());
+        assertTrue(context.closed);
+
+        assertFalse(engine.submitEpoch(epoch));
+        assertFalse(engine.submitCorrections(ByteBuffer.allocateDirect(10), 0, 10, 0));
+        assertEquals(2, engine.getRejected());
+        assertNull(context.violation);
+    }
+
+    @Test
+    public void closeBeforeStart_neverOpensTheContext() {
+        engine.close();
+        assertEquals(RtkEngine.State.CLOSED, engine.getState());
+        engine.start();
+        assertEquals(RtkEngine.State.CLOSED, engine.getState());
+        assertFalse(context.opened);
+        assertFalse(engine.submitEpoch(new GnssEpochBuilder()));
+    }
+
+    @Test
+    public void largeCorrectionRuns_areSplitAcrossJobs() {
+        List<Integer> lengths = new ArrayList<>();
+        RtkEngine splitting = new RtkEngine(new RtkEngine.Context() {
+            @Override
+            public void open() {
+            }
+
+            @Override
+            public void addCorrections(ByteBuffer data, int offset, int length,
+                                       long receiveMillis) {
+                lengths.add(length);
+            }
+
+            @Override
+            public int solve(ByteBuffer epoch, ByteBuffer solution) {
+                return RTKProcessor.SOLUTION_NONE;
+            }
+
+            @Override
+            public void close() {
+            }
+        }, null);
+        assertTrue(splitting.submitCorrections(
+                ByteBuffer.allocateDirect(3 * RtkEngine.RTCM_JOB_SIZE), 10,
+                2 * RtkEngine.RTCM_JOB_SIZE + 5, 0));
+        splitting.start();
+        splitting.close();
+        assertEquals(Arrays.asList(RtkEngine.RTCM_JOB_SIZE, RtkEngine.RTCM_JOB_SIZE, 5),
+                lengths);
+    }
+
+    @Test
+    public void failingSolve_isCountedAndTheEngineCarriesOn() {
+        context.failure = new IllegalStateException("solver failed");
+        GnssEpochBuilder epoch = new GnssEpochBuilder();
+        engine.submitEpoch(epoch);
+        engine.start();
+        engine.close();
+        assertEquals(1, engine.getErrors());
+        assertSame(context.failure, engine.getLastError());
+        assertTrue(context.closed);
+        assertTrue(statuses.isEmpty());
+    }
+
+    @Test
+    public void checkpoint_carriesTheFilterStateToTheNextEngine() {
+        File file = new File(folder.getRoot(), "rtk.checkpoint");
+        StatefulContext first = new StatefulContext();
+        RtkEngine engine1 = new RtkEngine(first, null);
+        engine1.setCheckpoint(new RtkCheckpoint(file));
+        GnssEpochBuilder epoch = new GnssEpochBuilder();
+        for (int e = 0; e < 3; e++) {
+            engine1.submitEpoch(epoch);
+        }
+        engine1.start();
+        engine1.close();
+        assertFalse(engine1.isRestored());
+        // The interval starts at open, so the only save is the one on close
+        assertEquals(1, engine1.getCheckpointsSaved());
+        assertEquals(0, engine1.getCheckpointErrors());
+
+        StatefulContext second = new StatefulContext();
+        RtkEngine engine2 = new RtkEngine(second, null);
+        engine2.setCheckpoint(new RtkCheckpoint(file));
+        engine2.start();
+        engine2.close();
+        assertTrue(engine2.isRestored());
+        assertTrue(second.keptAmbiguities);
+        assertEquals(3, second.solved);
+        // Nothing solved, so the checkpoint is left as it was
+        assertEquals(0, engine2.getCheckpointsSaved());
+    }
+
+    @Test
+    public void restoredAmbiguities_areResetOnEachSignalsFirstPhase() {
+        File file = new File(folder.getRoot(), "rtk.checkpoint");
+        StatefulContext first = new StatefulContext();
+        RtkEngine engine1 = new RtkEngine(first, null);
+        engine1.setCheckpoint(new RtkCheckpoint(file));
+        GnssEpochBuilder epoch = new GnssEpochBuilder();
+        signals(epoch, 1000, 2);
+        engine1.submitEpoch(epoch);
+        engine1.start();
+        engine1.close();
+        assertEquals("no restore, nothing flagged", "[0, 0]", first.lli.get(0));
+
+        // The restarted app re-acquires the carriers with new ADR offsets and no LLI
+        StatefulContext second = new StatefulContext();
+        RtkEngine engine2 = new RtkEngine(second, null);
+        engine2.setCheckpoint(new RtkCheckpoint(file));
+        signals(epoch, 5000, 2);
+        engine2.submitEpoch(epoch);
+        engine2.submitEpoch(epoch);
+        signals(epoch, 9000, 3); // a third signal joins later
+        epoch.carrierCycles[0] = 0; // the first one is briefly without phase
+        engine2.submitEpoch(epoch);
+        engine2.start();
+        engine2.close();
+        assertTrue(engine2.isRestored());
+        assertTrue(second.keptAmbiguities);
+        int slip = CycleSlipTracker.LLI_SLIP;
+        assertEquals(Arrays.asList("[" + slip + ", " + slip + "]", "[0, 0]",
+                "[0, 0, " + slip + "]"), second.lli);
+    }
+
+    private static void signals(GnssEpochBuilder epoch, double carrierCycles, int count) {
+        epoch.count = count;
+        for (int i = 0; i < count; i++) {
+            epoch.constellationType[i] = GnssEpochBuilderTest.GPS;
+            epoch.svid[i] = 3 + i;
+            epoch.frequencySlot[i] = 0;
+            epoch.carrierCycles[i] = carrierCycles + i;
+            epoch.lli[i] = 0;
+        }
+    }
+
+    /** Its state is the number of epochs solved, padded beyond the engine's first buffer. */
+    private static class StatefulContext implements RtkEngine.Context {
+        static final int STATE_SIZE = RtkEngine.STATE_BUFFER_SIZE + 100;
+        int solved;
+        boolean keptAmbiguities;
+        final List<String> lli = new ArrayList<>();
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public void addCorrections(ByteBuffer data, int offset, int length, long receiveMillis) {
+        }
+
+        @Override
+        public int solve(ByteBuffer epoch, ByteBuffer solution) {
+            solved++;
+            int[] flags = new int[epoch.getInt(GnssEpochBuffer.OFFSET_COUNT)];
+            for (int i = 0; i < flags.length; i++) {
+                flags[i] = epoch.getInt(GnssEpochBuffer.OFFSET_LLI + 4 * i);
+            }
+            lli.add(Arrays.toString(flags));
+            return RTKProcessor.SOLUTION_FLOAT;
+        }
+
+        @Override
+        public int saveState(ByteBuffer state) {
+            if (state.capacity() < STATE_SIZE) {
+                return -STATE_SIZE;
+            }
+            state.putInt(STATE_SIZE - 4, solved);
+            return STATE_SIZE;
+        }
+
+        @Override
+        public boolean restoreState(ByteBuffer state, int length, boolean keepAmbiguities) {
+            solved = state.getInt(length - 4);
+            keptAmbiguities = keepAmbiguities;
+            return length == STATE_SIZE;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.geodgnss;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class RtkSolutionPublisherTest {
+
+    private final RtkSolutionPublisher publisher = new RtkSolutionPublisher();
+    private final RtkSolution solution = new RtkSolution();
+
+    @Test
+    public void unpack_readsTheNativeLayout() throws IOException {
+        String header = new String(Files.readAllBytes(
+                Paths.get("src/main/cpp/rtk_solution_buffer.h")), StandardCharsets.UTF_8);
+        Matcher m = Pattern.compile("constexpr int OFFSET_(\\w+) =").matcher(header);
+        int offsets = 0;
+        while (m.find()) {
+            offsets++;
+        }
+        assertEquals(10, offsets);
+        assertTrue(header.contains("static_assert(SIZE == " + RtkSolution.SIZE));
+        assertTrue(header.contains("VERSION = " + RtkSolution.VERSION + ";"));
+
+        ByteBuffer b = RtkSolution.allocateBuffer();
+        assertEquals(RtkSolution.VERSION, b.getInt(RtkSolution.OFFSET_VERSION));
+        b.putInt(RtkSolution.OFFSET_STATUS, RTKProcessor.SOLUTION_FLOAT);
+        b.putInt(RtkSolution.OFFSET_GPS_WEEK, 2400);
+        b.putInt(RtkSolution.OFFSET_SATELLITES, 17);
+        b.putDouble(RtkSolution.OFFSET_TOW_SECONDS, 345600.5);
+        b.putDouble(RtkSolution.OFFSET_ECEF + 16, 4.9e6);
+        b.putDouble(RtkSolution.OFFSET_LLH, 48.1);
+        b.putDouble(RtkSolution.OFFSET_LLH + 8, 11.5);
+        b.putDouble(RtkSolution.OFFSET_LLH + 16, 545.4);
+        b.putFloat(RtkSolution.OFFSET_COVARIANCE + 20, 0.25f);
+        b.putFloat(RtkSolution.OFFSET_AGE, 1.5f);
+        b.putFloat(RtkSolution.OFFSET_RATIO, 3.2f);
+
+        solution.unpack(b);
+        assertEquals(RtkSolution.Status.FLOAT, solution.status);
+        assertEquals(2400, solution.gpsWeek);
+        assertEquals(17, solution.satellites);
+        assertEquals(345600.5, solution.towSeconds, 0);
+        assertEquals(4.9e6, solution.ecef[2], 0);
+        assertEquals(48.1, solution.latitudeDegrees, 0);
+        assertEquals(11.5, solution.longitudeDegrees, 0);
+        assertEquals(545.4, solution.heightMeters, 0);
+        assertEquals(0.25f, solution.covariance[5], 0);
+        assertEquals(1.5f, solution.ageSeconds, 0);
+        assertEquals(3.2f, solution.ratio, 0);
+
+        for (RtkSolution.Status status : RtkSolution.Status.values()) {
+            assertSame(status, RtkSolution.Status.of(status.code));
+        }
+        assertSame(RtkSolution.Status.NONE, RtkSolution.Status.of(42));
+    }
+
+    @Test
+    public void directListener_seesEverySolutionInOrder() {
+        List<Long> seen = new ArrayList<>();
+        publisher.addListener(Runnable::run, s -> seen.add(s.sequence));
+        for (int i = 1; i <= 100; i++) {
+            publish(i);
+        }
+        assertEquals(100, seen.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i + 1, (long) seen.get(i));
+        }
+        assertEquals(100, publisher.getPublished());
+    }
+
+    @Test
+    public void listenerThatFallsBehind_skipsToTheLatest() {
+        ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        List<Double> seen = new ArrayList<>();
+        RtkSolutionPublisher.Listener listener = s -> seen.add(s.towSeconds);
+        publisher.addListener(tasks::add, listener);
+
+        for (int i = 1; i <= 5; i++) {
+            publish(i);
+        }
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+        assertEquals(Arrays.asList(5.0), seen);
+
+        publish(6);
+        publish(7);
+        assertEquals(1, tasks.size());
+        tasks.poll().run();
+        assertEquals(Arrays.asList(5.0, 7.0), seen);
+
+        publisher.removeListener(listener);
+        publish(8);
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void listenerOnAnotherThread_alwaysSeesWholeSolutions() throws InterruptedException {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        long[] last = {0};
+        String[] torn = {null};
+        publisher.addListener(executor, s -> {
+            // Every field was written from the same counter
+            if (s.ecef[0] != s.sequence || s.covariance[5] != s.sequence % 1000
+                    || s.towSeconds != s.sequence || s.satellites != (int) s.sequence
+                    || s.sequence <= last[0]) {
+                torn[0] = "Inconsistent solution " + s.sequence;
+            }
+            last[0] = s.sequence;
+        });
+        int count = 200_000;
+        for (int i = 1; i <= count; i++) {
+            publish(i);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertNull(torn[0]);
+        assertEquals(count, last[0]);
+    }
+
+    @Test
+    public void listenerOnAThreadPool_isNeverCalledConcurrently() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        AtomicInteger running = new AtomicInteger();
+        AtomicLong last = new AtomicLong();
+        AtomicReference<String> error = new AtomicReference<>();
+        publisher.addListener(executor, s -> {
+            if (running.incrementAndGet() != 1) {
+                error.set("Called concurrently at " + s.sequence);
+            }
+            // Holds on to the slot long enough for a racing run to hand it back to publish
+            long sequence = s.sequence;
+            Thread.yield();
+            if (s.sequence != sequence || s.ecef[0] != s.sequence || s.towSeconds != s.sequence
+                    || s.satellites != (int) s.sequence || s.sequence <= last.get()) {
+                error.set("Inconsistent solution " + s.sequence);
+            }
+            last.set(s.sequence);
+            running.decrementAndGet();
+        });
+        int count = 200_000;
+        for (int i = 1; i <= count; i++) {
+            publish(i);
+        }
+        // The latest solution is always delivered, by a run scheduled after the last publish
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (last.get() != count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertNull(error.get());
+        assertEquals(count, last.get());
+    }
+
+    private void publish(int i) {
+        solution.status = RtkSolution.Status.FIX;
+        solution.towSeconds = i;
+        solution.ecef[0] = i;
+        solution.covariance[5] = i % 1000;
+        solution.satellites = i;
+        publisher.publish(solution);
+    }
+}
@@ -0,0 +1,309 @@
+package com.example.geodgnss;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class SessionBatchTest {
+
+    // GPS time of week of GnssLoggerTest.fill(epoch, 0, n), as in ReplayEngineTest
+    private static final long TOW0 = Math.floorMod(
+            (123_456 + 1_325_000_000_000_000_000L) / 1_000_000, RtcmFramer.WEEK_MILLIS);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File root;
+    private File output;
+    private final List<File> navigations = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger openSolvers = new AtomicInteger();
+
+    @Before
+    public void setUp() throws IOException {
+        root = folder.newFolder("sessions");
+        output = folder.newFolder("solutions");
+    }
+
+    @Test
+    public void scan_collectsTheSegmentsOfEachSession() throws IOException {
+        File first = new File(root, "20240101_120000");
+        writeSegment(first, "20240101_120000", 0, 3, false);
+        writeSegment(first, "20240101_130000", 3, 3, true);
+        writeLog(new File(first, "gnss_20240101_140000.log"), 6, 3);    // no capture
+        Files.write(new File(first, SessionBatch.NAVIGATION_FILE).toPath(), new byte[4]);
+        writeSegment(new File(root, "device2/20240102_080000"), "20240102_080000", 0, 3, false);
+        new File(root, "empty").mkdirs();
+
+        SessionBatch batch = new SessionBatch(output, this::open);
+        batch.scan(root);
+
+        List<SessionBatch.Session> sessions = batch.getSessions();
+        assertEquals(2, sessions.size());
+        SessionBatch.Session session = sessions.get(0);
+        assertEquals("sessions/20240101_120000", session.name);
+        assertEquals(Arrays.asList("gnss_20240101_120000.log", "gnss_20240101_130000.log.gz",
+                "gnss_20240101_140000.log"), names(session.gnssLogs));
+        assertEquals(Arrays.asList("rtcm_20240101_120000.bin", "rtcm_20240101_130000.bin.gz"),
+                names(session.rtcmCaptures));
+        assertEquals(SessionBatch.NAVIGATION_FILE, session.navigation.getName());
+        assertTrue(session.bytes > 0);
+        assertEquals("sessions/device2/20240102_080000", sessions.get(1).name);
+        assertNull(sessions.get(1).navigation);
+
+        assertEquals("20240101_120000_1",
+                SessionBatch.segmentStart("gnss_20240101_120000_1.log.gz", "gnss_", ".log"));
+        assertNull(SessionBatch.segmentStart("gnss_20240101_120000.log.gz.tmp", "gnss_", ".log"));
+        assertNull(SessionBatch.segmentStart("metrics_20240101_120000.tsv", "gnss_", ".log"));
+    }
+
+    @Test
+    public void run_solvesEverySessionIntoItsOwnFile() throws IOException {
+        for (int s = 0; s < 6; s++) {
+            File directory = new File(root, "2024010" + s + "_120000");
+            // Sessions of different lengths, the longest with a gzipped second segment
+            writeSegment(directory, "a", 0, 2 + s, false);
+            writeSegment(directory, "b", 2 + s, 2 + s, s == 5);
+        }
+        File navigation = folder.newFile("ephemeris.rtcm");
+        List<String> finished = Collections.synchronizedList(new ArrayList<>());
+        SessionBatch batch = new SessionBatch(output, this::open);
+        batch.setNavigation(navigation);
+        batch.setListener(session -> finished.add(session.name));
+        batch.scan(root);
+
+        SessionBatch.Report report = batch.run(3);
+
+        assertEquals(6, report.sessions);
+        assertEquals(0, report.failedSessions);
+        assertEquals(24, report.segments);
+        assertEquals(3, report.threads);
+        // 2 * (2 + 3 + ... + 7) epochs, the fake solver fixes every other one
+        assertEquals(54, report.total.epochs);
+        assertEquals(27, report.total.fixEpochs);
+        assertEquals(27, report.total.floatEpochs);
+        assertTrue(report.getEpochsPerSecond() > 0);
+        assertEquals(6, finished.size());
+        assertEquals(6, navigations.size());
+        assertTrue(navigations.stream().allMatch(navigation::equals));
+        assertEquals("every solver closed", 0, openSolvers.get());
+
+        for (SessionBatch.Session session : batch.getSessions()) {
+            assertNull(session.error);
+            int epochs = (int) session.report.epochs;
+            List<String> lines = Files.readAllLines(session.solutionFile.toPath());
+            assertEquals(session.name, epochs + 1, lines.size());
+            assertTrue(lines.get(0).startsWith("%"));
+            assertEquals(new File(output, session.name + SessionBatch.SOLUTION_SUFFIX),
+                    session.solutionFile);
+        }
+        String[] fields = Files.readAllLines(batch.getSessions().get(0).solutionFile.toPath())
+                .get(2).split(" ");
+        assertEquals(12, fields.length);
+        assertEquals("1", fields[2]);
+        assertEquals("48.100000000", fields[4]);
+    }
+
+    @Test
+    public void run_mergesStreamsThatRotatedAtDifferentTimes() throws IOException {
+        // Corrections started three seconds after the rover; both streams rotated once,
+        // each on its own first write after the boundary
+        File directory = new File(root, "20240101_120000");
+        directory.mkdirs();
+        writeLog(new File(directory, "gnss_20240101_120000.log"), 0, 5);
+        writeLog(new File(directory, "gnss_20240101_120005.log"), 5, 5);
+        writeCapture(new File(directory, "rtcm_20240101_120003.bin"), 3, 4);
+        writeCapture(new File(directory, "rtcm_20240101_120007.bin"), 7, 3);
+        gzip(new File(directory, "rtcm_20240101_120007.bin"));
+
+        List<String> events = new ArrayList<>();
+        SessionBatch batch = new SessionBatch(output, navigation -> recorder(events));
+        batch.scan(root);
+        SessionBatch.Report report = batch.run(1);
+
+        assertEquals(1, report.sessions);
+        assertEquals(4, report.segments);
+        SessionBatch.Session session = batch.getSessions().get(0);
+        assertNull(session.error);
+        assertEquals(10, session.report.epochs);
+        assertEquals(7, session.report.rtcmFrames);
+        List<String> expected = new ArrayList<>();
+        for (int e = 0; e < 10; e++) {
+            if (e >= 3) {
+                expected.add("1077@" + e);
+            }
+            expected.add("E" + e);
+        }
+        assertEquals(expected, events);
+    }
+
+    @Test
+    public void failedSession_isReportedWithoutStoppingTheOthers() throws IOException {
+        File good = new File(root, "good");
+        writeSegment(good, "a", 0, 4, false);
+        File broken = new File(root, "broken");
+        writeSegment(broken, "a", 0, 4, false);
+        Files.write(new File(broken, "gnss_b.log.gz").toPath(), new byte[]{1, 2, 3});
+        Files.write(new File(broken, "rtcm_b.bin").toPath(), new byte[0]);
+
+        SessionBatch batch = new SessionBatch(output, this::open);
+        batch.setTemporaryDirectory(folder.newFolder("tmp"));
+        batch.scan(root);
+        SessionBatch.Report report = batch.run(2);
+
+        assertEquals(2, report.sessions);
+        assertEquals(1, report.failedSessions);
+        SessionBatch.Session failed = batch.getSessions().get(0);
+        assertEquals("sessions/broken", failed.name);
+        assertNotNull(failed.error);
+        assertEquals("nothing solved", 0, failed.report.epochs);
+        assertTrue(failed.toString().contains("failed"));
+        assertNull(batch.getSessions().get(1).error);
+        assertEquals(4, report.total.epochs);
+        assertEquals(0, openSolvers.get());
+        assertEquals("temporary files removed", 0,
+                new File(folder.getRoot(), "tmp").list().length);
+    }
+
+    private SessionBatch.Solver open(File navigation) {
+        if (navigation != null) {
+            navigations.add(navigation);
+        }
+        openSolvers.incrementAndGet();
+        return new SessionBatch.Solver() {
+            int epochs;
+
+            @Override
+            public void addCorrections(ByteBuffer frames, int offset, int length) {
+            }
+
+            @Override
+            public int solve(ByteBuffer epoch) {
+                return epochs++ % 2 == 0
+                        ? RTKProcessor.SOLUTION_FLOAT : RTKProcessor.SOLUTION_FIX;
+            }
+
+            @Override
+            public void getSolution(RtkSolution solution) {
+                solution.gpsWeek = 2300;
+                solution.towSeconds = epochs;
+                solution.latitudeDegrees = 48.1;
+                solution.longitudeDegrees = 11.5;
+                solution.satellites = 12;
+            }
+
+            @Override
+            public void close() {
+                openSolvers.decrementAndGet();
+            }
+        };
+    }
+
+    private static void writeSegment(File directory, String start, int first, int epochs,
+                                     boolean gzip) throws IOException {
+        directory.mkdirs();
+        File log = new File(directory, "gnss_" + start + ".log");
+        File capture = new File(directory, "rtcm_" + start + ".bin");
+        writeLog(log, first, epochs);
+        Files.write(capture.toPath(), ReplayEngineTest.frame(1005, 0));
+        if (gzip) {
+            gzip(log);
+            gzip(capture);
+        }
+    }
+
+    /** An MSM frame per second from epoch {@code first}, on the time line of the logs. */
+    private static void writeCapture(File file, int first, int frames) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            for (int e = first; e < first + frames; e++) {
+                out.write(ReplayEngineTest.frame(1077, TOW0 + 1000L * e));
+            }
+        }
+    }
+
+    private static SessionBatch.Solver recorder(List<String> events) {
+        RtcmFramer framer = new RtcmFramer((buffer, offset, length, type, station) -> {
+            long tow = RtcmFramer.gpsTimeOfWeekMillis(buffer, offset + 3, type);
+            events.add(type + "@" + (tow - TOW0) / 1000);
+        });
+        return new SessionBatch.Solver() {
+            int epochs;
+
+            @Override
+            public void addCorrections(ByteBuffer frames, int offset, int length) {
+                ByteBuffer slice = frames.duplicate();
+                slice.limit(offset + length).position(offset);
+                framer.feed(slice);
+            }
+
+            @Override
+            public int solve(ByteBuffer epoch) {
+                events.add("E" + epochs++);
+                return RTKProcessor.SOLUTION_SINGLE;
+            }
+
+            @Override
+            public void getSolution(RtkSolution solution) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    /** Epochs {@code first} to {@code first + epochs - 1}, one second apart. */
+    private static void writeLog(File file, int first, int epochs) {
+        GnssLogger logger = new GnssLogger(file, 64 * 1024, 1024);
+        try {
+            logger.open();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        GnssEpoch epoch = new GnssEpoch();
+        for (int e = first; e < first + epochs; e++) {
+            GnssLoggerTest.fill(epoch, e, 4);
+            epoch.biasNanos = 0;
+            logger.log(epoch);
+        }
+        logger.close();
+    }
+
+    private static void gzip(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file);
+             OutputStream out = new GZIPOutputStream(
+                     new FileOutputStream(file.getPath() + SessionStorage.COMPRESSED_SUFFIX))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        assertTrue(file.delete());
+    }
+
+    private static List<String> names(List<File> files) {
+        List<String> names = new ArrayList<>();
+        for (File file : files) {
+            names.add(file.getName());
+        }
+        return names;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.geodgnss;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class SessionStorageTest {
+
+    // 2026-01-01 00:00:00 UTC
+    private static final long T0 = 1767225600_000L;
+    private static final long HOUR = 3600_000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void streams_rotateBySizeAndOnAlignedBoundaries() throws Exception {
+        SessionStorage storage = new SessionStorage(folder.getRoot(), 1L << 30, 1000, HOUR);
+        assertEquals("20260101_000000", storage.startSession(T0));
+        SessionStorage.Stream gnss = storage.openStream("gnss_", ".log");
+
+        assertTrue(gnss.shouldRotate(0, T0));
+        File first = gnss.rotate(T0 + 1500);
+        assertEquals("gnss_20260101_000001.log", first.getName());
+        assertEquals(new File(folder.getRoot(), "20260101_000000"), first.getParentFile());
+        assertFalse(gnss.shouldRotate(999, T0 + HOUR - 1));
+        assertTrue(gnss.shouldRotate(1000, T0 + 2000));
+        assertTrue(gnss.shouldRotate(0, T0 + HOUR));
+
+        write(first, 10);
+        File second = gnss.rotate(T0 + 1900);
+        assertEquals("gnss_20260101_000001_1.log", second.getName());
+        storage.close();
+    }
+
+    @Test
+    public void closedSegments_areCompressedInTheBackground() throws Exception {
+        SessionStorage storage = new SessionStorage(folder.getRoot(), 1L << 30, 1 << 20, HOUR);
+        String session = storage.startSession(T0);
+        SessionStorage.Stream rtcm = storage.openStream("rtcm_", ".bin");
+        File file = rtcm.rotate(T0);
+        byte[] data = write(file, 100_000);
+        write(rtcm.rotate(T0 + HOUR), 10);
+        storage.close();
+
+        List<File> files = storage.getFiles(session);
+        assertEquals(2, files.size());
+        File compressed = files.get(0);
+        assertEquals("rtcm_20260101_000000.bin.gz", compressed.getName());
+        assertFalse(file.exists());
+        assertArrayEquals(data, gunzip(compressed));
+        assertEquals(compressed.length() + files.get(1).length(), storage.getStoredBytes());
+        assertNull(storage.getLastError());
+    }
+
+    @Test
+    public void budget_evictsOldestSessionsFirst() throws Exception {
+        // Random data does not compress: every segment stays at about 9 kB, and a full
+        // 10 kB segment is reserved for each open stream
+        SessionStorage storage = new SessionStorage(folder.getRoot(), 60_000, 10_000, HOUR);
+        String old = storage.startSession(T0);
+        SessionStorage.Stream stream = storage.openStream("gnss_", ".log");
+        for (int h = 0; h < 3; h++) {
+            write(stream.rotate(T0 + h * HOUR), 9_000);
+        }
+        stream.close();
+        storage.close();
+
+        storage = new SessionStorage(folder.getRoot(), 60_000, 10_000, HOUR);
+        String current = storage.startSession(T0 + 24 * HOUR);
+        stream = storage.openStream("gnss_", ".log");
+        for (int h = 0; h < 4; h++) {
+            write(stream.rotate(T0 + (24 + h) * HOUR), 9_000);
+        }
+        storage.close();
+
+        // 3 + 4 segments of 9 kB in a 60 kB budget
+        assertEquals(Arrays.asList(old, current), storage.getSessions());
+        assertEquals(2, storage.getFiles(old).size());
+        assertEquals(4, storage.getFiles(current).size());
+        assertFalse(new File(new File(folder.getRoot(), old), "gnss_20260101_000000.log.gz").exists());
+        assertTrue(storage.getStoredBytes() <= 60_000);
+
+        // The current session is trimmed from its oldest end once the others are gone
+        storage = new SessionStorage(folder.getRoot(), 60_000, 10_000, HOUR);
+        storage.startSession(T0 + 48 * HOUR);
+        stream = storage.openStream("gnss_", ".log");
+        for (int h = 0; h < 7; h++) {
+            write(stream.rotate(T0 + (48 + h) * HOUR), 9_000);
+        }
+        storage.close();
+        assertEquals(1, storage.getSessions().size());
+        assertEquals(6, storage.getFiles(storage.getSessions().get(0)).size());
+        assertFalse(new File(folder.getRoot(), old).exists());
+    }
+
+    @Test
+    public void manifest_survivesARestartAndRecoversOpenSegments() throws Exception {
+        SessionStorage storage = new SessionStorage(folder.getRoot(), 1L << 30, 1 << 20, HOUR);
+        String session = storage.startSession(T0);
+        SessionStorage.Stream stream = storage.openStream("gnss_", ".log");
+        byte[] data = write(stream.rotate(T0), 5_000);
+        // The process dies here: the segment is never closed
+
+        SessionStorage restarted =
+                new SessionStorage(folder.getRoot(), 1L << 30, 1 << 20, HOUR);
+        restarted.close();
+        assertEquals(Arrays.asList(session), restarted.getSessions());
+        List<File> files = restarted.getFiles(session);
+        assertEquals("gnss_20260101_000000.log.gz", files.get(0).getName());
+        assertArrayEquals(data, gunzip(files.get(0)));
+        assertTrue(new File(folder.getRoot(), SessionStorage.MANIFEST).exists());
+    }
+
+    private static byte[] write(File file, int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return data;
+    }
+
+    private static byte[] gunzip(File file) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return out.toByteArray();
+    }
+}
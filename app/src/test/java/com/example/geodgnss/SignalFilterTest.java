@@ -0,0 +1,124 @@
+package com.example.geodgnss;
+
+import org.junit.Test;
+
+import static com.example.geodgnss.GnssEpochBuilderTest.GLONASS;
+import static com.example.geodgnss.GnssEpochBuilderTest.GPS;
+import static org.junit.Assert.*;
+
+public class SignalFilterTest {
+
+    private static final long GPS_NANOS = 2300 * GnssEpochBuilder.WEEK_NANOS
+            + 300_000_000_000_000L;
+
+    private final SignalFilter filter = new SignalFilter();
+    private final GnssEpoch epoch = new GnssEpoch();
+
+    @Test
+    public void check_passesAGoodSignalAndScoresEachFailure() {
+        observe(GPS, GPS, GPS, GPS, GPS, GLONASS);
+        epoch.state[1] &= ~SignalFilter.STATE_CODE_LOCK;
+        epoch.receivedSvTimeUncertaintyNanos[2] = 500;
+        epoch.cn0DbHz[3] = 12;
+        epoch.multipathIndicator[4] = SignalFilter.MULTIPATH_INDICATOR_DETECTED;
+        // A GLONASS signal has no time of week, only time of day
+        epoch.state[5] = GnssEpochBuilderTest.STATE_TOW;
+
+        assertEquals(0, filter.check(epoch, 0));
+        assertEquals(SignalFilter.REJECT_STATE, filter.check(epoch, 1));
+        assertEquals(SignalFilter.REJECT_UNCERTAINTY, filter.check(epoch, 2));
+        assertEquals(SignalFilter.REJECT_CN0, filter.check(epoch, 3));
+        assertEquals(SignalFilter.REJECT_MULTIPATH, filter.check(epoch, 4));
+        assertEquals(SignalFilter.REJECT_STATE, filter.check(epoch, 5));
+
+        filter.setRejectMultipath(false);
+        filter.setMinCn0DbHz(10);
+        assertEquals(0, filter.check(epoch, 3));
+        assertEquals(0, filter.check(epoch, 4));
+    }
+
+    @Test
+    public void check_appliesTheElevationMaskOnceTheElevationIsKnown() {
+        observe(GPS, GPS);
+        assertEquals("unknown elevation", 0, filter.check(epoch, 0));
+        filter.setElevation(GPS, 1, 5);
+        filter.setElevation(GPS, 2, 45);
+        assertEquals(SignalFilter.REJECT_ELEVATION, filter.check(epoch, 0));
+        assertEquals(0, filter.check(epoch, 1));
+        filter.setElevationMaskDegrees(0);
+        assertEquals(0, filter.check(epoch, 0));
+        filter.clearElevations();
+        filter.setElevationMaskDegrees(10);
+        assertEquals(0, filter.check(epoch, 0));
+    }
+
+    @Test
+    public void check_keepsTheCodeButNotAnUncertainCarrier() {
+        observe(GPS, GPS, GPS);
+        epoch.accumulatedDeltaRangeState[1] = 0;
+        epoch.accumulatedDeltaRangeUncertaintyMeters[2] = 0.5;
+        epoch.cn0DbHz[2] = 0;
+
+        assertEquals(0, filter.check(epoch, 0));
+        int checks = filter.check(epoch, 1);
+        assertEquals(SignalFilter.NO_CARRIER, checks);
+        assertFalse(SignalFilter.isRejected(checks));
+        // A rejected signal is not scored for its carrier as well
+        assertEquals(SignalFilter.REJECT_CN0, filter.check(epoch, 2));
+    }
+
+    @Test
+    public void counters_keepRejectionsPerSatelliteAndReason() {
+        observe(GPS, GLONASS, GPS);
+        epoch.cn0DbHz[0] = 10;
+        epoch.cn0DbHz[1] = 10;
+        filter.setElevation(GLONASS, 2, 3);
+        for (int n = 0; n < 3; n++) {
+            for (int i = 0; i < epoch.count; i++) {
+                filter.check(epoch, i);
+            }
+        }
+
+        assertEquals(3, filter.getRejected(GPS, 1, SignalFilter.REJECT_CN0));
+        assertEquals(3, filter.getRejected(GLONASS, 2, SignalFilter.REJECT_CN0));
+        assertEquals(3, filter.getRejected(GLONASS, 2, SignalFilter.REJECT_ELEVATION));
+        assertEquals(0, filter.getRejected(GPS, 3, SignalFilter.REJECT_CN0));
+        assertEquals(6, filter.getRejected(SignalFilter.REJECT_CN0));
+        assertEquals(3, filter.getRejected(SignalFilter.REJECT_ELEVATION));
+
+        StringBuilder out = new StringBuilder();
+        filter.describe(out);
+        assertEquals("G01 cn0=3\nR02 cn0=3 elevation=3\n", out.toString());
+    }
+
+    @Test
+    public void builder_leavesOutRejectedSignalsAndUnusableCarriers() {
+        observe(GPS, GPS, GPS);
+        epoch.cn0DbHz[0] = 5;
+        epoch.accumulatedDeltaRangeUncertaintyMeters[2] = 1;
+        GnssEpochBuilder builder = new GnssEpochBuilder();
+        builder.setFilter(filter);
+
+        assertTrue(builder.build(epoch));
+        assertEquals(2, builder.count);
+        assertEquals(2, builder.svid[0]);
+        assertNotEquals(0, builder.carrierCycles[0], 0);
+        assertEquals(3, builder.svid[1]);
+        assertEquals(0, builder.carrierCycles[1], 0);
+    }
+
+    private void observe(int... constellations) {
+        double[] ranges = new double[constellations.length];
+        for (int i = 0; i < ranges.length; i++) {
+            ranges[i] = 20_000_000 + 100_000 * i;
+        }
+        GnssEpochBuilderTest.observe(epoch, GPS_NANOS, 0, constellations, ranges);
+        for (int i = 0; i < epoch.count; i++) {
+            epoch.receivedSvTimeUncertaintyNanos[i] = 20;
+            epoch.accumulatedDeltaRangeState[i] = GnssEpochBuilder.ADR_STATE_VALID;
+            epoch.accumulatedDeltaRangeMeters[i] = 1000 + i;
+            epoch.accumulatedDeltaRangeUncertaintyMeters[i] = 0.01;
+            epoch.multipathIndicator[i] = 0;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.geodgnss;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SourcetableTest {
+
+    static final String TABLE = "SOURCETABLE 200 OK\r\n"
+            + "Server: Caster\r\n"
+            + "\r\n"
+            + "CAS;rtk.example.com;2101;Example;Ops;0;DEU;50.0;8.0;0.0.0.0;0;http://example.com\r\n"
+            + "NET;EXAMPLE;Ops;B;N;http://example.com;none;ops@example.com;none\r\n"
+            + "STR;FFMJ00DEU0;Frankfurt;RTCM 3.3;1077(1),1087(1),1005(10);2;GPS+GLO;EUREF;DEU;50.09;8.66;0;0;Trimble;none;B;N;9600;\r\n"
+            + "STR;VRS_RTCM3;Network;RTCM 3.2;1004(1);2;GPS;EX;DEU;50.00;8.00;1;1;sNTRIP;none;B;N;3200;misc;with;semicolons\r\n"
+            + "STR;WTZR00DEU0;Wettzell;RTCM3;1074(1);2;GPS;EUREF;DEU;49.14;347.12;0;0;Leica;none;B;N;5000;\r\n"
+            + "STR;BROKEN;x;RTCM 3;;2;GPS;X;DEU;north;east;0;0;;none;B;N;0;\r\n"
+            + "STR;SHORT;x;RTCM 3\r\n"
+            + "ENDSOURCETABLE\r\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void parse_readsStrRecordsAndSkipsBrokenOnes() {
+        List<Sourcetable.Mountpoint> m = Sourcetable.parse(TABLE).getMountpoints();
+
+        assertEquals(3, m.size());
+        Sourcetable.Mountpoint ffm = m.get(0);
+        assertEquals("FFMJ00DEU0", ffm.name);
+        assertEquals("RTCM 3.3", ffm.format);
+        assertEquals(50.09, ffm.latitude, 0);
+        assertEquals(8.66, ffm.longitude, 0);
+        assertEquals(9600, ffm.bitrate);
+        assertTrue(ffm.isSingleBaseRtcm3());
+
+        Sourcetable.Mountpoint vrs = m.get(1);
+        assertTrue(vrs.nmea);
+        assertEquals(1, vrs.solution);
+        assertFalse(vrs.isSingleBaseRtcm3());
+
+        // 0..360 longitudes are brought into -180..180
+        assertEquals(-12.88, m.get(2).longitude, 1e-9);
+        assertTrue(m.get(2).isSingleBaseRtcm3());
+    }
+
+    @Test
+    public void cache_roundTripsAndExpires() throws Exception {
+        File file = new File(folder.getRoot(), "sourcetable.txt");
+        Sourcetable.parse(TABLE).saveCache(file);
+
+        Sourcetable cached = Sourcetable.loadCache(file, Sourcetable.DEFAULT_MAX_AGE_MS);
+        assertNotNull(cached);
+        assertEquals(3, cached.getMountpoints().size());
+
+        assertTrue(file.setLastModified(System.currentTimeMillis() - 2000));
+        assertNull(Sourcetable.loadCache(file, 1000));
+        assertNull(Sourcetable.loadCache(new File(folder.getRoot(), "missing"), 1000));
+    }
+}
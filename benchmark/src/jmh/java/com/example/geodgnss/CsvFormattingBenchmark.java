@@ -0,0 +1,61 @@
+package com.example.geodgnss;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting one measurement as a CSV line: String.format against {@link GnssCsvEncoder},
+ * appending to a reused builder (the on-screen log) and encoding to bytes (file export).
+ * Scores are lines per second; run with the gc profiler to compare allocation per line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CsvFormattingBenchmark {
+
+    static final int SIGNALS = 40;
+
+    private final GnssEpoch epoch = new GnssEpoch();
+    private final GnssCsvEncoder encoder = new GnssCsvEncoder();
+    private final StringBuilder builder = new StringBuilder(512);
+
+    @Setup
+    public void setUp() {
+        Fixtures.fillEpoch(epoch, 0, SIGNALS);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void stringFormat(Blackhole bh) {
+        for (int i = 0; i < epoch.count; i++) {
+            bh.consume(Fixtures.legacyCsv(epoch, i));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void encoderAppend(Blackhole bh) {
+        for (int i = 0; i < epoch.count; i++) {
+            builder.setLength(0);
+            GnssCsvEncoder.append(builder, epoch, i);
+            bh.consume(builder);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void encoderBytes(Blackhole bh) {
+        for (int i = 0; i < epoch.count; i++) {
+            bh.consume(encoder.encode(epoch, i));
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.geodgnss;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.text.DecimalFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/** Synthetic and recorded inputs shared by the benchmarks. */
+final class Fixtures {
+
+    /** System property naming a recorded rtcm_*.bin to use instead of the synthetic stream. */
+    static final String RTCM_CAPTURE_PROPERTY = "rtcm.capture";
+
+    // Per-epoch message mix of a four-constellation MSM7 base: type, payload length
+    private static final int[][] RTCM_EPOCH = {
+            {1077, 420}, {1087, 310}, {1097, 380}, {1127, 400}, {1230, 8}};
+
+    private static final int[] CONSTELLATIONS = {1, 3, 5, 6}; // GPS, GLONASS, BeiDou, Galileo
+
+    private Fixtures() {
+    }
+
+    /** Fills {@code epoch} with {@code count} plausible multi-constellation measurements. */
+    static void fillEpoch(GnssEpoch epoch, int e, int count) {
+        epoch.timeNanos = 86_400_000_000_000L + e * 1_000_000_000L;
+        epoch.fullBiasNanos = -1_383_915_601_234_567_890L;
+        epoch.biasNanos = 0.4527;
+        epoch.biasUncertaintyNanos = 17.25;
+        epoch.driftNanosPerSecond = 32.715;
+        epoch.driftUncertaintyNanosPerSecond = 0.5;
+        epoch.hardwareClockDiscontinuityCount = 1;
+        epoch.clockFlags = GnssEpoch.HAS_FULL_BIAS | GnssEpoch.HAS_BIAS
+                | GnssEpoch.HAS_BIAS_UNCERTAINTY | GnssEpoch.HAS_DRIFT
+                | GnssEpoch.HAS_DRIFT_UNCERTAINTY;
+        epoch.count = count;
+        for (int i = 0; i < count; i++) {
+            epoch.svid[i] = 1 + i % 32;
+            epoch.timeOffsetNanos[i] = 0.0;
+            epoch.state[i] = 16431;
+            epoch.receivedSvTimeNanos[i] = 345_600_069_812_345L + e * 1_000_000_000L + i * 977L;
+            epoch.receivedSvTimeUncertaintyNanos[i] = 10 + i % 7;
+            epoch.cn0DbHz[i] = 22.3 + (i * 0.731) % 25;
+            epoch.pseudorangeRateMetersPerSecond[i] = -712.39184 + i * 41.0731;
+            epoch.pseudorangeRateUncertaintyMetersPerSecond[i] = 0.0412 + i * 1e-3;
+            epoch.accumulatedDeltaRangeState[i] = i % 4 == 0 ? 16 : 1;
+            epoch.accumulatedDeltaRangeMeters[i] = 20_345.123456 + i * 1_001.25 + e * 0.19;
+            epoch.accumulatedDeltaRangeUncertaintyMeters[i] = 3.0517578125E-5;
+            epoch.carrierFrequencyHz[i] = i % 3 == 0 ? 1.17645005E9f : 1.57542003E9f;
+            epoch.carrierCycles[i] = 0;
+            epoch.carrierPhase[i] = 0;
+            epoch.carrierPhaseUncertainty[i] = 0;
+            epoch.multipathIndicator[i] = 0;
+            epoch.snrInDb[i] = 0;
+            epoch.constellationType[i] = CONSTELLATIONS[i % CONSTELLATIONS.length];
+            epoch.automaticGainControlLevelDb[i] = i % 2 == 0 ? 1.83 : 0;
+            epoch.flags[i] = GnssEpoch.HAS_CARRIER_FREQUENCY
+                    | (i % 2 == 0 ? GnssEpoch.HAS_AGC : 0);
+        }
+    }
+
+    /** The CSV line the app used to build with String.format for each measurement. */
+    static String legacyCsv(GnssEpoch m, int i) {
+        int f = m.flags[i];
+        return String.format(
+                "%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s",
+                m.svid[i],
+                m.timeOffsetNanos[i],
+                m.state[i],
+                m.receivedSvTimeNanos[i],
+                m.receivedSvTimeUncertaintyNanos[i],
+                m.cn0DbHz[i],
+                m.pseudorangeRateMetersPerSecond[i],
+                m.pseudorangeRateUncertaintyMetersPerSecond[i],
+                m.accumulatedDeltaRangeState[i],
+                m.accumulatedDeltaRangeMeters[i],
+                m.accumulatedDeltaRangeUncertaintyMeters[i],
+                (f & GnssEpoch.HAS_CARRIER_FREQUENCY) != 0 ? m.carrierFrequencyHz[i] : "",
+                (f & GnssEpoch.HAS_CARRIER_CYCLES) != 0 ? m.carrierCycles[i] : "",
+                (f & GnssEpoch.HAS_CARRIER_PHASE) != 0 ? m.carrierPhase[i] : "",
+                (f & GnssEpoch.HAS_CARRIER_PHASE_UNCERTAINTY) != 0
+                        ? m.carrierPhaseUncertainty[i] : "",
+                m.multipathIndicator[i],
+                (f & GnssEpoch.HAS_SNR) != 0 ? m.snrInDb[i] : "",
+                m.constellationType[i],
+                (f & GnssEpoch.HAS_AGC) != 0 ? m.automaticGainControlLevelDb[i] : "");
+    }
+
+    /**
+     * The GGA sentence as the app used to build it with SimpleDateFormat, DecimalFormat and
+     * String.format for every send.
+     */
+    static String legacyGga(long timeMillis, double latitude, double longitude,
+                            float accuracy, double altitude, int satelliteCount) {
+        SimpleDateFormat sdf = new SimpleDateFormat("HHmmss.SSS", Locale.US);
+        sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
+        String time = sdf.format(new Date(timeMillis));
+
+        DecimalFormat df = new DecimalFormat("00.000000");
+        String lat = df.format(Math.abs(latitude));
+        String ns = latitude >= 0 ? "N" : "S";
+        String lon = df.format(Math.abs(longitude));
+        String ew = longitude >= 0 ? "E" : "W";
+
+        return String.format(Locale.US, "$GPGGA,%s,%s,%s,%s,%s,1,%02d,%.1f,%.1f,M,,M,,",
+                time,
+                lat.substring(0, 2) + lat.substring(3),
+                ns,
+                lon.substring(0, 3) + lon.substring(4),
+                ew,
+                satelliteCount,
+                accuracy,
+                altitude);
+    }
+
+    /** The app's convertToNmeaFormat: degrees to ddmm.mmmm with String.format. */
+    static String legacyNmeaCoordinate(double decimalDegrees) {
+        int degrees = (int) decimalDegrees;
+        double minutes = (decimalDegrees - degrees) * 60;
+        return String.format(Locale.US, "%02d%07.4f", degrees, minutes);
+    }
+
+    /**
+     * An RTCM stream: the capture named by the {@value #RTCM_CAPTURE_PROPERTY} property if
+     * set, otherwise {@code epochs} epochs of synthetic MSM7 frames with a station position
+     * every ten epochs.
+     */
+    static byte[] rtcmStream(int epochs) throws IOException {
+        String capture = System.getProperty(RTCM_CAPTURE_PROPERTY);
+        if (capture != null && !capture.isEmpty()) {
+            return Files.readAllBytes(Paths.get(capture));
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int e = 0; e < epochs; e++) {
+            if (e % 10 == 0) {
+                writeFrame(out, 1005, 19, e);
+            }
+            for (int[] message : RTCM_EPOCH) {
+                writeFrame(out, message[0], message[1], e);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    /** Wraps each {@code chunkSize} bytes of {@code data} in HTTP/1.1 chunked framing. */
+    static byte[] chunkedEncoding(byte[] data, int chunkSize) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int p = 0; p < data.length; p += chunkSize) {
+            int n = Math.min(chunkSize, data.length - p);
+            byte[] size = (Integer.toHexString(n) + "\r\n").getBytes();
+            out.write(size, 0, size.length);
+            out.write(data, p, n);
+            out.write('\r');
+            out.write('\n');
+        }
+        out.write('0');
+        out.write('\r');
+        out.write('\n');
+        out.write('\r');
+        out.write('\n');
+        return out.toByteArray();
+    }
+
+    private static void writeFrame(ByteArrayOutputStream out, int type, int payloadLength,
+                                   int seed) {
+        byte[] frame = new byte[payloadLength + 6];
+        frame[0] = (byte) 0xD3;
+        frame[1] = (byte) (payloadLength >> 8);
+        frame[2] = (byte) payloadLength;
+        frame[3] = (byte) (type >> 4);
+        frame[4] = (byte) (type << 4);
+        frame[5] = 7;
+        for (int i = 6; i < payloadLength + 3; i++) {
+            frame[i] = (byte) (i * 31 + seed);
+        }
+        int crc = RtcmFramer.crc24q(frame, 0, payloadLength + 3);
+        frame[payloadLength + 3] = (byte) (crc >> 16);
+        frame[payloadLength + 4] = (byte) (crc >> 8);
+        frame[payloadLength + 5] = (byte) crc;
+        out.write(frame, 0, frame.length);
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.geodgnss;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measurement logging: the old per-line path (String.format, then open, append and close
+ * the file for every measurement) against {@link GnssLogger}. Scores are records per
+ * second; run with the gc profiler to compare allocation per record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GnssLoggingBenchmark {
+
+    static final int SIGNALS = 40;
+
+    private final GnssEpoch epoch = new GnssEpoch();
+    private File legacyFile;
+    private File binaryFile;
+    private GnssLogger logger;
+
+    /**
+     * Records accepted into the ring (all of which reach the file) and records dropped
+     * because the ring was full. The primary score of {@link #ringBufferLogger} is the
+     * producer-side cost; these show what sustained rate the disk side keeps up with.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class LoggerCounters {
+        public long loggedRecords;
+        public long droppedRecords;
+        private long lastLogged;
+        private long lastDropped;
+
+        void update(GnssLogger logger) {
+            long logged = logger.getLoggedRecords();
+            long dropped = logger.getDroppedRecords();
+            loggedRecords += logged - lastLogged;
+            droppedRecords += dropped - lastDropped;
+            lastLogged = logged;
+            lastDropped = dropped;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Fixtures.fillEpoch(epoch, 0, SIGNALS);
+        legacyFile = File.createTempFile("gnss_legacy", ".log");
+        binaryFile = File.createTempFile("gnss_binary", ".log");
+        binaryFile.delete();
+        logger = new GnssLogger(binaryFile);
+        logger.open();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        logger.close();
+        legacyFile.delete();
+        binaryFile.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void legacyPerLineWrite() throws IOException {
+        for (int i = 0; i < epoch.count; i++) {
+            String line = Fixtures.legacyCsv(epoch, i);
+            try (FileWriter fw = new FileWriter(legacyFile, true);
+                 BufferedWriter bw = new BufferedWriter(fw)) {
+                bw.write(line);
+                bw.newLine();
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SIGNALS)
+    public void ringBufferLogger(LoggerCounters counters) {
+        logger.log(epoch);
+        counters.update(logger);
+    }
+}
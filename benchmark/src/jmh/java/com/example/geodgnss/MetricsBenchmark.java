@@ -0,0 +1,51 @@
+package com.example.geodgnss;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording into {@link MetricsRegistry} from the hot paths, in nanoseconds per
+ * call, from one thread and from four threads sharing the same metrics.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+
+    private final MetricsRegistry registry = new MetricsRegistry();
+    private final MetricsRegistry.Counter counter = registry.counter("rtcm.bytes");
+    private final MetricsRegistry.CounterArray messages =
+            registry.counterArray("rtcm.messages", 4096);
+    private final MetricsRegistry.Histogram histogram = registry.histogram("rtk.solve_ns");
+    private long value = 1_234_567;
+
+    @Benchmark
+    public void counterAdd() {
+        counter.add(512);
+    }
+
+    @Benchmark
+    public void counterArrayIncrement() {
+        messages.increment(1077);
+    }
+
+    @Benchmark
+    public void histogramRecord() {
+        // Spread over a few buckets as real latencies would be
+        value = value * 6364136223846793005L + 1442695040888963407L;
+        histogram.record((value >>> 40) + 100_000);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void histogramRecordContended() {
+        histogram.record(System.nanoTime() & 0xFFFFF);
+    }
+}
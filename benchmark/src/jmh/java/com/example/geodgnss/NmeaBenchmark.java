@@ -0,0 +1,51 @@
+package com.example.geodgnss;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the GGA sentence sent to the caster: the app's former generateGGA and its
+ * convertToNmeaFormat coordinate helper against {@link NmeaEncoder}. Scores are sentences
+ * (or coordinate pairs) per second; run with the gc profiler to compare allocation per
+ * sentence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class NmeaBenchmark {
+
+    private final long timeMillis = 1_700_000_123_456L;
+    private final double latitude = 48.1173000123;
+    private final double longitude = -11.5166666789;
+    private final float accuracy = 3.2f;
+    private final double altitude = 545.4;
+    private final int satelliteCount = 14;
+    private final NmeaEncoder encoder = new NmeaEncoder();
+    private final byte[] sentence = new byte[NmeaEncoder.MAX_SENTENCE_LENGTH];
+
+    @Benchmark
+    public String legacyGenerateGga() {
+        return Fixtures.legacyGga(timeMillis, latitude, longitude, accuracy, altitude,
+                satelliteCount);
+    }
+
+    @Benchmark
+    public void legacyConvertToNmeaFormat(Blackhole bh) {
+        bh.consume(Fixtures.legacyNmeaCoordinate(Math.abs(latitude)));
+        bh.consume(Fixtures.legacyNmeaCoordinate(Math.abs(longitude)));
+    }
+
+    @Benchmark
+    public void encoderGga(Blackhole bh) {
+        bh.consume(encoder.gga(sentence, 0, timeMillis, latitude, longitude,
+                NmeaEncoder.QUALITY_GPS, satelliteCount, accuracy, altitude));
+        bh.consume(sentence);
+    }
+}
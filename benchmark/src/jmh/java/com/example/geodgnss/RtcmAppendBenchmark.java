@@ -0,0 +1,79 @@
+package com.example.geodgnss;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appending one received chunk to the RTCM capture: the old writeRtcmToFile, which opened,
+ * appended and closed the file for every chunk, against the channel the decoder thread
+ * keeps open and writes the pooled direct buffer to. Measurement appends are covered by
+ * {@link GnssLoggingBenchmark}. Scores are chunks per second; run with the gc profiler to
+ * compare allocation per chunk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RtcmAppendBenchmark {
+
+    private byte[] chunk;
+    private final ByteBuffer directChunk = ByteBuffer.allocateDirect(RtcmChunkBenchmark.CHUNK);
+    private File legacyFile;
+    private File channelFile;
+    private FileChannel channel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        byte[] stream = Fixtures.rtcmStream(20);
+        chunk = new byte[RtcmChunkBenchmark.CHUNK];
+        System.arraycopy(stream, 0, chunk, 0, Math.min(chunk.length, stream.length));
+        directChunk.put(chunk).flip();
+        legacyFile = File.createTempFile("rtcm_legacy", ".bin");
+        channelFile = File.createTempFile("rtcm_channel", ".bin");
+        channel = FileChannel.open(channelFile.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /** Keeps the files from growing across iterations. */
+    @Setup(Level.Iteration)
+    public void truncate() throws IOException {
+        new FileOutputStream(legacyFile).close();
+        channel.truncate(0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+        legacyFile.delete();
+        channelFile.delete();
+    }
+
+    @Benchmark
+    public void legacyOpenAppendClose() throws IOException {
+        try (FileOutputStream fos = new FileOutputStream(legacyFile, true)) {
+            fos.write(chunk);
+        }
+    }
+
+    @Benchmark
+    public void channelAppend() throws IOException {
+        directChunk.rewind();
+        while (directChunk.hasRemaining()) {
+            channel.write(directChunk);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.geodgnss;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handling one chunk of the correction stream as read from the socket: the old copy of
+ * every read into a fresh array against the pooled direct buffer that is framed in place,
+ * with and without NTRIP v2 chunked transfer decoding. Each invocation takes the next
+ * chunk of the stream, so frames straddle chunks as they do on the wire. The old path did
+ * no framing in Java, so its score is the cost of the copy alone.
+ *
+ * <p>The stream is synthetic unless {@code -Drtcm.capture=<rtcm_*.bin>} names a recording
+ * (./gradlew :benchmark:jmh -PrtcmCapture=...). Scores are chunks per second; run with the
+ * gc profiler to compare allocation per chunk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class RtcmChunkBenchmark {
+
+    /** Typical payload of one TCP segment. */
+    static final int CHUNK = 1460;
+
+    private byte[] stream;
+    private byte[] chunkedStream;
+    private final byte[] readBuffer = new byte[4096];
+    private final DirectBufferPool pool =
+            new DirectBufferPool(NtripClient.RECEIVE_BUFFERS, NtripClient.RECEIVE_BUFFER_SIZE);
+    private final NtripClient.ChunkedDecoder decoder = new NtripClient.ChunkedDecoder();
+    private int position;
+    private int chunkedPosition;
+
+    // Consecutive frames of one chunk go to the solver in one call, as in MainActivity
+    private Blackhole sink;
+    private ByteBuffer runBuffer;
+    private int runStart;
+    private int runEnd;
+    private final RtcmFramer framer = new RtcmFramer(
+            (buffer, offset, length, messageType, stationId) -> {
+                if (buffer == runBuffer && offset == runEnd) {
+                    runEnd += length;
+                    return;
+                }
+                flushRun();
+                runBuffer = buffer;
+                runStart = offset;
+                runEnd = offset + length;
+            });
+
+    @Setup
+    public void setUp() throws IOException {
+        stream = Fixtures.rtcmStream(600);
+        chunkedStream = Fixtures.chunkedEncoding(stream, 1024);
+    }
+
+    @Benchmark
+    public void legacyCopyPerChunk(Blackhole bh) {
+        int n = Math.min(CHUNK, stream.length - position);
+        System.arraycopy(stream, position, readBuffer, 0, n);
+        position = (position + n) % stream.length;
+        bh.consume(Arrays.copyOf(readBuffer, n));
+    }
+
+    @Benchmark
+    public void pooledFraming(Blackhole bh) throws InterruptedException {
+        ByteBuffer chunk = pool.acquire(0);
+        int n = Math.min(CHUNK, stream.length - position);
+        chunk.put(stream, position, n).flip();
+        position = (position + n) % stream.length;
+        frame(chunk, bh);
+        pool.release(chunk);
+    }
+
+    @Benchmark
+    public void pooledChunkedFraming(Blackhole bh) throws InterruptedException, IOException {
+        ByteBuffer chunk = pool.acquire(0);
+        int n = Math.min(CHUNK, chunkedStream.length - chunkedPosition);
+        chunk.put(chunkedStream, chunkedPosition, n).flip();
+        chunkedPosition += n;
+        if (!decoder.decode(chunk) || chunkedPosition == chunkedStream.length) {
+            decoder.reset();
+            chunkedPosition = 0;
+        }
+        frame(chunk, bh);
+        pool.release(chunk);
+    }
+
+    private void frame(ByteBuffer chunk, Blackhole bh) {
+        sink = bh;
+        framer.feed(chunk);
+        flushRun();
+    }
+
+    private void flushRun() {
+        if (runBuffer != null) {
+            sink.consume(runBuffer);
+            sink.consume(runEnd - runStart);
+            runBuffer = null;
+        }
+    }
+}
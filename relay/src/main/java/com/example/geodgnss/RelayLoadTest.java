@@ -0,0 +1,272 @@
+package com.example.geodgnss;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fan-out load test of {@link NtripRelay} over loopback:
+ * {@code RelayLoadTest [--rovers=<n>] [--rate=<frames/s>] [--frame=<bytes>]
+ * [--seconds=<s>] [--readers=<threads>]}.
+ *
+ * <p>A fake caster feeds the relay's upstream client RTCM frames (proprietary type 4095)
+ * that carry a sequence number and the time they were written. The rovers are plain
+ * sockets spread over a few reader threads, each with its own {@link RtcmFramer}; every
+ * frame received adds its caster-to-rover latency to one histogram, and sequence gaps
+ * count as lost frames. All rovers connect before the first frame, so each should see the
+ * whole stream. The report goes to stdout.
+ */
+public class RelayLoadTest {
+
+    private static final int MESSAGE_TYPE = 4095;
+    // Payload: message number (12 bits, padded to 2 bytes), sequence, send time
+    private static final int SEQUENCE = 2;
+    private static final int SENT_NANOS = 10;
+    private static final int MIN_PAYLOAD = 18;
+
+    /** One loopback rover. Reader thread only, apart from the totals read at the end. */
+    private static final class Rover {
+        final SocketChannel channel;
+        final RtcmFramer framer;
+        long next;
+        volatile long frames;
+        volatile long lost;
+
+        Rover(SocketChannel channel, MetricsRegistry.Histogram latency) {
+            this.channel = channel;
+            this.framer = new RtcmFramer((buffer, offset, length, messageType, stationId) -> {
+                int payload = offset + RtcmFramer.HEADER_LENGTH;
+                long sequence = buffer.getLong(payload + SEQUENCE);
+                latency.record(System.nanoTime() - buffer.getLong(payload + SENT_NANOS));
+                if (sequence > next) {
+                    lost += sequence - next;
+                }
+                next = sequence + 1;
+                frames++;
+            });
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rovers = 500;
+        int rate = 100;
+        int frameLength = 200;
+        int seconds = 10;
+        int readers = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--rovers=")) {
+                rovers = Integer.parseInt(value);
+            } else if (arg.startsWith("--rate=")) {
+                rate = Integer.parseInt(value);
+            } else if (arg.startsWith("--frame=")) {
+                frameLength = Integer.parseInt(value);
+            } else if (arg.startsWith("--seconds=")) {
+                seconds = Integer.parseInt(value);
+            } else if (arg.startsWith("--readers=")) {
+                readers = Integer.parseInt(value);
+            } else {
+                usage();
+            }
+        }
+        int payloadLength = frameLength - RtcmFramer.HEADER_LENGTH - RtcmFramer.CRC_LENGTH;
+        if (payloadLength < MIN_PAYLOAD || payloadLength > RtcmFramer.MAX_PAYLOAD_LENGTH) {
+            usage();
+        }
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        ServerSocketChannel caster = ServerSocketChannel.open();
+        caster.bind(new InetSocketAddress(loopback, 0));
+        NtripClient upstream = new NtripClient(loopback.getHostAddress(),
+                caster.socket().getLocalPort(), "LOAD", "user", "pass",
+                new DirectBufferPool(NtripRelay.UPSTREAM_BUFFERS,
+                        NtripClient.RECEIVE_BUFFER_SIZE));
+        NtripRelay relay = new NtripRelay(upstream, "LOAD", null, null);
+        relay.setMaxClients(rovers);
+        relay.start(new InetSocketAddress(loopback, 0));
+        SocketChannel feed = caster.accept();
+        readRequest(feed);
+        feed.write(ascii("ICY 200 OK\r\n"));
+
+        MetricsRegistry.Histogram latency = new MetricsRegistry.Histogram();
+        Rover[] all = new Rover[rovers];
+        Selector[] selectors = new Selector[readers];
+        for (int i = 0; i < readers; i++) {
+            selectors[i] = Selector.open();
+        }
+        ByteBuffer request = ascii("GET /LOAD HTTP/1.0\r\n\r\n");
+        for (int i = 0; i < rovers; i++) {
+            SocketChannel channel = SocketChannel.open(
+                    new InetSocketAddress(loopback, relay.getLocalPort()));
+            channel.write(request.duplicate());
+            channel.configureBlocking(false);
+            all[i] = new Rover(channel, latency);
+            channel.register(selectors[i % readers], SelectionKey.OP_READ, all[i]);
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (relay.getClients() < rovers && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        if (relay.getClients() < rovers) {
+            System.out.println("only " + relay.getClients() + " of " + rovers
+                    + " rovers were accepted");
+            System.exit(1);
+        }
+
+        Thread[] threads = new Thread[readers];
+        for (int i = 0; i < readers; i++) {
+            Selector selector = selectors[i];
+            threads[i] = new Thread(() -> read(selector), "RoverReader-" + i);
+            threads[i].start();
+        }
+
+        long start = System.nanoTime();
+        long sent = send(feed, rate, payloadLength, TimeUnit.SECONDS.toNanos(seconds));
+        long elapsed = System.nanoTime() - start;
+
+        // Let the rovers take in the last frames
+        deadline = System.currentTimeMillis() + 5000;
+        while (received(all) < sent * rovers && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        long received = received(all);
+        long lost = 0;
+        for (Rover rover : all) {
+            lost += rover.lost + (sent - rover.next);
+        }
+        double secs = elapsed / 1e9;
+        System.out.printf("rovers %d, readers %d, %d frames of %d bytes at %d/s for %.1f s%n",
+                rovers, readers, sent, frameLength, rate, secs);
+        System.out.printf("upstream %.1f KB/s, fan-out %.1f MB/s%n",
+                relay.getUpstreamBytes() / secs / 1e3, relay.getBytesSent() / secs / 1e6);
+        System.out.printf("frames received %d of %d, lost %d, dropped backlogs %d (%d bytes),"
+                        + " stalled rovers %d%n", received, sent * rovers, lost,
+                relay.getDroppedBacklogs(), relay.getDroppedBytes(), relay.getStalled());
+        System.out.printf("latency us: p50 %.0f, p90 %.0f, p99 %.0f, p99.9 %.0f, max %.0f%n",
+                latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(90) / 1e3,
+                latency.getValueAtPercentile(99) / 1e3,
+                latency.getValueAtPercentile(99.9) / 1e3, latency.getMax() / 1e3);
+
+        relay.stop();
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        for (Selector selector : selectors) {
+            selector.wakeup();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        feed.close();
+        caster.close();
+    }
+
+    /** Writes frames at {@code rate} per second for {@code durationNanos}; returns how many. */
+    private static long send(SocketChannel feed, int rate, int payloadLength, long durationNanos)
+            throws IOException {
+        int frameLength = payloadLength + RtcmFramer.HEADER_LENGTH + RtcmFramer.CRC_LENGTH;
+        ByteBuffer out = ByteBuffer.allocateDirect(64 * 1024);
+        byte[] frame = new byte[frameLength];
+        frame[0] = (byte) RtcmFramer.PREAMBLE;
+        frame[1] = (byte) (payloadLength >> 8);
+        frame[2] = (byte) payloadLength;
+        frame[3] = (byte) (MESSAGE_TYPE >> 4);
+        frame[4] = (byte) (MESSAGE_TYPE << 4);
+        ByteBuffer view = ByteBuffer.wrap(frame);
+        long start = System.nanoTime();
+        long sequence = 0;
+        while (true) {
+            long now = System.nanoTime();
+            if (now - start >= durationNanos) {
+                return sequence;
+            }
+            long due = (now - start) * rate / 1000000000L + 1;
+            out.clear();
+            while (sequence < due && out.remaining() >= frameLength) {
+                view.putLong(RtcmFramer.HEADER_LENGTH + SEQUENCE, sequence++);
+                view.putLong(RtcmFramer.HEADER_LENGTH + SENT_NANOS, System.nanoTime());
+                int crc = RtcmFramer.crc24q(frame, 0, frameLength - RtcmFramer.CRC_LENGTH);
+                frame[frameLength - 3] = (byte) (crc >> 16);
+                frame[frameLength - 2] = (byte) (crc >> 8);
+                frame[frameLength - 1] = (byte) crc;
+                out.put(frame);
+            }
+            out.flip();
+            while (out.hasRemaining()) {
+                feed.write(out);
+            }
+            long next = start + (sequence * 1000000000L + rate - 1) / rate;
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+    }
+
+    private static void read(Selector selector) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                selector.select(100);
+                for (SelectionKey key : selector.selectedKeys()) {
+                    Rover rover = (Rover) key.attachment();
+                    buffer.clear();
+                    if (rover.channel.read(buffer) < 0) {
+                        key.cancel();
+                        continue;
+                    }
+                    buffer.flip();
+                    rover.framer.feed(buffer);
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            System.err.println("Rover reader: " + e);
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException ignored) {
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static long received(Rover[] rovers) {
+        long total = 0;
+        for (Rover rover : rovers) {
+            total += rover.frames;
+        }
+        return total;
+    }
+
+    private static void readRequest(SocketChannel channel) throws IOException {
+        ByteBuffer request = ByteBuffer.allocate(2048);
+        while (!new String(request.array(), 0, request.position(), StandardCharsets.US_ASCII)
+                .contains("\r\n\r\n")) {
+            if (channel.read(request) < 0 || !request.hasRemaining()) {
+                throw new IOException("Bad request from the relay");
+            }
+        }
+    }
+
+    private static ByteBuffer ascii(String text) {
+        return ByteBuffer.wrap(text.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void usage() {
+        System.err.println("usage: RelayLoadTest [--rovers=<n>] [--rate=<frames/s>]"
+                + " [--frame=<bytes>] [--seconds=<s>] [--readers=<threads>]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.geodgnss;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Command line entry of the relay:
+ * {@code RelayMain <host> <port> <mountpoint> <user> <password> [--listen=<port>]
+ * [--mount=<name>] [--rover=<user>:<password>] [--gga=<sentence>] [--v2]}.
+ *
+ * <p>Holds one connection to the caster and serves it to rovers on {@code --listen}
+ * (default 2101) as {@code --mount} (default the upstream mountpoint). Without
+ * {@code --rover} rovers need no login. {@code --gga} is sent upstream for VRS and
+ * nearest-base mountpoints. A status line goes to stderr every ten seconds; the relay runs
+ * until the process is stopped.
+ */
+public class RelayMain {
+
+    private static final long STATUS_INTERVAL_MS = 10000;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int listen = 2101;
+        String mount = null;
+        String roverUser = null;
+        String roverPassword = null;
+        String gga = null;
+        boolean v2 = false;
+        String[] upstreamArgs = new String[5];
+        int n = 0;
+        for (String arg : args) {
+            if (arg.startsWith("--listen=")) {
+                listen = Integer.parseInt(arg.substring("--listen=".length()));
+            } else if (arg.startsWith("--mount=")) {
+                mount = arg.substring("--mount=".length());
+            } else if (arg.startsWith("--rover=")) {
+                String login = arg.substring("--rover=".length());
+                int colon = login.indexOf(':');
+                if (colon < 0) {
+                    usage();
+                }
+                roverUser = login.substring(0, colon);
+                roverPassword = login.substring(colon + 1);
+            } else if (arg.startsWith("--gga=")) {
+                gga = arg.substring("--gga=".length());
+            } else if (arg.equals("--v2")) {
+                v2 = true;
+            } else if (n < upstreamArgs.length) {
+                upstreamArgs[n++] = arg;
+            } else {
+                usage();
+            }
+        }
+        if (n < upstreamArgs.length) {
+            usage();
+        }
+
+        NtripClient upstream = new NtripClient(upstreamArgs[0],
+                Integer.parseInt(upstreamArgs[1]), upstreamArgs[2], upstreamArgs[3],
+                upstreamArgs[4], new DirectBufferPool(NtripRelay.UPSTREAM_BUFFERS,
+                NtripClient.RECEIVE_BUFFER_SIZE));
+        if (v2) {
+            upstream.setVersion(NtripClient.Version.V2);
+        }
+        if (gga != null) {
+            upstream.sendGga(gga);
+        }
+        NtripRelay relay = new NtripRelay(upstream, mount != null ? mount : upstreamArgs[2],
+                roverUser, roverPassword);
+        relay.start(new InetSocketAddress(listen));
+        Runtime.getRuntime().addShutdownHook(new Thread(relay::stop, "RelayShutdown"));
+        System.err.println("Relaying " + upstreamArgs[2] + " on port " + relay.getLocalPort());
+
+        long lastUpstream = 0;
+        long lastSent = 0;
+        while (true) {
+            Thread.sleep(STATUS_INTERVAL_MS);
+            long upstreamBytes = relay.getUpstreamBytes();
+            long sent = relay.getBytesSent();
+            System.err.printf("upstream %s %d B/s, rovers %d, sent %d B/s, dropped %d B,"
+                            + " stalled %d, refused %d%s%n",
+                    relay.isUpstreamConnected() ? "up" : "down",
+                    (upstreamBytes - lastUpstream) * 1000 / STATUS_INTERVAL_MS,
+                    relay.getClients(), (sent - lastSent) * 1000 / STATUS_INTERVAL_MS,
+                    relay.getDroppedBytes(), relay.getStalled(), relay.getRefused(),
+                    relay.getLastUpstreamError() != null
+                            ? ", last error: " + relay.getLastUpstreamError() : "");
+            lastUpstream = upstreamBytes;
+            lastSent = sent;
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: RelayMain <host> <port> <mountpoint> <user> <password>"
+                + " [--listen=<port>] [--mount=<name>] [--rover=<user>:<password>]"
+                + " [--gga=<sentence>] [--v2]");
+        System.exit(2);
+    }
+}
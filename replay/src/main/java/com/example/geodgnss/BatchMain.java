@@ -0,0 +1,114 @@
+package com.example.geodgnss;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line entry of the batch post-processor:
+ * {@code BatchMain <directory>... [--out=<directory>] [--threads=<n>] [--nav=<file>]
+ * [--filter]}.
+ *
+ * <p>Every session found under the given directories (see {@link SessionBatch}) is replayed
+ * as fast as the solver allows, on one worker per core unless {@code --threads} says
+ * otherwise. Solutions go to {@code <out>/<directory>/<session>.pos}, {@code solutions} by
+ * default. A line per session as it finishes and the batch report go to stderr. {@code --nav}
+ * preloads RTCM ephemeris frames for sessions without their own, and {@code --filter} runs
+ * the app's {@link SignalFilter} as in {@link ReplayMain}. The solver still prints its own
+ * line per epoch to stdout, interleaved across sessions; redirect stdout to drop it.
+ */
+public class BatchMain {
+
+    public static void main(String[] args) throws IOException {
+        File output = new File("solutions");
+        int threads = Runtime.getRuntime().availableProcessors();
+        File navigation = null;
+        SignalFilter filter = null;
+        List<File> roots = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--out=")) {
+                output = new File(arg.substring("--out=".length()));
+            } else if (arg.startsWith("--threads=")) {
+                threads = Integer.parseInt(arg.substring("--threads=".length()));
+            } else if (arg.startsWith("--nav=")) {
+                navigation = new File(arg.substring("--nav=".length()));
+            } else if (arg.equals("--filter")) {
+                filter = new SignalFilter();
+            } else if (!arg.startsWith("--")) {
+                roots.add(new File(arg));
+            } else {
+                usage();
+            }
+        }
+        if (roots.isEmpty() || threads < 1) {
+            usage();
+        }
+
+        RTKProcessor processor = new RTKProcessor();
+        SessionBatch batch = new SessionBatch(output, nav -> open(processor, nav));
+        for (File root : roots) {
+            batch.scan(root);
+        }
+        batch.setNavigation(navigation);
+        batch.setFilter(filter);
+        batch.setListener(session -> System.err.println(session));
+        SessionBatch.Report report = batch.run(threads);
+        System.err.println(report);
+        if (filter != null) {
+            StringBuilder rejections = new StringBuilder("rejected signals\n");
+            filter.describe(rejections);
+            System.err.print(rejections);
+        }
+        if (report.failedSessions > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** A native solver context for one session. */
+    private static SessionBatch.Solver open(RTKProcessor processor, File navigation)
+            throws IOException {
+        long context = processor.initRtkContext();
+        try {
+            if (navigation != null) {
+                byte[] frames = Files.readAllBytes(navigation.toPath());
+                ByteBuffer buffer = ByteBuffer.allocateDirect(frames.length);
+                buffer.put(frames);
+                processor.initNavigation(context, buffer, frames.length);
+            }
+        } catch (IOException | RuntimeException e) {
+            processor.shutdownRtkContext(context);
+            throw e;
+        }
+        ByteBuffer solution = RtkSolution.allocateBuffer();
+        return new SessionBatch.Solver() {
+            @Override
+            public void addCorrections(ByteBuffer frames, int offset, int length) {
+                processor.updateRtcmBuffer(context, frames, offset, length, 0);
+            }
+
+            @Override
+            public int solve(ByteBuffer epoch) {
+                return processor.processEpochBuffer(context, epoch, solution);
+            }
+
+            @Override
+            public void getSolution(RtkSolution s) {
+                s.unpack(solution);
+            }
+
+            @Override
+            public void close() {
+                processor.shutdownRtkContext(context);
+            }
+        };
+    }
+
+    private static void usage() {
+        System.err.println("usage: BatchMain <directory>... [--out=<directory>]"
+                + " [--threads=<n>] [--nav=<file>] [--filter]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.geodgnss;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * Command line entry of the replay tool:
+ * {@code ReplayMain <gnss_*.log> <rtcm_*.bin> [--speed=<factor>] [--nav=<file>] [--filter]}.
+ *
+ * <p>Without {@code --speed} the session is replayed as fast as the solver allows;
+ * {@code --speed=1} replays at the recorded pace. The solver prints one line per solution to
+ * stdout; the report goes to stderr. {@code --nav} preloads RTCM ephemeris frames, such as
+ * the app's {@code EphemerisStore} file, for captures that start without them.
+ * {@code --filter} runs the app's {@link SignalFilter} with its default thresholds (no
+ * elevation mask, the log has no elevations) and reports its rejections per satellite.
+ */
+public class ReplayMain {
+
+    public static void main(String[] args) throws IOException {
+        double speed = 0;
+        File gnssLog = null;
+        File rtcmCapture = null;
+        File navigation = null;
+        SignalFilter filter = null;
+        for (String arg : args) {
+            if (arg.startsWith("--speed=")) {
+                speed = Double.parseDouble(arg.substring("--speed=".length()));
+            } else if (arg.startsWith("--nav=")) {
+                navigation = new File(arg.substring("--nav=".length()));
+            } else if (arg.equals("--filter")) {
+                filter = new SignalFilter();
+            } else if (gnssLog == null) {
+                gnssLog = new File(arg);
+            } else if (rtcmCapture == null) {
+                rtcmCapture = new File(arg);
+            } else {
+                usage();
+            }
+        }
+        if (gnssLog == null || rtcmCapture == null) {
+            usage();
+        }
+
+        RTKProcessor processor = new RTKProcessor();
+        long context = processor.initRtkContext();
+        if (navigation != null) {
+            byte[] frames = Files.readAllBytes(navigation.toPath());
+            ByteBuffer buffer = ByteBuffer.allocateDirect(frames.length);
+            buffer.put(frames);
+            processor.initNavigation(context, buffer, frames.length);
+        }
+        try {
+            ReplayEngine engine = new ReplayEngine();
+            engine.setSpeed(speed);
+            engine.setFilter(filter);
+            ReplayEngine.Report report = engine.run(gnssLog, rtcmCapture,
+                    new ReplayEngine.Solver() {
+                        @Override
+                        public void addCorrections(ByteBuffer frames, int offset, int length) {
+                            processor.updateRtcmBuffer(context, frames, offset, length, 0);
+                        }
+
+                        @Override
+                        public int solve(ByteBuffer epoch) {
+                            return processor.processEpochBuffer(context, epoch, null);
+                        }
+                    });
+            System.err.println(report);
+            if (filter != null) {
+                StringBuilder rejections = new StringBuilder("rejected signals\n");
+                filter.describe(rejections);
+                System.err.print(rejections);
+            }
+        } finally {
+            processor.shutdownRtkContext(context);
+        }
+    }
+
+    private static void usage() {
+        System.err.println("usage: ReplayMain <gnss_*.log> <rtcm_*.bin> [--speed=<factor>]"
+                + " [--nav=<file>] [--filter]");
+        System.exit(2);
+    }
+}